@@ -23,39 +23,43 @@
  */
 package com.blackducksoftware.integration.hub.jenkins;
 
-import java.util.Collections;
-import java.util.List;
+import java.io.Serializable;
 
 import org.apache.commons.lang.StringUtils;
 
-import com.cloudbees.plugins.credentials.CredentialsProvider;
-import com.cloudbees.plugins.credentials.common.StandardCredentials;
-import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
-import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCredentialsCache;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
-import com.cloudbees.plugins.credentials.matchers.IdMatcher;
 
-import hudson.security.ACL;
-import jenkins.model.Jenkins;
+/**
+ * One Hub server of the global configuration. It is immutable, a change of configuration replaces it, so a build that holds on to it sees one consistent
+ * configuration. The default server has no name, the additional servers are selected by theirs.
+ */
+public class HubServerInfo implements Serializable {
 
-public class HubServerInfo {
+    private static final long serialVersionUID = 1L;
 
-    private String serverUrl;
+    private final String name;
 
-    private String hubCredentialsId;
+    private final String serverUrl;
 
-    private UsernamePasswordCredentialsImpl credential;
+    private final String hubCredentialsId;
 
-    private int timeout;
+    private final int timeout;
 
-    private boolean trustSSLCertificates;
+    private final boolean trustSSLCertificates;
 
-    private boolean performWorkspaceCheck;
+    private final boolean performWorkspaceCheck;
 
     public HubServerInfo() {
+        this(null, null, 0, false, false);
     }
 
     public HubServerInfo(final String serverUrl, final String hubCredentialsId, final int timeout, final boolean trustSSLCertificates, final boolean performWorkspaceCheck) {
+        this(null, serverUrl, hubCredentialsId, timeout, trustSSLCertificates, performWorkspaceCheck);
+    }
+
+    public HubServerInfo(final String name, final String serverUrl, final String hubCredentialsId, final int timeout, final boolean trustSSLCertificates, final boolean performWorkspaceCheck) {
+        this.name = StringUtils.trimToNull(name);
         this.serverUrl = serverUrl;
         this.hubCredentialsId = hubCredentialsId;
         this.timeout = timeout;
@@ -74,24 +78,33 @@ public class HubServerInfo {
         return timeout;
     }
 
-    public void setTimeout(final int timeout) {
-        this.timeout = timeout;
+    /**
+     * @return the name jobs select the server by, null for the default server
+     */
+    public String getName() {
+        return name;
     }
 
-    public String getServerUrl() {
-        return serverUrl;
+    public boolean isDefaultServer() {
+        return name == null;
     }
 
-    public void setServerUrl(final String serverUrl) {
-        this.serverUrl = serverUrl;
+    /**
+     * @return how the server is shown in the build logs and the job configuration
+     */
+    public String getDisplayName() {
+        if (name == null) {
+            return serverUrl;
+        }
+        return name + " (" + serverUrl + ")";
     }
 
-    public String getCredentialsId() {
-        return hubCredentialsId;
+    public String getServerUrl() {
+        return serverUrl;
     }
 
-    public void setCredentialsId(final String hubCredentialsId) {
-        this.hubCredentialsId = hubCredentialsId;
+    public String getCredentialsId() {
+        return hubCredentialsId;
     }
 
     public boolean isPluginConfigured() {
@@ -118,45 +131,26 @@ public class HubServerInfo {
     }
 
     public UsernamePasswordCredentialsImpl getCredential() {
-        // Only need to look up the credential when you first run a build or if the credential that the user wants to
-        // use has changed.
-        if (credential == null || !credential.getId().equals(hubCredentialsId)) {
-            final List<StandardUsernamePasswordCredentials> credentials = CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class, Jenkins.getInstance(), ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
-            final IdMatcher matcher = new IdMatcher(hubCredentialsId);
-            for (final StandardCredentials c : credentials) {
-                if (matcher.matches(c) && c instanceof UsernamePasswordCredentialsImpl) {
-                    credential = (UsernamePasswordCredentialsImpl) c;
-                }
-            }
-        }
-        return credential;
+        return HubCredentialsCache.getInstance().getCredential(hubCredentialsId);
     }
 
     public boolean shouldTrustSSLCerts() {
         return trustSSLCertificates;
     }
 
-    public void setTrustSSLCertificates(final boolean trustSSLCertificates) {
-        this.trustSSLCertificates = trustSSLCertificates;
-    }
-
     public boolean isPerformWorkspaceCheck() {
         return performWorkspaceCheck;
     }
 
-    public void setPerformWorkspaceCheck(final boolean performWorkspaceCheck) {
-        this.performWorkspaceCheck = performWorkspaceCheck;
-    }
-
     @Override
     public String toString() {
         final StringBuilder builder = new StringBuilder();
-        builder.append("HubServerInfo [serverUrl=");
+        builder.append("HubServerInfo [name=");
+        builder.append(name);
+        builder.append(", serverUrl=");
         builder.append(serverUrl);
         builder.append(", hubCredentialsId=");
         builder.append(hubCredentialsId);
-        builder.append(", credential=");
-        builder.append(credential);
         builder.append(", timeout=");
         builder.append(timeout);
         builder.append(", trustSSLCertificates=");
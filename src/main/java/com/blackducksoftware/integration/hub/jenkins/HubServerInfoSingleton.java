@@ -23,8 +23,24 @@
  */
 package com.blackducksoftware.integration.hub.jenkins;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Publishes the global Hub configuration to the builds. Every change of configuration is published as a new, numbered {@link Snapshot}, a build takes one
+ * snapshot when it starts and uses it throughout, so it never mixes the values of two configurations.
+ */
 public class HubServerInfoSingleton {
 
+    /**
+     * The server selection of a job that sends its scans to the least loaded of the configured servers.
+     */
+    public static final String POOL = "pool";
+
     private final static HubServerInfoSingleton _instance;
 
     static // static constructor
@@ -33,13 +49,12 @@ public class HubServerInfoSingleton {
         _instance = new HubServerInfoSingleton();
     }
 
-    private HubServerInfo _info;
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>(new Snapshot(new HubServerInfo(), Collections.<HubServerInfo> emptyList(), 0L));
 
     /**
      * Default constructor.
      */
     private HubServerInfoSingleton() {
-        _info = null;
     }
 
     /**
@@ -58,10 +73,14 @@ public class HubServerInfoSingleton {
      * @return The object containing the server information.
      */
     public HubServerInfo getServerInfo() {
-        if (_info == null) {
-            _info = new HubServerInfo();
-        }
-        return _info;
+        return snapshot.get().getServerInfo();
+    }
+
+    /**
+     * @return the current configuration with its version
+     */
+    public Snapshot getSnapshot() {
+        return snapshot.get();
     }
 
     /**
@@ -69,7 +88,22 @@ public class HubServerInfoSingleton {
      *
      */
     public void setServerInfo(final HubServerInfo info) {
-        _info = info;
+        setServerInfo(info, snapshot.get().getAdditionalServers());
+    }
+
+    /**
+     * Replace the default Hub server and the additional, named, servers, as the next version of the configuration.
+     */
+    public void setServerInfo(final HubServerInfo info, final List<HubServerInfo> additionalServers) {
+        setServerInfo(info, additionalServers, snapshot.get().getVersion() + 1);
+    }
+
+    /**
+     * Replace the default Hub server and the additional, named, servers with the version saved along with them.
+     */
+    public void setServerInfo(final HubServerInfo info, final List<HubServerInfo> additionalServers, final long version) {
+        final List<HubServerInfo> servers = additionalServers == null ? Collections.<HubServerInfo> emptyList() : Collections.unmodifiableList(new ArrayList<>(additionalServers));
+        snapshot.set(new Snapshot(info == null ? new HubServerInfo() : info, servers, version));
     }
 
     @Override
@@ -77,4 +111,70 @@ public class HubServerInfoSingleton {
         throw new CloneNotSupportedException();
     }
 
+    /**
+     * One published configuration. The version counts the saves of the global configuration, it is saved along with it so the version logged by a build
+     * identifies the same configuration after Jenkins restarts.
+     */
+    public static final class Snapshot {
+
+        private final HubServerInfo serverInfo;
+
+        private final List<HubServerInfo> additionalServers;
+
+        private final long version;
+
+        public Snapshot(final HubServerInfo serverInfo, final List<HubServerInfo> additionalServers, final long version) {
+            this.serverInfo = serverInfo;
+            this.additionalServers = additionalServers;
+            this.version = version;
+        }
+
+        /**
+         * @return the default server
+         */
+        public HubServerInfo getServerInfo() {
+            return serverInfo;
+        }
+
+        /**
+         * @return the server with the name, the default server for a blank name, or null if no server has the name
+         */
+        public HubServerInfo getServerInfo(final String name) {
+            if (StringUtils.isBlank(name)) {
+                return serverInfo;
+            }
+            for (final HubServerInfo server : additionalServers) {
+                if (server.getName().equals(name.trim())) {
+                    return server;
+                }
+            }
+            return null;
+        }
+
+        public List<HubServerInfo> getAdditionalServers() {
+            return additionalServers;
+        }
+
+        /**
+         * @return the servers a job can send its scans to, the default server first
+         */
+        public List<HubServerInfo> getConfiguredServers() {
+            final List<HubServerInfo> servers = new ArrayList<>();
+            if (serverInfo.isPluginConfigured()) {
+                servers.add(serverInfo);
+            }
+            for (final HubServerInfo server : additionalServers) {
+                if (server.isPluginConfigured()) {
+                    servers.add(server);
+                }
+            }
+            return servers;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+    }
+
 }
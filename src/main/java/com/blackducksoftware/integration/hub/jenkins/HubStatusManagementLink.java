@@ -0,0 +1,96 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins;
+
+import com.blackducksoftware.integration.hub.jenkins.action.ReportDataCache;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubServerPool;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyStatusCache;
+import com.blackducksoftware.integration.hub.jenkins.phonehome.PhoneHomeQueue;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomStatusPoller;
+
+import hudson.Extension;
+import hudson.model.ManagementLink;
+
+/**
+ * Administrator page showing the runtime counters of the plugin, so problems like dropped phone home requests can be seen without reading the controller logs.
+ */
+@Extension
+public class HubStatusManagementLink extends ManagementLink {
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/blackduck-hub/images/Ducky-200.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.HubStatus_getDisplayName();
+    }
+
+    @Override
+    public String getDescription() {
+        return Messages.HubStatus_getDescription();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "blackduck-hub-status";
+    }
+
+    public HubServerPool getServerPool() {
+        return HubServerPool.getInstance();
+    }
+
+    public HubAdmissionController getAdmissionController() {
+        return HubAdmissionController.getInstance();
+    }
+
+    public HubCircuitBreaker getCircuitBreaker() {
+        return HubCircuitBreaker.getInstance();
+    }
+
+    public PhoneHomeQueue getPhoneHomeQueue() {
+        return PhoneHomeQueue.getInstance();
+    }
+
+    public HubConnectionManager getConnectionManager() {
+        return HubConnectionManager.getInstance();
+    }
+
+    public BomStatusPoller getBomStatusPoller() {
+        return BomStatusPoller.getInstance();
+    }
+
+    public PolicyStatusCache getPolicyStatusCache() {
+        return PolicyStatusCache.getInstance();
+    }
+
+    public ReportDataCache getReportDataCache() {
+        return ReportDataCache.getInstance();
+    }
+
+}
@@ -23,13 +23,10 @@
  */
 package com.blackducksoftware.integration.hub.jenkins;
 
-import java.io.File;
-import java.io.IOException;
-
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import com.blackducksoftware.integration.hub.jenkins.failure.HubFailureConditionStep;
-import com.blackducksoftware.integration.hub.jenkins.remote.GetCanonicalPath;
+import com.blackducksoftware.integration.hub.jenkins.scan.BDCommonDescriptorUtil;
 import com.blackducksoftware.integration.hub.jenkins.scan.BDCommonScanStep;
 import com.blackducksoftware.integration.hub.jenkins.scan.ScanExclusion;
 import com.blackducksoftware.integration.log.IntLogger;
@@ -72,12 +69,16 @@ public class PostBuildHubScan extends Recorder {
     private final String codeLocationName;
     private final boolean unmapPreviousCodeLocations;
     private final boolean deletePreviousCodeLocations;
+    private final String scanConcurrency;
+    private final boolean incrementalScan;
+    private final String hubServerName;
     private Boolean verbose;
 
     @DataBoundConstructor
     public PostBuildHubScan(final ScanJobs[] scans, final String hubProjectName, final String hubProjectVersion, final String hubVersionPhase, final String hubVersionDist, final String scanMemory, final boolean shouldGenerateHubReport,
             final boolean projectLevelAdjustments, final String bomUpdateMaximumWaitTime, final boolean dryRun, final boolean cleanupOnSuccessfulScan, final ScanExclusion[] excludePatterns, final String codeLocationName,
-            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations) {
+            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final String scanConcurrency,
+            final boolean incrementalScan, final String hubServerName) {
         this.scans = scans;
         this.hubProjectName = hubProjectName;
         this.hubProjectVersion = hubProjectVersion;
@@ -93,6 +94,9 @@ public class PostBuildHubScan extends Recorder {
         this.codeLocationName = codeLocationName;
         this.unmapPreviousCodeLocations = unmapPreviousCodeLocations;
         this.deletePreviousCodeLocations = deletePreviousCodeLocations;
+        this.scanConcurrency = scanConcurrency;
+        this.incrementalScan = incrementalScan;
+        this.hubServerName = hubServerName;
     }
 
     public void setverbose(final boolean verbose) {
@@ -166,6 +170,21 @@ public class PostBuildHubScan extends Recorder {
         return deletePreviousCodeLocations;
     }
 
+    public String getScanConcurrency() {
+        return scanConcurrency;
+    }
+
+    public boolean isIncrementalScan() {
+        return incrementalScan;
+    }
+
+    /**
+     * @return the name of the Hub server to scan with, blank for the default server or {@link HubServerInfoSingleton#POOL} for the least loaded server
+     */
+    public String getHubServerName() {
+        return hubServerName;
+    }
+
     // http://javadoc.jenkins-ci.org/hudson/tasks/Recorder.html
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
@@ -177,8 +196,11 @@ public class PostBuildHubScan extends Recorder {
         return (PostBuildScanDescriptor) super.getDescriptor();
     }
 
+    /**
+     * @return the selected server, or null if no server has the selected name any more
+     */
     public HubServerInfo getHubServerInfo() {
-        return HubServerInfoSingleton.getInstance().getServerInfo();
+        return BDCommonDescriptorUtil.getHubServerInfo(hubServerName);
     }
 
     /**
@@ -191,7 +213,7 @@ public class PostBuildHubScan extends Recorder {
         try {
             final BDCommonScanStep scanStep = new BDCommonScanStep(getScans(), getHubProjectName(), getHubProjectVersion(), getHubVersionPhase(), getHubVersionDist(), getScanMemory(), isProjectLevelAdjustments(),
                     getShouldGenerateHubReport(), getBomUpdateMaximumWaitTime(), isDryRun(), isCleanupOnSuccessfulScan(), isVerbose(), getExclusionPatterns(), getCodeLocationName(), isUnmapPreviousCodeLocations(),
-                    isDeletePreviousCodeLocations(), isFailureConditionsConfigured(build));
+                    isDeletePreviousCodeLocations(), isFailureConditionsConfigured(build), getScanConcurrency(), isIncrementalScan(), getHubServerName());
             final EnvVars envVars = build.getEnvironment(listener);
 
             scanStep.runScan(build, build.getBuiltOn(), envVars, getWorkingDirectory(logger, build), logger, launcher, listener, build.getFullDisplayName(), String.valueOf(build.getNumber()));
@@ -228,19 +250,13 @@ public class PostBuildHubScan extends Recorder {
 
     public FilePath getWorkingDirectory(final IntLogger logger, final AbstractBuild<?, ?> build) throws InterruptedException {
         String workingDirectory = "";
-        try {
-            if (build.getWorkspace() == null) {
-                // might be using custom workspace
-                workingDirectory = build.getProject().getCustomWorkspace();
-            } else {
-                workingDirectory = build.getWorkspace().getRemote();
-            }
-
-            workingDirectory = build.getBuiltOn().getChannel().call(new GetCanonicalPath(new File(workingDirectory)));
-        } catch (final IOException e) {
-            logger.error("Problem getting the working directory on this node. Error : " + e.getMessage(), e);
+        if (build.getWorkspace() == null) {
+            // might be using custom workspace
+            workingDirectory = build.getProject().getCustomWorkspace();
+        } else {
+            workingDirectory = build.getWorkspace().getRemote();
         }
-        logger.info("Node workspace " + workingDirectory);
+        // the canonical path is resolved on the node together with the scan targets
         return new FilePath(build.getBuiltOn().getChannel(), workingDirectory);
     }
 
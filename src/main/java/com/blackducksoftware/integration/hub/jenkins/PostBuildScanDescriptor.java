@@ -27,8 +27,11 @@ import java.io.IOException;
 import java.io.Serializable;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import javax.servlet.ServletException;
 import javax.xml.parsers.DocumentBuilder;
@@ -54,6 +57,8 @@ import org.xml.sax.SAXException;
 
 import com.blackducksoftware.integration.hub.configuration.HubServerConfigValidator;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCredentialsCache;
 import com.blackducksoftware.integration.hub.jenkins.exceptions.BDJenkinsHubPluginException;
 import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
 import com.blackducksoftware.integration.hub.jenkins.helper.JenkinsProxyHelper;
@@ -72,7 +77,6 @@ import com.cloudbees.plugins.credentials.common.StandardListBoxModel;
 import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
 import com.cloudbees.plugins.credentials.domains.DomainRequirement;
 import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
-import com.cloudbees.plugins.credentials.matchers.IdMatcher;
 
 import hudson.Extension;
 import hudson.Functions;
@@ -87,6 +91,7 @@ import hudson.util.FormValidation;
 import hudson.util.IOUtils;
 import hudson.util.ListBoxModel;
 import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 
 // This indicates to Jenkins that this is an implementation of an extension
@@ -106,15 +111,26 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
 
     private static final String FORM_CREDENTIALSID = "hubCredentialsId";
 
+    private static final String FORM_ADDITIONAL_SERVERS = "additionalServers";
+
+    private static final String FORM_SERVER_NAME = "serverName";
+
     private HubServerInfo hubServerInfo;
 
+    private List<HubServerInfo> additionalServers;
+
+    /**
+     * Counts the saves of this configuration, logged by the builds that use it.
+     */
+    private long configurationVersion;
+
     /**
      * In order to load the persisted global configuration, you have to call load() in the constructor.
      */
     public PostBuildScanDescriptor() {
         super(PostBuildHubScan.class);
         load();
-        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo);
+        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo, additionalServers, configurationVersion);
     }
 
     /**
@@ -124,6 +140,13 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
         return HubServerInfoSingleton.getInstance().getServerInfo();
     }
 
+    /**
+     * @return the named Hub servers jobs can select instead of the default server
+     */
+    public List<HubServerInfo> getAdditionalServers() {
+        return HubServerInfoSingleton.getInstance().getSnapshot().getAdditionalServers();
+    }
+
     public String getPluginVersion() {
         return PluginHelper.getPluginVersion();
     }
@@ -227,7 +250,7 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
             throw new IOException("Failed to persist configuration.xml", e);
         }
 
-        final HubServerInfo serverInfo = new HubServerInfo();
+        HubServerInfo serverInfo = new HubServerInfo();
 
         if (doc.getElementsByTagName("hubServerInfo").getLength() > 0) {
             final Node hubServerInfoNode = doc.getElementsByTagName("hubServerInfo").item(0);
@@ -281,9 +304,6 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
                     }
                 }
 
-                serverInfo.setCredentialsId(credentialId);
-                serverInfo.setServerUrl(serverUrl);
-
                 int serverTimeout = 300;
                 try {
                     serverTimeout = Integer.valueOf(hubTimeout);
@@ -291,15 +311,15 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
                     System.err.println("Could not convert the provided timeout : " + hubTimeout + ", to an int value.");
                     e.printStackTrace(System.err);
                 }
-                serverInfo.setTimeout(serverTimeout);
-                serverInfo.setTrustSSLCertificates(Boolean.valueOf(trustSSLCertificates));
-                serverInfo.setPerformWorkspaceCheck(Boolean.valueOf(hubWorkspaceCheck));
+                serverInfo = new HubServerInfo(serverUrl, credentialId, serverTimeout, Boolean.valueOf(trustSSLCertificates), Boolean.valueOf(hubWorkspaceCheck));
             }
         }
         hubServerInfo = serverInfo;
+        configurationVersion++;
 
         save();
-        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo);
+        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo, additionalServers, configurationVersion);
+        HubConnectionManager.getInstance().invalidateAll();
     }
 
     @Override
@@ -321,13 +341,63 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
         // set that to properties and call save().
         final Integer timeout = NumberUtils.toInt(formData.getString(FORM_TIMEOUT), 120);
 
-        hubServerInfo = new HubServerInfo(formData.getString(FORM_SERVER_URL), formData.getString(FORM_CREDENTIALSID), timeout, formData.getBoolean(FORM_TRUST_CERTS), formData.getBoolean(FORM_WORKSPACE_CHECK));
+        final boolean workspaceCheck = formData.getBoolean(FORM_WORKSPACE_CHECK);
+        final List<HubServerInfo> servers = getAdditionalServers(formData.opt(FORM_ADDITIONAL_SERVERS), workspaceCheck);
+
+        hubServerInfo = new HubServerInfo(formData.getString(FORM_SERVER_URL), formData.getString(FORM_CREDENTIALSID), timeout, formData.getBoolean(FORM_TRUST_CERTS), workspaceCheck);
+        additionalServers = servers;
+        configurationVersion++;
         save();
-        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo);
+        HubServerInfoSingleton.getInstance().setServerInfo(hubServerInfo, additionalServers, configurationVersion);
+        HubConnectionManager.getInstance().invalidateAll();
 
         return super.configure(req, formData);
     }
 
+    /**
+     * Reads the additional servers of the form, a single server is sent as an object and several as an array. The workspace check is a setting of the
+     * controller, so every server shares the one of the default server.
+     */
+    private List<HubServerInfo> getAdditionalServers(final Object serversData, final boolean workspaceCheck) throws Descriptor.FormException {
+        final List<JSONObject> serverForms = new ArrayList<>();
+        if (serversData instanceof JSONObject) {
+            serverForms.add((JSONObject) serversData);
+        } else if (serversData instanceof JSONArray) {
+            for (final Object serverData : (JSONArray) serversData) {
+                serverForms.add((JSONObject) serverData);
+            }
+        }
+        final List<HubServerInfo> servers = new ArrayList<>();
+        final Set<String> names = new HashSet<>();
+        for (final JSONObject serverForm : serverForms) {
+            final String name = StringUtils.trimToNull(serverForm.optString(FORM_SERVER_NAME));
+            if (name == null) {
+                throw new Descriptor.FormException(Messages.HubBuildScan_getServerNameMissing(), FORM_SERVER_NAME);
+            }
+            if (HubServerInfoSingleton.POOL.equals(name)) {
+                throw new Descriptor.FormException(Messages.HubBuildScan_getServerNameReserved_0_(name), FORM_SERVER_NAME);
+            }
+            if (!names.add(name)) {
+                throw new Descriptor.FormException(Messages.HubBuildScan_getServerNameDuplicate_0_(name), FORM_SERVER_NAME);
+            }
+            final int timeout = NumberUtils.toInt(serverForm.optString(FORM_TIMEOUT), 120);
+            servers.add(new HubServerInfo(name, serverForm.optString(FORM_SERVER_URL), serverForm.optString(FORM_CREDENTIALSID), timeout, serverForm.optBoolean(FORM_TRUST_CERTS), workspaceCheck));
+        }
+        return servers;
+    }
+
+    public ListBoxModel doFillHubServerNameItems() {
+        return BDCommonDescriptorUtil.doFillHubServerNameItems();
+    }
+
+    public FormValidation doCheckHubServerName(@QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+        return BDCommonDescriptorUtil.doCheckHubServerName(hubServerName);
+    }
+
+    public FormValidation doCheckScanConcurrency(@QueryParameter("scanConcurrency") final String scanConcurrency) throws IOException, ServletException {
+        return BDCommonDescriptorUtil.doCheckScanConcurrency(scanConcurrency);
+    }
+
     public FormValidation doCheckScanMemory(@QueryParameter("scanMemory") final String scanMemory) throws IOException, ServletException {
         return BDCommonDescriptorUtil.doCheckScanMemory(scanMemory);
     }
@@ -343,17 +413,17 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
     /**
      * Performs on-the-fly validation of the form field 'hubProjectName'. Checks to see if there is already a project in the Hub with this name.
      */
-    public FormValidation doCheckHubProjectName(@QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("dryRun") final boolean dryRun)
-            throws IOException, ServletException {
-        return BDCommonDescriptorUtil.doCheckHubProjectName(getHubServerInfo(), hubProjectName, hubProjectVersion, dryRun);
+    public FormValidation doCheckHubProjectName(@QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("dryRun") final boolean dryRun,
+            @QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+        return BDCommonDescriptorUtil.doCheckHubProjectName(hubServerName, hubProjectName, hubProjectVersion, dryRun);
     }
 
     /**
      * Performs on-the-fly validation of the form field 'hubProjectVersion'. Checks to see if there is already a project in the Hub with this name.
      */
-    public FormValidation doCheckHubProjectVersion(@QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("dryRun") final boolean dryRun)
-            throws IOException, ServletException {
-        return BDCommonDescriptorUtil.doCheckHubProjectVersion(getHubServerInfo(), hubProjectVersion, hubProjectName, dryRun);
+    public FormValidation doCheckHubProjectVersion(@QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("dryRun") final boolean dryRun,
+            @QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+        return BDCommonDescriptorUtil.doCheckHubProjectVersion(hubServerName, hubProjectVersion, hubProjectName, dryRun);
     }
 
     ///////////////// Global configuration methods /////////////////
@@ -457,14 +527,7 @@ public class PostBuildScanDescriptor extends BuildStepDescriptor<Publisher> impl
             String credentialUserName = null;
             String credentialPassword = null;
 
-            UsernamePasswordCredentialsImpl credential = null;
-            final List<StandardUsernamePasswordCredentials> credentials = CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class, Jenkins.getInstance(), ACL.SYSTEM, Collections.<DomainRequirement>emptyList());
-            final IdMatcher matcher = new IdMatcher(hubCredentialsId);
-            for (final StandardCredentials c : credentials) {
-                if (matcher.matches(c) && c instanceof UsernamePasswordCredentialsImpl) {
-                    credential = (UsernamePasswordCredentialsImpl) c;
-                }
-            }
+            final UsernamePasswordCredentialsImpl credential = HubCredentialsCache.getInstance().getCredential(hubCredentialsId);
             if (credential == null) {
                 return FormValidation.error(Messages.HubBuildScan_getCredentialsNotFound());
             }
@@ -23,6 +23,8 @@
  */
 package com.blackducksoftware.integration.hub.jenkins.action;
 
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+
 import hudson.model.Action;
 
 public class BomUpToDateAction implements Action {
@@ -33,8 +35,18 @@ public class BomUpToDateAction implements Action {
 
     private String policyStatusUrl;
 
+    private long policyStatusTime;
+
+    private String componentsUrl;
+
+    private long uploadTime;
+
+    private long bomCompletedTime;
+
     private boolean dryRun;
 
+    private HubServerInfo serverInfo;
+
     public boolean isHasBomBeenUdpated() {
         return hasBomBeenUdpated;
     }
@@ -59,6 +71,50 @@ public class BomUpToDateAction implements Action {
         this.policyStatusUrl = policyStatusUrl;
     }
 
+    /**
+     * @return the BOM components of the project version the scan was mapped to, or null for builds from before it was recorded
+     */
+    public String getComponentsUrl() {
+        return componentsUrl;
+    }
+
+    public void setComponentsUrl(final String componentsUrl) {
+        this.componentsUrl = componentsUrl;
+    }
+
+    /**
+     * @return the time from which the policy status includes the scan, a policy status fetched earlier for another build can not be used
+     */
+    public long getPolicyStatusTime() {
+        return policyStatusTime;
+    }
+
+    public void setPolicyStatusTime(final long policyStatusTime) {
+        this.policyStatusTime = policyStatusTime;
+    }
+
+    /**
+     * @return the time the scan finished uploading, or 0 if nothing was uploaded
+     */
+    public long getUploadTime() {
+        return uploadTime;
+    }
+
+    public void setUploadTime(final long uploadTime) {
+        this.uploadTime = uploadTime;
+    }
+
+    /**
+     * @return the time the Hub was seen to have finished the scans, or 0 if nobody waited for them
+     */
+    public long getBomCompletedTime() {
+        return bomCompletedTime;
+    }
+
+    public void setBomCompletedTime(final long bomCompletedTime) {
+        this.bomCompletedTime = bomCompletedTime;
+    }
+
     public boolean isDryRun() {
         return dryRun;
     }
@@ -67,6 +123,17 @@ public class BomUpToDateAction implements Action {
         this.dryRun = dryRun;
     }
 
+    /**
+     * @return the Hub server the scan was sent to, the policy status has to be read from the same server
+     */
+    public HubServerInfo getServerInfo() {
+        return serverInfo;
+    }
+
+    public void setServerInfo(final HubServerInfo serverInfo) {
+        this.serverInfo = serverInfo;
+    }
+
     @Override
     public String getIconFileName() {
         return null;
@@ -23,18 +23,61 @@
  */
 package com.blackducksoftware.integration.hub.jenkins.action;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.Callable;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
 import com.blackducksoftware.integration.hub.jenkins.Messages;
 import com.blackducksoftware.integration.hub.report.api.ReportData;
 import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
+import com.google.gson.JsonObject;
 
 import hudson.model.Action;
+import hudson.model.Item;
 import hudson.model.Run;
 
+/**
+ * The risk report of a build. The report itself is kept in the build directory, compressed in the form written by {@link ReportDataCodec}, and only read when
+ * it is viewed, through the {@link ReportDataCache} shared by all builds. build.xml only holds a summary of the counts. Builds recorded before the report moved
+ * out of build.xml keep it in jsonReportData, which is still read.
+ */
 public class HubReportV2Action implements Action {
 
+    public static final String REPORT_FILE_NAME = "blackduck-hub-risk-report.bin.gz";
+
+    /**
+     * The report as json, written by earlier versions of the plugin.
+     */
+    public static final String JSON_REPORT_FILE_NAME = "blackduck-hub-risk-report.json.gz";
+
+    private static final Logger LOGGER = Logger.getLogger(HubReportV2Action.class.getName());
+
+    private static final Gson GSON = new GsonBuilder().create();
+
     private final Run<?, ?> build;
-    private final transient Gson gson = new GsonBuilder().create();
+
+    private Summary summary;
+
+    /**
+     * Only set for builds recorded by older versions of the plugin.
+     */
     private String jsonReportData;
 
     public HubReportV2Action(final Run<?, ?> build) {
@@ -45,16 +88,122 @@ public class HubReportV2Action implements Action {
         return build;
     }
 
+    /**
+     * @return the report, read from the build directory if it is not cached, or null if the report file is missing or cannot be read
+     */
     public ReportData getReportData() {
-        return gson.fromJson(jsonReportData, ReportData.class);
+        return ReportDataCache.getInstance().get(getCacheKey(build), new Callable<ReportData>() {
+            @Override
+            public ReportData call() {
+                return loadReportData();
+            }
+        });
     }
 
-    public void setReportData(final ReportData reportData) {
-        jsonReportData = gson.toJson(reportData);
+    /**
+     * Writes the report to the build directory and keeps its summary.
+     */
+    public synchronized void setReportData(final ReportData reportData) throws IOException {
+        final File reportFile = getReportFile();
+        final File partFile = new File(reportFile.getParentFile(), reportFile.getName() + ".part");
+        try (OutputStream outputStream = new GZIPOutputStream(new FileOutputStream(partFile))) {
+            ReportDataCodec.write(reportData, outputStream);
+        }
+        Files.move(partFile.toPath(), reportFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        summary = new Summary(reportData);
+        jsonReportData = null;
+        ReportDataCache.getInstance().put(getCacheKey(build), reportData, ReportDataCodec.estimateSize(reportData));
     }
 
+    /**
+     * @return the report as json for the report page, or null if there is no report
+     */
     public String getJsonReportData() {
-        return jsonReportData;
+        if (jsonReportData != null) {
+            return jsonReportData;
+        }
+        final ReportData reportData = getReportData();
+        return reportData == null ? null : GSON.toJson(reportData);
+    }
+
+    /**
+     * @return the report without its components as json, the report page loads the components through {@link #doComponents}, or null if there is no report
+     */
+    public String getJsonReportSummary() {
+        final ReportData reportData = getReportData();
+        if (reportData == null) {
+            return null;
+        }
+        final JsonObject reportJson = GSON.toJsonTree(reportData).getAsJsonObject();
+        reportJson.remove("components");
+        return GSON.toJson(reportJson);
+    }
+
+    /**
+     * Serves one page of the report components as json, filtered and sorted as described by the {@link RiskReportQuery} request parameters.
+     */
+    public void doComponents(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        build.checkPermission(Item.READ);
+        final ReportData reportData = getReportData();
+        if (reportData == null) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        final RiskReportQuery.Page page = RiskReportQuery.fromRequest(req).apply(reportData.getComponents());
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (Writer writer = rsp.getCompressedWriter(req)) {
+            GSON.toJson(page, writer);
+        }
+    }
+
+    /**
+     * @return the counts of the report, computed from the report for builds recorded before the summary was kept, or null if there is no report
+     */
+    public synchronized Summary getSummary() {
+        if (summary == null) {
+            final ReportData reportData = getReportData();
+            if (reportData != null) {
+                // not saved, older builds are left as they were recorded
+                summary = new Summary(reportData);
+            }
+        }
+        return summary;
+    }
+
+    public File getReportFile() {
+        return new File(build.getRootDir(), REPORT_FILE_NAME);
+    }
+
+    /**
+     * @return the key of the report of the build in the {@link ReportDataCache}
+     */
+    public static String getCacheKey(final Run<?, ?> build) {
+        return new File(build.getRootDir(), REPORT_FILE_NAME).getPath();
+    }
+
+    /**
+     * Reads the report, the cache keeps it.
+     */
+    private ReportData loadReportData() {
+        ReportData reportData = null;
+        if (jsonReportData != null) {
+            reportData = GSON.fromJson(jsonReportData, ReportData.class);
+        } else {
+            File reportFile = getReportFile();
+            if (!reportFile.isFile()) {
+                reportFile = new File(build.getRootDir(), JSON_REPORT_FILE_NAME);
+                if (!reportFile.isFile()) {
+                    return null;
+                }
+            }
+            try (InputStream inputStream = new GZIPInputStream(new FileInputStream(reportFile))) {
+                reportData = ReportDataCodec.read(inputStream);
+            } catch (final Exception e) {
+                LOGGER.log(Level.WARNING, "Could not read the risk report " + reportFile, e);
+                return null;
+            }
+        }
+        return reportData;
     }
 
     @Override
@@ -72,4 +221,84 @@ public class HubReportV2Action implements Action {
         return "hub_risk_report";
     }
 
+    /**
+     * The counts of a report, small enough to keep in build.xml.
+     */
+    public static final class Summary {
+
+        private final int totalComponents;
+
+        private final int vulnerabilityRiskHighCount;
+
+        private final int vulnerabilityRiskMediumCount;
+
+        private final int vulnerabilityRiskLowCount;
+
+        private final int licenseRiskHighCount;
+
+        private final int licenseRiskMediumCount;
+
+        private final int licenseRiskLowCount;
+
+        private final int operationalRiskHighCount;
+
+        private final int operationalRiskMediumCount;
+
+        private final int operationalRiskLowCount;
+
+        public Summary(final ReportData reportData) {
+            this.totalComponents = reportData.getTotalComponents();
+            this.vulnerabilityRiskHighCount = reportData.getVulnerabilityRiskHighCount();
+            this.vulnerabilityRiskMediumCount = reportData.getVulnerabilityRiskMediumCount();
+            this.vulnerabilityRiskLowCount = reportData.getVulnerabilityRiskLowCount();
+            this.licenseRiskHighCount = reportData.getLicenseRiskHighCount();
+            this.licenseRiskMediumCount = reportData.getLicenseRiskMediumCount();
+            this.licenseRiskLowCount = reportData.getLicenseRiskLowCount();
+            this.operationalRiskHighCount = reportData.getOperationalRiskHighCount();
+            this.operationalRiskMediumCount = reportData.getOperationalRiskMediumCount();
+            this.operationalRiskLowCount = reportData.getOperationalRiskLowCount();
+        }
+
+        public int getTotalComponents() {
+            return totalComponents;
+        }
+
+        public int getVulnerabilityRiskHighCount() {
+            return vulnerabilityRiskHighCount;
+        }
+
+        public int getVulnerabilityRiskMediumCount() {
+            return vulnerabilityRiskMediumCount;
+        }
+
+        public int getVulnerabilityRiskLowCount() {
+            return vulnerabilityRiskLowCount;
+        }
+
+        public int getLicenseRiskHighCount() {
+            return licenseRiskHighCount;
+        }
+
+        public int getLicenseRiskMediumCount() {
+            return licenseRiskMediumCount;
+        }
+
+        public int getLicenseRiskLowCount() {
+            return licenseRiskLowCount;
+        }
+
+        public int getOperationalRiskHighCount() {
+            return operationalRiskHighCount;
+        }
+
+        public int getOperationalRiskMediumCount() {
+            return operationalRiskMediumCount;
+        }
+
+        public int getOperationalRiskLowCount() {
+            return operationalRiskLowCount;
+        }
+
+    }
+
 }
@@ -23,6 +23,12 @@
  */
 package com.blackducksoftware.integration.hub.jenkins.action;
 
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+
 import hudson.EnvVars;
 import hudson.model.AbstractBuild;
 import hudson.model.EnvironmentContributingAction;
@@ -41,6 +47,11 @@ public class HubVariableContributor implements EnvironmentContributingAction {
 
     private Integer bomEntriesNotInViolation;
 
+    /**
+     * The number of BOM entries in violation of each rule, by variable name, only set when the violations were fetched in detail.
+     */
+    private TreeMap<String, Integer> ruleViolations;
+
     public HubVariableContributor() {
     }
 
@@ -83,6 +94,22 @@ public class HubVariableContributor implements EnvironmentContributingAction {
         this.bomEntriesNotInViolation = bomEntriesNotInViolation;
     }
 
+    public Map<String, Integer> getRuleViolations() {
+        return ruleViolations;
+    }
+
+    public void setRuleViolations(final Map<String, Integer> ruleViolations) {
+        this.ruleViolations = ruleViolations == null ? null : new TreeMap<>(ruleViolations);
+    }
+
+    /**
+     * @return the name of the variable holding the number of BOM entries in violation of the rule, like BOM_ENTRIES_IN_VIOLATION_NO_GPL for the rule "No GPL"
+     */
+    public static String getRuleVariableName(final String ruleName) {
+        final String suffix = ruleName == null ? "" : ruleName.trim().toUpperCase(Locale.ENGLISH).replaceAll("[^A-Z0-9]+", "_");
+        return BOM_ENTRIES_IN_VIOLATION + "_" + StringUtils.strip(suffix, "_");
+    }
+
     @Override
     public void buildEnvVars(final AbstractBuild<?, ?> build, final EnvVars env) {
         if (getBomEntriesInViolation() != null) {
@@ -94,6 +121,11 @@ public class HubVariableContributor implements EnvironmentContributingAction {
         if (getBomEntriesNotInViolation() != null) {
             env.put(BOM_ENTRIES_NOT_IN_VIOLATION, String.valueOf(getBomEntriesNotInViolation()));
         }
+        if (getRuleViolations() != null) {
+            for (final Map.Entry<String, Integer> ruleViolation : getRuleViolations().entrySet()) {
+                env.put(ruleViolation.getKey(), String.valueOf(ruleViolation.getValue()));
+            }
+        }
     }
 
 }
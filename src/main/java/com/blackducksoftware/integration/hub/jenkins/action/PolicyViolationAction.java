@@ -0,0 +1,190 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.apache.commons.io.IOUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.Messages;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyViolationFetcher;
+import com.google.gson.stream.JsonWriter;
+
+import hudson.model.Action;
+import hudson.model.Item;
+import hudson.model.Run;
+
+/**
+ * The BOM components of a build that are in violation of a policy, with the rules they violate. The components are written to the build directory as they are
+ * fetched and only read when they are downloaded. build.xml only holds the number of components in violation of each rule.
+ */
+public class PolicyViolationAction implements Action {
+
+    public static final String VIOLATIONS_FILE_NAME = "blackduck-hub-policy-violations.json.gz";
+
+    private final Run<?, ?> build;
+
+    private int violationCount;
+
+    private TreeMap<String, Integer> ruleViolationCounts = new TreeMap<>();
+
+    /**
+     * The number of components in violation for every environment variable, rules whose names give the same variable are counted together.
+     */
+    private TreeMap<String, Integer> variableViolationCounts = new TreeMap<>();
+
+    public PolicyViolationAction(final Run<?, ?> build) {
+        this.build = build;
+    }
+
+    public Run<?, ?> getBuild() {
+        return build;
+    }
+
+    /**
+     * Fetches the components in violation, writing them to the build directory and counting the components in violation of each rule.
+     */
+    public synchronized void recordViolations(final PolicyViolationFetcher fetcher) throws IntegrationException, InterruptedException, IOException {
+        final File violationsFile = getViolationsFile();
+        final File partFile = new File(violationsFile.getParentFile(), violationsFile.getName() + ".part");
+        final TreeMap<String, Integer> ruleCounts = new TreeMap<>();
+        final TreeMap<String, Integer> variableCounts = new TreeMap<>();
+        final int count;
+        try (JsonWriter writer = new JsonWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(partFile)), StandardCharsets.UTF_8))) {
+            writer.beginArray();
+            count = fetcher.fetch(new PolicyViolationFetcher.ViolationHandler() {
+                @Override
+                public void handle(final PolicyViolationFetcher.Violation violation) throws IOException {
+                    writer.beginObject();
+                    writer.name("componentName").value(violation.getComponentName());
+                    writer.name("componentVersionName").value(violation.getComponentVersionName());
+                    writer.name("ruleNames").beginArray();
+                    final Set<String> variableNames = new LinkedHashSet<>();
+                    for (final String ruleName : new LinkedHashSet<>(violation.getRuleNames())) {
+                        writer.value(ruleName);
+                        increment(ruleCounts, ruleName);
+                        variableNames.add(HubVariableContributor.getRuleVariableName(ruleName));
+                    }
+                    writer.endArray();
+                    writer.endObject();
+                    for (final String variableName : variableNames) {
+                        increment(variableCounts, variableName);
+                    }
+                }
+            });
+            writer.endArray();
+        } catch (final IntegrationException | InterruptedException | IOException e) {
+            Files.deleteIfExists(partFile.toPath());
+            throw e;
+        }
+        Files.move(partFile.toPath(), violationsFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        violationCount = count;
+        ruleViolationCounts = ruleCounts;
+        variableViolationCounts = variableCounts;
+    }
+
+    public synchronized int getViolationCount() {
+        return violationCount;
+    }
+
+    /**
+     * @return the number of components in violation of each rule, by rule name
+     */
+    public synchronized Map<String, Integer> getRuleViolationCounts() {
+        return Collections.unmodifiableMap(ruleViolationCounts);
+    }
+
+    /**
+     * @return the number of components in violation, by the name of the environment variable of the rule
+     */
+    public synchronized Map<String, Integer> getVariableViolationCounts() {
+        return Collections.unmodifiableMap(variableViolationCounts);
+    }
+
+    /**
+     * Serves the components in violation as json.
+     */
+    public void doComponents(final StaplerRequest req, final StaplerResponse rsp) throws IOException {
+        build.checkPermission(Item.READ);
+        final File violationsFile = getViolationsFile();
+        if (!violationsFile.isFile()) {
+            rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        rsp.setContentType("application/json;charset=UTF-8");
+        try (InputStream inputStream = new GZIPInputStream(new FileInputStream(violationsFile)); OutputStream outputStream = rsp.getCompressedOutputStream(req)) {
+            IOUtils.copy(inputStream, outputStream);
+        }
+    }
+
+    public String getRuleVariableName(final String ruleName) {
+        return HubVariableContributor.getRuleVariableName(ruleName);
+    }
+
+    public File getViolationsFile() {
+        return new File(build.getRootDir(), VIOLATIONS_FILE_NAME);
+    }
+
+    private static void increment(final Map<String, Integer> counts, final String key) {
+        final Integer count = counts.get(key);
+        counts.put(key, count == null ? 1 : count + 1);
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/blackduck-hub/images/Ducky-200.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.PolicyViolationAction_getDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "hub_policy_violations";
+    }
+
+}
@@ -0,0 +1,228 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+import com.blackducksoftware.integration.hub.report.api.ReportData;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Keeps the parsed risk reports of recently viewed builds, so viewing a report or paging through its components does not read and parse the report again.
+ * The cache is shared by all builds and bounded by the combined size of the cached reports, the report used longest ago is evicted first. The size of a report
+ * is estimated by {@link ReportDataCodec#estimateSize}. Requests for a report that is not cached wait for the one load already in progress, and the report of a
+ * deleted build is dropped right away.
+ */
+public class ReportDataCache {
+
+    public static final long MAXIMUM_SIZE = Long.getLong(ReportDataCache.class.getName() + ".maximumSizeMegabytes", 64L) * 1024L * 1024L;
+
+    private final static ReportDataCache _instance = new ReportDataCache(MAXIMUM_SIZE);
+
+    private final long maximumSize;
+
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final Map<String, FutureTask<ReportData>> loads = new HashMap<>();
+
+    private long residentSize;
+
+    private long hits;
+
+    private long misses;
+
+    private long evictions;
+
+    ReportDataCache(final long maximumSize) {
+        this.maximumSize = maximumSize;
+    }
+
+    public static ReportDataCache getInstance() {
+        return _instance;
+    }
+
+    /**
+     * @return the cached report, or null if the report is not cached and has to be loaded
+     */
+    public synchronized ReportData get(final String key) {
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.reportData;
+    }
+
+    /**
+     * @return the cached report, or the report loaded by the loader, which runs once for all the concurrent requests of a report that is not cached
+     */
+    public ReportData get(final String key, final Callable<ReportData> loader) {
+        final FutureTask<ReportData> load;
+        final boolean loading;
+        synchronized (this) {
+            final Entry entry = entries.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.reportData;
+            }
+            misses++;
+            loading = !loads.containsKey(key);
+            if (loading) {
+                loads.put(key, new FutureTask<>(loader));
+            }
+            load = loads.get(key);
+        }
+        if (loading) {
+            load.run();
+            synchronized (this) {
+                // a report removed while it was loading is not cached
+                if (loads.remove(key) == load) {
+                    final ReportData reportData = getLoaded(load);
+                    if (reportData != null) {
+                        put(key, reportData, ReportDataCodec.estimateSize(reportData));
+                    }
+                }
+            }
+        }
+        try {
+            return load.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (final ExecutionException e) {
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e.getCause() instanceof RuntimeException ? (RuntimeException) e.getCause() : new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ReportData getLoaded(final FutureTask<ReportData> load) {
+        try {
+            return load.get();
+        } catch (final InterruptedException | ExecutionException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Caches the report, evicting the reports used longest ago until the cache fits. A report larger than the whole cache is not cached.
+     */
+    public synchronized void put(final String key, final ReportData reportData, final long size) {
+        remove(key);
+        if (size > maximumSize) {
+            return;
+        }
+        entries.put(key, new Entry(reportData, size));
+        residentSize += size;
+        final Iterator<Entry> iterator = entries.values().iterator();
+        while (residentSize > maximumSize && iterator.hasNext()) {
+            final Entry eldest = iterator.next();
+            iterator.remove();
+            residentSize -= eldest.size;
+            evictions++;
+        }
+    }
+
+    public synchronized void remove(final String key) {
+        loads.remove(key);
+        final Entry entry = entries.remove(key);
+        if (entry != null) {
+            residentSize -= entry.size;
+        }
+    }
+
+    public synchronized int getReportCount() {
+        return entries.size();
+    }
+
+    public synchronized long getResidentSize() {
+        return residentSize;
+    }
+
+    public long getMaximumSize() {
+        return maximumSize;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    /**
+     * @return the percentage of lookups answered from the cache
+     */
+    public synchronized int getHitRate() {
+        final long lookups = hits + misses;
+        return lookups == 0 ? 0 : (int) (hits * 100 / lookups);
+    }
+
+    public long getResidentSizeKilobytes() {
+        return getResidentSize() / 1024L;
+    }
+
+    public long getMaximumSizeMegabytes() {
+        return maximumSize / (1024L * 1024L);
+    }
+
+    /**
+     * Drops the report of a deleted build, whether it was deleted by hand or by the log rotation.
+     */
+    @Extension
+    public static class BuildDeletionListener extends RunListener<Run<?, ?>> {
+        @Override
+        public void onDeleted(final Run<?, ?> run) {
+            getInstance().remove(HubReportV2Action.getCacheKey(run));
+        }
+    }
+
+    private static final class Entry {
+        private final ReportData reportData;
+
+        private final long size;
+
+        private Entry(final ReportData reportData, final long size) {
+            this.reportData = reportData;
+            this.size = size;
+        }
+    }
+
+}
@@ -0,0 +1,337 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackducksoftware.integration.hub.report.api.BomComponent;
+import com.blackducksoftware.integration.hub.report.api.PolicyRule;
+import com.blackducksoftware.integration.hub.report.api.ReportData;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+
+/**
+ * Compact binary form of a risk report. Every distinct string is stored once in a dictionary and referenced by its index, and the components are stored one
+ * column at a time, so the values of a column sit next to each other and compress well. Indexes and counts are written as variable length integers, most
+ * take a single byte. The report level risk counts are not stored, they are computed again from the components when the report is read.
+ *
+ * The reader also accepts the json form written by earlier versions of the plugin.
+ */
+public class ReportDataCodec {
+
+    private static final byte[] MAGIC = { 'B', 'D', 'R', 'D' };
+
+    private static final int FORMAT_VERSION = 1;
+
+    /**
+     * Dictionary index of null strings, the strings of the dictionary start at 1.
+     */
+    private static final int NULL_STRING = 0;
+
+    private static final Gson GSON = new GsonBuilder().create();
+
+    private ReportDataCodec() {
+    }
+
+    public static void write(final ReportData reportData, final OutputStream outputStream) throws IOException {
+        final List<BomComponent> components = reportData.getComponents() == null ? new ArrayList<BomComponent>() : reportData.getComponents();
+        final Map<String, Integer> dictionary = new LinkedHashMap<>();
+
+        final int[] header = new int[] { index(dictionary, reportData.getProjectName()), index(dictionary, reportData.getProjectURL()), index(dictionary, reportData.getProjectVersion()),
+                index(dictionary, reportData.getProjectVersionURL()), index(dictionary, reportData.getPhase()), index(dictionary, reportData.getDistribution()) };
+        final int componentCount = components.size();
+        final int[][] stringColumns = new int[6][componentCount];
+        final int[][] countColumns = new int[9][componentCount];
+        final List<int[]> policyRules = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            final BomComponent component = components.get(i);
+            stringColumns[0][i] = index(dictionary, component.getComponentName());
+            stringColumns[1][i] = index(dictionary, component.getComponentURL());
+            stringColumns[2][i] = index(dictionary, component.getComponentVersion());
+            stringColumns[3][i] = index(dictionary, component.getComponentVersionURL());
+            stringColumns[4][i] = index(dictionary, component.getLicense());
+            stringColumns[5][i] = index(dictionary, component.getPolicyStatus());
+            countColumns[0][i] = component.getSecurityRiskHighCount();
+            countColumns[1][i] = component.getSecurityRiskMediumCount();
+            countColumns[2][i] = component.getSecurityRiskLowCount();
+            countColumns[3][i] = component.getLicenseRiskHighCount();
+            countColumns[4][i] = component.getLicenseRiskMediumCount();
+            countColumns[5][i] = component.getLicenseRiskLowCount();
+            countColumns[6][i] = component.getOperationalRiskHighCount();
+            countColumns[7][i] = component.getOperationalRiskMediumCount();
+            countColumns[8][i] = component.getOperationalRiskLowCount();
+            policyRules.add(indexPolicyRules(dictionary, component.getPolicyRulesViolated()));
+        }
+
+        final DataOutputStream output = new DataOutputStream(new BufferedOutputStream(outputStream));
+        output.write(MAGIC);
+        writeVarInt(output, FORMAT_VERSION);
+        writeVarInt(output, dictionary.size());
+        for (final String value : dictionary.keySet()) {
+            final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarInt(output, bytes.length);
+            output.write(bytes);
+        }
+        for (final int value : header) {
+            writeVarInt(output, value);
+        }
+        writeVarInt(output, componentCount);
+        for (final int[] column : stringColumns) {
+            for (final int value : column) {
+                writeVarInt(output, value);
+            }
+        }
+        for (final int[] column : countColumns) {
+            for (final int value : column) {
+                writeVarInt(output, value);
+            }
+        }
+        // the number of violated rules plus one, 0 marks a component without a list of violated rules
+        for (final int[] rules : policyRules) {
+            writeVarInt(output, rules == null ? 0 : rules.length / 2 + 1);
+        }
+        for (final int[] rules : policyRules) {
+            if (rules != null) {
+                for (final int value : rules) {
+                    writeVarInt(output, value);
+                }
+            }
+        }
+        output.flush();
+    }
+
+    /**
+     * Reads a report in the binary form, or in the json form if the stream does not start with the binary header.
+     */
+    public static ReportData read(final InputStream inputStream) throws IOException {
+        final BufferedInputStream bufferedStream = new BufferedInputStream(inputStream);
+        bufferedStream.mark(MAGIC.length);
+        final byte[] magic = new byte[MAGIC.length];
+        int read = 0;
+        while (read < magic.length) {
+            final int count = bufferedStream.read(magic, read, magic.length - read);
+            if (count < 0) {
+                break;
+            }
+            read += count;
+        }
+        bufferedStream.reset();
+        if (read == MAGIC.length && Arrays.equals(magic, MAGIC)) {
+            bufferedStream.skip(MAGIC.length);
+            return readBinary(new DataInputStream(bufferedStream));
+        }
+        final Reader reader = new InputStreamReader(bufferedStream, StandardCharsets.UTF_8);
+        return GSON.fromJson(reader, ReportData.class);
+    }
+
+    private static ReportData readBinary(final DataInputStream input) throws IOException {
+        final int formatVersion = readVarInt(input);
+        if (formatVersion != FORMAT_VERSION) {
+            throw new IOException("Unsupported risk report format version " + formatVersion);
+        }
+        final int dictionarySize = readVarInt(input);
+        final String[] dictionary = new String[dictionarySize + 1];
+        for (int i = 1; i <= dictionarySize; i++) {
+            final byte[] bytes = new byte[readVarInt(input)];
+            input.readFully(bytes);
+            dictionary[i] = new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        final ReportData reportData = new ReportData();
+        reportData.setProjectName(lookup(dictionary, readVarInt(input)));
+        reportData.setProjectURL(lookup(dictionary, readVarInt(input)));
+        reportData.setProjectVersion(lookup(dictionary, readVarInt(input)));
+        reportData.setProjectVersionURL(lookup(dictionary, readVarInt(input)));
+        reportData.setPhase(lookup(dictionary, readVarInt(input)));
+        reportData.setDistribution(lookup(dictionary, readVarInt(input)));
+
+        final int componentCount = readVarInt(input);
+        final List<BomComponent> components = new ArrayList<>(componentCount);
+        for (int i = 0; i < componentCount; i++) {
+            components.add(new BomComponent());
+        }
+        for (final BomComponent component : components) {
+            component.setComponentName(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setComponentURL(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setComponentVersion(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setComponentVersionURL(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setLicense(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setPolicyStatus(lookup(dictionary, readVarInt(input)));
+        }
+        for (final BomComponent component : components) {
+            component.setSecurityRiskHighCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setSecurityRiskMediumCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setSecurityRiskLowCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setLicenseRiskHighCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setLicenseRiskMediumCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setLicenseRiskLowCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setOperationalRiskHighCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setOperationalRiskMediumCount(readVarInt(input));
+        }
+        for (final BomComponent component : components) {
+            component.setOperationalRiskLowCount(readVarInt(input));
+        }
+        final int[] ruleCounts = new int[componentCount];
+        for (int i = 0; i < componentCount; i++) {
+            ruleCounts[i] = readVarInt(input) - 1;
+        }
+        for (int i = 0; i < componentCount; i++) {
+            if (ruleCounts[i] >= 0) {
+                final List<PolicyRule> rules = new ArrayList<>(ruleCounts[i]);
+                for (int j = 0; j < ruleCounts[i]; j++) {
+                    final PolicyRule rule = new PolicyRule();
+                    rule.setName(lookup(dictionary, readVarInt(input)));
+                    rule.setDescription(lookup(dictionary, readVarInt(input)));
+                    rules.add(rule);
+                }
+                components.get(i).setPolicyRulesViolated(rules);
+            }
+        }
+        // computes the report level risk counts
+        reportData.setComponents(components);
+        return reportData;
+    }
+
+    /**
+     * @return an estimate of the memory used by the report once it is read, from the length of its strings and the number of its components
+     */
+    public static long estimateSize(final ReportData reportData) {
+        long size = 512L;
+        if (reportData.getComponents() != null) {
+            for (final BomComponent component : reportData.getComponents()) {
+                size += 128L + 2L * (length(component.getComponentName()) + length(component.getComponentURL()) + length(component.getComponentVersion())
+                        + length(component.getComponentVersionURL()) + length(component.getLicense()) + length(component.getPolicyStatus()));
+                if (component.getPolicyRulesViolated() != null) {
+                    for (final PolicyRule rule : component.getPolicyRulesViolated()) {
+                        size += 48L + 2L * (length(rule.getName()) + length(rule.getDescription()));
+                    }
+                }
+            }
+        }
+        return size;
+    }
+
+    private static int length(final String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    private static int index(final Map<String, Integer> dictionary, final String value) {
+        if (value == null) {
+            return NULL_STRING;
+        }
+        Integer index = dictionary.get(value);
+        if (index == null) {
+            index = dictionary.size() + 1;
+            dictionary.put(value, index);
+        }
+        return index;
+    }
+
+    private static int[] indexPolicyRules(final Map<String, Integer> dictionary, final List<PolicyRule> rules) {
+        if (rules == null) {
+            return null;
+        }
+        final int[] indexes = new int[rules.size() * 2];
+        for (int i = 0; i < rules.size(); i++) {
+            indexes[2 * i] = index(dictionary, rules.get(i).getName());
+            indexes[2 * i + 1] = index(dictionary, rules.get(i).getDescription());
+        }
+        return indexes;
+    }
+
+    private static String lookup(final String[] dictionary, final int index) throws IOException {
+        if (index < 0 || index >= dictionary.length) {
+            throw new IOException("Invalid string reference " + index + " in the risk report");
+        }
+        return dictionary[index];
+    }
+
+    /**
+     * Writes the value 7 bits at a time, lowest bits first, with the high bit set on every byte but the last. Negative values are zigzag encoded so small
+     * negative values stay short.
+     */
+    static void writeVarInt(final DataOutputStream output, final int value) throws IOException {
+        int zigzag = (value << 1) ^ (value >> 31);
+        while ((zigzag & ~0x7F) != 0) {
+            output.writeByte((zigzag & 0x7F) | 0x80);
+            zigzag >>>= 7;
+        }
+        output.writeByte(zigzag);
+    }
+
+    static int readVarInt(final DataInputStream input) throws IOException {
+        int zigzag = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            final int b = input.read();
+            if (b < 0) {
+                throw new EOFException("The risk report ended in the middle of a value");
+            }
+            zigzag |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return (zigzag >>> 1) ^ -(zigzag & 1);
+            }
+        }
+        throw new IOException("Invalid variable length integer in the risk report");
+    }
+
+}
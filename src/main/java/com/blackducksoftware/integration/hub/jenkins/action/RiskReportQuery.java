@@ -0,0 +1,294 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import org.apache.commons.lang3.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+
+import com.blackducksoftware.integration.hub.report.api.BomComponent;
+
+/**
+ * Selects one page of the components of a risk report, so the report page can load the component table a page at a time instead of all at once. Components
+ * can be filtered by risk, license and policy status, and sorted by any column of the table.
+ */
+public class RiskReportQuery {
+
+    public static final int DEFAULT_PAGE_SIZE = 100;
+
+    public static final int MAXIMUM_PAGE_SIZE = 1000;
+
+    public static final String RISK_HIGH = "high";
+
+    public static final String RISK_MEDIUM = "medium";
+
+    public static final String RISK_LOW = "low";
+
+    public static final String RISK_NONE = "none";
+
+    private final String securityRisk;
+
+    private final String licenseRisk;
+
+    private final String operationalRisk;
+
+    private final String license;
+
+    private final String policyStatus;
+
+    private final String sort;
+
+    private final boolean descending;
+
+    private final int offset;
+
+    private final int limit;
+
+    public RiskReportQuery(final String securityRisk, final String licenseRisk, final String operationalRisk, final String license, final String policyStatus, final String sort,
+            final boolean descending, final int offset, final int limit) {
+        this.securityRisk = StringUtils.trimToNull(securityRisk);
+        this.licenseRisk = StringUtils.trimToNull(licenseRisk);
+        this.operationalRisk = StringUtils.trimToNull(operationalRisk);
+        this.license = StringUtils.trimToNull(license);
+        this.policyStatus = StringUtils.trimToNull(policyStatus);
+        this.sort = StringUtils.trimToNull(sort);
+        this.descending = descending;
+        this.offset = Math.max(0, offset);
+        this.limit = limit <= 0 ? DEFAULT_PAGE_SIZE : Math.min(limit, MAXIMUM_PAGE_SIZE);
+    }
+
+    public static RiskReportQuery fromRequest(final StaplerRequest req) {
+        return new RiskReportQuery(req.getParameter("securityRisk"), req.getParameter("licenseRisk"), req.getParameter("operationalRisk"), req.getParameter("license"),
+                req.getParameter("policyStatus"), req.getParameter("sort"), Boolean.parseBoolean(req.getParameter("descending")), parseInt(req.getParameter("offset"), 0),
+                parseInt(req.getParameter("limit"), DEFAULT_PAGE_SIZE));
+    }
+
+    public Page apply(final List<BomComponent> components) {
+        final List<BomComponent> matches = new ArrayList<>();
+        if (components != null) {
+            for (final BomComponent component : components) {
+                if (matches(component)) {
+                    matches.add(component);
+                }
+            }
+        }
+        final Comparator<BomComponent> comparator = getComparator();
+        if (comparator != null) {
+            // the sort is stable, components that compare equal stay in report order
+            Collections.sort(matches, descending ? Collections.reverseOrder(comparator) : comparator);
+        }
+        final int fromIndex = Math.min(offset, matches.size());
+        final int toIndex = Math.min(fromIndex + limit, matches.size());
+        return new Page(components == null ? 0 : components.size(), matches.size(), fromIndex, new ArrayList<>(matches.subList(fromIndex, toIndex)));
+    }
+
+    private boolean matches(final BomComponent component) {
+        if (securityRisk != null && !securityRisk.equalsIgnoreCase(getSecurityRisk(component))) {
+            return false;
+        }
+        if (licenseRisk != null && !licenseRisk.equalsIgnoreCase(getRisk(component.getLicenseRiskHighCount(), component.getLicenseRiskMediumCount(), component.getLicenseRiskLowCount()))) {
+            return false;
+        }
+        if (operationalRisk != null
+                && !operationalRisk.equalsIgnoreCase(getRisk(component.getOperationalRiskHighCount(), component.getOperationalRiskMediumCount(), component.getOperationalRiskLowCount()))) {
+            return false;
+        }
+        if (license != null && !StringUtils.containsIgnoreCase(component.getLicense(), license)) {
+            return false;
+        }
+        if (policyStatus != null && !policyStatus.equalsIgnoreCase(component.getPolicyStatus())) {
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the highest security risk of the component, a component is only counted at its highest risk like in the risk summary of the report
+     */
+    public static String getSecurityRisk(final BomComponent component) {
+        return getRisk(component.getSecurityRiskHighCount(), component.getSecurityRiskMediumCount(), component.getSecurityRiskLowCount());
+    }
+
+    public static String getRisk(final int highCount, final int mediumCount, final int lowCount) {
+        if (highCount > 0) {
+            return RISK_HIGH;
+        } else if (mediumCount > 0) {
+            return RISK_MEDIUM;
+        } else if (lowCount > 0) {
+            return RISK_LOW;
+        }
+        return RISK_NONE;
+    }
+
+    private Comparator<BomComponent> getComparator() {
+        if ("component".equals(sort)) {
+            return new StringComparator() {
+                @Override
+                protected String getValue(final BomComponent component) {
+                    return component.getComponentName();
+                }
+            };
+        } else if ("version".equals(sort)) {
+            return new StringComparator() {
+                @Override
+                protected String getValue(final BomComponent component) {
+                    return component.getComponentVersion();
+                }
+            };
+        } else if ("license".equals(sort)) {
+            return new StringComparator() {
+                @Override
+                protected String getValue(final BomComponent component) {
+                    return component.getLicense();
+                }
+            };
+        } else if ("policyStatus".equals(sort)) {
+            return new StringComparator() {
+                @Override
+                protected String getValue(final BomComponent component) {
+                    return component.getPolicyStatus();
+                }
+            };
+        } else if ("securityRiskHigh".equals(sort)) {
+            return new RiskComparator() {
+                @Override
+                protected int[] getCounts(final BomComponent component) {
+                    return new int[] { component.getSecurityRiskHighCount() };
+                }
+            };
+        } else if ("securityRiskMedium".equals(sort)) {
+            return new RiskComparator() {
+                @Override
+                protected int[] getCounts(final BomComponent component) {
+                    return new int[] { component.getSecurityRiskMediumCount() };
+                }
+            };
+        } else if ("securityRiskLow".equals(sort)) {
+            return new RiskComparator() {
+                @Override
+                protected int[] getCounts(final BomComponent component) {
+                    return new int[] { component.getSecurityRiskLowCount() };
+                }
+            };
+        } else if ("licenseRisk".equals(sort)) {
+            return new RiskComparator() {
+                @Override
+                protected int[] getCounts(final BomComponent component) {
+                    return new int[] { component.getLicenseRiskHighCount(), component.getLicenseRiskMediumCount(), component.getLicenseRiskLowCount() };
+                }
+            };
+        } else if ("operationalRisk".equals(sort)) {
+            return new RiskComparator() {
+                @Override
+                protected int[] getCounts(final BomComponent component) {
+                    return new int[] { component.getOperationalRiskHighCount(), component.getOperationalRiskMediumCount(), component.getOperationalRiskLowCount() };
+                }
+            };
+        }
+        return null;
+    }
+
+    private static int parseInt(final String value, final int defaultValue) {
+        if (StringUtils.isBlank(value)) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (final NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private abstract static class StringComparator implements Comparator<BomComponent> {
+        protected abstract String getValue(BomComponent component);
+
+        @Override
+        public int compare(final BomComponent first, final BomComponent second) {
+            return StringUtils.compareIgnoreCase(getValue(first), getValue(second), false);
+        }
+    }
+
+    /**
+     * Compares the counts from the highest risk to the lowest.
+     */
+    private abstract static class RiskComparator implements Comparator<BomComponent> {
+        protected abstract int[] getCounts(BomComponent component);
+
+        @Override
+        public int compare(final BomComponent first, final BomComponent second) {
+            final int[] firstCounts = getCounts(first);
+            final int[] secondCounts = getCounts(second);
+            for (int i = 0; i < firstCounts.length; i++) {
+                final int result = Integer.compare(firstCounts[i], secondCounts[i]);
+                if (result != 0) {
+                    return result;
+                }
+            }
+            return 0;
+        }
+    }
+
+    /**
+     * One page of the components that match a query, serialized as the response of the components endpoint.
+     */
+    public static final class Page {
+
+        private final int totalComponents;
+
+        private final int matchingComponents;
+
+        private final int offset;
+
+        private final List<BomComponent> components;
+
+        public Page(final int totalComponents, final int matchingComponents, final int offset, final List<BomComponent> components) {
+            this.totalComponents = totalComponents;
+            this.matchingComponents = matchingComponents;
+            this.offset = offset;
+            this.components = components;
+        }
+
+        public int getTotalComponents() {
+            return totalComponents;
+        }
+
+        public int getMatchingComponents() {
+            return matchingComponents;
+        }
+
+        public int getOffset() {
+            return offset;
+        }
+
+        public List<BomComponent> getComponents() {
+            return components;
+        }
+
+    }
+
+}
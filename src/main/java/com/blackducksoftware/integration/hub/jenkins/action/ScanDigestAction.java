@@ -0,0 +1,82 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import hudson.model.Action;
+
+/**
+ * Remembers the digest of every scan target of a successful scan, so the next build can tell which targets changed. The scope identifies the Hub, project
+ * version, code location name and exclusions the digests were computed for, digests from a different scope are never compared. The action travels with the
+ * scan handle until the Hub has finished the scan.
+ */
+public class ScanDigestAction implements Action, Serializable {
+    private static final long serialVersionUID = 4409172630558310671L;
+
+    private final String scope;
+
+    private final HashMap<String, String> targetDigests;
+
+    private final String versionJson;
+
+    public ScanDigestAction(final String scope, final Map<String, String> targetDigests, final String versionJson) {
+        this.scope = scope;
+        this.targetDigests = new HashMap<>(targetDigests);
+        this.versionJson = versionJson;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    public Map<String, String> getTargetDigests() {
+        return targetDigests;
+    }
+
+    /**
+     * @return the project version the targets were scanned into, as json, or null if the scan was not mapped to a project version
+     */
+    public String getVersionJson() {
+        return versionJson;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return "Temp Action to remember the scan target digests of the last successful scan";
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+}
@@ -0,0 +1,95 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import hudson.EnvVars;
+import hudson.model.AbstractBuild;
+import hudson.model.EnvironmentContributingAction;
+
+/**
+ * Records the scanner heap a scan ran with and whether it ran out of memory, so the automatic scan memory of the next build can learn from it. The memory is
+ * exposed to the build as BLACKDUCK_SCAN_MEMORY.
+ */
+public class ScanMemoryAction implements EnvironmentContributingAction {
+
+    public static final String BLACKDUCK_SCAN_MEMORY = "BLACKDUCK_SCAN_MEMORY";
+
+    private final String scope;
+
+    private final int scanMemory;
+
+    private final boolean automatic;
+
+    private boolean outOfMemory;
+
+    public ScanMemoryAction(final String scope, final int scanMemory, final boolean automatic) {
+        this.scope = scope;
+        this.scanMemory = scanMemory;
+        this.automatic = automatic;
+    }
+
+    public String getScope() {
+        return scope;
+    }
+
+    /**
+     * @return the scan memory in megabytes
+     */
+    public int getScanMemory() {
+        return scanMemory;
+    }
+
+    public boolean isAutomatic() {
+        return automatic;
+    }
+
+    public boolean isOutOfMemory() {
+        return outOfMemory;
+    }
+
+    public void setOutOfMemory(final boolean outOfMemory) {
+        this.outOfMemory = outOfMemory;
+    }
+
+    @Override
+    public String getIconFileName() {
+        return null;
+    }
+
+    @Override
+    public String getDisplayName() {
+        return null;
+    }
+
+    @Override
+    public String getUrlName() {
+        return null;
+    }
+
+    @Override
+    public void buildEnvVars(final AbstractBuild<?, ?> build, final EnvVars env) {
+        env.put(BLACKDUCK_SCAN_MEMORY, String.valueOf(scanMemory));
+    }
+
+}
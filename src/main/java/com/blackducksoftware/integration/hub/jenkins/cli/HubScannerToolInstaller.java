@@ -0,0 +1,162 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.cli;
+
+import java.io.File;
+import java.io.IOException;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
+import com.blackducksoftware.integration.hub.jenkins.remote.GetScannerArchiveName;
+import com.blackducksoftware.integration.hub.jenkins.remote.InstallHubScanner;
+import com.blackducksoftware.integration.hub.service.HubServicesFactory;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.tools.ToolInstallation;
+import hudson.tools.ToolInstaller;
+import hudson.tools.ToolInstallerDescriptor;
+import jenkins.model.Jenkins;
+
+/**
+ * Installs the signature scanner of the Hub version in use on the node the build runs on. Every Hub version gets its own directory under the tools directory
+ * of the node, {root}/tools/blackduck-hub-scanner/{hub version}, which is kept between builds and shared by the builds of every job.
+ * <p>
+ * Agents that start without the scanner are seeded from the Jenkins controller instead of downloading the scanner from the Hub. The archive in the seed
+ * directory of the controller, {seed directory}/{hub version}/{scanner archive name}, is copied to the agent and installed from there. The
+ * {@link ScannerArtifactCache} downloads the archive to the seed directory the first time a Hub version is used.
+ */
+public class HubScannerToolInstaller extends ToolInstaller {
+    public static final String INSTALL_DIRECTORY_NAME = "blackduck-hub-scanner";
+
+    private static final String SEED_DIRECTORY = System.getProperty(HubScannerToolInstaller.class.getName() + ".seedDirectory");
+
+    private final HubJenkinsLogger logger;
+
+    private final HubServicesFactory services;
+
+    private final HubServerConfig hubServerConfig;
+
+    private final String hubVersion;
+
+    private final EnvVars envVars;
+
+    public HubScannerToolInstaller(final HubJenkinsLogger logger, final HubServicesFactory services, final HubServerConfig hubServerConfig, final String hubVersion, final EnvVars envVars) {
+        super(null);
+        this.logger = logger;
+        this.services = services;
+        this.hubServerConfig = hubServerConfig;
+        this.hubVersion = hubVersion;
+        this.envVars = envVars;
+    }
+
+    /**
+     * Makes sure the scanner is installed on the node and returns the directory to give to the scanner library as its tools directory.
+     */
+    @Override
+    public FilePath performInstallation(final ToolInstallation tool, final Node node, final TaskListener log) throws IOException, InterruptedException {
+        final FilePath installDirectory = getInstallDirectory(tool, node);
+        seed(installDirectory);
+        installDirectory.act(new InstallHubScanner(logger, hubServerConfig, installDirectory.getRemote(), hubVersion, envVars));
+        return installDirectory;
+    }
+
+    @Override
+    public ToolInstallerDescriptor<?> getDescriptor() {
+        return new HubScannerToolInstallerDescriptor();
+    }
+
+    public FilePath getInstallDirectory(final ToolInstallation tool, final Node node) {
+        // preferredLocation will return {root}/tools/descriptorId/installationName
+        final FilePath toolsDirectory = preferredLocation(tool, node).getParent().getParent();
+        return toolsDirectory.child(INSTALL_DIRECTORY_NAME).child(getVersionDirectoryName(hubVersion));
+    }
+
+    public String getHubVersion() {
+        return hubVersion;
+    }
+
+    public static String getVersionDirectoryName(final String hubVersion) {
+        return hubVersion.replaceAll("[^A-Za-z0-9._-]", "_");
+    }
+
+    public static File getSeedDirectory() {
+        if (SEED_DIRECTORY != null) {
+            return new File(SEED_DIRECTORY);
+        }
+        return new File(Jenkins.getInstance().getRootDir(), "blackduck-hub/scanner-seed");
+    }
+
+    /**
+     * Copies the scanner archive of the Hub version from the controller to the node, if the node does not have the scanner yet. The archive is downloaded to the
+     * controller first if it is not in the seed directory, and the node downloads the scanner from the Hub itself if that fails.
+     */
+    private void seed(final FilePath installDirectory) throws IOException, InterruptedException {
+        final File versionSeedDirectory = new File(getSeedDirectory(), getVersionDirectoryName(hubVersion));
+        if ((ScannerArtifactCache.DISABLED && !versionSeedDirectory.isDirectory()) || installDirectory.child(InstallHubScanner.MARKER_FILE_NAME).exists()) {
+            return;
+        }
+        final String hubUrl = hubServerConfig.getHubUrl().toString();
+        final String archiveName = installDirectory.act(new GetScannerArchiveName(logger, hubUrl));
+        File seedArchive = new File(versionSeedDirectory, archiveName);
+        if (!ScannerArtifactCache.DISABLED) {
+            try {
+                seedArchive = ScannerArtifactCache.getInstance().getArchive(logger, services.getRestConnection(), hubUrl, hubVersion, archiveName);
+            } catch (final IntegrationException | IOException e) {
+                logger.warn("Could not cache the scanner archive on the Jenkins controller, the node will download it from the Hub : " + e.getMessage());
+                return;
+            }
+        }
+        if (!seedArchive.isFile()) {
+            logger.debug("No scanner archive to seed the node with in " + versionSeedDirectory.getPath());
+            return;
+        }
+        installDirectory.mkdirs();
+        // copy under a name of its own and rename, so a build installing the scanner never sees a partial archive
+        final String partialSuffix = "." + System.nanoTime() + ".part";
+        final FilePath seedArchiveChecksum = new FilePath(InstallHubScanner.getChecksumFile(seedArchive));
+        if (seedArchiveChecksum.exists()) {
+            final FilePath partialChecksum = installDirectory.child(InstallHubScanner.SEED_ARCHIVE_NAME + ".sha256" + partialSuffix);
+            seedArchiveChecksum.copyTo(partialChecksum);
+            partialChecksum.renameTo(installDirectory.child(InstallHubScanner.SEED_ARCHIVE_NAME + ".sha256"));
+        }
+        final FilePath partialArchive = installDirectory.child(InstallHubScanner.SEED_ARCHIVE_NAME + partialSuffix);
+        new FilePath(seedArchive).copyTo(partialArchive);
+        partialArchive.renameTo(installDirectory.child(InstallHubScanner.SEED_ARCHIVE_NAME));
+        logger.info("Copied the scanner archive " + seedArchive.getPath() + " to the node");
+    }
+
+    public static class HubScannerToolInstallerDescriptor extends ToolInstallerDescriptor<HubScannerToolInstaller> {
+
+        @Override
+        public String getDisplayName() {
+            return null;
+        }
+
+    }
+
+}
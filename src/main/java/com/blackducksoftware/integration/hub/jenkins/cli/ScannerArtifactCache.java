@@ -0,0 +1,218 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.cli;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import java.util.zip.ZipFile;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.remote.InstallHubScanner;
+import com.blackducksoftware.integration.hub.request.Request;
+import com.blackducksoftware.integration.hub.request.Response;
+import com.blackducksoftware.integration.hub.rest.RestConnection;
+import com.blackducksoftware.integration.log.IntLogger;
+
+/**
+ * Controller wide cache of the signature scanner archives. The archive of a Hub version is downloaded from the Hub once, stored in the seed directory of the
+ * {@link HubScannerToolInstaller} with its SHA-256 checksum, and copied to every agent that does not have the scanner yet instead of each agent downloading it
+ * from the Hub. Only the most recently used Hub versions are kept.
+ */
+public class ScannerArtifactCache {
+    private static final Logger LOGGER = Logger.getLogger(ScannerArtifactCache.class.getName());
+
+    /**
+     * Set to true to have every agent download the scanner from the Hub itself.
+     */
+    public static final boolean DISABLED = Boolean.getBoolean(ScannerArtifactCache.class.getName() + ".disabled");
+
+    /**
+     * The number of Hub versions to keep the archives of.
+     */
+    public static final int MAX_VERSIONS = Integer.getInteger(ScannerArtifactCache.class.getName() + ".maxVersions", 3);
+
+    private final static ScannerArtifactCache _instance = new ScannerArtifactCache();
+
+    /**
+     * One lock per Hub version directory, held while its archives are downloaded, verified or deleted.
+     */
+    private final ConcurrentMap<String, Object> versionLocks = new ConcurrentHashMap<>();
+
+    private final Set<String> verifiedArchives = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private ScannerArtifactCache() {
+    }
+
+    public static ScannerArtifactCache getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Returns the cached archive of the Hub version, downloading it from the Hub first if the cache does not have a valid copy. Builds asking for the same
+     * archive at the same time wait for a single download.
+     */
+    public File getArchive(final IntLogger logger, final RestConnection restConnection, final String hubUrl, final String hubVersion, final String archiveName) throws IOException, IntegrationException {
+        final File versionDirectory = new File(HubScannerToolInstaller.getSeedDirectory(), HubScannerToolInstaller.getVersionDirectoryName(hubVersion));
+        final File archive = new File(versionDirectory, archiveName);
+
+        synchronized (getVersionLock(versionDirectory)) {
+            if (!isValid(logger, archive)) {
+                download(logger, restConnection, hubUrl, archive);
+            }
+            versionDirectory.setLastModified(System.currentTimeMillis());
+        }
+        evict(versionDirectory);
+        return archive;
+    }
+
+    private Object getVersionLock(final File versionDirectory) {
+        final String key = versionDirectory.getPath();
+        Object versionLock = versionLocks.get(key);
+        if (versionLock == null) {
+            final Object newLock = new Object();
+            versionLock = versionLocks.putIfAbsent(key, newLock);
+            if (versionLock == null) {
+                versionLock = newLock;
+            }
+        }
+        return versionLock;
+    }
+
+    private boolean isValid(final IntLogger logger, final File archive) throws IOException {
+        if (!archive.isFile()) {
+            return false;
+        }
+        final File checksumFile = InstallHubScanner.getChecksumFile(archive);
+        if (!checksumFile.isFile()) {
+            // provided by an administrator, trust it and record its checksum for the agents
+            FileUtils.writeStringToFile(checksumFile, InstallHubScanner.sha256(archive), StandardCharsets.UTF_8);
+            verifiedArchives.add(archive.getPath());
+            return true;
+        }
+        if (verifiedArchives.contains(archive.getPath())) {
+            return true;
+        }
+        final String expected = StringUtils.trim(FileUtils.readFileToString(checksumFile, StandardCharsets.UTF_8));
+        if (!InstallHubScanner.sha256(archive).equals(expected)) {
+            logger.warn("The cached scanner archive " + archive.getPath() + " does not match its checksum, it will be downloaded again.");
+            FileUtils.deleteQuietly(archive);
+            FileUtils.deleteQuietly(checksumFile);
+            return false;
+        }
+        verifiedArchives.add(archive.getPath());
+        return true;
+    }
+
+    private void download(final IntLogger logger, final RestConnection restConnection, final String hubUrl, final File archive) throws IOException, IntegrationException {
+        final String downloadUrl = StringUtils.removeEnd(hubUrl, "/") + "/download/" + archive.getName();
+        logger.alwaysLog("Downloading the scanner archive " + downloadUrl + " to the Jenkins controller");
+        final File versionDirectory = archive.getParentFile();
+        if (!versionDirectory.isDirectory() && !versionDirectory.mkdirs()) {
+            throw new IOException("Could not create the scanner cache directory " + versionDirectory.getPath());
+        }
+
+        final File partialArchive = File.createTempFile(archive.getName(), ".part", versionDirectory);
+        try {
+            final Request request = new Request.Builder(downloadUrl).build();
+            try (Response response = restConnection.executeRequest(request); InputStream content = response.getContent(); OutputStream out = Files.newOutputStream(partialArchive.toPath())) {
+                final long copied = IOUtils.copyLarge(content, out);
+                final Long contentLength = response.getContentLength();
+                if (contentLength != null && contentLength >= 0 && contentLength != copied) {
+                    throw new IOException(String.format("The scanner archive download was incomplete, %d of %d bytes", copied, contentLength));
+                }
+            }
+            // make sure the Hub sent a complete zip before the agents get it
+            try (ZipFile zipFile = new ZipFile(partialArchive)) {
+                logger.debug(String.format("Downloaded the scanner archive with %d entries", zipFile.size()));
+            }
+            final String checksum = InstallHubScanner.sha256(partialArchive);
+            Files.move(partialArchive.toPath(), archive.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            FileUtils.writeStringToFile(InstallHubScanner.getChecksumFile(archive), checksum, StandardCharsets.UTF_8);
+            verifiedArchives.add(archive.getPath());
+        } finally {
+            FileUtils.deleteQuietly(partialArchive);
+        }
+    }
+
+    /**
+     * Deletes the archives of the least recently used Hub versions, never the one in use. A version is deleted under its lock, so a download or verification
+     * of that version in progress finishes first, and a version used again in the meantime is kept.
+     */
+    private void evict(final File currentVersionDirectory) {
+        final File[] versionDirectories = currentVersionDirectory.getParentFile().listFiles();
+        if (versionDirectories == null || versionDirectories.length <= MAX_VERSIONS) {
+            return;
+        }
+        final Map<File, Long> lastUsed = new HashMap<>();
+        for (final File versionDirectory : versionDirectories) {
+            lastUsed.put(versionDirectory, versionDirectory.lastModified());
+        }
+        final List<File> sortedDirectories = new ArrayList<>(Arrays.asList(versionDirectories));
+        Collections.sort(sortedDirectories, new Comparator<File>() {
+            @Override
+            public int compare(final File first, final File second) {
+                return Long.compare(lastUsed.get(second), lastUsed.get(first));
+            }
+        });
+        for (final File versionDirectory : sortedDirectories.subList(Math.max(MAX_VERSIONS, 1), sortedDirectories.size())) {
+            if (!versionDirectory.isDirectory() || versionDirectory.equals(currentVersionDirectory)) {
+                continue;
+            }
+            synchronized (getVersionLock(versionDirectory)) {
+                if (versionDirectory.lastModified() != lastUsed.get(versionDirectory)) {
+                    continue;
+                }
+                LOGGER.log(Level.INFO, "Evicting the cached scanner archives in " + versionDirectory.getPath());
+                FileUtils.deleteQuietly(versionDirectory);
+                for (final String cachedArchive : new ArrayList<>(verifiedArchives)) {
+                    if (cachedArchive.startsWith(versionDirectory.getPath() + File.separator)) {
+                        verifiedArchives.remove(cachedArchive);
+                    }
+                }
+            }
+        }
+    }
+
+}
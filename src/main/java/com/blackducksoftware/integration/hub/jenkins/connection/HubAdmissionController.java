@@ -0,0 +1,408 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+
+/**
+ * Limits how many scans this controller uploads to a Hub server, and how many wait for a BOM on it, at the same time. When a wave of builds starts, the
+ * scans over the limit are queued instead of all hitting the Hub at once and being turned away. The queue is fair between jobs: when a slot frees up, the
+ * jobs waiting take turns, so one job starting many builds does not hold back every other job. A limit of zero or less lets every scan through.
+ */
+public class HubAdmissionController {
+
+    public static final int MAXIMUM_UPLOADS = Integer.getInteger(HubAdmissionController.class.getName() + ".maximumUploads", 10);
+
+    public static final int MAXIMUM_BOM_WAITS = Integer.getInteger(HubAdmissionController.class.getName() + ".maximumBomWaits", 25);
+
+    /**
+     * What a scan is admitted to.
+     */
+    public enum Gate {
+        UPLOAD("Uploads"),
+        BOM_WAIT("BOM waits");
+
+        private final String displayName;
+
+        private Gate(final String displayName) {
+            this.displayName = displayName;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        private int getMaximum() {
+            return this == UPLOAD ? MAXIMUM_UPLOADS : MAXIMUM_BOM_WAITS;
+        }
+    }
+
+    private final static HubAdmissionController _instance = new HubAdmissionController();
+
+    private final Map<String, GateQueue> queues = new LinkedHashMap<>();
+
+    HubAdmissionController() {
+    }
+
+    public static HubAdmissionController getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Asks for a slot on the server, the ticket is admitted right away if one is free and queued otherwise. The ticket has to be released once the scan is
+     * done with the slot, or gives up waiting for it.
+     */
+    public Ticket request(final HubServerInfo server, final Gate gate, final String jobName) {
+        return getQueue(server, gate, gate.getMaximum()).request(jobName);
+    }
+
+    Ticket request(final HubServerInfo server, final Gate gate, final String jobName, final int maximum) {
+        return getQueue(server, gate, maximum).request(jobName);
+    }
+
+    /**
+     * @return the state of every queue, for the status page
+     */
+    public List<QueueStatus> getQueueStatuses() {
+        final List<GateQueue> gateQueues;
+        synchronized (queues) {
+            gateQueues = new ArrayList<>(queues.values());
+        }
+        final List<QueueStatus> statuses = new ArrayList<>();
+        for (final GateQueue gateQueue : gateQueues) {
+            statuses.add(gateQueue.getStatus());
+        }
+        return statuses;
+    }
+
+    private GateQueue getQueue(final HubServerInfo server, final Gate gate, final int maximum) {
+        final String serverKey = HubServerPool.getKey(server);
+        synchronized (queues) {
+            GateQueue gateQueue = queues.get(gate + " " + serverKey);
+            if (gateQueue == null) {
+                gateQueue = new GateQueue(serverKey, gate, maximum);
+                queues.put(gate + " " + serverKey, gateQueue);
+            }
+            return gateQueue;
+        }
+    }
+
+    /**
+     * The slots of one gate of one server, and the tickets waiting for them, by job.
+     */
+    private static final class GateQueue {
+
+        private final String serverUrl;
+
+        private final Gate gate;
+
+        private final int maximum;
+
+        private final Map<String, ArrayDeque<Ticket>> waiting = new LinkedHashMap<>();
+
+        private int queued;
+
+        private int inFlight;
+
+        private long admitted;
+
+        private long totalWaitMillis;
+
+        private long longestWaitMillis;
+
+        private GateQueue(final String serverUrl, final Gate gate, final int maximum) {
+            this.serverUrl = serverUrl;
+            this.gate = gate;
+            this.maximum = maximum;
+        }
+
+        private synchronized Ticket request(final String jobName) {
+            final Ticket ticket = new Ticket(this, queued);
+            if (maximum <= 0 || (inFlight < maximum && queued == 0)) {
+                admit(ticket);
+            } else {
+                ArrayDeque<Ticket> jobTickets = waiting.get(jobName);
+                if (jobTickets == null) {
+                    jobTickets = new ArrayDeque<>();
+                    waiting.put(jobName, jobTickets);
+                }
+                jobTickets.add(ticket);
+                queued++;
+            }
+            return ticket;
+        }
+
+        private void release(final Ticket ticket) {
+            final List<Ticket> admittedTickets = new ArrayList<>();
+            synchronized (this) {
+                if (ticket.admitted) {
+                    inFlight--;
+                } else {
+                    withdraw(ticket);
+                }
+                while (queued > 0 && (maximum <= 0 || inFlight < maximum)) {
+                    admittedTickets.add(admitNextJob());
+                }
+            }
+            for (final Ticket admittedTicket : admittedTickets) {
+                admittedTicket.runCallback();
+            }
+        }
+
+        /**
+         * Admits the oldest ticket of the job whose turn it is, and sends the job to the back of the line.
+         */
+        private Ticket admitNextJob() {
+            final Iterator<Map.Entry<String, ArrayDeque<Ticket>>> jobs = waiting.entrySet().iterator();
+            final Map.Entry<String, ArrayDeque<Ticket>> job = jobs.next();
+            final Ticket ticket = job.getValue().poll();
+            jobs.remove();
+            if (!job.getValue().isEmpty()) {
+                waiting.put(job.getKey(), job.getValue());
+            }
+            queued--;
+            admit(ticket);
+            return ticket;
+        }
+
+        private void withdraw(final Ticket ticket) {
+            final Iterator<ArrayDeque<Ticket>> jobs = waiting.values().iterator();
+            while (jobs.hasNext()) {
+                final ArrayDeque<Ticket> jobTickets = jobs.next();
+                if (jobTickets.remove(ticket)) {
+                    queued--;
+                    if (jobTickets.isEmpty()) {
+                        jobs.remove();
+                    }
+                    return;
+                }
+            }
+        }
+
+        private void admit(final Ticket ticket) {
+            inFlight++;
+            ticket.admitted = true;
+            ticket.waitedMillis = System.currentTimeMillis() - ticket.requested;
+            admitted++;
+            totalWaitMillis += ticket.waitedMillis;
+            longestWaitMillis = Math.max(longestWaitMillis, ticket.waitedMillis);
+            notifyAll();
+        }
+
+        private synchronized QueueStatus getStatus() {
+            return new QueueStatus(serverUrl, gate, maximum, inFlight, queued, admitted, admitted == 0 ? 0L : totalWaitMillis / admitted, longestWaitMillis);
+        }
+
+    }
+
+    /**
+     * A scan's place in a queue, and then its slot.
+     */
+    public static final class Ticket {
+
+        private final GateQueue gateQueue;
+
+        private final int queuedAhead;
+
+        private final long requested = System.currentTimeMillis();
+
+        private boolean admitted;
+
+        private boolean released;
+
+        private long waitedMillis;
+
+        private Runnable callback;
+
+        private Ticket(final GateQueue gateQueue, final int queuedAhead) {
+            this.gateQueue = gateQueue;
+            this.queuedAhead = queuedAhead;
+        }
+
+        public boolean isAdmitted() {
+            synchronized (gateQueue) {
+                return admitted;
+            }
+        }
+
+        /**
+         * @return how many scans were queued for the server when the ticket was requested
+         */
+        public int getQueuedAhead() {
+            return queuedAhead;
+        }
+
+        /**
+         * @return how long the ticket waited for its slot, in milliseconds
+         */
+        public long getWaitedMillis() {
+            synchronized (gateQueue) {
+                return waitedMillis;
+            }
+        }
+
+        public String getServerUrl() {
+            return gateQueue.serverUrl;
+        }
+
+        /**
+         * @return the most scans the gate lets through at once, zero or less if there is no limit
+         */
+        public int getMaximum() {
+            return gateQueue.maximum;
+        }
+
+        /**
+         * Blocks until the ticket is admitted. An interrupted wait gives up the place in the queue, or the slot if the ticket was admitted while the
+         * interrupt arrived.
+         */
+        public void await() throws InterruptedException {
+            try {
+                synchronized (gateQueue) {
+                    while (!admitted) {
+                        gateQueue.wait();
+                    }
+                }
+            } catch (final InterruptedException e) {
+                release();
+                throw e;
+            }
+        }
+
+        /**
+         * Runs the callback once the ticket is admitted, right away if it already is. The callback runs on the thread that freed the slot, so it should only
+         * hand the work over.
+         */
+        public void whenAdmitted(final Runnable callback) {
+            synchronized (gateQueue) {
+                this.callback = callback;
+            }
+            runCallback();
+        }
+
+        /**
+         * Frees the slot, or gives up the place in the queue. Releasing a ticket more than once has no effect.
+         */
+        public void release() {
+            synchronized (gateQueue) {
+                if (released) {
+                    return;
+                }
+                released = true;
+                callback = null;
+            }
+            gateQueue.release(this);
+        }
+
+        private void runCallback() {
+            final Runnable admittedCallback;
+            synchronized (gateQueue) {
+                if (!admitted || released || callback == null) {
+                    return;
+                }
+                admittedCallback = callback;
+                callback = null;
+            }
+            admittedCallback.run();
+        }
+
+    }
+
+    /**
+     * The state of one queue when it was asked for.
+     */
+    public static final class QueueStatus {
+
+        private final String serverUrl;
+
+        private final Gate gate;
+
+        private final int maximum;
+
+        private final int inFlight;
+
+        private final int queued;
+
+        private final long admitted;
+
+        private final long averageWaitMillis;
+
+        private final long longestWaitMillis;
+
+        public QueueStatus(final String serverUrl, final Gate gate, final int maximum, final int inFlight, final int queued, final long admitted, final long averageWaitMillis, final long longestWaitMillis) {
+            this.serverUrl = serverUrl;
+            this.gate = gate;
+            this.maximum = maximum;
+            this.inFlight = inFlight;
+            this.queued = queued;
+            this.admitted = admitted;
+            this.averageWaitMillis = averageWaitMillis;
+            this.longestWaitMillis = longestWaitMillis;
+        }
+
+        public String getServerUrl() {
+            return serverUrl;
+        }
+
+        public Gate getGate() {
+            return gate;
+        }
+
+        /**
+         * @return the most scans let through at once, zero or less if there is no limit
+         */
+        public int getMaximum() {
+            return maximum;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        public int getQueued() {
+            return queued;
+        }
+
+        public long getAdmitted() {
+            return admitted;
+        }
+
+        public long getAverageWaitMillis() {
+            return averageWaitMillis;
+        }
+
+        public long getLongestWaitMillis() {
+            return longestWaitMillis;
+        }
+
+    }
+
+}
@@ -0,0 +1,335 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.exceptions.HubUnavailableException;
+import com.blackducksoftware.integration.hub.rest.exception.IntegrationRestException;
+
+/**
+ * Guards the read requests to each Hub server. A request that fails because the Hub is down or overloaded is retried with a growing, jittered delay, as long
+ * as the server's retry budget lasts. Every success adds a little to the budget, so retries stay a small share of the requests. After several failures in a
+ * row the circuit of the server opens, and requests fail right away instead of each waiting for the connection timeout. Once the circuit has been open for a
+ * while, a single request is let through to probe the server, and closes the circuit again if the Hub answers.
+ * <p>
+ * Only requests that can be repeated safely, like GETs, should go through the breaker. An answer from the Hub, even an error like a missing project, shows
+ * the Hub is up.
+ */
+public class HubCircuitBreaker {
+
+    public static final int FAILURE_THRESHOLD = Integer.getInteger(HubCircuitBreaker.class.getName() + ".failureThreshold", 5);
+
+    public static final long OPEN_TIME = TimeUnit.SECONDS.toMillis(Long.getLong(HubCircuitBreaker.class.getName() + ".openSeconds", 30L));
+
+    public static final int MAXIMUM_ATTEMPTS = Integer.getInteger(HubCircuitBreaker.class.getName() + ".maximumAttempts", 3);
+
+    public static final long RETRY_DELAY = TimeUnit.SECONDS.toMillis(Long.getLong(HubCircuitBreaker.class.getName() + ".retryDelaySeconds", 1L));
+
+    /**
+     * The most retries a server can have saved up, and how much each successful request adds.
+     */
+    private static final double MAXIMUM_RETRY_BUDGET = 10;
+
+    private static final double RETRY_BUDGET_PER_SUCCESS = 0.1;
+
+    public enum State {
+        CLOSED,
+        OPEN,
+        HALF_OPEN
+    }
+
+    /**
+     * A request to the Hub that can be repeated.
+     */
+    public interface HubRequest<T> {
+        T execute() throws IntegrationException;
+    }
+
+    private final static HubCircuitBreaker _instance = new HubCircuitBreaker(FAILURE_THRESHOLD, OPEN_TIME, MAXIMUM_ATTEMPTS, RETRY_DELAY);
+
+    private final Map<String, Circuit> circuits = new LinkedHashMap<>();
+
+    private final int failureThreshold;
+
+    private final long openTime;
+
+    private final int maximumAttempts;
+
+    private final long retryDelay;
+
+    HubCircuitBreaker(final int failureThreshold, final long openTime, final int maximumAttempts, final long retryDelay) {
+        this.failureThreshold = failureThreshold;
+        this.openTime = openTime;
+        this.maximumAttempts = maximumAttempts;
+        this.retryDelay = retryDelay;
+    }
+
+    public static HubCircuitBreaker getInstance() {
+        return _instance;
+    }
+
+    public <T> T execute(final HubServerInfo serverInfo, final HubRequest<T> request) throws IntegrationException {
+        return execute(serverInfo.getServerUrl(), request);
+    }
+
+    /**
+     * Sends the request through the circuit of the server, retrying it while the Hub is unavailable and the retry budget allows.
+     * @throws HubUnavailableException
+     *             if the circuit is open
+     */
+    public <T> T execute(final String serverUrl, final HubRequest<T> request) throws IntegrationException {
+        return execute(serverUrl, request, maximumAttempts);
+    }
+
+    /**
+     * Sends the request through the circuit of the server without ever repeating it, for long running work made of many requests, such as generating a
+     * report, where repeating the whole of it would multiply the load on a Hub that is already struggling.
+     * @throws HubUnavailableException
+     *             if the circuit is open
+     */
+    public <T> T executeOnce(final HubServerInfo serverInfo, final HubRequest<T> request) throws IntegrationException {
+        return execute(serverInfo.getServerUrl(), request, 1);
+    }
+
+    private <T> T execute(final String serverUrl, final HubRequest<T> request, final int attempts) throws IntegrationException {
+        final Circuit circuit = getCircuit(serverUrl);
+        long delay = retryDelay;
+        for (int attempt = 1;; attempt++) {
+            circuit.beforeRequest();
+            try {
+                final T response = request.execute();
+                circuit.recordSuccess();
+                return response;
+            } catch (final IntegrationException e) {
+                if (!isUnavailable(e)) {
+                    circuit.recordSuccess();
+                    throw e;
+                }
+                circuit.recordFailure();
+                if (attempt >= attempts || !circuit.takeRetry()) {
+                    throw e;
+                }
+            } catch (final RuntimeException e) {
+                // not a sign of an unavailable Hub, but a probe must not stay in flight
+                circuit.recordSuccess();
+                throw e;
+            }
+            try {
+                Thread.sleep(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IntegrationException("Interrupted while waiting to retry a request to the Hub at " + serverUrl, e);
+            }
+            delay *= 2;
+        }
+    }
+
+    /**
+     * @return the state of every circuit, for the status page
+     */
+    public List<CircuitStatus> getCircuitStatuses() {
+        final List<Circuit> currentCircuits;
+        synchronized (circuits) {
+            currentCircuits = new ArrayList<>(circuits.values());
+        }
+        final List<CircuitStatus> statuses = new ArrayList<>();
+        for (final Circuit circuit : currentCircuits) {
+            statuses.add(circuit.getStatus());
+        }
+        return statuses;
+    }
+
+    /**
+     * @return true if the request failed because the Hub could not be reached or could not answer, so it may work when repeated
+     */
+    static boolean isUnavailable(final IntegrationException e) {
+        if (e instanceof HubUnavailableException) {
+            return false;
+        }
+        if (e instanceof IntegrationRestException) {
+            final int status = ((IntegrationRestException) e).getHttpStatusCode();
+            return status >= 500 || status == 408 || status == 429;
+        }
+        for (Throwable cause = e.getCause(); cause != null; cause = cause.getCause()) {
+            if (cause instanceof IOException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Circuit getCircuit(final String serverUrl) {
+        final String key = StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/");
+        synchronized (circuits) {
+            Circuit circuit = circuits.get(key);
+            if (circuit == null) {
+                circuit = new Circuit(key);
+                circuits.put(key, circuit);
+            }
+            return circuit;
+        }
+    }
+
+    private final class Circuit {
+
+        private final String serverUrl;
+
+        private State state = State.CLOSED;
+
+        private int consecutiveFailures;
+
+        private long openedAt;
+
+        private boolean probing;
+
+        private double retryBudget = MAXIMUM_RETRY_BUDGET;
+
+        private long retries;
+
+        private long rejected;
+
+        private Circuit(final String serverUrl) {
+            this.serverUrl = serverUrl;
+        }
+
+        private synchronized void beforeRequest() throws HubUnavailableException {
+            if (state == State.OPEN && System.currentTimeMillis() - openedAt >= openTime) {
+                state = State.HALF_OPEN;
+            }
+            if (state == State.HALF_OPEN && !probing) {
+                // this request probes whether the Hub is back
+                probing = true;
+                return;
+            }
+            if (state != State.CLOSED) {
+                rejected++;
+                throw new HubUnavailableException(String.format("The Hub at %s failed %d requests in a row, no requests are sent to it for %d seconds after the last failure.", serverUrl,
+                        consecutiveFailures, TimeUnit.MILLISECONDS.toSeconds(openTime)));
+            }
+        }
+
+        private synchronized void recordSuccess() {
+            state = State.CLOSED;
+            probing = false;
+            consecutiveFailures = 0;
+            retryBudget = Math.min(MAXIMUM_RETRY_BUDGET, retryBudget + RETRY_BUDGET_PER_SUCCESS);
+        }
+
+        private synchronized void recordFailure() {
+            consecutiveFailures++;
+            if (state == State.HALF_OPEN || consecutiveFailures >= failureThreshold) {
+                state = State.OPEN;
+                openedAt = System.currentTimeMillis();
+            }
+            probing = false;
+        }
+
+        /**
+         * @return true if the request may be retried, which spends some of the retry budget
+         */
+        private synchronized boolean takeRetry() {
+            if (state != State.CLOSED || retryBudget < 1) {
+                return false;
+            }
+            retryBudget--;
+            retries++;
+            return true;
+        }
+
+        private synchronized CircuitStatus getStatus() {
+            return new CircuitStatus(serverUrl, state, consecutiveFailures, (int) retryBudget, retries, rejected);
+        }
+
+    }
+
+    /**
+     * The state of the circuit of one server when it was asked for.
+     */
+    public static final class CircuitStatus {
+
+        private final String serverUrl;
+
+        private final State state;
+
+        private final int consecutiveFailures;
+
+        private final int retryBudget;
+
+        private final long retries;
+
+        private final long rejected;
+
+        public CircuitStatus(final String serverUrl, final State state, final int consecutiveFailures, final int retryBudget, final long retries, final long rejected) {
+            this.serverUrl = serverUrl;
+            this.state = state;
+            this.consecutiveFailures = consecutiveFailures;
+            this.retryBudget = retryBudget;
+            this.retries = retries;
+            this.rejected = rejected;
+        }
+
+        public String getServerUrl() {
+            return serverUrl;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public int getConsecutiveFailures() {
+            return consecutiveFailures;
+        }
+
+        /**
+         * @return how many retries the server has left
+         */
+        public int getRetryBudget() {
+            return retryBudget;
+        }
+
+        public long getRetries() {
+            return retries;
+        }
+
+        /**
+         * @return the requests failed right away because the circuit was open
+         */
+        public long getRejected() {
+            return rejected;
+        }
+
+    }
+
+}
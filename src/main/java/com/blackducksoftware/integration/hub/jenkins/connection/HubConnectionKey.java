@@ -0,0 +1,154 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.proxy.ProxyInfo;
+
+/**
+ * Identifies a pooled Hub connection. Two builds share a connection only if they talk to the same Hub, as the same user, through the same proxy and with the same certificate trust.
+ */
+public class HubConnectionKey {
+
+    private final String serverUrl;
+
+    private final String credentialsKey;
+
+    private final String proxyHost;
+
+    private final int proxyPort;
+
+    private final String proxyUsername;
+
+    private final boolean trustSSLCertificates;
+
+    private final int timeout;
+
+    public HubConnectionKey(final String serverUrl, final String credentialsKey, final String proxyHost, final int proxyPort, final String proxyUsername, final boolean trustSSLCertificates, final int timeout) {
+        this.serverUrl = StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/");
+        this.credentialsKey = StringUtils.trimToEmpty(credentialsKey);
+        this.proxyHost = StringUtils.trimToEmpty(proxyHost);
+        this.proxyPort = proxyPort;
+        this.proxyUsername = StringUtils.trimToEmpty(proxyUsername);
+        this.trustSSLCertificates = trustSSLCertificates;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Builds the key for the provided configuration. The credentials ID is preferred, when it is not known the Hub username is used instead.
+     */
+    public static HubConnectionKey fromConfig(final String credentialsId, final HubServerConfig hubServerConfig) {
+        String credentialsKey = credentialsId;
+        if (StringUtils.isBlank(credentialsKey) && hubServerConfig.getGlobalCredentials() != null) {
+            credentialsKey = "user:" + hubServerConfig.getGlobalCredentials().getUsername();
+        }
+        String proxyHost = null;
+        int proxyPort = 0;
+        String proxyUsername = null;
+        final ProxyInfo proxyInfo = hubServerConfig.getProxyInfo();
+        if (proxyInfo != null && proxyInfo != ProxyInfo.NO_PROXY_INFO) {
+            proxyHost = proxyInfo.getHost();
+            proxyPort = proxyInfo.getPort();
+            proxyUsername = proxyInfo.getUsername();
+        }
+        return new HubConnectionKey(hubServerConfig.getHubUrl().toString(), credentialsKey, proxyHost, proxyPort, proxyUsername, hubServerConfig.isAlwaysTrustServerCertificate(), hubServerConfig.getTimeout());
+    }
+
+    public String getServerUrl() {
+        return serverUrl;
+    }
+
+    public String getCredentialsKey() {
+        return credentialsKey;
+    }
+
+    public String getProxyHost() {
+        return proxyHost;
+    }
+
+    public int getProxyPort() {
+        return proxyPort;
+    }
+
+    public String getProxyUsername() {
+        return proxyUsername;
+    }
+
+    public boolean isTrustSSLCertificates() {
+        return trustSSLCertificates;
+    }
+
+    public int getTimeout() {
+        return timeout;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + serverUrl.hashCode();
+        result = prime * result + credentialsKey.hashCode();
+        result = prime * result + proxyHost.hashCode();
+        result = prime * result + proxyPort;
+        result = prime * result + proxyUsername.hashCode();
+        result = prime * result + (trustSSLCertificates ? 1231 : 1237);
+        result = prime * result + timeout;
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof HubConnectionKey)) {
+            return false;
+        }
+        final HubConnectionKey other = (HubConnectionKey) obj;
+        return serverUrl.equals(other.serverUrl) && credentialsKey.equals(other.credentialsKey) && proxyHost.equals(other.proxyHost) && proxyPort == other.proxyPort && proxyUsername.equals(other.proxyUsername)
+                && trustSSLCertificates == other.trustSSLCertificates && timeout == other.timeout;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("HubConnectionKey [serverUrl=");
+        builder.append(serverUrl);
+        builder.append(", credentialsKey=");
+        builder.append(credentialsKey);
+        builder.append(", proxyHost=");
+        builder.append(proxyHost);
+        builder.append(", proxyPort=");
+        builder.append(proxyPort);
+        builder.append(", trustSSLCertificates=");
+        builder.append(trustSSLCertificates);
+        builder.append(", timeout=");
+        builder.append(timeout);
+        builder.append("]");
+        return builder.toString();
+    }
+
+}
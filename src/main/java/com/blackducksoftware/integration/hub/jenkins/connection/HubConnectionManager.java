@@ -0,0 +1,584 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.http.impl.client.CloseableHttpClient;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.jenkins.exceptions.HubUnavailableException;
+import com.blackducksoftware.integration.hub.rest.RestConnection;
+import com.blackducksoftware.integration.hub.service.HubServicesFactory;
+import com.blackducksoftware.integration.log.IntLogger;
+import com.blackducksoftware.integration.log.LogLevel;
+
+import hudson.Extension;
+import hudson.model.PeriodicWork;
+
+/**
+ * Controller wide cache of authenticated Hub connections. Builds, failure conditions and form validation that use the same Hub, credentials, proxy and certificate trust share one logged in {@link RestConnection} instead of paying
+ * for a new TLS handshake and login every time.
+ *
+ * Every services factory handed out is a lease on the connection and must be closed once the caller is done with it. A connection that is replaced, evicted or invalidated is closed when its last lease is closed.
+ */
+public class HubConnectionManager {
+
+    private static final Logger LOGGER = Logger.getLogger(HubConnectionManager.class.getName());
+
+    /**
+     * Connections that have not been handed out for this long are dropped from the cache.
+     */
+    public static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(Long.getLong(HubConnectionManager.class.getName() + ".idleTimeoutMinutes", 30));
+
+    /**
+     * Connections are replaced by a newly logged in connection once they are this old, so the Hub session never expires while it is being used.
+     */
+    public static final long SESSION_LIFETIME = TimeUnit.MINUTES.toMillis(Long.getLong(HubConnectionManager.class.getName() + ".sessionLifetimeMinutes", 20));
+
+    /**
+     * The number of concurrent http connections each pooled client may open to the Hub.
+     */
+    public static final int MAX_CONNECTIONS_PER_HUB = Integer.getInteger(HubConnectionManager.class.getName() + ".maxConnectionsPerHub", 50);
+
+    /**
+     * The logger of the caller holding a lease on this thread. The pooled connections log through it, so the connection and login messages reach the build log.
+     */
+    private static final ThreadLocal<IntLogger> CALLER_LOGGER = new ThreadLocal<>();
+
+    private final static HubConnectionManager _instance = new HubConnectionManager(IDLE_TIMEOUT, SESSION_LIFETIME, new Connector());
+
+    private final ConcurrentMap<HubConnectionKey, PooledConnection> connections = new ConcurrentHashMap<>();
+
+    private final long idleTimeout;
+
+    private final long sessionLifetime;
+
+    private final Connector connector;
+
+    HubConnectionManager(final long idleTimeout, final long sessionLifetime, final Connector connector) {
+        this.idleTimeout = idleTimeout;
+        this.sessionLifetime = sessionLifetime;
+        this.connector = connector;
+    }
+
+    public static HubConnectionManager getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Returns a new services factory backed by the pooled connection. The factory itself is cheap and holds per caller state, so it is never shared. While the factory is open, the connection logs to the provided logger on this
+     * thread.
+     */
+    public PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final String credentialsId, final HubServerConfig hubServerConfig) throws IntegrationException {
+        final HubConnectionKey key = HubConnectionKey.fromConfig(credentialsId, hubServerConfig);
+        final String passwordFingerprint = hubServerConfig.getGlobalCredentials() == null ? "" : StringUtils.trimToEmpty(hubServerConfig.getGlobalCredentials().getEncryptedPassword());
+
+        PooledConnection pooledConnection = connections.get(key);
+        if (pooledConnection == null || !pooledConnection.getPasswordFingerprint().equals(passwordFingerprint)) {
+            // new configuration or the password behind the credentials changed
+            final PooledConnection newConnection = new PooledConnection(hubServerConfig, passwordFingerprint);
+            if (pooledConnection == null) {
+                pooledConnection = connections.putIfAbsent(key, newConnection);
+                if (pooledConnection == null) {
+                    pooledConnection = newConnection;
+                }
+            } else {
+                if (connections.replace(key, pooledConnection, newConnection)) {
+                    pooledConnection.retire();
+                }
+                pooledConnection = connections.get(key);
+                if (pooledConnection == null) {
+                    pooledConnection = newConnection;
+                }
+            }
+        }
+        final PooledConnection connection = pooledConnection;
+        final IntLogger previousLogger = CALLER_LOGGER.get();
+        if (logger != null) {
+            CALLER_LOGGER.set(logger);
+        }
+        try {
+            // logging in can be repeated, and fails fast while the Hub is known to be down
+            final Session session = HubCircuitBreaker.getInstance().execute(hubServerConfig.getHubUrl().toString(), new HubCircuitBreaker.HubRequest<Session>() {
+                @Override
+                public Session execute() throws IntegrationException {
+                    return connection.acquire();
+                }
+            });
+            return new PooledHubServicesFactory(session, previousLogger);
+        } catch (final HubUnavailableException e) {
+            restoreCallerLogger(previousLogger);
+            throw e;
+        } catch (final IntegrationException e) {
+            restoreCallerLogger(previousLogger);
+            // do not keep a connection that can not log in
+            if (connections.remove(key, connection)) {
+                connection.retire();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Drops every cached connection to the provided Hub, used when the global configuration changes.
+     */
+    public void invalidate(final String serverUrl) {
+        final String normalizedUrl = StringUtils.removeEnd(StringUtils.trimToEmpty(serverUrl), "/");
+        final Iterator<Map.Entry<HubConnectionKey, PooledConnection>> iterator = connections.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<HubConnectionKey, PooledConnection> entry = iterator.next();
+            if (entry.getKey().getServerUrl().equals(normalizedUrl)) {
+                iterator.remove();
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    public void invalidateAll() {
+        final Iterator<PooledConnection> iterator = connections.values().iterator();
+        while (iterator.hasNext()) {
+            final PooledConnection connection = iterator.next();
+            iterator.remove();
+            connection.retire();
+        }
+    }
+
+    public int getConnectionCount() {
+        return connections.size();
+    }
+
+    public void evictIdleConnections() {
+        final long now = System.currentTimeMillis();
+        final Iterator<Map.Entry<HubConnectionKey, PooledConnection>> iterator = connections.entrySet().iterator();
+        while (iterator.hasNext()) {
+            final Map.Entry<HubConnectionKey, PooledConnection> entry = iterator.next();
+            if (now - entry.getValue().getLastUsed() > idleTimeout) {
+                // a long running BOM wait may still hold a lease, the connection is closed once it is done
+                LOGGER.fine("Evicting idle Hub connection " + entry.getKey());
+                iterator.remove();
+                entry.getValue().retire();
+            }
+        }
+    }
+
+    static void close(final RestConnection restConnection) {
+        // the http client, and its pool of connections, only exists once the connection was opened
+        final CloseableHttpClient client = restConnection.getClient();
+        if (client != null) {
+            try {
+                client.close();
+            } catch (final IOException e) {
+                LOGGER.log(Level.FINE, "Could not close the Hub connection", e);
+            }
+        }
+    }
+
+    private static void restoreCallerLogger(final IntLogger previousLogger) {
+        if (previousLogger == null) {
+            CALLER_LOGGER.remove();
+        } else {
+            CALLER_LOGGER.set(previousLogger);
+        }
+    }
+
+    /**
+     * Opens and logs in the connections to the Hub.
+     */
+    static class Connector {
+        public RestConnection connect(final HubServerConfig hubServerConfig, final IntLogger logger) throws IntegrationException {
+            final RestConnection restConnection = hubServerConfig.createCredentialsRestConnection(logger);
+            restConnection.getClientBuilder().setMaxConnPerRoute(MAX_CONNECTIONS_PER_HUB);
+            restConnection.getClientBuilder().setMaxConnTotal(MAX_CONNECTIONS_PER_HUB);
+            try {
+                restConnection.connect();
+            } catch (final IntegrationException e) {
+                close(restConnection);
+                throw e;
+            }
+            return restConnection;
+        }
+    }
+
+    /**
+     * The connections cached for one key. The logged in connection is replaced as a whole once its session is too old, so requests in flight on the previous connection are never disturbed.
+     *
+     * Logging in happens outside of the monitor. While one caller logs in again, the other callers keep using the previous session, and only the callers that have no session to use wait for the login.
+     */
+    private class PooledConnection {
+        private final HubServerConfig hubServerConfig;
+
+        private final String passwordFingerprint;
+
+        private Session current;
+
+        private Login pendingLogin;
+
+        private boolean retired;
+
+        private volatile long lastUsed;
+
+        public PooledConnection(final HubServerConfig hubServerConfig, final String passwordFingerprint) {
+            this.hubServerConfig = hubServerConfig;
+            this.passwordFingerprint = passwordFingerprint;
+            this.lastUsed = System.currentTimeMillis();
+        }
+
+        public Session acquire() throws IntegrationException {
+            final Login login;
+            final boolean loggingIn;
+            synchronized (this) {
+                final long now = System.currentTimeMillis();
+                lastUsed = now;
+                if (!retired && current != null && (pendingLogin != null || now - current.getConnectedAt() <= sessionLifetime)) {
+                    // the previous session is still well within its lifetime while the new one logs in
+                    current.lease();
+                    return current;
+                }
+                loggingIn = pendingLogin == null;
+                if (loggingIn) {
+                    pendingLogin = new Login();
+                } else {
+                    pendingLogin.callers++;
+                }
+                login = pendingLogin;
+            }
+            if (loggingIn) {
+                // login on a new connection before the Hub session can expire, the RestConnection also logs in again by itself if it receives a 401
+                try {
+                    login.session = new Session(connector.connect(hubServerConfig, new CallerLogger()), System.currentTimeMillis());
+                } catch (final IntegrationException | RuntimeException e) {
+                    login.failure = e;
+                } finally {
+                    finishLogin(login);
+                }
+            }
+            return login.await();
+        }
+
+        private synchronized void finishLogin(final Login login) {
+            pendingLogin = null;
+            final Session session = login.session;
+            if (session != null) {
+                // every caller waiting for the login gets a lease before the session can be retired
+                for (int i = 0; i < login.callers; i++) {
+                    session.lease();
+                }
+                if (retired) {
+                    // invalidated while logging in, the connection is only used for the waiting callers
+                    session.retire();
+                } else {
+                    if (current != null) {
+                        current.retire();
+                    }
+                    current = session;
+                }
+            }
+            login.done.countDown();
+        }
+
+        public synchronized void retire() {
+            retired = true;
+            if (current != null) {
+                current.retire();
+                current = null;
+            }
+        }
+
+        public String getPasswordFingerprint() {
+            return passwordFingerprint;
+        }
+
+        public long getLastUsed() {
+            return lastUsed;
+        }
+    }
+
+    /**
+     * A login in progress, and the callers waiting for it.
+     */
+    private static class Login {
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private int callers = 1;
+
+        private Session session;
+
+        private Exception failure;
+
+        public Session await() throws IntegrationException {
+            // the login is bounded by the connection timeout, and the lease taken for this caller must not be lost
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    done.await();
+                    break;
+                } catch (final InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            if (failure instanceof IntegrationException) {
+                throw (IntegrationException) failure;
+            } else if (failure != null) {
+                throw (RuntimeException) failure;
+            }
+            return session;
+        }
+    }
+
+    /**
+     * One logged in connection and the number of open leases on it.
+     */
+    static class Session {
+        private final RestConnection restConnection;
+
+        private final long connectedAt;
+
+        private int leases;
+
+        private boolean retired;
+
+        private boolean closed;
+
+        Session(final RestConnection restConnection, final long connectedAt) {
+            this.restConnection = restConnection;
+            this.connectedAt = connectedAt;
+        }
+
+        public RestConnection getRestConnection() {
+            return restConnection;
+        }
+
+        public long getConnectedAt() {
+            return connectedAt;
+        }
+
+        synchronized void lease() {
+            leases++;
+        }
+
+        synchronized void release() {
+            leases--;
+            closeIfUnused();
+        }
+
+        synchronized void retire() {
+            retired = true;
+            closeIfUnused();
+        }
+
+        private void closeIfUnused() {
+            if (retired && leases <= 0 && !closed) {
+                closed = true;
+                close(restConnection);
+            }
+        }
+    }
+
+    /**
+     * A services factory holding a lease on a pooled connection. Closing it releases the lease, and restores the logger of the enclosing caller on this thread.
+     */
+    public static class PooledHubServicesFactory extends HubServicesFactory implements AutoCloseable {
+        private final Session session;
+
+        private final IntLogger previousLogger;
+
+        private final Thread owner;
+
+        private boolean closed;
+
+        PooledHubServicesFactory(final Session session, final IntLogger previousLogger) {
+            super(session.getRestConnection());
+            this.session = session;
+            this.previousLogger = previousLogger;
+            this.owner = Thread.currentThread();
+        }
+
+        @Override
+        public synchronized void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            if (Thread.currentThread() == owner) {
+                restoreCallerLogger(previousLogger);
+            }
+            session.release();
+        }
+    }
+
+    /**
+     * The logger of the pooled connections. Messages go to the logger of the caller holding a lease on the current thread, or to the Jenkins log when there is none.
+     */
+    private static class CallerLogger extends IntLogger {
+        private LogLevel level = LogLevel.INFO;
+
+        private IntLogger caller() {
+            return CALLER_LOGGER.get();
+        }
+
+        @Override
+        public LogLevel getLogLevel() {
+            final IntLogger caller = caller();
+            return caller == null ? level : caller.getLogLevel();
+        }
+
+        @Override
+        public void setLogLevel(final LogLevel level) {
+            this.level = level;
+        }
+
+        @Override
+        public void alwaysLog(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.info(txt);
+            } else {
+                caller.alwaysLog(txt);
+            }
+        }
+
+        @Override
+        public void debug(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.fine(txt);
+            } else {
+                caller.debug(txt);
+            }
+        }
+
+        @Override
+        public void debug(final String txt, final Throwable e) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.log(Level.FINE, txt, e);
+            } else {
+                caller.debug(txt, e);
+            }
+        }
+
+        @Override
+        public void error(final Throwable e) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.log(Level.SEVERE, e.getMessage(), e);
+            } else {
+                caller.error(e);
+            }
+        }
+
+        @Override
+        public void error(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.severe(txt);
+            } else {
+                caller.error(txt);
+            }
+        }
+
+        @Override
+        public void error(final String txt, final Throwable e) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.log(Level.SEVERE, txt, e);
+            } else {
+                caller.error(txt, e);
+            }
+        }
+
+        @Override
+        public void info(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.info(txt);
+            } else {
+                caller.info(txt);
+            }
+        }
+
+        @Override
+        public void trace(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.finer(txt);
+            } else {
+                caller.trace(txt);
+            }
+        }
+
+        @Override
+        public void trace(final String txt, final Throwable e) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.log(Level.FINER, txt, e);
+            } else {
+                caller.trace(txt, e);
+            }
+        }
+
+        @Override
+        public void warn(final String txt) {
+            final IntLogger caller = caller();
+            if (caller == null) {
+                LOGGER.warning(txt);
+            } else {
+                caller.warn(txt);
+            }
+        }
+    }
+
+    @Extension
+    public static class IdleConnectionEviction extends PeriodicWork {
+
+        @Override
+        public long getRecurrencePeriod() {
+            return MIN * 5;
+        }
+
+        @Override
+        protected void doRun() throws Exception {
+            try {
+                HubConnectionManager.getInstance().evictIdleConnections();
+            } catch (final Exception e) {
+                LOGGER.log(Level.WARNING, "Could not evict the idle Hub connections", e);
+            }
+        }
+    }
+
+}
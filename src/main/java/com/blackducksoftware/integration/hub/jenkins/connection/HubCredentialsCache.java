@@ -0,0 +1,172 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.cloudbees.plugins.credentials.CredentialsProvider;
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.domains.DomainRequirement;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.Saveable;
+import hudson.model.listeners.SaveableListener;
+import hudson.security.ACL;
+import jenkins.model.Jenkins;
+
+/**
+ * Resolves Hub credentials by ID from one lookup of all the username and password credentials, instead of looking up and scanning every credential each
+ * time one is needed. The lookup is dropped whenever a credentials store is saved, and after a while in any case so credentials from providers that are not
+ * saved through Jenkins are seen too. Lookups are safe to share between builds.
+ */
+public class HubCredentialsCache {
+
+    public static final long TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(Long.getLong(HubCredentialsCache.class.getName() + ".timeToLiveSeconds", 300L));
+
+    private final static HubCredentialsCache _instance = new HubCredentialsCache(TIME_TO_LIVE, new CredentialsLookup());
+
+    private final AtomicLong generation = new AtomicLong();
+
+    private final long timeToLive;
+
+    private final CredentialsLookup credentialsLookup;
+
+    private volatile Snapshot snapshot;
+
+    HubCredentialsCache(final long timeToLive, final CredentialsLookup credentialsLookup) {
+        this.timeToLive = timeToLive;
+        this.credentialsLookup = credentialsLookup;
+    }
+
+    public static HubCredentialsCache getInstance() {
+        return _instance;
+    }
+
+    /**
+     * @return the username and password credential with the ID, or null if there is none
+     */
+    public UsernamePasswordCredentialsImpl getCredential(final String credentialsId) {
+        if (credentialsId == null) {
+            return null;
+        }
+        return getSnapshot().credentials.get(credentialsId);
+    }
+
+    /**
+     * Drops the lookup, the next credential is resolved from a new one.
+     */
+    public void invalidate() {
+        generation.incrementAndGet();
+        snapshot = null;
+    }
+
+    private Snapshot getSnapshot() {
+        Snapshot current = snapshot;
+        if (isCurrent(current)) {
+            return current;
+        }
+        synchronized (this) {
+            current = snapshot;
+            if (isCurrent(current)) {
+                return current;
+            }
+            final long lookupGeneration = generation.get();
+            current = new Snapshot(getCredentialsById(credentialsLookup.lookup()), lookupGeneration);
+            // a store saved during the lookup invalidates it right away
+            snapshot = current;
+            return current;
+        }
+    }
+
+    private boolean isCurrent(final Snapshot current) {
+        return current != null && current.generation == generation.get() && System.currentTimeMillis() - current.created < timeToLive;
+    }
+
+    /**
+     * When several stores hold a credential with the same ID, the last one in lookup order is used, as the plugin always did.
+     */
+    static Map<String, UsernamePasswordCredentialsImpl> getCredentialsById(final List<StandardUsernamePasswordCredentials> credentials) {
+        final Map<String, UsernamePasswordCredentialsImpl> credentialsById = new HashMap<>();
+        for (final StandardUsernamePasswordCredentials credential : credentials) {
+            if (credential instanceof UsernamePasswordCredentialsImpl) {
+                credentialsById.put(credential.getId(), (UsernamePasswordCredentialsImpl) credential);
+            }
+        }
+        return credentialsById;
+    }
+
+    long getGeneration() {
+        return generation.get();
+    }
+
+    /**
+     * Looks up every username and password credential Jenkins knows of.
+     */
+    static class CredentialsLookup {
+        public List<StandardUsernamePasswordCredentials> lookup() {
+            return CredentialsProvider.lookupCredentials(StandardUsernamePasswordCredentials.class, Jenkins.getInstance(), ACL.SYSTEM,
+                    Collections.<DomainRequirement>emptyList());
+        }
+    }
+
+    private static final class Snapshot {
+        private final Map<String, UsernamePasswordCredentialsImpl> credentials;
+
+        private final long generation;
+
+        private final long created = System.currentTimeMillis();
+
+        private Snapshot(final Map<String, UsernamePasswordCredentialsImpl> credentials, final long generation) {
+            this.credentials = credentials;
+            this.generation = generation;
+        }
+    }
+
+    /**
+     * Invalidates the cache when the system credentials or another credentials store are saved. The lookup only sees the credentials available to Jenkins
+     * itself, so saving a folder, multibranch or matrix project, which happens all the time, does not drop it.
+     */
+    @Extension
+    public static class CredentialsChangeListener extends SaveableListener {
+        @Override
+        public void onChange(final Saveable o, final XmlFile file) {
+            if (isCredentialsStore(o)) {
+                getInstance().invalidate();
+            }
+        }
+
+        static boolean isCredentialsStore(final Saveable o) {
+            return o instanceof SystemCredentialsProvider || o.getClass().getName().startsWith("com.cloudbees.plugins.credentials.");
+        }
+    }
+
+}
@@ -0,0 +1,219 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.lang.StringUtils;
+
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+
+/**
+ * Keeps the load of the Hub servers as this controller sees it: the scans it is uploading to each server and how long each server takes to answer. Jobs in
+ * pool mode send their scans to the least loaded healthy server. A server that failed to answer is left out of the pool for a while, unless every server
+ * failed.
+ */
+public class HubServerPool {
+
+    public static final long UNHEALTHY_TIME = TimeUnit.SECONDS.toMillis(Long.getLong(HubServerPool.class.getName() + ".unhealthySeconds", 60L));
+
+    /**
+     * The weight of the newest response time in the average response time of a server.
+     */
+    private static final double LATENCY_WEIGHT = 0.3;
+
+    private final static HubServerPool _instance = new HubServerPool();
+
+    private final Map<String, ServerLoad> loads = new LinkedHashMap<>();
+
+    HubServerPool() {
+    }
+
+    public static HubServerPool getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Chooses the healthy server with the fewest scans in flight, the one answering fastest if several have as many, and counts a scan in flight on it.
+     * @return the chosen server, or null if there are no servers
+     */
+    public synchronized HubServerInfo acquireLeastLoaded(final Collection<HubServerInfo> servers) {
+        final long now = System.currentTimeMillis();
+        HubServerInfo chosen = null;
+        ServerLoad chosenLoad = null;
+        boolean chosenHealthy = false;
+        for (final HubServerInfo server : servers) {
+            final ServerLoad load = getLoad(server);
+            final boolean healthy = load.isHealthy(now);
+            if (chosen == null || (healthy && !chosenHealthy) || (healthy == chosenHealthy && load.isLessLoadedThan(chosenLoad))) {
+                chosen = server;
+                chosenLoad = load;
+                chosenHealthy = healthy;
+            }
+        }
+        if (chosenLoad != null) {
+            chosenLoad.inFlight++;
+        }
+        return chosen;
+    }
+
+    /**
+     * Counts a scan in flight on a server a job selected itself, so the pool sees the load of every job.
+     */
+    public synchronized void acquire(final HubServerInfo server) {
+        if (server != null && server.getServerUrl() != null) {
+            getLoad(server).inFlight++;
+        }
+    }
+
+    /**
+     * Ends a scan counted by {@link #acquire(HubServerInfo)} or {@link #acquireLeastLoaded(Collection)}.
+     */
+    public synchronized void release(final HubServerInfo server) {
+        if (server != null && server.getServerUrl() != null) {
+            final ServerLoad load = getLoad(server);
+            load.inFlight = Math.max(0, load.inFlight - 1);
+        }
+    }
+
+    /**
+     * Records how long the server took to answer a request, which also makes it healthy again.
+     */
+    public synchronized void recordLatency(final HubServerInfo server, final long latencyMillis) {
+        if (server != null && server.getServerUrl() != null) {
+            final ServerLoad load = getLoad(server);
+            if (load.latencyMillis < 0) {
+                load.latencyMillis = latencyMillis;
+            } else {
+                load.latencyMillis = LATENCY_WEIGHT * latencyMillis + (1 - LATENCY_WEIGHT) * load.latencyMillis;
+            }
+            load.failedAt = 0L;
+        }
+    }
+
+    /**
+     * Records that the server did not answer, it is left out of the pool for {@link #UNHEALTHY_TIME}.
+     */
+    public synchronized void recordFailure(final HubServerInfo server) {
+        if (server != null && server.getServerUrl() != null) {
+            getLoad(server).failedAt = System.currentTimeMillis();
+        }
+    }
+
+    /**
+     * @return the load of every server the pool has seen, for the status page
+     */
+    public synchronized List<ServerStatus> getServerStatuses() {
+        final long now = System.currentTimeMillis();
+        final List<ServerStatus> statuses = new ArrayList<>();
+        for (final Map.Entry<String, ServerLoad> entry : loads.entrySet()) {
+            final ServerLoad load = entry.getValue();
+            statuses.add(new ServerStatus(entry.getKey(), load.inFlight, load.latencyMillis < 0 ? -1L : Math.round(load.latencyMillis), load.isHealthy(now)));
+        }
+        return statuses;
+    }
+
+    private ServerLoad getLoad(final HubServerInfo server) {
+        final String key = getKey(server);
+        ServerLoad load = loads.get(key);
+        if (load == null) {
+            load = new ServerLoad();
+            loads.put(key, load);
+        }
+        return load;
+    }
+
+    static String getKey(final HubServerInfo server) {
+        return StringUtils.removeEnd(StringUtils.trimToEmpty(server.getServerUrl()), "/");
+    }
+
+    private static final class ServerLoad {
+
+        private int inFlight;
+
+        private double latencyMillis = -1;
+
+        private long failedAt;
+
+        private boolean isHealthy(final long now) {
+            return failedAt == 0L || now - failedAt >= UNHEALTHY_TIME;
+        }
+
+        private boolean isLessLoadedThan(final ServerLoad other) {
+            if (inFlight != other.inFlight) {
+                return inFlight < other.inFlight;
+            }
+            // a server that never answered is tried before the others, its response time is measured that way
+            return latencyMillis < other.latencyMillis;
+        }
+
+    }
+
+    /**
+     * The load of one server when it was asked for.
+     */
+    public static final class ServerStatus {
+
+        private final String serverUrl;
+
+        private final int inFlight;
+
+        private final long latencyMillis;
+
+        private final boolean healthy;
+
+        public ServerStatus(final String serverUrl, final int inFlight, final long latencyMillis, final boolean healthy) {
+            this.serverUrl = serverUrl;
+            this.inFlight = inFlight;
+            this.latencyMillis = latencyMillis;
+            this.healthy = healthy;
+        }
+
+        public String getServerUrl() {
+            return serverUrl;
+        }
+
+        public int getInFlight() {
+            return inFlight;
+        }
+
+        /**
+         * @return the average response time in milliseconds, -1 if the server has not answered yet
+         */
+        public long getLatencyMillis() {
+            return latencyMillis;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+    }
+
+}
@@ -21,32 +21,18 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-package com.blackducksoftware.integration.hub.jenkins.remote;
+package com.blackducksoftware.integration.hub.jenkins.exceptions;
 
-import hudson.remoting.Callable;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 
-import java.io.File;
-import java.io.IOException;
-
-import org.jenkinsci.remoting.Role;
-import org.jenkinsci.remoting.RoleChecker;
-
-public class GetCanonicalPath implements Callable<String, IOException> {
-    private static final long serialVersionUID = 3459269768733083577L;
-
-    private final File file;
-
-    public GetCanonicalPath(File file) {
-        this.file = file;
-    }
+/**
+ * Thrown instead of sending a request to a Hub that is known to be down.
+ */
+public class HubUnavailableException extends HubIntegrationException {
+    private static final long serialVersionUID = 6513389447651528003L;
 
-    @Override
-    public String call() throws IOException {
-        return file.getCanonicalPath();
+    public HubUnavailableException(final String message) {
+        super(message);
     }
 
-    @Override
-    public void checkRoles(RoleChecker checker) throws SecurityException {
-        checker.check(this, new Role(GetCanonicalPath.class));
-    }
 }
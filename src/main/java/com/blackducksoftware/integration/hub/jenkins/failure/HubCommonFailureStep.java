@@ -24,21 +24,24 @@
 package com.blackducksoftware.integration.hub.jenkins.failure;
 
 import java.io.IOException;
+import java.util.Map;
 
-import com.blackducksoftware.integration.exception.EncryptionException;
 import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.api.generated.component.NameValuePairView;
 import com.blackducksoftware.integration.hub.api.generated.enumeration.PolicyStatusApprovalStatusType;
 import com.blackducksoftware.integration.hub.api.generated.view.VersionBomPolicyStatusView;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.exception.HubTimeoutExceededException;
 import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
 import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
 import com.blackducksoftware.integration.hub.jenkins.HubServerInfoSingleton;
 import com.blackducksoftware.integration.hub.jenkins.action.BomUpToDateAction;
 import com.blackducksoftware.integration.hub.jenkins.action.HubVariableContributor;
+import com.blackducksoftware.integration.hub.jenkins.action.PolicyViolationAction;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
+import com.blackducksoftware.integration.hub.jenkins.exceptions.HubUnavailableException;
 import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
 import com.blackducksoftware.integration.hub.service.HubService;
-import com.blackducksoftware.integration.hub.service.HubServicesFactory;
 import com.blackducksoftware.integration.util.CIEnvironmentVariables;
 
 import hudson.EnvVars;
@@ -53,9 +56,12 @@ public class HubCommonFailureStep {
 
     private final FailureConditionBuildStateEnum buildStateOnFailure;
 
-    public HubCommonFailureStep(final Boolean failBuildForPolicyViolations, final FailureConditionBuildStateEnum buildStateOnFailure) {
+    private final Boolean detailedPolicyViolations;
+
+    public HubCommonFailureStep(final Boolean failBuildForPolicyViolations, final FailureConditionBuildStateEnum buildStateOnFailure, final Boolean detailedPolicyViolations) {
         this.failBuildForPolicyViolations = failBuildForPolicyViolations;
         this.buildStateOnFailure = buildStateOnFailure;
+        this.detailedPolicyViolations = detailedPolicyViolations;
     }
 
     public Boolean getFailBuildForPolicyViolations() {
@@ -66,6 +72,10 @@ public class HubCommonFailureStep {
         return buildStateOnFailure;
     }
 
+    public Boolean getDetailedPolicyViolations() {
+        return detailedPolicyViolations;
+    }
+
     public boolean checkFailureConditions(final Run run, final Node builtOn, final EnvVars envVars, final HubJenkinsLogger logger, final TaskListener listener, final BomUpToDateAction bomUpToDateAction)
             throws IOException, IllegalArgumentException {
 
@@ -85,7 +95,11 @@ public class HubCommonFailureStep {
             resultToSetForFailureCondition = Result.FAILURE;
         }
 
-        final HubServerInfo serverInfo = HubServerInfoSingleton.getInstance().getServerInfo();
+        final HubServerInfoSingleton.Snapshot serverInfoSnapshot = HubServerInfoSingleton.getInstance().getSnapshot();
+        // the policy status is on the server the scan was sent to, which is only the default server for builds from before servers could be selected
+        final HubServerInfo serverInfo = bomUpToDateAction.getServerInfo() == null ? serverInfoSnapshot.getServerInfo() : bomUpToDateAction.getServerInfo();
+        logger.info("Hub configuration version : " + serverInfoSnapshot.getVersion());
+        logger.info("Hub server : " + serverInfo.getDisplayName());
         try {
             if (bomUpToDateAction.isDryRun()) {
                 logger.warn("Will not check failure conditions since this was a dry run.");
@@ -99,57 +113,98 @@ public class HubCommonFailureStep {
                     run.setResult(Result.UNSTABLE);
                     return true;
                 }
-                final HubServicesFactory service = getHubServicesFactory(logger, serverInfo);
-
-                VersionBomPolicyStatusView policyStatus = null;
-                try {
-                    HubService hubService = service.createHubService();
-                    policyStatus = hubService.getResponse(bomUpToDateAction.getPolicyStatusUrl(), VersionBomPolicyStatusView.class);
-                } catch (final HubIntegrationException e) {
-                    // ignore exception, could not find policy information
-                }
-                if (policyStatus == null) {
-                    logger.error("Could not find any information about the Policy status of the bom.");
-                    return true;
-                }
+                try (final PooledHubServicesFactory service = getHubServicesFactory(logger, serverInfo)) {
+                    final HubService hubService = service.createHubService();
+                    VersionBomPolicyStatusView policyStatus = null;
+                    try {
+                        if (!bomUpToDateAction.isHasBomBeenUdpated() && bomUpToDateAction.getUploadTime() > 0) {
+                            // the scan step did not wait for the report, so the policies may not have been evaluated for the scan yet
+                            logger.alwaysLog("--> Waiting for the policies to be evaluated for the scan");
+                            policyStatus = new PolicyReadinessWaiter(logger, serverInfo, hubService, bomUpToDateAction.getMaxWaitTime()).waitUntilEvaluated(bomUpToDateAction.getPolicyStatusUrl(),
+                                    bomUpToDateAction.getUploadTime(), bomUpToDateAction.getBomCompletedTime(), bomUpToDateAction.getPolicyStatusTime());
+                        } else {
+                            policyStatus = PolicyStatusCache.getInstance().getPolicyStatus(serverInfo, hubService, bomUpToDateAction.getPolicyStatusUrl(), bomUpToDateAction.getPolicyStatusTime());
+                        }
+                    } catch (final HubUnavailableException | HubTimeoutExceededException e) {
+                        throw e;
+                    } catch (final HubIntegrationException e) {
+                        // ignore exception, could not find policy information
+                    }
+                    if (policyStatus == null) {
+                        logger.error("Could not find any information about the Policy status of the bom.");
+                        return true;
+                    }
 
-                logger.alwaysLog("--> Configured to set the Build Result to " + buildStateOnFailure.getDisplayValue() + " for Hub Failure Conditions.");
-                if (policyStatus.overallStatus == PolicyStatusApprovalStatusType.IN_VIOLATION) {
-                    run.setResult(resultToSetForFailureCondition);
-                }
+                    logger.alwaysLog("--> Configured to set the Build Result to " + buildStateOnFailure.getDisplayValue() + " for Hub Failure Conditions.");
+                    if (policyStatus.overallStatus == PolicyStatusApprovalStatusType.IN_VIOLATION) {
+                        run.setResult(resultToSetForFailureCondition);
+                    }
 
-                final HubVariableContributor variableContributor = new HubVariableContributor();
-                if (policyStatus.componentVersionStatusCounts == null || policyStatus.componentVersionStatusCounts.isEmpty()) {
-                    logger.error("Could not find the policy status counts");
-                } else {
-                    for (final NameValuePairView count : policyStatus.componentVersionStatusCounts) {
-                        Integer countInt = ((Double) count.value).intValue();
-                        if (PolicyStatusApprovalStatusType.IN_VIOLATION.toString().equals(count.name)) {
-                            logger.info("Found " + countInt + " bom entries to be In Violation of a defined Policy.");
-                            variableContributor.setBomEntriesInViolation(countInt);
+                    final HubVariableContributor variableContributor = new HubVariableContributor();
+                    if (policyStatus.componentVersionStatusCounts == null || policyStatus.componentVersionStatusCounts.isEmpty()) {
+                        logger.error("Could not find the policy status counts");
+                    } else {
+                        for (final NameValuePairView count : policyStatus.componentVersionStatusCounts) {
+                            Integer countInt = ((Double) count.value).intValue();
+                            if (PolicyStatusApprovalStatusType.IN_VIOLATION.toString().equals(count.name)) {
+                                logger.info("Found " + countInt + " bom entries to be In Violation of a defined Policy.");
+                                variableContributor.setBomEntriesInViolation(countInt);
+                            }
+                            if (PolicyStatusApprovalStatusType.IN_VIOLATION_OVERRIDDEN.toString().equals(count.name)) {
+                                logger.info("Found " + countInt + " bom entries to be In Violation of a defined Policy, but they have been overridden.");
+                                variableContributor.setViolationsOverriden(countInt);
+                            }
+                            if (PolicyStatusApprovalStatusType.NOT_IN_VIOLATION.toString().equals(count.name)) {
+                                logger.info("Found " + countInt + " bom entries to be Not In Violation of a defined Policy.");
+                                variableContributor.setBomEntriesNotInViolation(countInt);
+                            }
                         }
-                        if (PolicyStatusApprovalStatusType.IN_VIOLATION_OVERRIDDEN.toString().equals(count.name)) {
-                            logger.info("Found " + countInt + " bom entries to be In Violation of a defined Policy, but they have been overridden.");
-                            variableContributor.setViolationsOverriden(countInt);
-                        }
-                        if (PolicyStatusApprovalStatusType.NOT_IN_VIOLATION.toString().equals(count.name)) {
-                            logger.info("Found " + countInt + " bom entries to be Not In Violation of a defined Policy.");
-                            variableContributor.setBomEntriesNotInViolation(countInt);
+                    }
+                    if (Boolean.TRUE.equals(getDetailedPolicyViolations())) {
+                        try {
+                            recordPolicyViolations(run, logger, serverInfo, hubService, bomUpToDateAction, variableContributor);
+                        } catch (final IntegrationException e) {
+                            // the counts are still set for the build
+                            logger.error("Could not fetch the policy violations : " + e.getMessage(), e);
+                            run.setResult(Result.UNSTABLE);
                         }
                     }
+                    run.addAction(variableContributor);
                 }
-                run.addAction(variableContributor);
             }
         } catch (final IntegrationException e) {
             logger.error(e.getMessage(), e);
             run.setResult(Result.UNSTABLE);
+        } catch (final InterruptedException e) {
+            logger.error("BD failure conditions thread was interrupted.", e);
+            run.setResult(Result.ABORTED);
+            Thread.currentThread().interrupt();
         }
         return true;
     }
 
-    public HubServicesFactory getHubServicesFactory(final HubJenkinsLogger logger, final HubServerInfo serverInfo)
-            throws IOException, IllegalArgumentException, EncryptionException {
-        return BuildHelper.getHubServicesFactory(logger, serverInfo.getServerUrl(), serverInfo.getUsername(), serverInfo.getPassword(), serverInfo.getTimeout(), serverInfo.shouldTrustSSLCerts());
+    /**
+     * Fetches the BOM components in violation with the rules they violate, for the build action and the variables of each rule.
+     */
+    private void recordPolicyViolations(final Run run, final HubJenkinsLogger logger, final HubServerInfo serverInfo, final HubService hubService, final BomUpToDateAction bomUpToDateAction,
+            final HubVariableContributor variableContributor) throws IOException, IntegrationException, InterruptedException {
+        if (bomUpToDateAction.getComponentsUrl() == null) {
+            logger.error("Can not fetch the policy violations, the components of the project version are not known for this scan.");
+            return;
+        }
+        final long started = System.currentTimeMillis();
+        final PolicyViolationAction policyViolationAction = new PolicyViolationAction(run);
+        policyViolationAction.recordViolations(new PolicyViolationFetcher(serverInfo, hubService, bomUpToDateAction.getComponentsUrl()));
+        logger.info(String.format("Fetched %d bom entries In Violation of a defined Policy in %d ms.", policyViolationAction.getViolationCount(), System.currentTimeMillis() - started));
+        for (final Map.Entry<String, Integer> ruleViolation : policyViolationAction.getRuleViolationCounts().entrySet()) {
+            logger.info("Found " + ruleViolation.getValue() + " bom entries to be In Violation of the rule " + ruleViolation.getKey() + ".");
+        }
+        variableContributor.setRuleViolations(policyViolationAction.getVariableViolationCounts());
+        run.addAction(policyViolationAction);
+    }
+
+    public PooledHubServicesFactory getHubServicesFactory(final HubJenkinsLogger logger, final HubServerInfo serverInfo) throws IntegrationException {
+        return BuildHelper.getHubServicesFactory(logger, serverInfo);
     }
 
 }
@@ -46,10 +46,13 @@ public class HubFailureConditionStep extends Recorder {
 
     private final String buildStateOnFailure;
 
+    private final Boolean detailedPolicyViolations;
+
     @DataBoundConstructor
-    public HubFailureConditionStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure) {
+    public HubFailureConditionStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure, final Boolean detailedPolicyViolations) {
         this.failBuildForPolicyViolations = failBuildForPolicyViolations;
         this.buildStateOnFailure = buildStateOnFailure;
+        this.detailedPolicyViolations = detailedPolicyViolations;
     }
 
     public Boolean getFailBuildForPolicyViolations() {
@@ -60,6 +63,10 @@ public class HubFailureConditionStep extends Recorder {
         return buildStateOnFailure;
     }
 
+    public Boolean getDetailedPolicyViolations() {
+        return detailedPolicyViolations;
+    }
+
     @Override
     public BuildStepMonitor getRequiredMonitorService() {
         return BuildStepMonitor.NONE;
@@ -99,7 +106,7 @@ public class HubFailureConditionStep extends Recorder {
                 return true;
             }
 
-            final HubCommonFailureStep commonFailureStep = createCommonFailureStep(getFailBuildForPolicyViolations(), getBuildStateOnFailure());
+            final HubCommonFailureStep commonFailureStep = createCommonFailureStep(getFailBuildForPolicyViolations(), getBuildStateOnFailure(), getDetailedPolicyViolations());
             commonFailureStep.checkFailureConditions(build, build.getBuiltOn(), envVars, logger,
                     listener,
                     bomUpToDateAction);
@@ -110,13 +117,13 @@ public class HubFailureConditionStep extends Recorder {
         return true;
     }
 
-    public HubCommonFailureStep createCommonFailureStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure)
+    public HubCommonFailureStep createCommonFailureStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure, final Boolean detailedPolicyViolations)
             throws BDJenkinsHubPluginException {
         final FailureConditionBuildStateEnum buildStateOnFailureEnum = FailureConditionBuildStateEnum.getFailureConditionBuildStateEnum(buildStateOnFailure);
         if (buildStateOnFailureEnum == null) {
             throw new BDJenkinsHubPluginException("Invalid Build State on Failure Condition configured : " + buildStateOnFailure);
         }
-        return new HubCommonFailureStep(failBuildForPolicyViolations, buildStateOnFailureEnum);
+        return new HubCommonFailureStep(failBuildForPolicyViolations, buildStateOnFailureEnum, detailedPolicyViolations);
     }
 
 }
@@ -0,0 +1,127 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import java.util.Date;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.VersionBomPolicyStatusView;
+import com.blackducksoftware.integration.hub.exception.HubTimeoutExceededException;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomReadinessWaiter;
+import com.blackducksoftware.integration.hub.service.HubService;
+import com.blackducksoftware.integration.log.IntLogger;
+
+/**
+ * Waits for the Hub to evaluate the policies of a BOM updated by a scan, so the failure conditions are not checked against the policy status of an older BOM.
+ * The policy status is polled with the same growing, jittered delay as the {@link BomReadinessWaiter}, until the Hub reports it was updated after the scan
+ * was uploaded. A scan that does not change the BOM may not update the policy status at all, so once the scans of the build are known to be finished a
+ * policy status that stays the same from one check to the next is used as well. Without that, the upload time is taken from the Jenkins clock, and a Hub clock
+ * running far behind makes the wait last until the maximum wait time.
+ */
+public class PolicyReadinessWaiter {
+
+    private final IntLogger logger;
+
+    private final HubServerInfo serverInfo;
+
+    private final HubService hubService;
+
+    private final long timeout;
+
+    private final long initialDelay;
+
+    /**
+     * @param timeout
+     *            the longest time to wait in milliseconds
+     */
+    public PolicyReadinessWaiter(final IntLogger logger, final HubServerInfo serverInfo, final HubService hubService, final long timeout) {
+        this(logger, serverInfo, hubService, timeout, BomReadinessWaiter.INITIAL_DELAY);
+    }
+
+    PolicyReadinessWaiter(final IntLogger logger, final HubServerInfo serverInfo, final HubService hubService, final long timeout, final long initialDelay) {
+        this.logger = logger;
+        this.serverInfo = serverInfo;
+        this.hubService = hubService;
+        this.timeout = timeout;
+        this.initialDelay = initialDelay;
+    }
+
+    /**
+     * Waits until the policy status was updated after the upload, or did not change between two checks made after the scans of the build were finished, and
+     * returns it. A Hub that does not report when the policy status was updated is not waited on.
+     * @param bomCompleted
+     *            the time the scans of the build were known to be finished, or 0 if nobody waited for them
+     * @param notBefore
+     *            the earliest time a policy status fetched for another build can be from to be used for the first check
+     * @throws HubTimeoutExceededException
+     *             if the policy status was not updated within the maximum wait time
+     */
+    public VersionBomPolicyStatusView waitUntilEvaluated(final String policyStatusUrl, final long uploadTime, final long bomCompleted, final long notBefore)
+            throws InterruptedException, IntegrationException {
+        final long started = System.currentTimeMillis();
+        final long deadline = started + timeout;
+        long delay = initialDelay;
+        long lastPolled = notBefore;
+        Date updatedAfterBom = null;
+        while (true) {
+            final long polled = System.currentTimeMillis();
+            // a status fetched for another build since this build last looked is recent enough
+            final VersionBomPolicyStatusView policyStatus = getPolicyStatus(policyStatusUrl, lastPolled);
+            // the status was fetched no earlier than lastPolled
+            final boolean fetchedAfterBom = bomCompleted > 0 && lastPolled >= bomCompleted;
+            lastPolled = polled;
+            if (policyStatus.updatedAt == null) {
+                logger.debug("The Hub does not report when the policy status was updated, using the current policy status");
+                return policyStatus;
+            }
+            if (policyStatus.updatedAt.getTime() > uploadTime) {
+                logger.info(String.format("The policy status is up to date after %d seconds", (System.currentTimeMillis() - started) / 1000));
+                return policyStatus;
+            }
+            if (fetchedAfterBom) {
+                if (policyStatus.updatedAt.equals(updatedAfterBom)) {
+                    logger.info(String.format("The policy status did not change after the scans were finished, the scan left the policy status as it was last updated %s",
+                            policyStatus.updatedAt));
+                    return policyStatus;
+                }
+                updatedAfterBom = policyStatus.updatedAt;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                throw new HubTimeoutExceededException(String.format("The policies were not evaluated for the scan within the maximum wait time of %d minutes", timeout / 60 / 1000));
+            }
+            final long sleep = Math.min(BomReadinessWaiter.getJitteredDelay(delay), deadline - now);
+            logger.debug(String.format("The policy status was last updated %s, checking again in %d ms", policyStatus.updatedAt, sleep));
+            Thread.sleep(sleep);
+            delay = BomReadinessWaiter.getNextDelay(delay);
+        }
+    }
+
+    VersionBomPolicyStatusView getPolicyStatus(final String policyStatusUrl, final long notBefore) throws IntegrationException {
+        return PolicyStatusCache.getInstance().getPolicyStatus(serverInfo, hubService, policyStatusUrl, notBefore);
+    }
+
+}
@@ -0,0 +1,239 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import java.io.IOException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.VersionBomPolicyStatusView;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.request.Request;
+import com.blackducksoftware.integration.hub.request.Response;
+import com.blackducksoftware.integration.hub.rest.exception.IntegrationRestException;
+import com.blackducksoftware.integration.hub.service.HubService;
+
+/**
+ * Keeps the policy status of recently checked project versions for a few seconds, so builds checking the same project version one after another, like the
+ * configurations of a matrix job, do not each fetch it from the Hub. Builds asking while the status is being fetched wait for that fetch. Once the status is
+ * older than the time to live, it is fetched again with the ETag the Hub sent, and a Hub that supports conditional requests answers that it has not changed
+ * instead of sending it again.
+ * <p>
+ * A status fetched before the caller's BOM was up to date is never used as is, since it may not include the caller's scan.
+ */
+public class PolicyStatusCache {
+
+    public static final long TIME_TO_LIVE = TimeUnit.SECONDS.toMillis(Long.getLong(PolicyStatusCache.class.getName() + ".timeToLiveSeconds", 10L));
+
+    /**
+     * Entries for policy statuses nobody asked about for this long are dropped.
+     */
+    private static final long IDLE_TIMEOUT = 10L * 60L * 1000L;
+
+    private static final int NOT_MODIFIED = 304;
+
+    private final static PolicyStatusCache _instance = new PolicyStatusCache(TIME_TO_LIVE);
+
+    /**
+     * Fetches a policy status from the Hub.
+     */
+    interface Source {
+        /**
+         * @return the status, or null if the Hub answered that the status with the given ETag has not changed
+         */
+        FetchedStatus fetch(String policyStatusUrl, String etag) throws IntegrationException;
+    }
+
+    private final ConcurrentMap<String, CachedStatus> statuses = new ConcurrentHashMap<>();
+
+    private final long timeToLive;
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong revalidations = new AtomicLong();
+
+    private final AtomicLong fetches = new AtomicLong();
+
+    PolicyStatusCache(final long timeToLive) {
+        this.timeToLive = timeToLive;
+    }
+
+    public static PolicyStatusCache getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Returns the policy status, from the cache if it was fetched at or after notBefore and is still fresh, or from the Hub.
+     * @param notBefore
+     *            the time the caller's BOM was up to date, or 0
+     */
+    public VersionBomPolicyStatusView getPolicyStatus(final HubServerInfo serverInfo, final HubService hubService, final String policyStatusUrl, final long notBefore)
+            throws IntegrationException {
+        final String json = getJson(policyStatusUrl, notBefore, new Source() {
+            @Override
+            public FetchedStatus fetch(final String url, final String etag) throws IntegrationException {
+                return HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<FetchedStatus>() {
+                    @Override
+                    public FetchedStatus execute() throws IntegrationException {
+                        return fetchFromHub(hubService, url, etag);
+                    }
+                });
+            }
+        });
+        // every caller gets its own view, so one build can not change the status another build sees
+        final VersionBomPolicyStatusView policyStatus = hubService.getGson().fromJson(json, VersionBomPolicyStatusView.class);
+        policyStatus.json = json;
+        return policyStatus;
+    }
+
+    String getJson(final String policyStatusUrl, final long notBefore, final Source source) throws IntegrationException {
+        removeIdleStatuses();
+
+        CachedStatus cachedStatus = statuses.get(policyStatusUrl);
+        if (cachedStatus == null) {
+            final CachedStatus newStatus = new CachedStatus();
+            cachedStatus = statuses.putIfAbsent(policyStatusUrl, newStatus);
+            if (cachedStatus == null) {
+                cachedStatus = newStatus;
+            }
+        }
+        synchronized (cachedStatus) {
+            final long now = System.currentTimeMillis();
+            cachedStatus.lastRequested = now;
+            if (cachedStatus.json == null) {
+                cachedStatus.update(source.fetch(policyStatusUrl, null), now);
+                fetches.incrementAndGet();
+            } else if (cachedStatus.fetched >= notBefore && now - cachedStatus.fetched <= timeToLive) {
+                hits.incrementAndGet();
+            } else {
+                final FetchedStatus fetchedStatus = source.fetch(policyStatusUrl, cachedStatus.etag);
+                if (fetchedStatus == null) {
+                    cachedStatus.fetched = now;
+                    revalidations.incrementAndGet();
+                } else {
+                    cachedStatus.update(fetchedStatus, now);
+                    fetches.incrementAndGet();
+                }
+            }
+            return cachedStatus.json;
+        }
+    }
+
+    /**
+     * @return the number of policy statuses checked recently
+     */
+    public int getStatusCount() {
+        return statuses.size();
+    }
+
+    public long getTimeToLiveSeconds() {
+        return TimeUnit.MILLISECONDS.toSeconds(timeToLive);
+    }
+
+    /**
+     * @return the number of times a build was given a status fetched for another build
+     */
+    public long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * @return the number of times the Hub answered that a status had not changed
+     */
+    public long getRevalidations() {
+        return revalidations.get();
+    }
+
+    /**
+     * @return the number of times a status was fetched from the Hub
+     */
+    public long getFetches() {
+        return fetches.get();
+    }
+
+    private static FetchedStatus fetchFromHub(final HubService hubService, final String policyStatusUrl, final String etag) throws IntegrationException {
+        final Request.Builder requestBuilder = new Request.Builder(policyStatusUrl);
+        if (etag != null) {
+            requestBuilder.addAdditionalHeader("If-None-Match", etag);
+        }
+        try (Response response = hubService.executeRequest(requestBuilder.build())) {
+            if (etag != null && response.getStatusCode() != null && response.getStatusCode() == NOT_MODIFIED) {
+                return null;
+            }
+            return new FetchedStatus(response.getContentString(), response.getHeaderValue("ETag"));
+        } catch (final IntegrationRestException e) {
+            if (etag != null && e.getHttpStatusCode() == NOT_MODIFIED) {
+                return null;
+            }
+            throw e;
+        } catch (final IOException e) {
+            throw new IntegrationException("Could not close the response for " + policyStatusUrl, e);
+        }
+    }
+
+    private void removeIdleStatuses() {
+        final long now = System.currentTimeMillis();
+        for (final String policyStatusUrl : statuses.keySet()) {
+            final CachedStatus cachedStatus = statuses.get(policyStatusUrl);
+            if (cachedStatus != null && now - cachedStatus.lastRequested > IDLE_TIMEOUT) {
+                statuses.remove(policyStatusUrl, cachedStatus);
+            }
+        }
+    }
+
+    /**
+     * A policy status as the Hub sent it, with its ETag if the Hub sent one.
+     */
+    static class FetchedStatus {
+        private final String json;
+
+        private final String etag;
+
+        FetchedStatus(final String json, final String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+    }
+
+    private static class CachedStatus {
+        private volatile long lastRequested = System.currentTimeMillis();
+
+        private long fetched;
+
+        private String json;
+
+        private String etag;
+
+        private void update(final FetchedStatus fetchedStatus, final long fetched) {
+            this.json = fetchedStatus.json;
+            this.etag = fetchedStatus.etag;
+            this.fetched = fetched;
+        }
+    }
+
+}
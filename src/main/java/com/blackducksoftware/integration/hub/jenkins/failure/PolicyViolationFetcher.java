@@ -0,0 +1,324 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.enumeration.PolicyStatusApprovalStatusType;
+import com.blackducksoftware.integration.hub.api.generated.view.PolicyRuleViewV2;
+import com.blackducksoftware.integration.hub.api.generated.view.VersionBomComponentView;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.request.Request;
+import com.blackducksoftware.integration.hub.request.Response;
+import com.blackducksoftware.integration.hub.service.HubService;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Fetches the BOM components of a project version that are in violation of a policy, with the names of the rules each of them violates. The components are
+ * requested in large pages, several pages at once, and every page is read from the response one component at a time. The pages are handed on in BOM order as
+ * they arrive, and only a few pages are fetched ahead, so a BOM with thousands of violations is never held in memory as a whole.
+ */
+public class PolicyViolationFetcher {
+
+    public static final int PAGE_SIZE = Integer.getInteger(PolicyViolationFetcher.class.getName() + ".pageSize", 500);
+
+    public static final int THREADS = Integer.getInteger(PolicyViolationFetcher.class.getName() + ".threads", 4);
+
+    private static final String IN_VIOLATION_FILTER = "bomPolicy:in_violation";
+
+    /**
+     * The pages are requested concurrently, an explicit order keeps a component from moving between pages fetched at the same time.
+     */
+    private static final String SORT = "componentName ASC";
+
+    /**
+     * Fetches one page of the components in violation.
+     */
+    interface PageSource {
+        Page fetch(int offset, int limit) throws IntegrationException;
+    }
+
+    /**
+     * Receives the components in violation, in BOM order.
+     */
+    public interface ViolationHandler {
+        void handle(Violation violation) throws IOException;
+    }
+
+    private final PageSource pageSource;
+
+    private final int pageSize;
+
+    private final int threads;
+
+    public PolicyViolationFetcher(final HubServerInfo serverInfo, final HubService hubService, final String componentsUrl) {
+        this(new HubPageSource(serverInfo, hubService, componentsUrl), PAGE_SIZE, THREADS);
+    }
+
+    PolicyViolationFetcher(final PageSource pageSource, final int pageSize, final int threads) {
+        this.pageSource = pageSource;
+        this.pageSize = Math.max(pageSize, 1);
+        this.threads = Math.max(threads, 1);
+    }
+
+    /**
+     * Hands every component in violation to the handler.
+     * @return the number of components in violation
+     */
+    public int fetch(final ViolationHandler handler) throws IntegrationException, InterruptedException, IOException {
+        final Page firstPage = pageSource.fetch(0, pageSize);
+        int violationCount = handle(firstPage, handler);
+        final int totalCount = firstPage.getTotalCount();
+        if (totalCount <= pageSize) {
+            return violationCount;
+        }
+
+        final ExecutorService executor = Executors.newFixedThreadPool(threads, new NamingThreadFactory(new DaemonThreadFactory(), "Black Duck Hub policy violations"));
+        try {
+            // the pages are handed on in order, so only keep a few pages beyond the ones being fetched
+            final Deque<Future<Page>> pages = new ArrayDeque<>();
+            int offset = pageSize;
+            while (offset < totalCount || !pages.isEmpty()) {
+                while (offset < totalCount && pages.size() < threads * 2) {
+                    pages.add(executor.submit(createPageTask(offset)));
+                    offset += pageSize;
+                }
+                violationCount += handle(pages.remove().get(), handler);
+            }
+            return violationCount;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            }
+            throw new IntegrationException(cause.getMessage(), cause);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private Callable<Page> createPageTask(final int offset) {
+        return new Callable<Page>() {
+            @Override
+            public Page call() throws IntegrationException {
+                return pageSource.fetch(offset, pageSize);
+            }
+        };
+    }
+
+    private int handle(final Page page, final ViolationHandler handler) throws IOException {
+        for (final Violation violation : page.getViolations()) {
+            handler.handle(violation);
+        }
+        return page.getViolations().size();
+    }
+
+    /**
+     * One page of the components in violation.
+     */
+    static class Page {
+        private final int totalCount;
+
+        private final List<Violation> violations;
+
+        Page(final int totalCount, final List<Violation> violations) {
+            this.totalCount = totalCount;
+            this.violations = violations;
+        }
+
+        /**
+         * @return the number of components matching the request across all pages
+         */
+        int getTotalCount() {
+            return totalCount;
+        }
+
+        List<Violation> getViolations() {
+            return violations;
+        }
+    }
+
+    /**
+     * A BOM component in violation of a policy and the rules it violates.
+     */
+    public static class Violation {
+        private final String componentName;
+
+        private final String componentVersionName;
+
+        private final List<String> ruleNames;
+
+        public Violation(final String componentName, final String componentVersionName, final List<String> ruleNames) {
+            this.componentName = componentName;
+            this.componentVersionName = componentVersionName;
+            this.ruleNames = Collections.unmodifiableList(new ArrayList<>(ruleNames));
+        }
+
+        public String getComponentName() {
+            return componentName;
+        }
+
+        public String getComponentVersionName() {
+            return componentVersionName;
+        }
+
+        public List<String> getRuleNames() {
+            return ruleNames;
+        }
+    }
+
+    /**
+     * Reads the pages from the components of the project version, filtered to the components in violation. Hubs that do not know the filter send every
+     * component, the ones not in violation are skipped as they are read. The rules of the components are only fetched once the page is read and its response
+     * closed, so a failed rule request is retried on its own instead of with the whole page. The policy rules link belongs to the BOM component, so every
+     * component needs its own rule request and there is nothing to share between them.
+     */
+    static class HubPageSource implements PageSource {
+        private final HubServerInfo serverInfo;
+
+        private final HubService hubService;
+
+        private final String componentsUrl;
+
+        HubPageSource(final HubServerInfo serverInfo, final HubService hubService, final String componentsUrl) {
+            this.serverInfo = serverInfo;
+            this.hubService = hubService;
+            this.componentsUrl = componentsUrl;
+        }
+
+        @Override
+        public Page fetch(final int offset, final int limit) throws IntegrationException {
+            final ComponentPage componentPage = HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<ComponentPage>() {
+                @Override
+                public ComponentPage execute() throws IntegrationException {
+                    final Request request = new Request.Builder(componentsUrl).addQueryParameter("offset", String.valueOf(offset)).addQueryParameter("limit", String.valueOf(limit))
+                            .addQueryParameter("sort", SORT).addQueryParameter("filter", IN_VIOLATION_FILTER).build();
+                    try (Response response = hubService.executeRequest(request); JsonReader reader = new JsonReader(new InputStreamReader(response.getContent(), StandardCharsets.UTF_8))) {
+                        return readPage(reader);
+                    } catch (final IOException e) {
+                        throw new IntegrationException("Could not read the BOM components from " + componentsUrl + " : " + e.getMessage(), e);
+                    }
+                }
+            });
+
+            final List<Violation> violations = new ArrayList<>();
+            for (final ViolatingComponent component : componentPage.components) {
+                List<String> ruleNames = Collections.emptyList();
+                if (StringUtils.isNotBlank(component.policyRulesLink)) {
+                    ruleNames = getRuleNames(component.policyRulesLink);
+                }
+                violations.add(new Violation(component.componentName, component.componentVersionName, ruleNames));
+            }
+            return new Page(componentPage.totalCount, violations);
+        }
+
+        private ComponentPage readPage(final JsonReader reader) throws IOException {
+            int totalCount = 0;
+            final List<ViolatingComponent> components = new ArrayList<>();
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if ("totalCount".equals(name) && reader.peek() == JsonToken.NUMBER) {
+                    totalCount = reader.nextInt();
+                } else if ("items".equals(name) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        final VersionBomComponentView component = hubService.getGson().fromJson(reader, VersionBomComponentView.class);
+                        if (component.policyStatus == PolicyStatusApprovalStatusType.IN_VIOLATION) {
+                            components.add(new ViolatingComponent(component.componentName, component.componentVersionName,
+                                    hubService.getFirstLinkSafely(component, VersionBomComponentView.POLICY_RULES_LINK)));
+                        }
+                    }
+                    reader.endArray();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            return new ComponentPage(totalCount, components);
+        }
+
+        private List<String> getRuleNames(final String policyRulesLink) throws IntegrationException {
+            return HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<List<String>>() {
+                @Override
+                public List<String> execute() throws IntegrationException {
+                    final List<String> ruleNames = new ArrayList<>();
+                    for (final PolicyRuleViewV2 rule : hubService.getAllResponses(policyRulesLink, PolicyRuleViewV2.class)) {
+                        ruleNames.add(rule.name);
+                    }
+                    return ruleNames;
+                }
+            });
+        }
+    }
+
+    /**
+     * A page of the components in violation as read from the response, before their rules are fetched.
+     */
+    private static class ComponentPage {
+        private final int totalCount;
+
+        private final List<ViolatingComponent> components;
+
+        private ComponentPage(final int totalCount, final List<ViolatingComponent> components) {
+            this.totalCount = totalCount;
+            this.components = components;
+        }
+    }
+
+    private static class ViolatingComponent {
+        private final String componentName;
+
+        private final String componentVersionName;
+
+        private final String policyRulesLink;
+
+        private ViolatingComponent(final String componentName, final String componentVersionName, final String policyRulesLink) {
+            this.componentName = componentName;
+            this.componentVersionName = componentVersionName;
+            this.policyRulesLink = policyRulesLink;
+        }
+    }
+
+}
@@ -29,14 +29,15 @@ import java.util.Map;
 import org.apache.commons.lang3.StringUtils;
 
 import com.blackducksoftware.integration.exception.EncryptionException;
+import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
 import com.blackducksoftware.integration.hub.configuration.HubServerConfigBuilder;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
 import com.blackducksoftware.integration.hub.jenkins.exceptions.BDJenkinsHubPluginException;
 import com.blackducksoftware.integration.hub.rest.RestConnection;
-import com.blackducksoftware.integration.hub.service.HubServicesFactory;
 import com.blackducksoftware.integration.log.IntLogger;
-import com.blackducksoftware.integration.log.LogLevel;
-import com.blackducksoftware.integration.log.PrintStreamIntLogger;
 
 import hudson.ProxyConfiguration;
 import hudson.Util;
@@ -53,29 +54,45 @@ public class BuildHelper {
         return build.getResult() == null;
     }
 
-    public static HubServicesFactory getHubServicesFactory(final String serverUrl, final String username, final String password, final int hubTimeout) throws EncryptionException, MalformedURLException {
+    public static PooledHubServicesFactory getHubServicesFactory(final String serverUrl, final String username, final String password, final int hubTimeout) throws IntegrationException {
 
         return getHubServicesFactory(null, serverUrl, username, password, hubTimeout);
     }
 
-    public static HubServicesFactory getHubServicesFactory(final IntLogger logger, final String serverUrl, final String username, final String password, final int hubTimeout) throws EncryptionException, MalformedURLException {
+    public static PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final String serverUrl, final String username, final String password, final int hubTimeout) throws IntegrationException {
         return getHubServicesFactory(logger, serverUrl, username, password, hubTimeout, false);
     }
 
-    public static HubServicesFactory getHubServicesFactory(IntLogger logger, final String serverUrl, final String username, final String password, final int hubTimeout, final boolean shouldTrustSSLCertificates)
-            throws EncryptionException, MalformedURLException {
-        if (logger == null) {
-            logger = new PrintStreamIntLogger(System.out, LogLevel.INFO);
-        }
-        final HubServicesFactory service = new HubServicesFactory(getRestConnection(logger, serverUrl, username, password, Integer.toString(hubTimeout), shouldTrustSSLCertificates));
-        return service;
+    public static PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final String serverUrl, final String username, final String password, final int hubTimeout, final boolean shouldTrustSSLCertificates)
+            throws IntegrationException {
+        final HubServerConfigBuilder hubServerConfigBuilder = new HubServerConfigBuilder();
+        hubServerConfigBuilder.setHubUrl(serverUrl);
+        hubServerConfigBuilder.setUsername(username);
+        hubServerConfigBuilder.setPassword(password);
+        hubServerConfigBuilder.setTimeout(hubTimeout);
+        hubServerConfigBuilder.setAlwaysTrustServerCertificate(shouldTrustSSLCertificates);
+
+        return getHubServicesFactory(logger, null, getHubServerConfig(serverUrl, hubServerConfigBuilder));
+    }
+
+    /**
+     * Returns a services factory that uses the pooled, already authenticated, connection for this Hub server configuration. The factory has to be closed once the caller is done with it.
+     */
+    public static PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final HubServerInfo serverInfo) throws IntegrationException {
+        return getHubServicesFactory(logger, serverInfo.getCredentialsId(), getHubServerConfig(serverInfo));
     }
 
-    public static HubServicesFactory getHubServicesFactory(final IntLogger logger, final HubServerConfig hubServerConfig) throws EncryptionException, IllegalArgumentException {
-        final HubServicesFactory service = new HubServicesFactory(getRestConnection(logger, hubServerConfig));
-        return service;
+    public static PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final HubServerConfig hubServerConfig) throws IntegrationException {
+        return getHubServicesFactory(logger, null, hubServerConfig);
     }
 
+    public static PooledHubServicesFactory getHubServicesFactory(final IntLogger logger, final String credentialsId, final HubServerConfig hubServerConfig) throws IntegrationException {
+        return HubConnectionManager.getInstance().getHubServicesFactory(logger, credentialsId, hubServerConfig);
+    }
+
+    /**
+     * Creates a new, not pooled, connection. Used when the connection must log to the build, or when the connection settings are being tested.
+     */
     public static RestConnection getRestConnection(final IntLogger logger, final HubServerConfig hubServerConfig) throws EncryptionException, IllegalArgumentException {
         return hubServerConfig.createCredentialsRestConnection(logger);
     }
@@ -103,6 +120,29 @@ public class BuildHelper {
     }
 
     private static RestConnection getRestConnection(final IntLogger logger, final String serverUrl, final HubServerConfigBuilder hubServerConfigBuilder) throws EncryptionException, MalformedURLException {
+        return getHubServerConfig(serverUrl, hubServerConfigBuilder).createCredentialsRestConnection(logger);
+    }
+
+    public static RestConnection getRestConnection(final IntLogger logger, final HubServerConfigBuilder hubServerConfigBuilder, final String proxyHost, final Integer proxyPort, final String proxyUser, final String proxyPassword)
+            throws EncryptionException {
+        return getHubServerConfig(hubServerConfigBuilder, proxyHost, proxyPort, proxyUser, proxyPassword).createCredentialsRestConnection(logger);
+    }
+
+    /**
+     * Builds the Hub server configuration for the global Hub server information, including the Jenkins proxy settings.
+     */
+    public static HubServerConfig getHubServerConfig(final HubServerInfo serverInfo) {
+        final HubServerConfigBuilder hubServerConfigBuilder = new HubServerConfigBuilder();
+        hubServerConfigBuilder.setHubUrl(serverInfo.getServerUrl());
+        hubServerConfigBuilder.setUsername(serverInfo.getUsername());
+        hubServerConfigBuilder.setPassword(serverInfo.getPassword());
+        hubServerConfigBuilder.setTimeout(serverInfo.getTimeout());
+        hubServerConfigBuilder.setAlwaysTrustServerCertificate(serverInfo.shouldTrustSSLCerts());
+
+        return getHubServerConfig(serverInfo.getServerUrl(), hubServerConfigBuilder);
+    }
+
+    private static HubServerConfig getHubServerConfig(final String serverUrl, final HubServerConfigBuilder hubServerConfigBuilder) {
         final Jenkins jenkins = Jenkins.getInstance();
         String proxyHost = null;
         Integer proxyPort = null;
@@ -120,11 +160,10 @@ public class BuildHelper {
             }
         }
 
-        return getRestConnection(logger, hubServerConfigBuilder, proxyHost, proxyPort, proxyUser, proxyPassword);
+        return getHubServerConfig(hubServerConfigBuilder, proxyHost, proxyPort, proxyUser, proxyPassword);
     }
 
-    public static RestConnection getRestConnection(final IntLogger logger, final HubServerConfigBuilder hubServerConfigBuilder, final String proxyHost, final Integer proxyPort, final String proxyUser, final String proxyPassword)
-            throws EncryptionException {
+    private static HubServerConfig getHubServerConfig(final HubServerConfigBuilder hubServerConfigBuilder, final String proxyHost, final Integer proxyPort, final String proxyUser, final String proxyPassword) {
         if (StringUtils.isNotBlank(proxyHost) && proxyPort != null) {
             hubServerConfigBuilder.setProxyHost(proxyHost);
             hubServerConfigBuilder.setProxyPort(proxyPort);
@@ -135,8 +174,7 @@ public class BuildHelper {
             }
         }
 
-        final HubServerConfig hubServerConfig = hubServerConfigBuilder.build();
-        return hubServerConfig.createCredentialsRestConnection(logger);
+        return hubServerConfigBuilder.build();
     }
 
     public static String handleVariableReplacement(final Map<String, String> variables, final String value) throws BDJenkinsHubPluginException {
@@ -0,0 +1,244 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.phonehome;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
+import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
+import com.blackducksoftware.integration.hub.service.PhoneHomeService;
+import com.blackducksoftware.integration.phonehome.PhoneHomeRequestBody;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Sends the phone home data off the build thread. Requests go through a small bounded queue, and each plugin version phones home to a given Hub at most once per interval from this controller, so builds never wait on the phone
+ * home endpoint.
+ */
+public class PhoneHomeQueue {
+
+    private static final Logger LOGGER = Logger.getLogger(PhoneHomeQueue.class.getName());
+
+    public static final int QUEUE_CAPACITY = Integer.getInteger(PhoneHomeQueue.class.getName() + ".queueCapacity", 20);
+
+    public static final long PHONE_HOME_INTERVAL = TimeUnit.HOURS.toMillis(Long.getLong(PhoneHomeQueue.class.getName() + ".intervalHours", 24));
+
+    /**
+     * After a failure we try again after this delay instead of waiting for the full interval.
+     */
+    public static final long RETRY_DELAY = TimeUnit.HOURS.toMillis(1);
+
+    private final static PhoneHomeQueue _instance = new PhoneHomeQueue(QUEUE_CAPACITY, PHONE_HOME_INTERVAL, RETRY_DELAY, new HubSender());
+
+    private final ConcurrentMap<String, Long> lastPhoneHome = new ConcurrentHashMap<>();
+
+    private final AtomicLong submitted = new AtomicLong();
+
+    private final AtomicLong skipped = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private final AtomicLong sent = new AtomicLong();
+
+    private final AtomicLong failed = new AtomicLong();
+
+    private final long interval;
+
+    private final long retryDelay;
+
+    private final Sender sender;
+
+    private final ThreadPoolExecutor executor;
+
+    PhoneHomeQueue(final int queueCapacity, final long interval, final long retryDelay, final Sender sender) {
+        this.interval = interval;
+        this.retryDelay = retryDelay;
+        this.sender = sender;
+        executor = new ThreadPoolExecutor(1, 1, 60L, TimeUnit.SECONDS, new ArrayBlockingQueue<Runnable>(queueCapacity), new NamingThreadFactory(new DaemonThreadFactory(), "Black Duck Hub phone home"),
+                new RejectedExecutionHandler() {
+                    @Override
+                    public void rejectedExecution(final Runnable runnable, final ThreadPoolExecutor executor) {
+                        dropped.incrementAndGet();
+                        if (runnable instanceof PhoneHomeTask) {
+                            ((PhoneHomeTask) runnable).release();
+                        }
+                    }
+                });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    public static PhoneHomeQueue getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Queues a phone home for this plugin version and Hub, unless one was already sent or queued within the interval. Never blocks.
+     * @return true if a phone home request was queued
+     */
+    public boolean submit(final String credentialsId, final HubServerConfig hubServerConfig, final String pluginVersion, final String jenkinsVersion) {
+        final String key = pluginVersion + "|" + hubServerConfig.getHubUrl();
+        final long now = System.currentTimeMillis();
+        final Long previous = lastPhoneHome.get(key);
+        final boolean reserved;
+        if (previous == null) {
+            reserved = lastPhoneHome.putIfAbsent(key, now) == null;
+        } else if (now - previous >= interval) {
+            reserved = lastPhoneHome.replace(key, previous, now);
+        } else {
+            reserved = false;
+        }
+        if (!reserved) {
+            skipped.incrementAndGet();
+            return false;
+        }
+        final PhoneHomeTask task = new PhoneHomeTask(key, now, credentialsId, hubServerConfig, pluginVersion, jenkinsVersion);
+        executor.execute(task);
+        if (task.released) {
+            return false;
+        }
+        submitted.incrementAndGet();
+        return true;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getSkippedCount() {
+        return skipped.get();
+    }
+
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    public long getSentCount() {
+        return sent.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    public int getQueueDepth() {
+        return executor.getQueue().size();
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        builder.append("PhoneHomeQueue [submitted=");
+        builder.append(getSubmittedCount());
+        builder.append(", skipped=");
+        builder.append(getSkippedCount());
+        builder.append(", dropped=");
+        builder.append(getDroppedCount());
+        builder.append(", sent=");
+        builder.append(getSentCount());
+        builder.append(", failed=");
+        builder.append(getFailedCount());
+        builder.append(", queueDepth=");
+        builder.append(getQueueDepth());
+        builder.append("]");
+        return builder.toString();
+    }
+
+    private class PhoneHomeTask implements Runnable {
+        private final String key;
+
+        private final long reservedAt;
+
+        private final String credentialsId;
+
+        private final HubServerConfig hubServerConfig;
+
+        private final String pluginVersion;
+
+        private final String jenkinsVersion;
+
+        private volatile boolean released;
+
+        public PhoneHomeTask(final String key, final long reservedAt, final String credentialsId, final HubServerConfig hubServerConfig, final String pluginVersion, final String jenkinsVersion) {
+            this.key = key;
+            this.reservedAt = reservedAt;
+            this.credentialsId = credentialsId;
+            this.hubServerConfig = hubServerConfig;
+            this.pluginVersion = pluginVersion;
+            this.jenkinsVersion = jenkinsVersion;
+        }
+
+        @Override
+        public void run() {
+            try {
+                sender.phoneHome(credentialsId, hubServerConfig, pluginVersion, jenkinsVersion);
+                sent.incrementAndGet();
+            } catch (final Exception e) {
+                LOGGER.log(Level.FINE, "Could not phone home to " + hubServerConfig.getHubUrl(), e);
+                // try again sooner than the full interval
+                lastPhoneHome.replace(key, reservedAt, reservedAt - interval + retryDelay);
+                failed.incrementAndGet();
+            }
+        }
+
+        /**
+         * Gives up the reservation when the request could not even be queued, so a later build can try again.
+         */
+        public void release() {
+            released = true;
+            lastPhoneHome.remove(key, reservedAt);
+        }
+    }
+
+    /**
+     * Sends one phone home request.
+     */
+    interface Sender {
+        void phoneHome(String credentialsId, HubServerConfig hubServerConfig, String pluginVersion, String jenkinsVersion) throws Exception;
+    }
+
+    private static class HubSender implements Sender {
+        @Override
+        public void phoneHome(final String credentialsId, final HubServerConfig hubServerConfig, final String pluginVersion, final String jenkinsVersion) throws Exception {
+            try (final PooledHubServicesFactory services = BuildHelper.getHubServicesFactory(null, credentialsId, hubServerConfig)) {
+                final PhoneHomeService phoneHomeService = services.createPhoneHomeService();
+                final PhoneHomeRequestBody.Builder builder = phoneHomeService.createInitialPhoneHomeRequestBodyBuilder();
+                builder.setArtifactId("blackduck-hub");
+                builder.setArtifactVersion(pluginVersion);
+                builder.addToMetaData("jenkins.version", jenkinsVersion);
+                phoneHomeService.phoneHome(builder);
+            }
+        }
+    }
+
+}
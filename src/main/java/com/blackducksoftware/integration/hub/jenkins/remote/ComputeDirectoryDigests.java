@@ -0,0 +1,69 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import hudson.remoting.Callable;
+
+/**
+ * Computes the per directory digests of the scan targets on the node, see {@link DirectoryDigester}. Only the digests travel back over the channel, so
+ * the caller can tell what changed in a large workspace without reading it.
+ */
+public class ComputeDirectoryDigests implements Callable<ArrayList<DirectoryDigests>, IOException> {
+    private static final long serialVersionUID = -4120858262406371570L;
+
+    private final String workingDirectory;
+
+    private final List<String> scanTargetPaths;
+
+    private final String[] excludePatterns;
+
+    public ComputeDirectoryDigests(final String workingDirectory, final List<String> scanTargetPaths, final String[] excludePatterns) {
+        this.workingDirectory = workingDirectory;
+        this.scanTargetPaths = scanTargetPaths;
+        this.excludePatterns = excludePatterns;
+    }
+
+    @Override
+    public ArrayList<DirectoryDigests> call() throws IOException {
+        final DirectoryDigester digester = new DirectoryDigester(workingDirectory, excludePatterns);
+        final ArrayList<DirectoryDigests> digests = new ArrayList<>();
+        for (final String scanTargetPath : scanTargetPaths) {
+            digests.add(digester.digest(new File(scanTargetPath)));
+        }
+        return digests;
+    }
+
+    @Override
+    public void checkRoles(final RoleChecker checker) throws SecurityException {
+        checker.check(this, new Role(ComputeDirectoryDigests.class));
+    }
+}
@@ -0,0 +1,442 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Computes Merkle style digests of a file tree on the node. A file digests to the hash of its content, and a directory to the hash of the types, names and
+ * digests of its children in name order, so any added, removed, renamed or modified file, and any file replaced by a directory or a link, changes the digest of
+ * every directory above it.
+ * <p>
+ * The tree is walked once with {@link Files#walkFileTree}, then the files are hashed on a {@link ForkJoinPool}. Large files are read from their
+ * {@link FileChannel} into a direct buffer each thread reuses, and files larger than a region digest to the hash of their region digests so the regions can be
+ * hashed in parallel. Files are never memory mapped, a mapping keeps its file open until it is garbage collected, which on Windows keeps the file locked.
+ * <p>
+ * Directories matching the scan exclusion patterns are left out, the same way the CLI leaves them out of the scan, and so are the scan logs the plugin writes
+ * into the workspace. Symbolic links digest to where they point and are never followed. A file or directory that can not be read counts as an unreadable
+ * entry of its directory instead of failing the digest, the scanner can not read it either.
+ */
+public class DirectoryDigester {
+    public static final int PARALLELISM = Integer.getInteger(DirectoryDigester.class.getName() + ".parallelism", Runtime.getRuntime().availableProcessors());
+
+    /**
+     * Files larger than this are read through the buffer of the thread instead of being read onto the heap as a whole.
+     */
+    public static final long LARGE_FILE_THRESHOLD = Long.getLong(DirectoryDigester.class.getName() + ".largeFileThreshold", 1024L * 1024L);
+
+    public static final long REGION_SIZE = Long.getLong(DirectoryDigester.class.getName() + ".regionSize", 64L * 1024L * 1024L);
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private static final String ALGORITHM = "SHA-256";
+
+    private static final byte FILE = 'F';
+
+    private static final byte DIRECTORY = 'D';
+
+    private static final byte LINK = 'L';
+
+    private static final byte UNREADABLE = 'U';
+
+    private static final ThreadLocal<ByteBuffer> BUFFERS = new ThreadLocal<ByteBuffer>() {
+        @Override
+        protected ByteBuffer initialValue() {
+            return ByteBuffer.allocateDirect(BUFFER_SIZE);
+        }
+    };
+
+    private final File workingDirectory;
+
+    private final ScanExclusions exclusions;
+
+    public DirectoryDigester(final String workingDirectory, final String[] excludePatterns) {
+        this.workingDirectory = new File(workingDirectory);
+        this.exclusions = new ScanExclusions(excludePatterns);
+    }
+
+    public DirectoryDigests digest(final File target) throws IOException {
+        final Map<String, String> directoryDigests = new ConcurrentHashMap<>();
+        if (!target.exists()) {
+            return new DirectoryDigests(target.getPath(), directoryDigests, 0L, 0L);
+        }
+
+        final TreeWalker treeWalker = new TreeWalker();
+        Files.walkFileTree(target.toPath(), treeWalker);
+
+        final ForkJoinPool pool = new ForkJoinPool(Math.max(PARALLELISM, 1));
+        try {
+            final byte[] rootDigest = pool.invoke(treeWalker.getRoot().createTask(directoryDigests));
+            directoryDigests.put(DirectoryDigests.ROOT, toHex(rootDigest));
+        } finally {
+            pool.shutdownNow();
+        }
+        return new DirectoryDigests(target.getPath(), directoryDigests, treeWalker.getFileCount(), treeWalker.getSize());
+    }
+
+    /**
+     * The scan logs are written into the workspace by the scan itself, so they would otherwise change the digest of every build.
+     */
+    private boolean isIgnored(final Path path) {
+        return workingDirectory.toPath().equals(path.getParent()) && "HubScanLogs".equals(path.getFileName().toString());
+    }
+
+    private boolean isExcluded(final String relativePath) {
+        return exclusions.isExcluded(relativePath);
+    }
+
+    private static MessageDigest createMessageDigest() {
+        try {
+            return MessageDigest.getInstance(ALGORITHM);
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(ALGORITHM + " is not available", e);
+        }
+    }
+
+    private static String toHex(final byte[] bytes) {
+        final StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (final byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16));
+            hex.append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    /**
+     * Builds the tree of nodes to hash. Walking is cheap compared to hashing, so it is done on the calling thread.
+     */
+    private class TreeWalker extends SimpleFileVisitor<Path> {
+        private final Deque<DirectoryNode> directories = new ArrayDeque<>();
+
+        private Node root;
+
+        private long fileCount;
+
+        private long size;
+
+        public Node getRoot() {
+            return root;
+        }
+
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) {
+            final DirectoryNode parent = directories.peek();
+            final DirectoryNode node;
+            if (parent == null) {
+                node = new DirectoryNode(DirectoryDigests.ROOT);
+                root = node;
+            } else {
+                if (isIgnored(directory)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                final String name = directory.getFileName().toString();
+                final String relativePath = parent.relativePath + name + "/";
+                if (isExcluded(relativePath)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                node = new DirectoryNode(relativePath);
+                parent.children.put(name, node);
+            }
+            directories.push(node);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(final Path file, final BasicFileAttributes attributes) throws IOException {
+            if (isIgnored(file)) {
+                return FileVisitResult.CONTINUE;
+            }
+            final Node node;
+            if (attributes.isSymbolicLink()) {
+                node = new LinkNode(Files.readSymbolicLink(file).toString());
+            } else if (attributes.isRegularFile()) {
+                node = new FileNode(file, attributes.size());
+                fileCount++;
+                size += attributes.size();
+            } else {
+                return FileVisitResult.CONTINUE;
+            }
+
+            addNode(file, node);
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(final Path file, final IOException e) {
+            final DirectoryNode parent = directories.peek();
+            if (parent != null && (isIgnored(file) || isExcluded(parent.relativePath + file.getFileName().toString() + "/"))) {
+                return FileVisitResult.CONTINUE;
+            }
+            addNode(file, new UnreadableNode());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(final Path directory, final IOException e) {
+            final DirectoryNode node = directories.pop();
+            if (e != null) {
+                // the entries listed before the failure are not all there is
+                node.unreadable = true;
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private void addNode(final Path file, final Node node) {
+            final DirectoryNode parent = directories.peek();
+            if (parent == null) {
+                // the target is a single file
+                root = node;
+            } else {
+                parent.children.put(file.getFileName().toString(), node);
+            }
+        }
+    }
+
+    private abstract static class Node {
+        /**
+         * @return the type of the node, only known for certain once its task has completed
+         */
+        public abstract byte getType();
+
+        public abstract ForkJoinTask<byte[]> createTask(Map<String, String> directoryDigests);
+    }
+
+    private static class DirectoryNode extends Node {
+        private final String relativePath;
+
+        private final TreeMap<String, Node> children = new TreeMap<>();
+
+        private boolean unreadable;
+
+        public DirectoryNode(final String relativePath) {
+            this.relativePath = relativePath;
+        }
+
+        @Override
+        public byte getType() {
+            return unreadable ? UNREADABLE : DIRECTORY;
+        }
+
+        @Override
+        public ForkJoinTask<byte[]> createTask(final Map<String, String> directoryDigests) {
+            return new RecursiveTask<byte[]>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected byte[] compute() {
+                    final List<ForkJoinTask<byte[]>> childTasks = new ArrayList<>(children.size());
+                    for (final Node child : children.values()) {
+                        childTasks.add(child.createTask(directoryDigests).fork());
+                    }
+                    final MessageDigest messageDigest = createMessageDigest();
+                    int index = 0;
+                    for (final Map.Entry<String, Node> child : children.entrySet()) {
+                        final byte[] childDigest = childTasks.get(index).join();
+                        messageDigest.update(child.getValue().getType());
+                        messageDigest.update(child.getKey().getBytes(StandardCharsets.UTF_8));
+                        messageDigest.update((byte) 0);
+                        messageDigest.update(childDigest);
+                        index++;
+                    }
+                    final byte[] digest = messageDigest.digest();
+                    directoryDigests.put(relativePath, toHex(digest));
+                    return digest;
+                }
+            };
+        }
+    }
+
+    private static class LinkNode extends Node {
+        private final String linkTarget;
+
+        public LinkNode(final String linkTarget) {
+            this.linkTarget = linkTarget;
+        }
+
+        @Override
+        public byte getType() {
+            return LINK;
+        }
+
+        @Override
+        public ForkJoinTask<byte[]> createTask(final Map<String, String> directoryDigests) {
+            return ForkJoinTask.adapt(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return createMessageDigest().digest(linkTarget.getBytes(StandardCharsets.UTF_8));
+                }
+            });
+        }
+    }
+
+    private static class FileNode extends Node {
+        private final Path path;
+
+        private final long size;
+
+        private volatile boolean unreadable;
+
+        public FileNode(final Path path, final long size) {
+            this.path = path;
+            this.size = size;
+        }
+
+        @Override
+        public byte getType() {
+            return unreadable ? UNREADABLE : FILE;
+        }
+
+        @Override
+        public ForkJoinTask<byte[]> createTask(final Map<String, String> directoryDigests) {
+            return new RecursiveTask<byte[]>() {
+                private static final long serialVersionUID = 1L;
+
+                @Override
+                protected byte[] compute() {
+                    try {
+                        if (size <= LARGE_FILE_THRESHOLD) {
+                            return createMessageDigest().digest(Files.readAllBytes(path));
+                        }
+                        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                            if (size <= REGION_SIZE) {
+                                return digestRegion(channel, 0, size);
+                            }
+                            final List<ForkJoinTask<byte[]>> regionTasks = new ArrayList<>();
+                            for (long position = 0; position < size; position += REGION_SIZE) {
+                                regionTasks.add(new RegionTask(channel, position, Math.min(REGION_SIZE, size - position)).fork());
+                            }
+                            final MessageDigest messageDigest = createMessageDigest();
+                            for (final ForkJoinTask<byte[]> regionTask : regionTasks) {
+                                messageDigest.update(regionTask.join());
+                            }
+                            return messageDigest.digest();
+                        }
+                    } catch (final IOException | UncheckedIOException e) {
+                        unreadable = true;
+                        return createMessageDigest().digest();
+                    }
+                }
+            };
+        }
+    }
+
+    /**
+     * A file or directory whose attributes or entries could not be read.
+     */
+    private static class UnreadableNode extends Node {
+        @Override
+        public byte getType() {
+            return UNREADABLE;
+        }
+
+        @Override
+        public ForkJoinTask<byte[]> createTask(final Map<String, String> directoryDigests) {
+            return ForkJoinTask.adapt(new Callable<byte[]>() {
+                @Override
+                public byte[] call() {
+                    return createMessageDigest().digest();
+                }
+            });
+        }
+    }
+
+    private static class RegionTask extends RecursiveTask<byte[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final transient FileChannel channel;
+
+        private final long position;
+
+        private final long length;
+
+        public RegionTask(final FileChannel channel, final long position, final long length) {
+            this.channel = channel;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        protected byte[] compute() {
+            try {
+                return digestRegion(channel, position, length);
+            } catch (final IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    /**
+     * Reads the region with positional reads, so the regions of one channel can be read by several threads at once.
+     */
+    private static byte[] digestRegion(final FileChannel channel, final long position, final long length) throws IOException {
+        final ByteBuffer buffer = BUFFERS.get();
+        final MessageDigest messageDigest = createMessageDigest();
+        final long end = position + length;
+        long offset = position;
+        while (offset < end) {
+            buffer.clear();
+            buffer.limit((int) Math.min(buffer.capacity(), end - offset));
+            final int read = channel.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("The file got shorter while its digest was computed");
+            }
+            buffer.flip();
+            messageDigest.update(buffer);
+            offset += read;
+        }
+        return messageDigest.digest();
+    }
+}
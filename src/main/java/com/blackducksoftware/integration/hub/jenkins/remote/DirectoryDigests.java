@@ -0,0 +1,105 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * The digests of a scan target and of every directory below it, keyed by the directory path relative to the target with leading and trailing slashes. The
+ * target itself is "/", which for a single file target holds the digest of the file.
+ */
+public class DirectoryDigests implements Serializable {
+    private static final long serialVersionUID = 2766420011981537296L;
+
+    public static final String ROOT = "/";
+
+    private final String targetPath;
+
+    private final TreeMap<String, String> directoryDigests;
+
+    private final long fileCount;
+
+    private final long size;
+
+    public DirectoryDigests(final String targetPath, final Map<String, String> directoryDigests, final long fileCount, final long size) {
+        this.targetPath = targetPath;
+        this.directoryDigests = new TreeMap<>(directoryDigests);
+        this.fileCount = fileCount;
+        this.size = size;
+    }
+
+    public String getTargetPath() {
+        return targetPath;
+    }
+
+    /**
+     * @return the digest of the whole target, or an empty String if the target does not exist
+     */
+    public String getRootDigest() {
+        final String rootDigest = directoryDigests.get(ROOT);
+        return rootDigest == null ? "" : rootDigest;
+    }
+
+    public Map<String, String> getDirectoryDigests() {
+        return directoryDigests;
+    }
+
+    public long getFileCount() {
+        return fileCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return the directories that were added or whose contents changed since the given digests were taken, without the directories above them
+     */
+    public List<String> getChangedDirectories(final Map<String, String> previousDirectoryDigests) {
+        final List<String> changedDirectories = new ArrayList<>();
+        for (final Map.Entry<String, String> entry : directoryDigests.entrySet()) {
+            if (entry.getValue().equals(previousDirectoryDigests.get(entry.getKey()))) {
+                continue;
+            }
+            // a change below a directory changes the directory too, so only report the deepest ones
+            final String subdirectoryPrefix = entry.getKey();
+            final String nextKey = directoryDigests.higherKey(subdirectoryPrefix);
+            boolean hasChangedSubdirectory = false;
+            for (String key = nextKey; key != null && key.startsWith(subdirectoryPrefix); key = directoryDigests.higherKey(key)) {
+                if (!directoryDigests.get(key).equals(previousDirectoryDigests.get(key))) {
+                    hasChangedSubdirectory = true;
+                    break;
+                }
+            }
+            if (!hasChangedSubdirectory) {
+                changedDirectories.add(entry.getKey());
+            }
+        }
+        return changedDirectories;
+    }
+}
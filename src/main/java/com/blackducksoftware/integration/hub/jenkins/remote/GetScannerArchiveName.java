@@ -26,35 +26,38 @@ package com.blackducksoftware.integration.hub.jenkins.remote;
 import java.io.File;
 import java.io.IOException;
 
+import org.apache.commons.lang3.StringUtils;
 import org.jenkinsci.remoting.Role;
 import org.jenkinsci.remoting.RoleChecker;
 
+import com.blackducksoftware.integration.hub.cli.CLILocation;
+import com.blackducksoftware.integration.log.IntLogger;
+
 import hudson.remoting.Callable;
 
-public class DetermineTargetPath implements Callable<String, IOException> {
-    private static final long serialVersionUID = 3459269768733083577L;
+/**
+ * Returns the name of the scanner archive the Hub provides for the operating system of the node.
+ */
+public class GetScannerArchiveName implements Callable<String, IOException> {
+    private static final long serialVersionUID = 3519306263451862419L;
 
-    private final String workingDirectory;
+    private final IntLogger logger;
 
-    private final String target;
+    private final String hubUrl;
 
-    public DetermineTargetPath(final String workingDirectory, final String target) {
-        this.workingDirectory = workingDirectory;
-        this.target = target;
+    public GetScannerArchiveName(final IntLogger logger, final String hubUrl) {
+        this.logger = logger;
+        this.hubUrl = hubUrl;
     }
 
     @Override
     public String call() throws IOException {
-        final File tmpTarget = new File(target);
-        if (tmpTarget.isAbsolute()) {
-            return tmpTarget.getCanonicalPath();
-        } else {
-            return new File(workingDirectory, target).getCanonicalPath();
-        }
+        final String downloadUrl = new CLILocation(logger, new File(".")).getCLIDownloadUrl(logger, hubUrl);
+        return StringUtils.substringAfterLast(downloadUrl, "/");
     }
 
     @Override
     public void checkRoles(final RoleChecker checker) throws SecurityException {
-        checker.check(this, new Role(DetermineTargetPath.class));
+        checker.check(this, new Role(GetScannerArchiveName.class));
     }
 }
@@ -0,0 +1,257 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import com.blackducksoftware.integration.hub.cli.CLIDownloadUtility;
+import com.blackducksoftware.integration.hub.cli.CLILocation;
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
+import com.blackducksoftware.integration.hub.service.model.HostnameHelper;
+import com.blackducksoftware.integration.log.IntLogger;
+import com.blackducksoftware.integration.util.CIEnvironmentVariables;
+
+import hudson.EnvVars;
+import hudson.FilePath;
+import hudson.remoting.Callable;
+
+/**
+ * Installs the signature scanner of one Hub version into its own directory on the node, unless a verified installation is already there. Builds running at
+ * the same time on the node share the installation, the first one installs it while holding a lock on the directory and the others wait for it.
+ * <p>
+ * The installation is recorded in a marker file with the Hub version and a checksum of the scanner files. The checksum is verified the first time the
+ * installation is used in the agent JVM, and the scanner is installed again if it does not match.
+ */
+public class InstallHubScanner implements Callable<Boolean, IOException> {
+    private static final long serialVersionUID = -2406011716925328474L;
+
+    public static final String MARKER_FILE_NAME = "scanner.installed";
+
+    public static final String LOCK_FILE_NAME = ".lock";
+
+    public static final String SEED_ARCHIVE_NAME = "scanner-seed.zip";
+
+    // FileLock is held per JVM, so builds on the same agent have to be serialized before they try to lock the file
+    private static final ConcurrentMap<String, ReentrantLock> INSTALL_LOCKS = new ConcurrentHashMap<>();
+
+    private static final Set<String> VERIFIED_INSTALLATIONS = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+
+    private final IntLogger logger;
+
+    private final HubServerConfig hubServerConfig;
+
+    private final String installDirectory;
+
+    private final String hubVersion;
+
+    private final EnvVars envVars;
+
+    public InstallHubScanner(final IntLogger logger, final HubServerConfig hubServerConfig, final String installDirectory, final String hubVersion, final EnvVars envVars) {
+        this.logger = logger;
+        this.hubServerConfig = hubServerConfig;
+        this.installDirectory = installDirectory;
+        this.hubVersion = hubVersion;
+        this.envVars = envVars;
+    }
+
+    /**
+     * Returns true if the scanner was installed by this call, false if a verified installation was already there.
+     */
+    @Override
+    public Boolean call() throws IOException {
+        final File installDir = new File(installDirectory).getCanonicalFile();
+        if (!installDir.isDirectory() && !installDir.mkdirs()) {
+            throw new IOException("Could not create the scanner installation directory " + installDir.getPath());
+        }
+
+        final String key = installDir.getPath();
+        ReentrantLock installLock = INSTALL_LOCKS.get(key);
+        if (installLock == null) {
+            final ReentrantLock newLock = new ReentrantLock();
+            installLock = INSTALL_LOCKS.putIfAbsent(key, newLock);
+            if (installLock == null) {
+                installLock = newLock;
+            }
+        }
+
+        installLock.lock();
+        try (FileChannel lockChannel = FileChannel.open(new File(installDir, LOCK_FILE_NAME).toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+                FileLock fileLock = lockChannel.lock()) {
+            if (isInstalled(installDir)) {
+                // a build that started before the scanner was installed may have seeded it as well
+                final File seedArchive = new File(installDir, SEED_ARCHIVE_NAME);
+                FileUtils.deleteQuietly(seedArchive);
+                FileUtils.deleteQuietly(getChecksumFile(seedArchive));
+                logger.debug("Using the scanner for Hub " + hubVersion + " installed in " + installDir.getPath());
+                return false;
+            }
+            install(installDir);
+            VERIFIED_INSTALLATIONS.add(key + "|" + hubVersion);
+            return true;
+        } catch (final IOException e) {
+            throw e;
+        } catch (final Exception e) {
+            throw new IOException("Could not install the scanner for Hub " + hubVersion + " : " + e.getMessage(), e);
+        } finally {
+            installLock.unlock();
+        }
+    }
+
+    private boolean isInstalled(final File installDir) throws IOException {
+        final File marker = new File(installDir, MARKER_FILE_NAME);
+        if (!marker.isFile()) {
+            return false;
+        }
+        final List<String> lines = FileUtils.readLines(marker, StandardCharsets.UTF_8);
+        if (lines.size() < 2 || !hubVersion.equals(lines.get(0)) || !new CLILocation(logger, installDir).getCLIExists(logger)) {
+            return false;
+        }
+
+        final String key = installDir.getPath() + "|" + hubVersion;
+        if (VERIFIED_INSTALLATIONS.contains(key)) {
+            return true;
+        }
+        final String checksum = getChecksum(installDir);
+        if (!checksum.equals(lines.get(1))) {
+            logger.warn("The scanner installed in " + installDir.getPath() + " does not match its checksum, it will be installed again.");
+            return false;
+        }
+        VERIFIED_INSTALLATIONS.add(key);
+        return true;
+    }
+
+    private void install(final File installDir) throws Exception {
+        final CLILocation cliLocation = new CLILocation(logger, installDir);
+        final File marker = new File(installDir, MARKER_FILE_NAME);
+        FileUtils.deleteQuietly(marker);
+
+        final CIEnvironmentVariables ciEnvironmentVariables = new CIEnvironmentVariables();
+        ciEnvironmentVariables.putAll(envVars);
+
+        final File seedArchive = new File(installDir, SEED_ARCHIVE_NAME);
+        if (seedArchive.isFile() && !isSeedArchiveValid(seedArchive)) {
+            logger.warn("The scanner archive provided by the Jenkins controller does not match its checksum, the scanner will be downloaded from the Hub.");
+            FileUtils.deleteQuietly(seedArchive);
+        }
+        if (seedArchive.isFile()) {
+            logger.alwaysLog("Installing the scanner for Hub " + hubVersion + " from the archive provided by the Jenkins controller");
+            final File cliInstallDir = cliLocation.getCLIInstallDir();
+            FileUtils.deleteDirectory(cliInstallDir);
+            new FilePath(seedArchive).unzip(new FilePath(cliInstallDir));
+            FileUtils.deleteQuietly(seedArchive);
+            FileUtils.deleteQuietly(getChecksumFile(seedArchive));
+            FileUtils.writeStringToFile(cliLocation.createHubVersionFile(), hubVersion, StandardCharsets.UTF_8);
+            // the scanner library only downloads the scanner again if the Hub has a newer one than this installation
+            cliInstallDir.setLastModified(System.currentTimeMillis());
+            overrideCacerts(cliLocation, ciEnvironmentVariables);
+        } else {
+            logger.alwaysLog("Installing the scanner for Hub " + hubVersion + " in " + installDir.getPath());
+            final CLIDownloadUtility downloadUtility = new CLIDownloadUtility(logger, BuildHelper.getRestConnection(logger, hubServerConfig));
+            downloadUtility.performInstallation(installDir, ciEnvironmentVariables, hubServerConfig.getHubUrl().toString(), hubVersion, HostnameHelper.getMyHostname());
+        }
+
+        if (!cliLocation.getCLIExists(logger)) {
+            throw new IOException("The scanner could not be found in " + cliLocation.getCLIInstallDir().getPath() + " after the installation");
+        }
+        final File javaExec = cliLocation.getProvidedJavaExec();
+        if (javaExec != null && javaExec.exists()) {
+            javaExec.setExecutable(true);
+        }
+        FileUtils.writeStringToFile(marker, hubVersion + "\n" + getChecksum(installDir) + "\n", StandardCharsets.UTF_8);
+    }
+
+    private boolean isSeedArchiveValid(final File seedArchive) throws IOException {
+        final File checksumFile = getChecksumFile(seedArchive);
+        if (!checksumFile.isFile()) {
+            return true;
+        }
+        return sha256(seedArchive).equals(StringUtils.trim(FileUtils.readFileToString(checksumFile, StandardCharsets.UTF_8)));
+    }
+
+    public static File getChecksumFile(final File archive) {
+        return new File(archive.getPath() + ".sha256");
+    }
+
+    public static String sha256(final File file) throws IOException {
+        final MessageDigest messageDigest;
+        try {
+            messageDigest = MessageDigest.getInstance("SHA-256");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+        try (InputStream in = new DigestInputStream(Files.newInputStream(file.toPath()), messageDigest)) {
+            final byte[] buffer = new byte[64 * 1024];
+            while (in.read(buffer) != -1) {
+                // the digest is computed as the stream is read
+            }
+        }
+        final StringBuilder hex = new StringBuilder();
+        for (final byte b : messageDigest.digest()) {
+            hex.append(String.format("%02x", b));
+        }
+        return hex.toString();
+    }
+
+    private void overrideCacerts(final CLILocation cliLocation, final CIEnvironmentVariables ciEnvironmentVariables) throws IOException {
+        final String cacertsPath = ciEnvironmentVariables.getValue(CIEnvironmentVariables.BDS_CACERTS_OVERRIDE);
+        if (StringUtils.isNotBlank(cacertsPath) && new File(cacertsPath).isFile()) {
+            final File jreSecurityDirectory = cliLocation.getJreSecurityDirectory();
+            if (jreSecurityDirectory != null) {
+                FileUtils.copyFile(new File(cacertsPath), new File(jreSecurityDirectory, "cacerts"));
+            }
+        }
+    }
+
+    private String getChecksum(final File installDir) throws IOException {
+        final File cliInstallDir = new File(installDir, CLILocation.CLI_UNZIP_DIR);
+        return new DirectoryDigester(cliInstallDir.getPath(), null).digest(cliInstallDir).getRootDigest();
+    }
+
+    @Override
+    public void checkRoles(final RoleChecker checker) throws SecurityException {
+        checker.check(this, new Role(InstallHubScanner.class));
+    }
+}
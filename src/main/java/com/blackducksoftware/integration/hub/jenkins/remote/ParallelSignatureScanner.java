@@ -0,0 +1,396 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.component.ProjectRequest;
+import com.blackducksoftware.integration.hub.api.generated.discovery.ApiDiscovery;
+import com.blackducksoftware.integration.hub.api.generated.response.CurrentVersionView;
+import com.blackducksoftware.integration.hub.api.generated.view.CodeLocationView;
+import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
+import com.blackducksoftware.integration.hub.api.view.ScanSummaryView;
+import com.blackducksoftware.integration.hub.configuration.HubScanConfig;
+import com.blackducksoftware.integration.hub.configuration.HubScanConfigBuilder;
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.service.CodeLocationService;
+import com.blackducksoftware.integration.hub.service.HubService;
+import com.blackducksoftware.integration.hub.service.HubServicesFactory;
+import com.blackducksoftware.integration.hub.service.SignatureScannerService;
+import com.blackducksoftware.integration.hub.service.model.HostnameHelper;
+import com.blackducksoftware.integration.hub.service.model.ProjectVersionWrapper;
+import com.blackducksoftware.integration.log.IntLogger;
+import com.blackducksoftware.integration.util.CIEnvironmentVariables;
+
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import hudson.util.ProcessTree;
+
+/**
+ * Runs the signature scanner over several scan targets at the same time on the node. The CLI is installed and the Hub project version is created once, before
+ * any worker starts, and each worker gets its own log directory and an equal share of the scan memory. Mapping the new code locations, cleaning up the previous
+ * ones and waiting for the scans to finish happens once, after every target has been scanned. With a single worker the scan is left to the signature scanner
+ * service, as it always was, and the code locations it scanned into are found by the scans they gained.
+ */
+public class ParallelSignatureScanner {
+    /**
+     * The least memory, in megabytes, a single scanner process is given. Fewer workers are used when the scan memory can not be split that far.
+     */
+    public static final int MINIMUM_WORKER_MEMORY = 256;
+
+    public static final String PARALLEL_LOG_DIRECTORY = "HubScanLogs" + File.separator + "parallel";
+
+    /**
+     * Suffix of the directory next to the workspace that holds the worker logs, the same one Jenkins uses for the temporary files of a workspace.
+     */
+    private static final String WORKSPACE_TEMP_SUFFIX = "@tmp";
+
+    private final IntLogger logger;
+
+    private final HubServicesFactory services;
+
+    private final HubServerConfig hubServerConfig;
+
+    private final HubScanConfig hubScanConfig;
+
+    private final ProjectRequest projectRequest;
+
+    private final CIEnvironmentVariables ciEnvironmentVariables;
+
+    private final int workerCount;
+
+    private final boolean shouldWaitForScansFinished;
+
+    private final List<String> codeLocationNames = new ArrayList<>();
+
+    public ParallelSignatureScanner(final IntLogger logger, final HubServicesFactory services, final HubServerConfig hubServerConfig, final HubScanConfig hubScanConfig, final ProjectRequest projectRequest,
+            final CIEnvironmentVariables ciEnvironmentVariables, final int workerCount, final boolean shouldWaitForScansFinished) {
+        this.logger = logger;
+        this.services = services;
+        this.hubServerConfig = hubServerConfig;
+        this.hubScanConfig = hubScanConfig;
+        this.projectRequest = projectRequest;
+        this.ciEnvironmentVariables = ciEnvironmentVariables;
+        this.workerCount = workerCount;
+        this.shouldWaitForScansFinished = shouldWaitForScansFinished;
+    }
+
+    /**
+     * The number of scanner processes to run at once, never more than the number of targets and never so many that a worker gets less than
+     * {@link #MINIMUM_WORKER_MEMORY}.
+     */
+    public static int getWorkerCount(final int scanConcurrency, final int targetCount, final int scanMemory) {
+        int workers = Math.min(scanConcurrency, targetCount);
+        workers = Math.min(workers, scanMemory / MINIMUM_WORKER_MEMORY);
+        return Math.max(workers, 1);
+    }
+
+    public List<String> getCodeLocationNames() {
+        return codeLocationNames;
+    }
+
+    public ProjectVersionWrapper scan() throws InterruptedException, IntegrationException {
+        if (workerCount == 1) {
+            return scanSerially();
+        }
+        final HubService hubService = services.createHubService();
+        final String hostname = HostnameHelper.getMyHostname();
+        logger.info("Running on machine : " + hostname);
+        logger.alwaysLog(String.format("--> Scanning %d targets with %d parallel workers, %d MB each", hubScanConfig.getScanTargetPaths().size(), workerCount, getWorkerMemory()));
+        hubScanConfig.print(logger);
+
+        // check the Hub for a newer CLI once, so the workers do not race each other over the tools directory
+        final CurrentVersionView currentVersion = hubService.getResponse(ApiDiscovery.CURRENT_VERSION_LINK_RESPONSE);
+        services.createCliDownloadUtility().performInstallation(hubScanConfig.getToolsDir(), ciEnvironmentVariables, hubServerConfig.getHubUrl().toString(), currentVersion.version, hostname);
+
+        ProjectVersionWrapper projectVersionWrapper = null;
+        if (!hubScanConfig.isDryRun()) {
+            projectVersionWrapper = services.createProjectService().getProjectVersionAndCreateIfNeeded(projectRequest);
+        }
+        final List<File> scanSummaryFiles = runWorkers();
+        if (hubScanConfig.isDryRun()) {
+            return projectVersionWrapper;
+        }
+
+        final ProjectVersionView projectVersionView = projectVersionWrapper.getProjectVersionView();
+        final CodeLocationService codeLocationService = services.createCodeLocationService();
+        final List<ScanSummaryView> scanSummaries = new ArrayList<>();
+        final List<CodeLocationView> scannedCodeLocations = new ArrayList<>();
+        for (final File scanSummaryFile : scanSummaryFiles) {
+            final ScanSummaryView scanSummary;
+            try {
+                scanSummary = hubService.getGson().fromJson(FileUtils.readFileToString(scanSummaryFile, StandardCharsets.UTF_8), ScanSummaryView.class);
+            } catch (final IOException e) {
+                logger.trace("Error reading scan summary file", e);
+                continue;
+            }
+            scanSummaries.add(scanSummary);
+            final String codeLocationUrl = hubService.getFirstLinkSafely(scanSummary, ScanSummaryView.CODELOCATION_LINK);
+            if (StringUtils.isNotBlank(codeLocationUrl)) {
+                final CodeLocationView codeLocation = hubService.getResponse(codeLocationUrl, CodeLocationView.class);
+                // targets given the same code location name share it, it only has to be mapped once
+                if (!codeLocationNames.contains(codeLocation.name)) {
+                    codeLocationService.mapCodeLocation(codeLocation, projectVersionView);
+                    scannedCodeLocations.add(codeLocation);
+                    codeLocationNames.add(codeLocation.name);
+                }
+            }
+            scanSummaryFile.delete();
+        }
+
+        if (hubScanConfig.isDeletePreviousCodeLocations() || hubScanConfig.isUnmapPreviousCodeLocations()) {
+            final List<CodeLocationView> previousCodeLocations = getCodeLocationsNotJustScanned(hubService, projectVersionView, scannedCodeLocations);
+            if (hubScanConfig.isDeletePreviousCodeLocations()) {
+                codeLocationService.deleteCodeLocations(previousCodeLocations);
+            } else {
+                codeLocationService.unmapCodeLocations(previousCodeLocations);
+            }
+        }
+
+        if (shouldWaitForScansFinished) {
+            logger.debug("Waiting for the Bom to be updated.");
+            services.createScanStatusService(hubServerConfig.getTimeout() * 60 * 1000L).assertScansFinished(scanSummaries);
+        }
+        return projectVersionWrapper;
+    }
+
+    /**
+     * Scans every target in one CLI run through the signature scanner service. The scans the code locations of the project version have before and after the
+     * scan tell which code locations it uploaded to.
+     */
+    private ProjectVersionWrapper scanSerially() throws InterruptedException, IntegrationException {
+        final SignatureScannerService scannerService = services.createSignatureScannerService(hubServerConfig.getTimeout() * 60 * 1000L);
+        if (hubScanConfig.isDryRun()) {
+            return scannerService.installAndRunControlledScan(hubServerConfig, hubScanConfig, projectRequest, shouldWaitForScansFinished);
+        }
+        final HubService hubService = services.createHubService();
+        final ProjectVersionView versionBefore = services.createProjectService().getProjectVersionAndCreateIfNeeded(projectRequest).getProjectVersionView();
+        final Map<String, Set<String>> scansBefore = getScans(hubService, versionBefore);
+        final ProjectVersionWrapper projectVersionWrapper = scannerService.installAndRunControlledScan(hubServerConfig, hubScanConfig, projectRequest, shouldWaitForScansFinished);
+        codeLocationNames.addAll(getCodeLocationsWithNewScans(scansBefore, getScans(hubService, projectVersionWrapper.getProjectVersionView())));
+        return projectVersionWrapper;
+    }
+
+    /**
+     * @return the scans of every code location of the project version, by code location name
+     */
+    private Map<String, Set<String>> getScans(final HubService hubService, final ProjectVersionView projectVersionView) throws IntegrationException {
+        final Map<String, Set<String>> scans = new LinkedHashMap<>();
+        for (final CodeLocationView codeLocation : hubService.getAllResponses(projectVersionView, ProjectVersionView.CODELOCATIONS_LINK_RESPONSE)) {
+            final Set<String> scanUrls = new HashSet<>();
+            final String scansLink = hubService.getFirstLinkSafely(codeLocation, CodeLocationView.SCANS_LINK);
+            if (StringUtils.isNotBlank(scansLink)) {
+                for (final ScanSummaryView scanSummary : hubService.getAllResponses(scansLink, ScanSummaryView.class)) {
+                    scanUrls.add(hubService.getHref(scanSummary));
+                }
+            }
+            scans.put(codeLocation.name, scanUrls);
+        }
+        return scans;
+    }
+
+    /**
+     * @return the code locations that gained a scan, or are new, between the two listings
+     */
+    static List<String> getCodeLocationsWithNewScans(final Map<String, Set<String>> scansBefore, final Map<String, Set<String>> scansAfter) {
+        final List<String> names = new ArrayList<>();
+        for (final Map.Entry<String, Set<String>> codeLocation : scansAfter.entrySet()) {
+            final Set<String> before = scansBefore.get(codeLocation.getKey());
+            if (before == null || !before.containsAll(codeLocation.getValue())) {
+                names.add(codeLocation.getKey());
+            }
+        }
+        return names;
+    }
+
+    private List<File> runWorkers() throws InterruptedException, IntegrationException {
+        final ExecutorService executor = Executors.newFixedThreadPool(workerCount, new NamingThreadFactory(new DaemonThreadFactory(), "Black Duck Hub parallel scan"));
+        boolean finished = false;
+        try {
+            final List<Future<File[]>> results = new ArrayList<>();
+            final Map<String, String> targetCodeLocationNames = getCodeLocationNames(hubScanConfig.getCodeLocationAlias(), hubScanConfig.getScanTargetPaths());
+            int index = 0;
+            for (final String scanTargetPath : hubScanConfig.getScanTargetPaths()) {
+                final HubScanConfig workerScanConfig = createWorkerScanConfig(scanTargetPath, targetCodeLocationNames.get(scanTargetPath), index);
+                results.add(executor.submit(new Callable<File[]>() {
+                    @Override
+                    public File[] call() throws Exception {
+                        logger.info("Scanning target : " + scanTargetPath);
+                        final File[] scanSummaryFiles = services.createSignatureScannerService(hubServerConfig.getTimeout() * 60 * 1000L).runControlledScan(hubServerConfig, workerScanConfig, projectRequest);
+                        logger.info("Finished scanning target : " + scanTargetPath);
+                        return scanSummaryFiles;
+                    }
+                }));
+                index++;
+            }
+
+            final List<File> scanSummaryFiles = new ArrayList<>();
+            for (final Future<File[]> result : results) {
+                final File[] files = result.get();
+                if (files != null) {
+                    scanSummaryFiles.addAll(Arrays.asList(files));
+                }
+            }
+            finished = true;
+            return scanSummaryFiles;
+        } catch (final ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if (cause instanceof InterruptedException) {
+                throw (InterruptedException) cause;
+            } else if (cause instanceof IntegrationException) {
+                throw (IntegrationException) cause;
+            }
+            throw new IntegrationException(cause.getMessage(), cause);
+        } finally {
+            // a failed target fails the whole scan, so stop the targets that are still running
+            executor.shutdownNow();
+            if (!finished) {
+                destroyWorkerProcesses();
+            }
+        }
+    }
+
+    /**
+     * Interrupting a worker does not stop the CLI process it started, so the processes whose command line points into the worker log directories are killed.
+     * A process whose command line can not be read on the node is left running until it finishes on its own.
+     */
+    private void destroyWorkerProcesses() {
+        final String logDirectory = getParallelLogDirectory(hubScanConfig.getWorkingDirectory(), hubScanConfig.getToolsDir()).getAbsolutePath();
+        // the kill waits for the processes to go away, which an interrupted thread would not do
+        final boolean interrupted = Thread.interrupted();
+        try {
+            for (final ProcessTree.OSProcess process : ProcessTree.get()) {
+                if (isWorkerProcess(process.getArguments(), logDirectory)) {
+                    logger.info("Stopping the scanner process " + process.getPid());
+                    process.killRecursively();
+                }
+            }
+        } catch (final InterruptedException e) {
+            logger.warn("Interrupted while stopping the scanner processes");
+        } catch (final RuntimeException e) {
+            logger.warn("Could not stop the scanner processes : " + e.getMessage());
+        } finally {
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    static boolean isWorkerProcess(final List<String> arguments, final String logDirectory) {
+        for (final String argument : arguments) {
+            if (argument.contains(logDirectory)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private HubScanConfig createWorkerScanConfig(final String scanTargetPath, final String codeLocationName, final int index) {
+        final HubScanConfigBuilder builder = new HubScanConfigBuilder();
+        // every worker writes its CLI logs and status files to its own directory
+        builder.setWorkingDirectory(new File(getParallelLogDirectory(hubScanConfig.getWorkingDirectory(), hubScanConfig.getToolsDir()), String.valueOf(index)));
+        builder.setScanMemory(getWorkerMemory());
+        builder.addScanTargetPath(scanTargetPath);
+        builder.setDryRun(hubScanConfig.isDryRun());
+        builder.setToolsDir(hubScanConfig.getToolsDir());
+        builder.setCleanupLogsOnSuccess(hubScanConfig.isCleanupLogsOnSuccess());
+        builder.setExcludePatterns(hubScanConfig.getExcludePatterns());
+        builder.setCodeLocationAlias(codeLocationName);
+        builder.setDebug(hubScanConfig.isDebug());
+        builder.setVerbose(hubScanConfig.isVerbose());
+        builder.setSnippetModeEnabled(hubScanConfig.isSnippetModeEnabled());
+        // the targets were already checked when the complete configuration was built
+        builder.disableScanTargetPathExistenceCheck();
+        return builder.build();
+    }
+
+    private int getWorkerMemory() {
+        return Math.max(hubScanConfig.getScanMemory() / workerCount, MINIMUM_WORKER_MEMORY);
+    }
+
+    /**
+     * Names the code location of each target the way the scan of all targets in one CLI run does, so turning the parallel scan on or off keeps the code
+     * locations already on the Hub. Every target is given the configured code location name, or none at all to let the CLI name it.
+     */
+    static Map<String, String> getCodeLocationNames(final String codeLocationAlias, final List<String> scanTargetPaths) {
+        final Map<String, String> codeLocationNames = new LinkedHashMap<>();
+        for (final String scanTargetPath : scanTargetPaths) {
+            codeLocationNames.put(scanTargetPath, StringUtils.isBlank(codeLocationAlias) ? null : codeLocationAlias);
+        }
+        return codeLocationNames;
+    }
+
+    /**
+     * The worker logs are kept next to the workspace rather than in it, so the targets in the workspace never include them and the workspace is left as it
+     * was. A workspace without a parent directory keeps them in the tools directory.
+     */
+    public static File getParallelLogDirectory(final File workingDirectory, final File toolsDir) {
+        final File absoluteWorkingDirectory = workingDirectory.getAbsoluteFile();
+        final File parent = absoluteWorkingDirectory.getParentFile();
+        if (parent == null) {
+            return new File(toolsDir, PARALLEL_LOG_DIRECTORY);
+        }
+        return new File(new File(parent, absoluteWorkingDirectory.getName() + WORKSPACE_TEMP_SUFFIX), PARALLEL_LOG_DIRECTORY);
+    }
+
+    private List<CodeLocationView> getCodeLocationsNotJustScanned(final HubService hubService, final ProjectVersionView projectVersionView, final List<CodeLocationView> scannedCodeLocations)
+            throws IntegrationException {
+        return getCodeLocationsNotJustScanned(hubService.getAllResponses(projectVersionView, ProjectVersionView.CODELOCATIONS_LINK_RESPONSE), scannedCodeLocations);
+    }
+
+    /**
+     * @return the code locations of the project version that none of the targets was scanned into, the ones to unmap or delete
+     */
+    static List<CodeLocationView> getCodeLocationsNotJustScanned(final List<CodeLocationView> versionCodeLocations, final List<CodeLocationView> scannedCodeLocations) {
+        final Set<String> scannedNames = new HashSet<>();
+        for (final CodeLocationView codeLocation : scannedCodeLocations) {
+            scannedNames.add(codeLocation.name);
+        }
+        final List<CodeLocationView> previousCodeLocations = new ArrayList<>();
+        for (final CodeLocationView codeLocation : versionCodeLocations) {
+            if (!scannedNames.contains(codeLocation.name)) {
+                previousCodeLocations.add(codeLocation);
+            }
+        }
+        return previousCodeLocations;
+    }
+}
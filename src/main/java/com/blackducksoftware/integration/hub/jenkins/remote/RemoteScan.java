@@ -23,9 +23,20 @@
  */
 package com.blackducksoftware.integration.hub.jenkins.remote;
 
+import java.io.BufferedReader;
 import java.io.File;
 import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.filefilter.NameFileFilter;
+import org.apache.commons.io.filefilter.TrueFileFilter;
+import org.apache.commons.lang3.StringUtils;
 
 import org.jenkinsci.remoting.Role;
 import org.jenkinsci.remoting.RoleChecker;
@@ -36,15 +47,17 @@ import com.blackducksoftware.integration.hub.configuration.HubScanConfigBuilder;
 import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
 import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
 import com.blackducksoftware.integration.hub.service.HubServicesFactory;
-import com.blackducksoftware.integration.hub.service.SignatureScannerService;
 import com.blackducksoftware.integration.hub.service.model.ProjectRequestBuilder;
 import com.blackducksoftware.integration.hub.service.model.ProjectVersionWrapper;
 import com.blackducksoftware.integration.log.IntLogger;
+import com.blackducksoftware.integration.util.CIEnvironmentVariables;
 
 import hudson.EnvVars;
 import hudson.remoting.Callable;
 
 public class RemoteScan implements Callable<ScanResponse, IOException> {
+    private static final String CLI_OUTPUT_FILE_NAME = "CLI_Output.txt";
+
     private final IntLogger logger;
 
     private final String codeLocationName;
@@ -85,10 +98,19 @@ public class RemoteScan implements Callable<ScanResponse, IOException> {
 
     private final boolean shouldWaitForScansFinished;
 
+    private final int scanConcurrency;
+
+    private final boolean incrementalScan;
+
+    private final HashMap<String, String> previousTargetDigests;
+
+    private final String previousVersionJson;
+
     public RemoteScan(final IntLogger logger, final String codeLocationName, final String hubProjectName, final String hubProjectVersion, final String phase, final String distribution, final int scanMemory,
             final boolean projectLevelAdjustments, final String workingDirectoryPath, final List<String> scanTargetPaths, final boolean dryRun, final boolean cleanupOnSuccessfulScan, final String toolsDirectory,
             final HubServerConfig hubServerConfig, final boolean performWorkspaceCheck, final String[] excludePatterns, final EnvVars envVars,
-            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final boolean shouldWaitForScansFinished) {
+            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final boolean shouldWaitForScansFinished,
+            final int scanConcurrency, final boolean incrementalScan, final Map<String, String> previousTargetDigests, final String previousVersionJson) {
         this.logger = logger;
         this.codeLocationName = codeLocationName;
         this.hubProjectName = hubProjectName;
@@ -109,24 +131,70 @@ public class RemoteScan implements Callable<ScanResponse, IOException> {
         this.unmapPreviousCodeLocations = unmapPreviousCodeLocations;
         this.deletePreviousCodeLocations = deletePreviousCodeLocations;
         this.shouldWaitForScansFinished = shouldWaitForScansFinished;
+        this.scanConcurrency = scanConcurrency;
+        this.incrementalScan = incrementalScan;
+        this.previousTargetDigests = previousTargetDigests == null ? null : new HashMap<>(previousTargetDigests);
+        this.previousVersionJson = previousVersionJson;
     }
 
     @Override
     public ScanResponse call() throws IOException {
+        final long scanStarted = System.currentTimeMillis();
         try {
-            final HubServicesFactory services = BuildHelper.getHubServicesFactory(logger, hubServerConfig);
+            // runs on the node, so use a dedicated connection that logs to the build instead of the controller connection pool
+            final HubServicesFactory services = new HubServicesFactory(BuildHelper.getRestConnection(logger, hubServerConfig));
 
             services.addEnvironmentVariables(envVars);
-            final SignatureScannerService scannerService = services.createSignatureScannerService(hubServerConfig.getTimeout() * 60 * 1000);
 
             final File workingDirectory = new File(workingDirectoryPath);
             final File toolsDir = new File(toolsDirectory);
 
+            Map<String, String> targetDigests = null;
+            final List<String> skippedTargets = new ArrayList<>();
+            List<String> targetsToScan = scanTargetPaths;
+            if (incrementalScan) {
+                try {
+                    final DirectoryDigester digester = new DirectoryDigester(workingDirectoryPath, excludePatterns);
+                    targetDigests = new HashMap<>();
+                    for (final String scanTargetPath : scanTargetPaths) {
+                        targetDigests.put(scanTargetPath, digester.digest(new File(scanTargetPath)).getRootDigest());
+                    }
+                } catch (final IOException e) {
+                    logger.warn("Could not compute the scan target digests, all targets will be scanned : " + e.getMessage());
+                    targetDigests = null;
+                }
+            }
+            if (targetDigests != null && previousTargetDigests != null) {
+                final List<String> changedTargets = new ArrayList<>();
+                for (final String scanTargetPath : scanTargetPaths) {
+                    if (StringUtils.equals(targetDigests.get(scanTargetPath), previousTargetDigests.get(scanTargetPath))) {
+                        skippedTargets.add(scanTargetPath);
+                    } else {
+                        changedTargets.add(scanTargetPath);
+                    }
+                }
+                if (changedTargets.isEmpty()) {
+                    logger.alwaysLog("No scan target has changed since the last successful scan, reusing its results.");
+                    return new ScanResponse(previousVersionJson, null, targetDigests, skippedTargets);
+                } else if (!skippedTargets.isEmpty()) {
+                    if (canSkipUnchangedTargets()) {
+                        for (final String skippedTarget : skippedTargets) {
+                            logger.alwaysLog("Skipping unchanged scan target : " + skippedTarget);
+                        }
+                        targetsToScan = changedTargets;
+                    } else {
+                        // the other targets share the code location name, or would be unmapped, if they were left out of the scan
+                        logger.alwaysLog("Some scan targets have changed, all targets will be scanned because a code location name or the clean up of previous code locations is configured.");
+                        skippedTargets.clear();
+                    }
+                }
+            }
+
             final HubScanConfigBuilder hubScanConfigBuilder = new HubScanConfigBuilder();
             hubScanConfigBuilder.setDryRun(dryRun);
             hubScanConfigBuilder.setWorkingDirectory(workingDirectory);
             hubScanConfigBuilder.setScanMemory(scanMemory);
-            hubScanConfigBuilder.addAllScanTargetPaths(scanTargetPaths);
+            hubScanConfigBuilder.addAllScanTargetPaths(targetsToScan);
             hubScanConfigBuilder.setToolsDir(toolsDir);
             if (performWorkspaceCheck) {
                 hubScanConfigBuilder.enableScanTargetPathsWithinWorkingDirectoryCheck();
@@ -146,14 +214,59 @@ public class RemoteScan implements Callable<ScanResponse, IOException> {
 
             final HubScanConfig hubScanConfig = hubScanConfigBuilder.build();
             final ProjectRequest projectRequest = projectRequestBuilder.build();
-            final ProjectVersionWrapper projectVersionWrapper = scannerService.installAndRunControlledScan(hubServerConfig, hubScanConfig, projectRequest, shouldWaitForScansFinished);
-            return new ScanResponse(dryRun ? null : projectVersionWrapper.getProjectVersionView().json);
+
+            final int workerCount = ParallelSignatureScanner.getWorkerCount(scanConcurrency, hubScanConfig.getScanTargetPaths().size(), scanMemory);
+            if (workerCount == 1 && scanConcurrency > 1 && targetsToScan.size() > 1) {
+                logger.warn(String.format("Scan memory of %d MB is too small to split across workers, the targets will be scanned one after another.", scanMemory));
+            }
+            final CIEnvironmentVariables ciEnvironmentVariables = new CIEnvironmentVariables();
+            ciEnvironmentVariables.putAll(envVars);
+            // a single worker leaves the scan to the signature scanner service, the build learns the code locations it has to wait for either way
+            final ParallelSignatureScanner signatureScanner = new ParallelSignatureScanner(logger, services, hubServerConfig, hubScanConfig, projectRequest, ciEnvironmentVariables, workerCount,
+                    shouldWaitForScansFinished);
+            final ProjectVersionWrapper projectVersionWrapper = signatureScanner.scan();
+            final String versionJson = dryRun ? null : projectVersionWrapper.getProjectVersionView().json;
+            final List<String> codeLocationNames = signatureScanner.getCodeLocationNames();
+            return new ScanResponse(versionJson, codeLocationNames, targetDigests, skippedTargets);
         } catch (final InterruptedException e) {
             logger.error("BD remote scan thread was interrupted.");
             return new ScanResponse(e);
         } catch (final Exception e) {
-            return new ScanResponse(e);
+            return new ScanResponse(e, isOutOfMemory(new File(workingDirectoryPath, "HubScanLogs"), scanStarted)
+                    || isOutOfMemory(ParallelSignatureScanner.getParallelLogDirectory(new File(workingDirectoryPath), new File(toolsDirectory)), scanStarted));
+        }
+    }
+
+    /**
+     * Looks for an OutOfMemoryError in the scanner output written since the scan started. The output is kept in the scan logs when the scan fails.
+     */
+    private boolean isOutOfMemory(final File scanLogs, final long scanStarted) {
+        if (!scanLogs.isDirectory()) {
+            return false;
         }
+        for (final File cliOutput : FileUtils.listFiles(scanLogs, new NameFileFilter(CLI_OUTPUT_FILE_NAME), TrueFileFilter.INSTANCE)) {
+            if (cliOutput.lastModified() < scanStarted) {
+                continue;
+            }
+            try (BufferedReader reader = Files.newBufferedReader(cliOutput.toPath(), StandardCharsets.ISO_8859_1)) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.contains("java.lang.OutOfMemoryError")) {
+                        return true;
+                    }
+                }
+            } catch (final IOException e) {
+                logger.debug("Could not read the scanner output " + cliOutput.getPath() + " : " + e.getMessage());
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Leaving a target out of the scan only keeps its code location as it was if the target has a code location of its own that the scan does not unmap.
+     */
+    private boolean canSkipUnchangedTargets() {
+        return StringUtils.isBlank(codeLocationName) && !unmapPreviousCodeLocations && !deletePreviousCodeLocations;
     }
 
     @Override
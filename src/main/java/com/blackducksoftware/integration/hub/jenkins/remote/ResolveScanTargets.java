@@ -0,0 +1,169 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.jenkinsci.remoting.Role;
+import org.jenkinsci.remoting.RoleChecker;
+
+import hudson.remoting.Callable;
+
+/**
+ * Resolves the workspace and every scan target of a build in a single call to the node. Blank targets mean the workspace itself, and relative targets are
+ * resolved against the workspace.
+ * <p>
+ * Directory targets are only walked to measure the files the scanner will read when the scan memory is chosen automatically, walking a large workspace is
+ * not free. Directories matching the scan exclusion patterns are not counted, the scanner leaves them out.
+ */
+public class ResolveScanTargets implements Callable<ResolvedScanTargets, IOException> {
+    private static final long serialVersionUID = 5064427318741938517L;
+
+    private final String workingDirectory;
+
+    private final List<String> targets;
+
+    private final boolean measureTargets;
+
+    private final String[] excludePatterns;
+
+    public ResolveScanTargets(final String workingDirectory, final List<String> targets, final boolean measureTargets, final String[] excludePatterns) {
+        this.workingDirectory = workingDirectory;
+        this.targets = targets;
+        this.measureTargets = measureTargets;
+        this.excludePatterns = excludePatterns;
+    }
+
+    @Override
+    public ResolvedScanTargets call() throws IOException {
+        final String canonicalWorkingDirectory = new File(workingDirectory).getCanonicalPath();
+        final ScanExclusions exclusions = new ScanExclusions(excludePatterns);
+        final List<ResolvedScanTargets.ScanTarget> scanTargets = new ArrayList<>();
+        for (final String target : targets) {
+            scanTargets.add(resolve(canonicalWorkingDirectory, target, exclusions));
+        }
+        return new ResolvedScanTargets(canonicalWorkingDirectory, scanTargets, getAvailableMemory());
+    }
+
+    private ResolvedScanTargets.ScanTarget resolve(final String canonicalWorkingDirectory, final String target, final ScanExclusions exclusions) {
+        File file;
+        if (StringUtils.isBlank(target)) {
+            file = new File(canonicalWorkingDirectory);
+        } else if (new File(target).isAbsolute()) {
+            file = new File(target);
+        } else {
+            file = new File(canonicalWorkingDirectory, target);
+        }
+
+        try {
+            file = file.getCanonicalFile();
+        } catch (final IOException e) {
+            return new ResolvedScanTargets.ScanTarget(file.getAbsolutePath(), file.exists(), file.isDirectory(), 0L, 0L, "could not resolve the real path : " + e.getMessage());
+        }
+        if (!file.exists()) {
+            return new ResolvedScanTargets.ScanTarget(file.getPath(), false, false, 0L, 0L, null);
+        }
+        if (!file.isDirectory()) {
+            return new ResolvedScanTargets.ScanTarget(file.getPath(), true, false, file.length(), 1L, null);
+        }
+        if (!measureTargets) {
+            return new ResolvedScanTargets.ScanTarget(file.getPath(), true, true, ResolvedScanTargets.NOT_MEASURED, ResolvedScanTargets.NOT_MEASURED, null);
+        }
+
+        final Path root = file.toPath();
+        final long[] totals = new long[2];
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+                @Override
+                public FileVisitResult preVisitDirectory(final Path directory, final BasicFileAttributes attributes) {
+                    if (directory.equals(root)) {
+                        return FileVisitResult.CONTINUE;
+                    }
+                    final String relativePath = "/" + root.relativize(directory).toString().replace(File.separatorChar, '/') + "/";
+                    return exclusions.isExcluded(relativePath) ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(final Path path, final BasicFileAttributes attributes) {
+                    if (attributes.isRegularFile()) {
+                        totals[0] += attributes.size();
+                        totals[1]++;
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(final Path path, final IOException e) {
+                    // unreadable entries are left for the scanner to report
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (final IOException e) {
+            return new ResolvedScanTargets.ScanTarget(file.getPath(), true, true, totals[0], totals[1], "could not read the directory : " + e.getMessage());
+        }
+        return new ResolvedScanTargets.ScanTarget(file.getPath(), true, true, totals[0], totals[1], null);
+    }
+
+    /**
+     * The memory the kernel reports as available on Linux, which unlike the free memory counts the page cache it can reclaim, otherwise the free physical
+     * memory reported by the JVM.
+     */
+    private long getAvailableMemory() {
+        final File meminfo = new File("/proc/meminfo");
+        if (meminfo.isFile()) {
+            try {
+                for (final String line : FileUtils.readLines(meminfo, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("MemAvailable:")) {
+                        return Long.parseLong(line.replaceAll("[^0-9]", "")) * 1024L;
+                    }
+                }
+            } catch (final IOException | NumberFormatException e) {
+                // fall back to the JVM below
+            }
+        }
+        final OperatingSystemMXBean operatingSystem = ManagementFactory.getOperatingSystemMXBean();
+        if (operatingSystem instanceof com.sun.management.OperatingSystemMXBean) {
+            return ((com.sun.management.OperatingSystemMXBean) operatingSystem).getFreePhysicalMemorySize();
+        }
+        return -1L;
+    }
+
+    @Override
+    public void checkRoles(final RoleChecker checker) throws SecurityException {
+        checker.check(this, new Role(ResolveScanTargets.class));
+    }
+}
@@ -0,0 +1,165 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+
+/**
+ * The canonical workspace and scan targets of a build, as seen from the node, together with what was found at each target.
+ */
+public class ResolvedScanTargets implements Serializable {
+    private static final long serialVersionUID = -1771245327473425263L;
+
+    /**
+     * The size and file count of a directory target that was not walked.
+     */
+    public static final long NOT_MEASURED = -1L;
+
+    private final String workingDirectory;
+
+    private final List<ScanTarget> scanTargets;
+
+    private final long availableMemory;
+
+    public ResolvedScanTargets(final String workingDirectory, final List<ScanTarget> scanTargets, final long availableMemory) {
+        this.workingDirectory = workingDirectory;
+        this.scanTargets = scanTargets;
+        this.availableMemory = availableMemory;
+    }
+
+    public String getWorkingDirectory() {
+        return workingDirectory;
+    }
+
+    public List<ScanTarget> getScanTargets() {
+        return scanTargets;
+    }
+
+    public List<String> getScanTargetPaths() {
+        final List<String> scanTargetPaths = new ArrayList<>();
+        for (final ScanTarget scanTarget : scanTargets) {
+            scanTargetPaths.add(scanTarget.getPath());
+        }
+        return scanTargetPaths;
+    }
+
+    /**
+     * @return the physical memory in bytes the node had available for new processes, or -1 if it could not be determined
+     */
+    public long getAvailableMemory() {
+        return availableMemory;
+    }
+
+    public long getTotalFileCount() {
+        long fileCount = 0;
+        for (final ScanTarget scanTarget : scanTargets) {
+            fileCount += Math.max(scanTarget.getFileCount(), 0L);
+        }
+        return fileCount;
+    }
+
+    public long getTotalSize() {
+        long size = 0;
+        for (final ScanTarget scanTarget : scanTargets) {
+            size += Math.max(scanTarget.getSize(), 0L);
+        }
+        return size;
+    }
+
+    public static class ScanTarget implements Serializable {
+        private static final long serialVersionUID = 6032412883417372129L;
+
+        private final String path;
+
+        private final boolean exists;
+
+        private final boolean directory;
+
+        private final long size;
+
+        private final long fileCount;
+
+        private final String error;
+
+        public ScanTarget(final String path, final boolean exists, final boolean directory, final long size, final long fileCount, final String error) {
+            this.path = path;
+            this.exists = exists;
+            this.directory = directory;
+            this.size = size;
+            this.fileCount = fileCount;
+            this.error = error;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public boolean exists() {
+            return exists;
+        }
+
+        public boolean isDirectory() {
+            return directory;
+        }
+
+        /**
+         * @return the total size in bytes of the files under this target, or {@link ResolvedScanTargets#NOT_MEASURED}
+         */
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return the number of files under this target, or {@link ResolvedScanTargets#NOT_MEASURED}
+         */
+        public long getFileCount() {
+            return fileCount;
+        }
+
+        /**
+         * @return the problem found while resolving this target, or null if there was none
+         */
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            if (error != null) {
+                return path + " (" + error + ")";
+            }
+            if (!exists) {
+                return path + " (does not exist)";
+            }
+            if (fileCount == NOT_MEASURED) {
+                return path;
+            }
+            return path + " (" + fileCount + " files, " + FileUtils.byteCountToDisplaySize(size) + ")";
+        }
+    }
+}
@@ -0,0 +1,73 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * The scan exclusion patterns of a job, matched on the node the same way the CLI matches them. Patterns are directory paths relative to the scan target with
+ * leading and trailing slashes, where '*' matches within a single directory name.
+ */
+class ScanExclusions {
+    private final List<Pattern> exclusions = new ArrayList<>();
+
+    ScanExclusions(final String[] excludePatterns) {
+        if (excludePatterns != null) {
+            for (final String excludePattern : excludePatterns) {
+                if (StringUtils.isNotBlank(excludePattern)) {
+                    exclusions.add(toPattern(excludePattern.trim()));
+                }
+            }
+        }
+    }
+
+    /**
+     * @param relativePath
+     *            the path of a directory relative to the scan target, with leading and trailing slashes
+     */
+    public boolean isExcluded(final String relativePath) {
+        for (final Pattern exclusion : exclusions) {
+            if (exclusion.matcher(relativePath).matches()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private Pattern toPattern(final String excludePattern) {
+        final StringBuilder regex = new StringBuilder();
+        for (final String part : StringUtils.splitPreserveAllTokens(excludePattern, '*')) {
+            if (regex.length() > 0) {
+                regex.append("[^/]*");
+            }
+            regex.append(Pattern.quote(part));
+        }
+        return Pattern.compile(regex.toString());
+    }
+
+}
@@ -24,19 +24,47 @@
 package com.blackducksoftware.integration.hub.jenkins.remote;
 
 import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 public class ScanResponse implements Serializable {
     private final Exception exception;
     private final String versionJson;
+    private final ArrayList<String> codeLocationNames;
+    private final HashMap<String, String> targetDigests;
+    private final ArrayList<String> skippedTargets;
+    private final boolean outOfMemory;
 
     public ScanResponse(final String versionJson) {
+        this(versionJson, null);
+    }
+
+    public ScanResponse(final String versionJson, final List<String> codeLocationNames) {
+        this(versionJson, codeLocationNames, null, null);
+    }
+
+    public ScanResponse(final String versionJson, final List<String> codeLocationNames, final Map<String, String> targetDigests, final List<String> skippedTargets) {
         this.exception = null;
         this.versionJson = versionJson;
+        this.codeLocationNames = codeLocationNames == null ? new ArrayList<String>() : new ArrayList<>(codeLocationNames);
+        this.targetDigests = targetDigests == null ? null : new HashMap<>(targetDigests);
+        this.skippedTargets = skippedTargets == null ? new ArrayList<String>() : new ArrayList<>(skippedTargets);
+        this.outOfMemory = false;
     }
 
     public ScanResponse(final Exception exception) {
+        this(exception, false);
+    }
+
+    public ScanResponse(final Exception exception, final boolean outOfMemory) {
         this.exception = exception;
         this.versionJson = null;
+        this.codeLocationNames = new ArrayList<>();
+        this.targetDigests = null;
+        this.skippedTargets = new ArrayList<>();
+        this.outOfMemory = outOfMemory;
     }
 
     public Exception getException() {
@@ -46,4 +74,32 @@ public class ScanResponse implements Serializable {
     public String getVersionJson() {
         return versionJson;
     }
+
+    /**
+     * The code locations created by a parallel scan. A single scanner run does not report them, so this is empty for it.
+     */
+    public List<String> getCodeLocationNames() {
+        return codeLocationNames;
+    }
+
+    /**
+     * The digest of every scan target, or null if the scan was not incremental or the digests could not be computed.
+     */
+    public Map<String, String> getTargetDigests() {
+        return targetDigests;
+    }
+
+    /**
+     * The scan targets that were not scanned because they had not changed since the last successful scan.
+     */
+    public List<String> getSkippedTargets() {
+        return skippedTargets;
+    }
+
+    /**
+     * True if the scan failed because the scanner ran out of memory.
+     */
+    public boolean isOutOfMemory() {
+        return outOfMemory;
+    }
 }
@@ -31,6 +31,7 @@ import javax.servlet.ServletException;
 
 import org.apache.commons.lang.StringUtils;
 
+import com.blackducksoftware.integration.exception.IntegrationException;
 import com.blackducksoftware.integration.hub.api.generated.enumeration.ProjectVersionDistributionType;
 import com.blackducksoftware.integration.hub.api.generated.enumeration.ProjectVersionPhaseType;
 import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
@@ -42,11 +43,13 @@ import com.blackducksoftware.integration.hub.configuration.HubScanConfigValidato
 import com.blackducksoftware.integration.hub.exception.DoesNotExistException;
 import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
 import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfoSingleton;
 import com.blackducksoftware.integration.hub.jenkins.Messages;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
 import com.blackducksoftware.integration.hub.jenkins.failure.FailureConditionBuildStateEnum;
 import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
 import com.blackducksoftware.integration.hub.service.HubService;
-import com.blackducksoftware.integration.hub.service.HubServicesFactory;
 import com.blackducksoftware.integration.hub.service.ProjectService;
 import com.blackducksoftware.integration.log.IntLogger;
 import com.blackducksoftware.integration.log.LogLevel;
@@ -116,11 +119,71 @@ public class BDCommonDescriptorUtil {
         return items;
     }
 
+    /**
+     * Fills the drop down list of the Hub servers a job can scan with
+     */
+    public static ListBoxModel doFillHubServerNameItems() {
+        final HubServerInfoSingleton.Snapshot snapshot = HubServerInfoSingleton.getInstance().getSnapshot();
+        final ListBoxModel items = new ListBoxModel();
+        items.add("Default (" + StringUtils.defaultString(snapshot.getServerInfo().getServerUrl()) + ")", "");
+        for (final HubServerInfo server : snapshot.getAdditionalServers()) {
+            items.add(server.getDisplayName(), server.getName());
+        }
+        items.add("Least loaded server of the pool", HubServerInfoSingleton.POOL);
+        return items;
+    }
+
+    public static FormValidation doCheckHubServerName(final String hubServerName) throws IOException, ServletException {
+        final HubServerInfoSingleton.Snapshot snapshot = HubServerInfoSingleton.getInstance().getSnapshot();
+        if (HubServerInfoSingleton.POOL.equals(StringUtils.trimToEmpty(hubServerName))) {
+            if (snapshot.getConfiguredServers().isEmpty()) {
+                return FormValidation.error(Messages.HubBuildScan_getNoPoolServers());
+            }
+            return FormValidation.ok();
+        }
+        if (snapshot.getServerInfo(hubServerName) == null) {
+            return FormValidation.error(Messages.HubBuildScan_getUnknownServer_0_(hubServerName));
+        }
+        return FormValidation.ok();
+    }
+
+    /**
+     * @return the server the project name and version fields are checked against, the default server for a blank name and for the pool, or null if no server
+     *         has the name
+     */
+    public static HubServerInfo getHubServerInfo(final String hubServerName) {
+        final HubServerInfoSingleton.Snapshot snapshot = HubServerInfoSingleton.getInstance().getSnapshot();
+        return snapshot.getServerInfo(HubServerInfoSingleton.POOL.equals(StringUtils.trimToEmpty(hubServerName)) ? null : hubServerName);
+    }
+
+    /**
+     * Checks the project name against the selected server, a server that is not configured is reported instead of checking against another one.
+     */
+    public static FormValidation doCheckHubProjectName(final String hubServerName, final String hubProjectName, final String hubProjectVersion, final boolean dryRun) throws IOException, ServletException {
+        final HubServerInfo serverInfo = getHubServerInfo(hubServerName);
+        if (serverInfo == null) {
+            return FormValidation.error(Messages.HubBuildScan_getUnknownServer_0_(hubServerName));
+        }
+        return doCheckHubProjectName(serverInfo, hubProjectName, hubProjectVersion, dryRun);
+    }
+
+    /**
+     * Checks the project version against the selected server, a server that is not configured is reported instead of checking against another one.
+     */
+    public static FormValidation doCheckHubProjectVersion(final String hubServerName, final String hubProjectVersion, final String hubProjectName, final boolean dryRun) throws IOException, ServletException {
+        final HubServerInfo serverInfo = getHubServerInfo(hubServerName);
+        if (serverInfo == null) {
+            return FormValidation.error(Messages.HubBuildScan_getUnknownServer_0_(hubServerName));
+        }
+        return doCheckHubProjectVersion(serverInfo, hubProjectVersion, hubProjectName, dryRun);
+    }
+
     public static AutoCompletionCandidates doAutoCompleteHubProjectName(final HubServerInfo serverInfo, final String hubProjectName) throws IOException, ServletException {
         final AutoCompletionCandidates potentialMatches = new AutoCompletionCandidates();
         if (StringUtils.isNotBlank(serverInfo.getServerUrl()) && StringUtils.isNotBlank(serverInfo.getCredentialsId())) {
             final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
             final boolean changed = false;
+            PooledHubServicesFactory service = null;
             try {
                 if (hubProjectName.contains("$")) {
                     return potentialMatches;
@@ -128,11 +191,15 @@ public class BDCommonDescriptorUtil {
 
                 IntLogger logger = new PrintStreamIntLogger(System.out, LogLevel.INFO);
 
-                final HubServicesFactory service = BuildHelper.getHubServicesFactory(logger, serverInfo.getServerUrl(), serverInfo.getUsername(), serverInfo.getPassword(), serverInfo.getTimeout(), serverInfo.shouldTrustSSLCerts());
+                service = BuildHelper.getHubServicesFactory(logger, serverInfo);
 
-                ProjectService projectService = service.createProjectService();
-                projectService.getAllProjectMatches(hubProjectName);
-                final List<ProjectView> suggestions = projectService.getAllProjectMatches(hubProjectName);
+                final ProjectService projectService = service.createProjectService();
+                final List<ProjectView> suggestions = HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<List<ProjectView>>() {
+                    @Override
+                    public List<ProjectView> execute() throws IntegrationException {
+                        return projectService.getAllProjectMatches(hubProjectName);
+                    }
+                });
 
                 final HubViewFilter<ProjectView> filter = new HubViewFilter<>();
                 final List<ProjectView> accessibleSuggestions = filter.getAccessibleItems(new MetaHandler(logger), suggestions);
@@ -148,17 +215,30 @@ public class BDCommonDescriptorUtil {
                 if (changed) {
                     Thread.currentThread().setContextClassLoader(originalClassLoader);
                 }
+                if (service != null) {
+                    service.close();
+                }
             }
 
         }
         return potentialMatches;
     }
 
+    private static ProjectView getProjectByName(final HubServerInfo serverInfo, final ProjectService projectService, final String hubProjectName) throws IntegrationException {
+        return HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<ProjectView>() {
+            @Override
+            public ProjectView execute() throws IntegrationException {
+                return projectService.getProjectByName(hubProjectName);
+            }
+        });
+    }
+
     public static FormValidation doCheckHubProjectName(final HubServerInfo serverInfo, final String hubProjectName, final String hubProjectVersion, final boolean dryRun) throws IOException, ServletException {
         // Query for the project version so hopefully the check methods run for both fields when the User changes the Name of the project
         if (StringUtils.isNotBlank(hubProjectName)) {
             final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
             final boolean changed = false;
+            PooledHubServicesFactory service = null;
             try {
                 if (StringUtils.isBlank(serverInfo.getServerUrl())) {
                     return FormValidation.error(Messages.HubBuildScan_getPleaseSetServerUrl());
@@ -170,9 +250,8 @@ public class BDCommonDescriptorUtil {
                     return FormValidation.warning(Messages.HubBuildScan_getProjectNameContainsVariable());
                 }
                 IntLogger logger = new PrintStreamIntLogger(System.out, LogLevel.INFO);
-                final HubServicesFactory service = BuildHelper.getHubServicesFactory(logger, serverInfo.getServerUrl(), serverInfo.getUsername(), serverInfo.getPassword(), serverInfo.getTimeout(), serverInfo.shouldTrustSSLCerts());
-                ProjectService projectService = service.createProjectService();
-                final ProjectView project = projectService.getProjectByName(hubProjectName);
+                service = BuildHelper.getHubServicesFactory(logger, serverInfo);
+                final ProjectView project = getProjectByName(serverInfo, service.createProjectService(), hubProjectName);
                 final List<ProjectView> projectList = new ArrayList<>();
                 projectList.add(project);
                 final HubViewFilter<ProjectView> filter = new HubViewFilter<>();
@@ -211,6 +290,9 @@ public class BDCommonDescriptorUtil {
                 if (changed) {
                     Thread.currentThread().setContextClassLoader(originalClassLoader);
                 }
+                if (service != null) {
+                    service.close();
+                }
             }
         } else {
             return FormValidation.error(Messages.HubBuildScan_getProvideProjectName());
@@ -221,6 +303,7 @@ public class BDCommonDescriptorUtil {
         if (StringUtils.isNotBlank(hubProjectVersion)) {
             final ClassLoader originalClassLoader = Thread.currentThread().getContextClassLoader();
             final boolean changed = false;
+            PooledHubServicesFactory service = null;
             try {
                 if (StringUtils.isBlank(serverInfo.getServerUrl())) {
                     return FormValidation.error(Messages.HubBuildScan_getPleaseSetServerUrl());
@@ -241,17 +324,22 @@ public class BDCommonDescriptorUtil {
                 }
                 IntLogger logger = new PrintStreamIntLogger(System.out, LogLevel.INFO);
 
-                final HubServicesFactory service = BuildHelper.getHubServicesFactory(logger, serverInfo.getServerUrl(), serverInfo.getUsername(), serverInfo.getPassword(), serverInfo.getTimeout(), serverInfo.shouldTrustSSLCerts());
-                HubService hubService = service.createHubService();
-                ProjectService projectService = service.createProjectService();
+                service = BuildHelper.getHubServicesFactory(logger, serverInfo);
+                final HubService hubService = service.createHubService();
                 ProjectView project = null;
                 try {
-                    project = projectService.getProjectByName(hubProjectName);
+                    project = getProjectByName(serverInfo, service.createProjectService(), hubProjectName);
                 } catch (final Exception e) {
                     // This error will already show up for the project name field
                     return FormValidation.ok();
                 }
-                final List<ProjectVersionView> releases = hubService.getAllResponses(project, ProjectView.VERSIONS_LINK_RESPONSE);
+                final ProjectView foundProject = project;
+                final List<ProjectVersionView> releases = HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<List<ProjectVersionView>>() {
+                    @Override
+                    public List<ProjectVersionView> execute() throws IntegrationException {
+                        return hubService.getAllResponses(foundProject, ProjectView.VERSIONS_LINK_RESPONSE);
+                    }
+                });
 
                 final StringBuilder projectVersions = new StringBuilder();
                 for (final ProjectVersionView release : releases) {
@@ -294,6 +382,9 @@ public class BDCommonDescriptorUtil {
                 if (changed) {
                     Thread.currentThread().setContextClassLoader(originalClassLoader);
                 }
+                if (service != null) {
+                    service.close();
+                }
             }
         } else {
             return FormValidation.error(Messages.HubBuildScan_getProvideProjectVersion());
@@ -301,6 +392,9 @@ public class BDCommonDescriptorUtil {
     }
 
     public static FormValidation doCheckScanMemory(final String scanMemory) throws IOException, ServletException {
+        if (ScanMemoryCalculator.isAutomatic(scanMemory)) {
+            return FormValidation.ok();
+        }
         final ValidationResults results = new ValidationResults();
         final HubScanConfigValidator validator = new HubScanConfigValidator();
         validator.setScanMemory(scanMemory);
@@ -316,6 +410,21 @@ public class BDCommonDescriptorUtil {
         return FormValidation.ok();
     }
 
+    public static FormValidation doCheckScanConcurrency(final String scanConcurrency) throws IOException, ServletException {
+        if (StringUtils.isBlank(scanConcurrency)) {
+            return FormValidation.ok();
+        }
+        try {
+            final Integer concurrency = Integer.valueOf(scanConcurrency);
+            if (concurrency <= 0) {
+                return FormValidation.error("Scan concurrency must be greater than 0.");
+            }
+        } catch (final NumberFormatException e) {
+            return FormValidation.error("The String : " + scanConcurrency + " , is not an Integer.");
+        }
+        return FormValidation.ok();
+    }
+
     public static FormValidation doCheckBomUpdateMaximumWaitTime(final String bomUpdateMaximumWaitTime) throws IOException, ServletException {
         try {
             final Integer waitTime = Integer.valueOf(bomUpdateMaximumWaitTime);
@@ -23,6 +23,7 @@
  */
 package com.blackducksoftware.integration.hub.jenkins.scan;
 
+import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
@@ -31,13 +32,14 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.math.NumberUtils;
 
 import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.discovery.ApiDiscovery;
 import com.blackducksoftware.integration.hub.api.generated.enumeration.ProjectVersionDistributionType;
 import com.blackducksoftware.integration.hub.api.generated.enumeration.ProjectVersionPhaseType;
+import com.blackducksoftware.integration.hub.api.generated.response.CurrentVersionView;
 import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
 import com.blackducksoftware.integration.hub.api.generated.view.ProjectView;
 import com.blackducksoftware.integration.hub.api.view.MetaHandler;
 import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
-import com.blackducksoftware.integration.hub.configuration.HubServerConfigBuilder;
 import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
 import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
 import com.blackducksoftware.integration.hub.jenkins.HubServerInfoSingleton;
@@ -46,30 +48,32 @@ import com.blackducksoftware.integration.hub.jenkins.ScanJobs;
 import com.blackducksoftware.integration.hub.jenkins.action.BomUpToDateAction;
 import com.blackducksoftware.integration.hub.jenkins.action.HubReportV2Action;
 import com.blackducksoftware.integration.hub.jenkins.action.HubScanFinishedAction;
+import com.blackducksoftware.integration.hub.jenkins.action.ScanDigestAction;
+import com.blackducksoftware.integration.hub.jenkins.action.ScanMemoryAction;
 import com.blackducksoftware.integration.hub.jenkins.cli.DummyToolInstallation;
-import com.blackducksoftware.integration.hub.jenkins.cli.DummyToolInstaller;
+import com.blackducksoftware.integration.hub.jenkins.cli.HubScannerToolInstaller;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubServerPool;
 import com.blackducksoftware.integration.hub.jenkins.exceptions.BDJenkinsHubPluginException;
 import com.blackducksoftware.integration.hub.jenkins.exceptions.HubConfigurationException;
 import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
-import com.blackducksoftware.integration.hub.jenkins.helper.JenkinsProxyHelper;
 import com.blackducksoftware.integration.hub.jenkins.helper.PluginHelper;
-import com.blackducksoftware.integration.hub.jenkins.remote.DetermineTargetPath;
+import com.blackducksoftware.integration.hub.jenkins.phonehome.PhoneHomeQueue;
 import com.blackducksoftware.integration.hub.jenkins.remote.RemoteScan;
+import com.blackducksoftware.integration.hub.jenkins.remote.ResolveScanTargets;
+import com.blackducksoftware.integration.hub.jenkins.remote.ResolvedScanTargets;
 import com.blackducksoftware.integration.hub.jenkins.remote.ScanResponse;
 import com.blackducksoftware.integration.hub.report.api.ReportData;
-import com.blackducksoftware.integration.hub.rest.RestConnection;
 import com.blackducksoftware.integration.hub.service.HubService;
-import com.blackducksoftware.integration.hub.service.HubServicesFactory;
-import com.blackducksoftware.integration.hub.service.PhoneHomeService;
 import com.blackducksoftware.integration.hub.service.ReportService;
 import com.blackducksoftware.integration.log.IntLogger;
-import com.blackducksoftware.integration.phonehome.PhoneHomeRequestBody;
 import com.blackducksoftware.integration.util.CIEnvironmentVariables;
 
 import hudson.EnvVars;
 import hudson.FilePath;
 import hudson.Launcher;
-import hudson.ProxyConfiguration;
 import hudson.model.Node;
 import hudson.model.Result;
 import hudson.model.Run;
@@ -78,6 +82,8 @@ import jenkins.model.Jenkins;
 
 public class BDCommonScanStep {
 
+    private static final int MAX_PREVIOUS_BUILDS_TO_SEARCH = 10;
+
     private final ScanJobs[] scans;
 
     private final String hubProjectName;
@@ -106,17 +112,24 @@ public class BDCommonScanStep {
 
     private final Boolean verbose;
 
-    private final BomUpToDateAction bomUpToDateAction = new BomUpToDateAction();
-
     private final String[] excludePatterns;
 
     private final String codeLocationName;
 
     private final boolean failureConditionsConfigured;
 
+    private final String scanConcurrency;
+
+    private final boolean incrementalScan;
+
+    private final String hubServerName;
+
+    private final HubServerInfoSingleton.Snapshot serverInfoSnapshot;
+
     public BDCommonScanStep(final ScanJobs[] scans, final String hubProjectName, final String hubProjectVersion, final String phase, final String distribution, final String scanMemory, final boolean projectLevelAdjustments,
             final boolean shouldGenerateHubReport, final String bomUpdateMaximumWaitTime, final boolean dryRun, final boolean cleanupOnSuccessfulScan, final Boolean verbose, final String[] excludePatterns, final String codeLocationName,
-            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final boolean failureConditionsConfigured) {
+            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final boolean failureConditionsConfigured, final String scanConcurrency,
+            final boolean incrementalScan, final String hubServerName) {
         this.scans = scans;
         this.hubProjectName = hubProjectName;
         this.hubProjectVersion = hubProjectVersion;
@@ -134,6 +147,11 @@ public class BDCommonScanStep {
         this.unmapPreviousCodeLocations = unmapPreviousCodeLocations;
         this.deletePreviousCodeLocations = deletePreviousCodeLocations;
         this.failureConditionsConfigured = failureConditionsConfigured;
+        this.scanConcurrency = scanConcurrency;
+        this.incrementalScan = incrementalScan;
+        this.hubServerName = hubServerName;
+        // one configuration for the whole scan, even if the global configuration is saved while it runs
+        this.serverInfoSnapshot = HubServerInfoSingleton.getInstance().getSnapshot();
     }
 
     public String getCodeLocationName() {
@@ -184,6 +202,26 @@ public class BDCommonScanStep {
         return memory;
     }
 
+    public boolean isAutomaticScanMemory() {
+        return ScanMemoryCalculator.isAutomatic(this.scanMemory);
+    }
+
+    public String getScanConcurrency() {
+        return this.scanConcurrency;
+    }
+
+    public int getScanConcurrencyInteger() {
+        int concurrency = NumberUtils.toInt(this.scanConcurrency);
+        if (concurrency <= 0) {
+            concurrency = 1;
+        }
+        return concurrency;
+    }
+
+    public boolean isIncrementalScan() {
+        return this.incrementalScan;
+    }
+
     public boolean isProjectLevelAdjustments() {
         return this.projectLevelAdjustments;
     }
@@ -208,10 +246,6 @@ public class BDCommonScanStep {
         return this.cleanupOnSuccessfulScan;
     }
 
-    public BomUpToDateAction getBomUpToDateAction() {
-        return this.bomUpToDateAction;
-    }
-
     public boolean isUnmapPreviousCodeLocations() {
         return this.unmapPreviousCodeLocations;
     }
@@ -224,13 +258,52 @@ public class BDCommonScanStep {
         return this.failureConditionsConfigured;
     }
 
+    /**
+     * @return the name of the Hub server to scan with, blank for the default server or {@link HubServerInfoSingleton#POOL} for the least loaded server
+     */
+    public String getHubServerName() {
+        return this.hubServerName;
+    }
+
+    public boolean isPoolServer() {
+        return HubServerInfoSingleton.POOL.equals(StringUtils.trimToEmpty(hubServerName));
+    }
+
+    /**
+     * @return the configured server, the default server for the pool since the server of a pool scan is only chosen when it starts
+     */
     public HubServerInfo getHubServerInfo() {
-        return HubServerInfoSingleton.getInstance().getServerInfo();
+        if (isPoolServer()) {
+            return serverInfoSnapshot.getServerInfo();
+        }
+        return serverInfoSnapshot.getServerInfo(hubServerName);
+    }
+
+    /**
+     * Chooses the server for a scan and counts the scan in flight on it, until {@link HubServerPool#release(HubServerInfo)}.
+     */
+    private HubServerInfo acquireHubServer() {
+        if (isPoolServer()) {
+            return HubServerPool.getInstance().acquireLeastLoaded(serverInfoSnapshot.getConfiguredServers());
+        }
+        final HubServerInfo serverInfo = getHubServerInfo();
+        HubServerPool.getInstance().acquire(serverInfo);
+        return serverInfo;
     }
 
     public void runScan(final Run run, final Node builtOn, final EnvVars envVars, final FilePath workspace, final HubJenkinsLogger logger, final Launcher launcher, final TaskListener listener, final String buildDisplayName,
             final String buildIdentifier) {
+        final ScanHandle scanHandle = uploadScan(run, builtOn, envVars, workspace, logger, listener);
+        if (scanHandle != null) {
+            completeScan(run, scanHandle, logger, true);
+        }
+    }
 
+    /**
+     * Runs the scan on the node and uploads the results to the Hub. This is the only part of a scan that needs the node.
+     * @return what is needed to wait for the BOM and finish the scan, or null if the scan is already finished
+     */
+    public ScanHandle uploadScan(final Run run, final Node builtOn, final EnvVars envVars, final FilePath workspace, final HubJenkinsLogger logger, final TaskListener listener) {
         final CIEnvironmentVariables variables = new CIEnvironmentVariables();
         variables.putAll(envVars);
         logger.setLogLevel(variables);
@@ -240,16 +313,26 @@ public class BDCommonScanStep {
         if (run.getResult() != Result.SUCCESS) {
             logger.alwaysLog("Build was not successful. Will not run Black Duck Scans.");
         } else {
+            final HubServerInfo serverInfo = acquireHubServer();
             try {
                 logger.alwaysLog("Initializing - Hub Jenkins Plugin - " + PluginHelper.getPluginVersion());
                 logger.alwaysLog("Starting BlackDuck Scans...");
+                logger.alwaysLog("Hub configuration version : " + serverInfoSnapshot.getVersion());
 
-                if (validateGlobalConfiguration()) {
+                if (validateGlobalConfiguration(serverInfo)) {
+                    logger.alwaysLog("Hub server : " + serverInfo.getDisplayName() + (isPoolServer() ? ", the least loaded of the pool" : ""));
 
-                    final DummyToolInstaller dummyInstaller = new DummyToolInstaller();
-                    final String toolsDirectory = dummyInstaller.getToolDir(new DummyToolInstallation(), builtOn).getRemote();
-                    final String workingDirectory = workspace.getRemote();
-                    final List<String> scanTargetPaths = getScanTargets(logger, builtOn, envVars, workingDirectory);
+                    final ResolvedScanTargets resolvedScanTargets = resolveScanTargets(logger, builtOn, envVars, workspace.getRemote());
+                    final String workingDirectory = resolvedScanTargets.getWorkingDirectory();
+                    logger.info("Node workspace " + workingDirectory);
+                    for (final ResolvedScanTargets.ScanTarget scanTarget : resolvedScanTargets.getScanTargets()) {
+                        if (scanTarget.exists()) {
+                            logger.info("Scan target : " + scanTarget);
+                        } else {
+                            logger.warn("Scan target : " + scanTarget);
+                        }
+                    }
+                    final List<String> scanTargetPaths = resolvedScanTargets.getScanTargetPaths();
 
                     String projectName = null;
                     String projectVersion = null;
@@ -262,51 +345,71 @@ public class BDCommonScanStep {
 
                     final String codeLocationName = BuildHelper.handleVariableReplacement(envVars, getCodeLocationName());
 
-                    final HubServerConfigBuilder hubServerConfigBuilder = new HubServerConfigBuilder();
-                    hubServerConfigBuilder.setHubUrl(getHubServerInfo().getServerUrl());
-                    hubServerConfigBuilder.setUsername(getHubServerInfo().getUsername());
-                    hubServerConfigBuilder.setPassword(getHubServerInfo().getPassword());
-                    hubServerConfigBuilder.setTimeout(getHubServerInfo().getTimeout());
-                    hubServerConfigBuilder.setAlwaysTrustServerCertificate(getHubServerInfo().shouldTrustSSLCerts());
-
-                    final Jenkins jenkins = Jenkins.getInstance();
-                    if (jenkins != null) {
-                        final ProxyConfiguration proxyConfig = jenkins.proxy;
-                        if (proxyConfig != null) {
-                            if (JenkinsProxyHelper.shouldUseProxy(getHubServerInfo().getServerUrl(), proxyConfig.noProxyHost)) {
-                                hubServerConfigBuilder.setProxyHost(proxyConfig.name);
-                                hubServerConfigBuilder.setProxyPort(proxyConfig.port);
-                                hubServerConfigBuilder.setProxyUsername(proxyConfig.getUserName());
-                                hubServerConfigBuilder.setProxyPassword(proxyConfig.getPassword());
-                            }
-                        }
-                    }
-
-                    final HubServerConfig hubServerConfig = hubServerConfigBuilder.build();
+                    final HubServerConfig hubServerConfig = BuildHelper.getHubServerConfig(serverInfo);
                     hubServerConfig.print(logger);
 
                     final String thirdPartyVersion = Jenkins.getVersion().toString();
                     final String pluginVersion = PluginHelper.getPluginVersion();
 
-                    final RestConnection restConnection = BuildHelper.getRestConnection(logger, hubServerConfig);
-                    restConnection.connect();
+                    final String toolsDirectory;
+                    try (final PooledHubServicesFactory services = BuildHelper.getHubServicesFactory(logger, serverInfo.getCredentialsId(), hubServerConfig)) {
+                        // phone home in the background, the build should never wait on it
+                        PhoneHomeQueue.getInstance().submit(serverInfo.getCredentialsId(), hubServerConfig, pluginVersion, thirdPartyVersion);
+                        logger.debug("Phone home : " + PhoneHomeQueue.getInstance());
+
+                        // the response time of the version request is how the pool compares the servers
+                        final long versionRequested = System.currentTimeMillis();
+                        final CurrentVersionView currentVersion;
+                        try {
+                            currentVersion = HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<CurrentVersionView>() {
+                                @Override
+                                public CurrentVersionView execute() throws IntegrationException {
+                                    return services.createHubService().getResponse(ApiDiscovery.CURRENT_VERSION_LINK_RESPONSE);
+                                }
+                            });
+                        } catch (final Exception e) {
+                            HubServerPool.getInstance().recordFailure(serverInfo);
+                            throw e;
+                        }
+                        HubServerPool.getInstance().recordLatency(serverInfo, System.currentTimeMillis() - versionRequested);
+                        final HubScannerToolInstaller scannerInstaller = new HubScannerToolInstaller(logger, services, hubServerConfig, currentVersion.version, envVars);
+                        toolsDirectory = scannerInstaller.performInstallation(new DummyToolInstallation(), builtOn, listener).getRemote();
+                    }
 
-                    HubServicesFactory services = new HubServicesFactory(restConnection);
+                    final boolean incremental = isIncrementalScan() && !isDryRun();
+                    final String digestScope = getDigestScope(hubServerConfig, projectName, projectVersion, codeLocationName);
+                    ScanDigestAction previousScanDigests = null;
+                    if (incremental) {
+                        previousScanDigests = getPreviousScanDigestAction(run, digestScope);
+                        if (previousScanDigests == null) {
+                            logger.info("No previous successful scan to compare with, all scan targets will be scanned.");
+                        }
+                    }
 
-                    PhoneHomeService phoneHomeService = services.createPhoneHomeService();
-                    PhoneHomeRequestBody.Builder builder = phoneHomeService.createInitialPhoneHomeRequestBodyBuilder();
-                    builder.setArtifactId("blackduck-hub");
-                    builder.setArtifactVersion(pluginVersion);
-                    builder.addToMetaData("jenkins.version", thirdPartyVersion);
-                    phoneHomeService.phoneHome(builder);
+                    // the controller waits for the BOM of a project version, so builds waiting on the same version can share the status polls
+                    final boolean waitOnController = isShouldWaitForScansFinished() && StringUtils.isNotBlank(projectName) && StringUtils.isNotBlank(projectVersion);
+                    final ScanMemoryAction scanMemoryAction = chooseScanMemory(run, logger, resolvedScanTargets, digestScope);
+                    run.addAction(scanMemoryAction);
 
-                    final RemoteScan scan = new RemoteScan(logger, codeLocationName, projectName, projectVersion, getPhase(), getDistribution(), getScanMemoryInteger(), isProjectLevelAdjustments(), workingDirectory, scanTargetPaths,
-                            isDryRun(), isCleanupOnSuccessfulScan(), toolsDirectory, hubServerConfig, getHubServerInfo().isPerformWorkspaceCheck(), getExcludePatterns(), envVars,
-                            isUnmapPreviousCodeLocations(), isDeletePreviousCodeLocations(), isShouldWaitForScansFinished());
+                    final RemoteScan scan = new RemoteScan(logger, codeLocationName, projectName, projectVersion, getPhase(), getDistribution(), scanMemoryAction.getScanMemory(), isProjectLevelAdjustments(), workingDirectory, scanTargetPaths,
+                            isDryRun(), isCleanupOnSuccessfulScan(), toolsDirectory, hubServerConfig, serverInfo.isPerformWorkspaceCheck(), getExcludePatterns(), envVars,
+                            isUnmapPreviousCodeLocations(), isDeletePreviousCodeLocations(), isShouldWaitForScansFinished() && !waitOnController, getScanConcurrencyInteger(),
+                            incremental, previousScanDigests == null ? null : previousScanDigests.getTargetDigests(), previousScanDigests == null ? null : previousScanDigests.getVersionJson());
 
-                    final ScanResponse scanResponse = builtOn.getChannel().call(scan);
+                    final HubAdmissionController.Ticket uploadTicket = awaitAdmission(run, logger, serverInfo, HubAdmissionController.Gate.UPLOAD);
+                    final ScanResponse scanResponse;
+                    try {
+                        scanResponse = builtOn.getChannel().call(scan);
+                    } finally {
+                        uploadTicket.release();
+                    }
                     if (null != scanResponse.getException()) {
                         final Exception exception = scanResponse.getException();
+                        if (scanResponse.isOutOfMemory()) {
+                            scanMemoryAction.setOutOfMemory(true);
+                            logger.error(String.format("The scanner ran out of memory with %d MB.%s", scanMemoryAction.getScanMemory(),
+                                    scanMemoryAction.isAutomatic() ? " The next scan will use more memory." : " Increase the scan memory, or set it to " + ScanMemoryCalculator.AUTOMATIC + "."));
+                        }
                         if (exception instanceof InterruptedException) {
                             run.setResult(Result.ABORTED);
                             Thread.currentThread().interrupt();
@@ -314,69 +417,29 @@ public class BDCommonScanStep {
                             logger.error(exception.getMessage(), exception);
                             run.setResult(Result.UNSTABLE);
                         }
-                        return;
+                        return null;
                     }
                     final String projectVersionViewJson = scanResponse.getVersionJson();
-
-                    this.bomUpToDateAction.setDryRun(isDryRun());
+                    for (final String scannedCodeLocation : scanResponse.getCodeLocationNames()) {
+                        logger.info("Scanned code location : " + scannedCodeLocation);
+                    }
 
                     Long bomWait = 300000l;
-                    if (!isDryRun()) {
-                        final MetaHandler metaHandler = new MetaHandler(logger);
-
-                        ProjectVersionView version = null;
-                        ProjectView project = null;
-                        if (StringUtils.isNotBlank(projectName) && StringUtils.isNotBlank(projectVersion) && StringUtils.isNotBlank(projectVersionViewJson)) {
-                            HubService hubService = services.createHubService();
-                            version = hubService.getGson().fromJson(projectVersionViewJson, ProjectVersionView.class);
-                            project = getProjectFromVersion(hubService, version);
-                        }
-
-                        try {
-                            // User input is in minutes, need to changes to milliseconds
-                            bomWait = Long.valueOf(getBomUpdateMaximumWaitTime()) * 60 * 1000;
-                        } catch (final NumberFormatException e) {
-                            bomWait = 300000l;
-                        }
+                    try {
                         // User input is in minutes, need to changes to milliseconds
-                        logger.alwaysLog("--> Bom wait time : " + bomWait / 60 / 1000 + "m");
-                        logger.alwaysLog("--> Generate Report : " + isShouldGenerateHubReport());
-
-                        if (run.getResult().equals(Result.SUCCESS) && isShouldGenerateHubReport()) {
-                            if (project != null && version != null) {
-                                final HubReportV2Action reportAction = new HubReportV2Action(run);
-
-                                final ReportService reportService = services.createReportService(bomWait);
-
-                                logger.debug("Generating the Risk Report.");
-                                final ReportData reportData = reportService.getRiskReportData(project, version);
-                                reportAction.setReportData(reportData);
-
-                                run.addAction(reportAction);
-                                this.bomUpToDateAction.setHasBomBeenUdpated(true);
-                            } else {
-                                logger.error("Could not find the Hub Project or Version for this scan. Check that the status directory exists.");
-                                run.setResult(Result.UNSTABLE);
-                                return;
-                            }
-                        } else {
-                            this.bomUpToDateAction.setHasBomBeenUdpated(false);
-                            this.bomUpToDateAction.setMaxWaitTime(bomWait);
-                        }
-                        if (version != null) {
-                            String policyStatusLink = null;
-                            try {
-                                // not all HUB users have the policy module enabled
-                                // so there will be no policy status link
-                                policyStatusLink = metaHandler.getFirstLink(version, ProjectVersionView.POLICY_STATUS_LINK);
-                            } catch (final Exception e) {
-                                logger.debug("Could not get the policy status link, the Hub policy module is not enabled");
-                            }
-                            this.bomUpToDateAction.setPolicyStatusUrl(policyStatusLink);
-                        }
-
+                        bomWait = Long.valueOf(getBomUpdateMaximumWaitTime()) * 60 * 1000;
+                    } catch (final NumberFormatException e) {
+                        bomWait = 300000l;
                     }
-
+                    String versionJson = null;
+                    if (StringUtils.isNotBlank(projectName) && StringUtils.isNotBlank(projectVersion) && StringUtils.isNotBlank(projectVersionViewJson)) {
+                        versionJson = projectVersionViewJson;
+                    }
+                    final boolean nothingUploaded = scanResponse.getTargetDigests() != null && scanResponse.getSkippedTargets().size() == scanResponse.getTargetDigests().size();
+                    // the digests are only recorded once the scan is known to have succeeded, a failed scan has to be scanned again
+                    final ScanDigestAction scanDigests = scanResponse.getTargetDigests() == null ? null : new ScanDigestAction(digestScope, scanResponse.getTargetDigests(), projectVersionViewJson);
+                    return new ScanHandle(versionJson, scanResponse.getCodeLocationNames(), isDryRun(), isShouldGenerateHubReport(), waitOnController, bomWait,
+                            nothingUploaded ? 0L : System.currentTimeMillis(), serverInfo, serverInfoSnapshot.getVersion(), isShouldWaitForScansFinished() && !waitOnController, scanDigests);
                 }
             } catch (final BDJenkinsHubPluginException e) {
                 logger.error(e.getMessage(), e);
@@ -402,67 +465,307 @@ public class BDCommonScanStep {
                         message = e.toString();
                     }
                     if (message.toLowerCase().contains("service unavailable")) {
-                        message = Messages.HubBuildScan_getCanNotReachThisServer_0_(getHubServerInfo().getServerUrl());
+                        message = Messages.HubBuildScan_getCanNotReachThisServer_0_(serverInfo.getServerUrl());
                     } else if (message.toLowerCase().contains("precondition failed")) {
                         message = message + ", Check your configuration.";
                     }
                 }
                 logger.error(message, e);
                 run.setResult(Result.UNSTABLE);
+            } finally {
+                HubServerPool.getInstance().release(serverInfo);
+            }
+        }
+        finishScan(run, logger, new BomUpToDateAction());
+        return null;
+    }
+
+    /**
+     * Waits for the BOM if asked to, generates the risk report and records the state of the BOM for the failure conditions. Everything needed is in the scan
+     * handle, so the scan can be completed by a different thread, or after a restart of Jenkins, than the one that uploaded it.
+     */
+    public static void completeScan(final Run run, final ScanHandle scanHandle, final HubJenkinsLogger logger, final boolean waitForBom) {
+        completeScan(run, scanHandle, logger, waitForBom, false);
+    }
+
+    /**
+     * @param bomUpToDate
+     *            true if the caller already waited for the BOM and found the scans finished without errors
+     */
+    public static void completeScan(final Run run, final ScanHandle scanHandle, final HubJenkinsLogger logger, final boolean waitForBom, final boolean bomUpToDate) {
+        final BomUpToDateAction bomUpToDateAction = new BomUpToDateAction();
+        // nothing was uploaded if every target was unchanged since the last successful scan
+        boolean scanSucceeded = bomUpToDate || scanHandle.isScansFinished() || scanHandle.getUploadFinished() == 0L;
+        try {
+            bomUpToDateAction.setDryRun(scanHandle.isDryRun());
+            bomUpToDateAction.setServerInfo(scanHandle.getServerInfo());
+            bomUpToDateAction.setUploadTime(scanHandle.getUploadFinished());
+            if (bomUpToDate || scanHandle.isScansFinished()) {
+                bomUpToDateAction.setBomCompletedTime(System.currentTimeMillis());
             }
+
+            final Long bomWait = scanHandle.getBomWait();
+            if (!scanHandle.isDryRun()) {
+                try (final PooledHubServicesFactory services = BuildHelper.getHubServicesFactory(logger, scanHandle.getServerInfo())) {
+                    final MetaHandler metaHandler = new MetaHandler(logger);
+
+                    ProjectVersionView version = null;
+                    ProjectView project = null;
+                    if (scanHandle.getVersionJson() != null) {
+                        HubService hubService = services.createHubService();
+                        version = hubService.getGson().fromJson(scanHandle.getVersionJson(), ProjectVersionView.class);
+                        project = getProjectFromVersion(scanHandle.getServerInfo(), hubService, version);
+                    }
+
+                    // User input is in minutes, need to changes to milliseconds
+                    logger.alwaysLog("--> Bom wait time : " + bomWait / 60 / 1000 + "m");
+                    logger.alwaysLog("--> Generate Report : " + scanHandle.isShouldGenerateHubReport());
+
+                    if (waitForBom && scanHandle.isWaitForBom() && version != null) {
+                        final HubAdmissionController.Ticket bomWaitTicket = awaitAdmission(run, logger, scanHandle.getServerInfo(), HubAdmissionController.Gate.BOM_WAIT);
+                        try {
+                            logger.alwaysLog("--> Waiting for the BOM to be updated");
+                            new BomReadinessWaiter(logger, scanHandle.getServerInfo(), services, bomWait).waitUntilReady(version, scanHandle.getCodeLocationNames(), scanHandle.getUploadFinished());
+                            scanSucceeded = true;
+                            bomUpToDateAction.setBomCompletedTime(System.currentTimeMillis());
+                        } finally {
+                            bomWaitTicket.release();
+                        }
+                    }
+
+                    if (run.getResult().equals(Result.SUCCESS) && scanHandle.isShouldGenerateHubReport()) {
+                        if (project != null && version != null) {
+                            final HubReportV2Action reportAction = new HubReportV2Action(run);
+
+                            final ReportService reportService = services.createReportService(bomWait);
+                            final ProjectView reportProject = project;
+                            final ProjectVersionView reportVersion = version;
+
+                            logger.debug("Generating the Risk Report.");
+                            // the report is made of many requests, a failure fails the report instead of generating all of it again
+                            final ReportData reportData = HubCircuitBreaker.getInstance().executeOnce(scanHandle.getServerInfo(), new HubCircuitBreaker.HubRequest<ReportData>() {
+                                @Override
+                                public ReportData execute() throws IntegrationException {
+                                    return reportService.getRiskReportData(reportProject, reportVersion);
+                                }
+                            });
+                            reportAction.setReportData(reportData);
+
+                            run.addAction(reportAction);
+                            bomUpToDateAction.setHasBomBeenUdpated(true);
+                        } else {
+                            logger.error("Could not find the Hub Project or Version for this scan. Check that the status directory exists.");
+                            run.setResult(Result.UNSTABLE);
+                            return;
+                        }
+                    } else {
+                        bomUpToDateAction.setHasBomBeenUdpated(false);
+                        bomUpToDateAction.setMaxWaitTime(bomWait);
+                    }
+                    if (version != null) {
+                        String policyStatusLink = null;
+                        try {
+                            // not all HUB users have the policy module enabled
+                            // so there will be no policy status link
+                            policyStatusLink = metaHandler.getFirstLink(version, ProjectVersionView.POLICY_STATUS_LINK);
+                        } catch (final Exception e) {
+                            logger.debug("Could not get the policy status link, the Hub policy module is not enabled");
+                        }
+                        bomUpToDateAction.setPolicyStatusUrl(policyStatusLink);
+                        try {
+                            bomUpToDateAction.setComponentsUrl(metaHandler.getFirstLink(version, ProjectVersionView.COMPONENTS_LINK));
+                        } catch (final Exception e) {
+                            logger.debug("Could not get the components link of the project version");
+                        }
+                        bomUpToDateAction.setPolicyStatusTime(System.currentTimeMillis());
+                    }
+                }
+            }
+            if (scanHandle.getScanDigests() != null) {
+                if (scanSucceeded && Result.SUCCESS.equals(run.getResult())) {
+                    run.addAction(scanHandle.getScanDigests());
+                } else {
+                    logger.debug("The scan target digests are not recorded, the Hub has not confirmed that the scan succeeded.");
+                }
+            }
+        } catch (final IntegrationException e) {
+            logger.error(e.getMessage(), e);
+            run.setResult(Result.UNSTABLE);
+        } catch (final InterruptedException e) {
+            logger.error("BD scan caller thread was interrupted.", e);
+            run.setResult(Result.ABORTED);
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            String message;
+            if (e.getMessage() != null && e.getMessage().contains("Project could not be found")) {
+                message = e.getMessage();
+            } else {
+
+                if (e.getCause() != null && e.getCause().getCause() != null) {
+                    message = e.getCause().getCause().toString();
+                } else if (e.getCause() != null) {
+                    message = e.getCause().toString();
+                } else {
+                    message = e.toString();
+                }
+                if (message.toLowerCase().contains("service unavailable")) {
+                    message = Messages.HubBuildScan_getCanNotReachThisServer_0_(scanHandle.getServerInfo().getServerUrl());
+                } else if (message.toLowerCase().contains("precondition failed")) {
+                    message = message + ", Check your configuration.";
+                }
+            }
+            logger.error(message, e);
+            run.setResult(Result.UNSTABLE);
+        }
+        finishScan(run, logger, bomUpToDateAction);
+    }
+
+    /**
+     * Waits for a slot on the Hub server, logging how many scans were queued ahead and how long the wait took. The slot has to be released.
+     */
+    public static HubAdmissionController.Ticket awaitAdmission(final Run run, final HubJenkinsLogger logger, final HubServerInfo serverInfo, final HubAdmissionController.Gate gate) throws InterruptedException {
+        final HubAdmissionController.Ticket ticket = HubAdmissionController.getInstance().request(serverInfo, gate, run.getParent().getFullName());
+        if (!ticket.isAdmitted()) {
+            logger.alwaysLog(String.format("--> The Hub is busy, waiting for a slot (%s, %d at once) with %d scans queued ahead", gate.getDisplayName(), ticket.getMaximum(), ticket.getQueuedAhead()));
+            ticket.await();
+            logger.alwaysLog(String.format("--> Waited %d seconds for the Hub", ticket.getWaitedMillis() / 1000));
         }
+        return ticket;
+    }
+
+    private static void finishScan(final Run run, final HubJenkinsLogger logger, final BomUpToDateAction bomUpToDateAction) {
         logger.alwaysLog("Finished running Black Duck Scans.");
-        run.addAction(this.bomUpToDateAction);
+        run.addAction(bomUpToDateAction);
         run.addAction(new HubScanFinishedAction());
     }
 
-    private ProjectView getProjectFromVersion(final HubService hubService, final ProjectVersionView projectVersionView) throws IntegrationException {
-        return hubService.getResponse(projectVersionView, ProjectVersionView.PROJECT_LINK_RESPONSE);
+    private static ProjectView getProjectFromVersion(final HubServerInfo serverInfo, final HubService hubService, final ProjectVersionView projectVersionView) throws IntegrationException {
+        return HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<ProjectView>() {
+            @Override
+            public ProjectView execute() throws IntegrationException {
+                return hubService.getResponse(projectVersionView, ProjectVersionView.PROJECT_LINK_RESPONSE);
+            }
+        });
+    }
+
+    /**
+     * Digests can only be compared with the ones of a scan into the same Hub project version and code location, with the same exclusions.
+     */
+    private String getDigestScope(final HubServerConfig hubServerConfig, final String projectName, final String projectVersion, final String codeLocationName) {
+        final String exclusions = getExcludePatterns() == null ? "" : StringUtils.join(getExcludePatterns(), ",");
+        return StringUtils.join(new Object[] { hubServerConfig.getHubUrl(), projectName, projectVersion, codeLocationName, exclusions }, "|");
+    }
+
+    /**
+     * Uses the configured scan memory, or in the automatic mode sizes it from the scan targets, the memory available on the node and the previous scan with the
+     * same scope.
+     */
+    private ScanMemoryAction chooseScanMemory(final Run run, final IntLogger logger, final ResolvedScanTargets resolvedScanTargets, final String scope) {
+        if (!isAutomaticScanMemory()) {
+            return new ScanMemoryAction(scope, getScanMemoryInteger(), false);
+        }
+        final ScanMemoryAction previousScanMemory = getPreviousScanMemoryAction(run, scope);
+        final ScanMemoryCalculator calculator = new ScanMemoryCalculator(resolvedScanTargets.getTotalFileCount(), resolvedScanTargets.getTotalSize(), resolvedScanTargets.getAvailableMemory(),
+                previousScanMemory == null ? 0 : previousScanMemory.getScanMemory(), previousScanMemory != null && previousScanMemory.isOutOfMemory(),
+                previousScanMemory != null && previousScanMemory.isAutomatic());
+        final int memory = calculator.calculate();
+        logger.alwaysLog("Automatic scan memory : " + calculator.getReason());
+        return new ScanMemoryAction(scope, memory, true);
+    }
+
+    private ScanMemoryAction getPreviousScanMemoryAction(final Run run, final String scope) {
+        Run previous = run.getPreviousBuild();
+        for (int i = 0; previous != null && i < MAX_PREVIOUS_BUILDS_TO_SEARCH; i++) {
+            final List<ScanMemoryAction> scanMemoryActions = previous.getActions(ScanMemoryAction.class);
+            for (final ScanMemoryAction scanMemoryAction : scanMemoryActions) {
+                if (scope.equals(scanMemoryAction.getScope())) {
+                    return scanMemoryAction;
+                }
+            }
+            previous = previous.getPreviousBuild();
+        }
+        return null;
+    }
+
+    /**
+     * Finds the digests of the most recent successful scan with the same scope. Only successful scans leave a {@link ScanDigestAction} behind.
+     */
+    private ScanDigestAction getPreviousScanDigestAction(final Run run, final String digestScope) {
+        Run previous = run.getPreviousBuild();
+        for (int i = 0; previous != null && i < MAX_PREVIOUS_BUILDS_TO_SEARCH; i++) {
+            final List<ScanDigestAction> scanDigestActions = previous.getActions(ScanDigestAction.class);
+            for (final ScanDigestAction scanDigestAction : scanDigestActions) {
+                if (digestScope.equals(scanDigestAction.getScope())) {
+                    return scanDigestAction;
+                }
+            }
+            previous = previous.getPreviousBuild();
+        }
+        return null;
     }
 
     private boolean isShouldWaitForScansFinished() {
         return !isDryRun() && (isShouldGenerateHubReport() || isFailureConditionsConfigured());
     }
 
-    public List<String> getScanTargets(final IntLogger logger, final Node builtOn, final EnvVars variables, final String workingDirectory) throws BDJenkinsHubPluginException, InterruptedException {
-        final List<String> scanTargetPaths = new ArrayList<>();
+    /**
+     * Resolves the workspace and all of the scan targets on the node in a single remote call.
+     */
+    public ResolvedScanTargets resolveScanTargets(final IntLogger logger, final Node builtOn, final EnvVars variables, final String workingDirectory) throws BDJenkinsHubPluginException, InterruptedException {
+        final List<String> targets = new ArrayList<>();
         final ScanJobs[] scans = getScans();
         if (scans == null || scans.length == 0) {
-            scanTargetPaths.add(workingDirectory);
+            targets.add(null);
         } else {
             for (final ScanJobs scanJob : scans) {
                 if (StringUtils.isEmpty(scanJob.getScanTarget())) {
-                    scanTargetPaths.add(workingDirectory);
+                    targets.add(null);
                 } else {
-                    String target = BuildHelper.handleVariableReplacement(variables, scanJob.getScanTarget().trim());
-
-                    try {
-                        target = builtOn.getChannel().call(new DetermineTargetPath(workingDirectory, target));
-                    } catch (final IOException e) {
-                        logger.error("Problem getting the real path of the target : " + target + " on this node. Error : " + e.getMessage(), e);
-                    }
-                    scanTargetPaths.add(target);
+                    targets.add(BuildHelper.handleVariableReplacement(variables, scanJob.getScanTarget().trim()));
                 }
             }
         }
 
-        return scanTargetPaths;
+        try {
+            // the targets are only measured to choose the scan memory
+            return builtOn.getChannel().call(new ResolveScanTargets(workingDirectory, targets, isAutomaticScanMemory(), getExcludePatterns()));
+        } catch (final IOException e) {
+            logger.error("Problem getting the real path of the scan targets on this node. Error : " + e.getMessage(), e);
+            final List<ResolvedScanTargets.ScanTarget> scanTargets = new ArrayList<>();
+            for (final String target : targets) {
+                String path = workingDirectory;
+                if (StringUtils.isNotBlank(target)) {
+                    path = new File(target).isAbsolute() ? target : new File(workingDirectory, target).getPath();
+                }
+                scanTargets.add(new ResolvedScanTargets.ScanTarget(path, true, true, 0L, 0L, e.getMessage()));
+            }
+            return new ResolvedScanTargets(workingDirectory, scanTargets, -1L);
+        }
     }
 
     /**
      * Validates that the Plugin is configured correctly. Checks that the User has defined an iScan tool, a Hub server URL, a Credential, and that there are at least one scan Target/Job defined in the Build
      */
     public boolean validateGlobalConfiguration() throws HubConfigurationException {
+        return validateGlobalConfiguration(getHubServerInfo());
+    }
 
-        if (getHubServerInfo() == null) {
+    private boolean validateGlobalConfiguration(final HubServerInfo serverInfo) throws HubConfigurationException {
+        if (serverInfo == null) {
+            if (isPoolServer()) {
+                throw new HubConfigurationException("No Hub server is configured for the pool.");
+            }
+            if (StringUtils.isNotBlank(getHubServerName())) {
+                throw new HubConfigurationException("No Hub server named " + getHubServerName() + " is configured.");
+            }
             throw new HubConfigurationException("Could not find the Hub global configuration.");
         }
-        if (!getHubServerInfo().isPluginConfigured()) {
+        if (!serverInfo.isPluginConfigured()) {
             // If plugin is not Configured, we try to find out what is missing.
-            if (StringUtils.isEmpty(getHubServerInfo().getServerUrl())) {
+            if (StringUtils.isEmpty(serverInfo.getServerUrl())) {
                 throw new HubConfigurationException("No Hub URL was provided.");
             }
-            if (StringUtils.isEmpty(getHubServerInfo().getCredentialsId())) {
+            if (StringUtils.isEmpty(serverInfo.getCredentialsId())) {
                 throw new HubConfigurationException("No credentials could be found to connect to the Hub.");
             }
         }
@@ -0,0 +1,147 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ThreadLocalRandom;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.exception.HubTimeoutExceededException;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.service.HubServicesFactory;
+import com.blackducksoftware.integration.log.IntLogger;
+
+/**
+ * Waits for the Hub to finish the scans of a build and update the BOM of the project version. The scan status is polled with an exponentially growing delay
+ * and random jitter, so the builds waiting on a Hub do not poll it in lock step, and the wait ends as soon as no scan of the code locations is pending.
+ */
+public class BomReadinessWaiter {
+    public static final long INITIAL_DELAY = Long.getLong(BomReadinessWaiter.class.getName() + ".initialDelay", 2000L);
+
+    public static final long MAXIMUM_DELAY = Long.getLong(BomReadinessWaiter.class.getName() + ".maximumDelay", 60000L);
+
+    private final IntLogger logger;
+
+    private final HubServerInfo serverInfo;
+
+    private final HubServicesFactory services;
+
+    private final long timeout;
+
+    /**
+     * @param timeout
+     *            the longest time to wait in milliseconds
+     */
+    public BomReadinessWaiter(final IntLogger logger, final HubServerInfo serverInfo, final HubServicesFactory services, final long timeout) {
+        this.logger = logger;
+        this.serverInfo = serverInfo;
+        this.services = services;
+        this.timeout = timeout;
+    }
+
+    /**
+     * Waits until no scan of the given code locations is pending.
+     * @param codeLocationNames
+     *            the code locations the build uploaded, only their scans are waited on
+     * @param uploadFinished
+     *            the time the build finished uploading its scans, polls made for other builds before then are never used
+     */
+    public void waitUntilReady(final ProjectVersionView version, final List<String> codeLocationNames, final long uploadFinished) throws InterruptedException, IntegrationException {
+        final long started = System.currentTimeMillis();
+        final long deadline = started + timeout;
+        long delay = INITIAL_DELAY;
+        long lastPolled = uploadFinished;
+        while (true) {
+            final long polled = System.currentTimeMillis();
+            // a poll made for another build since this build last looked is recent enough
+            final int pendingScans = getPendingScans(version, codeLocationNames, lastPolled);
+            lastPolled = polled;
+            if (pendingScans == 0) {
+                logger.info(String.format("The BOM is up to date after %d seconds", (System.currentTimeMillis() - started) / 1000));
+                return;
+            }
+
+            final long now = System.currentTimeMillis();
+            if (now >= deadline) {
+                throw new HubTimeoutExceededException(String.format("The BOM was not updated within the maximum wait time of %d minutes, %d scans are still pending", timeout / 60 / 1000, pendingScans));
+            }
+            final long sleep = Math.min(getJitteredDelay(delay), deadline - now);
+            logger.debug(String.format("%d scans are pending, checking again in %d ms", pendingScans, sleep));
+            Thread.sleep(sleep);
+            delay = getNextDelay(delay);
+        }
+    }
+
+    /**
+     * Checks the scan status once, without waiting. Code locations of the project version that the build did not upload are left out, so the scans of other
+     * builds are never waited on.
+     * @param codeLocationNames
+     *            the code locations the build uploaded, none means there is nothing to wait for
+     * @param notBefore
+     *            the time a poll made for another build has to have started after to be used instead of polling the Hub
+     * @return the number of scans of the given code locations that are still pending, 0 once the BOM is up to date
+     * @throws HubIntegrationException
+     *             if the latest scan of one of the code locations failed
+     */
+    public int getPendingScans(final ProjectVersionView version, final List<String> codeLocationNames, final long notBefore) throws IntegrationException {
+        if (codeLocationNames == null || codeLocationNames.isEmpty()) {
+            logger.debug("No code location was uploaded, there are no scans to wait for");
+            return 0;
+        }
+        return countPendingScans(BomStatusPoller.getInstance().getStatus(serverInfo, services, version, notBefore), codeLocationNames);
+    }
+
+    static int countPendingScans(final List<BomStatusPoller.CodeLocationStatus> status, final List<String> codeLocationNames) throws HubIntegrationException {
+        final Set<String> missingNames = new HashSet<>(codeLocationNames);
+        int pendingScans = 0;
+        for (final BomStatusPoller.CodeLocationStatus codeLocationStatus : status) {
+            if (!missingNames.remove(codeLocationStatus.getCodeLocationName())) {
+                continue;
+            }
+            if (codeLocationStatus.getError() != null) {
+                throw new HubIntegrationException("The scan of the code location " + codeLocationStatus.getCodeLocationName() + " failed : " + codeLocationStatus.getError());
+            }
+            pendingScans += codeLocationStatus.getPendingScans();
+        }
+        // a code location that has no scan in the project version yet is still being processed by the Hub
+        return pendingScans + missingNames.size();
+    }
+
+    public static long getNextDelay(final long delay) {
+        return Math.min(delay * 2, MAXIMUM_DELAY);
+    }
+
+    /**
+     * Picks a random delay between half and all of the given delay.
+     */
+    public static long getJitteredDelay(final long delay) {
+        final long half = delay / 2;
+        return half + ThreadLocalRandom.current().nextLong(half + 1);
+    }
+
+}
@@ -0,0 +1,255 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.lang3.StringUtils;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.view.ScanSummaryView;
+import com.blackducksoftware.integration.hub.api.generated.view.CodeLocationView;
+import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker;
+import com.blackducksoftware.integration.hub.service.HubService;
+import com.blackducksoftware.integration.hub.service.HubServicesFactory;
+import com.blackducksoftware.integration.hub.service.ScanStatusService;
+
+/**
+ * Polls the scan status of the code locations of a project version for every build waiting on it. Builds waiting on the same project version share one poll,
+ * a build that asks while a poll is running waits for that poll and a build that asks shortly after gets its result, instead of each build polling the Hub on
+ * its own.
+ */
+public class BomStatusPoller {
+    /**
+     * Entries for project versions nobody asked about for this long are dropped.
+     */
+    private static final long IDLE_TIMEOUT = 10L * 60L * 1000L;
+
+    private final static BomStatusPoller _instance = new BomStatusPoller();
+
+    /**
+     * Polls the scan status of a project version from the Hub.
+     */
+    interface Source {
+        List<CodeLocationStatus> poll() throws IntegrationException;
+    }
+
+    private final ConcurrentMap<String, SharedPoll> polls = new ConcurrentHashMap<>();
+
+    private final AtomicLong hubPolls = new AtomicLong();
+
+    private final AtomicLong sharedResults = new AtomicLong();
+
+    BomStatusPoller() {
+    }
+
+    public static BomStatusPoller getInstance() {
+        return _instance;
+    }
+
+    /**
+     * Returns the scan status of the project version, from a poll that started after notBefore or from a new one. A new poll goes through the circuit of the
+     * server.
+     * @param notBefore
+     *            the time a poll made for another build has to have started after to be used, at least the time the scans of the build were uploaded so a poll
+     *            that could not see them is never used
+     */
+    public List<CodeLocationStatus> getStatus(final HubServerInfo serverInfo, final HubServicesFactory services, final ProjectVersionView version, final long notBefore)
+            throws IntegrationException {
+        final HubService hubService = services.createHubService();
+        return getStatus(hubService.getHref(version), notBefore, new Source() {
+            @Override
+            public List<CodeLocationStatus> poll() throws IntegrationException {
+                return HubCircuitBreaker.getInstance().execute(serverInfo, new HubCircuitBreaker.HubRequest<List<CodeLocationStatus>>() {
+                    @Override
+                    public List<CodeLocationStatus> execute() throws IntegrationException {
+                        return BomStatusPoller.this.poll(services, hubService, version);
+                    }
+                });
+            }
+        });
+    }
+
+    List<CodeLocationStatus> getStatus(final String versionUrl, final long notBefore, final Source source) throws IntegrationException {
+        removeIdlePolls();
+
+        SharedPoll sharedPoll = polls.get(versionUrl);
+        if (sharedPoll == null) {
+            final SharedPoll newPoll = new SharedPoll();
+            sharedPoll = polls.putIfAbsent(versionUrl, newPoll);
+            if (sharedPoll == null) {
+                sharedPoll = newPoll;
+            }
+        }
+        synchronized (sharedPoll) {
+            sharedPoll.lastRequested = System.currentTimeMillis();
+            if (sharedPoll.status != null && sharedPoll.pollStarted > notBefore) {
+                sharedResults.incrementAndGet();
+                return sharedPoll.status;
+            }
+            final long pollStarted = System.currentTimeMillis();
+            sharedPoll.status = source.poll();
+            sharedPoll.pollStarted = pollStarted;
+            hubPolls.incrementAndGet();
+            return sharedPoll.status;
+        }
+    }
+
+    /**
+     * @return the number of project versions builds are waiting on, or waited on recently
+     */
+    public int getProjectVersionCount() {
+        return polls.size();
+    }
+
+    /**
+     * @return the number of times the Hub was polled
+     */
+    public long getHubPolls() {
+        return hubPolls.get();
+    }
+
+    /**
+     * @return the number of times a build was given the result of a poll made for another build
+     */
+    public long getSharedResults() {
+        return sharedResults.get();
+    }
+
+    private List<CodeLocationStatus> poll(final HubServicesFactory services, final HubService hubService, final ProjectVersionView version) throws IntegrationException {
+        final ScanStatusService scanStatusService = services.createScanStatusService(ScanStatusService.DEFAULT_TIMEOUT);
+        final List<CodeLocationStatus> status = new ArrayList<>();
+        for (final CodeLocationView codeLocation : hubService.getAllResponses(version, ProjectVersionView.CODELOCATIONS_LINK_RESPONSE)) {
+            final String scansLink = hubService.getFirstLinkSafely(codeLocation, CodeLocationView.SCANS_LINK);
+            if (StringUtils.isBlank(scansLink)) {
+                continue;
+            }
+            final List<ScanState> scans = new ArrayList<>();
+            for (final ScanSummaryView scanSummary : hubService.getAllResponses(scansLink, ScanSummaryView.class)) {
+                final String error = scanStatusService.isError(scanSummary.status) ? scanSummary.status + (StringUtils.isBlank(scanSummary.statusMessage) ? "" : " : " + scanSummary.statusMessage) : null;
+                scans.add(new ScanState(getTime(scanSummary), scanStatusService.isPending(scanSummary.status), error));
+            }
+            status.add(getCodeLocationStatus(codeLocation.name, scans));
+        }
+        return Collections.unmodifiableList(status);
+    }
+
+    /**
+     * Counts the pending scans of the code location. Only the latest scan can fail the code location, an earlier scan that failed has since been replaced.
+     */
+    static CodeLocationStatus getCodeLocationStatus(final String codeLocationName, final List<ScanState> scans) {
+        int pendingScans = 0;
+        ScanState latestScan = null;
+        for (final ScanState scan : scans) {
+            if (scan.pending) {
+                pendingScans++;
+            }
+            if (latestScan == null || scan.time > latestScan.time) {
+                latestScan = scan;
+            }
+        }
+        return new CodeLocationStatus(codeLocationName, pendingScans, latestScan == null ? null : latestScan.error);
+    }
+
+    private long getTime(final ScanSummaryView scanSummary) {
+        final Date date = scanSummary.updatedAt != null ? scanSummary.updatedAt : scanSummary.createdAt;
+        return date == null ? 0L : date.getTime();
+    }
+
+    private void removeIdlePolls() {
+        final long now = System.currentTimeMillis();
+        for (final String versionUrl : polls.keySet()) {
+            final SharedPoll sharedPoll = polls.get(versionUrl);
+            if (sharedPoll != null && now - sharedPoll.lastRequested > IDLE_TIMEOUT) {
+                polls.remove(versionUrl, sharedPoll);
+            }
+        }
+    }
+
+    private static class SharedPoll {
+        private volatile long lastRequested = System.currentTimeMillis();
+
+        private long pollStarted;
+
+        private List<CodeLocationStatus> status;
+    }
+
+    /**
+     * What the Hub reported about one scan of a code location.
+     */
+    static class ScanState {
+        private final long time;
+
+        private final boolean pending;
+
+        private final String error;
+
+        ScanState(final long time, final boolean pending, final String error) {
+            this.time = time;
+            this.pending = pending;
+            this.error = error;
+        }
+    }
+
+    /**
+     * The scan status of one code location of the project version.
+     */
+    public static class CodeLocationStatus {
+        private final String codeLocationName;
+
+        private final int pendingScans;
+
+        private final String error;
+
+        public CodeLocationStatus(final String codeLocationName, final int pendingScans, final String error) {
+            this.codeLocationName = codeLocationName;
+            this.pendingScans = pendingScans;
+            this.error = error;
+        }
+
+        public String getCodeLocationName() {
+            return codeLocationName;
+        }
+
+        public int getPendingScans() {
+            return pendingScans;
+        }
+
+        /**
+         * @return the status of the latest scan if it failed, or null
+         */
+        public String getError() {
+            return error;
+        }
+    }
+
+}
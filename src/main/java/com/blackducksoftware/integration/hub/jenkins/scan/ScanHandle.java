@@ -0,0 +1,145 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.action.ScanDigestAction;
+
+/**
+ * What is left to do for a scan once its results were uploaded to the Hub. It holds no connection or node, so it can be kept while the BOM is being updated
+ * and survives a restart of Jenkins.
+ */
+public class ScanHandle implements Serializable {
+    private static final long serialVersionUID = -3155683815425707614L;
+
+    private final String versionJson;
+
+    private final ArrayList<String> codeLocationNames;
+
+    private final boolean dryRun;
+
+    private final boolean shouldGenerateHubReport;
+
+    private final boolean waitForBom;
+
+    private final long bomWait;
+
+    private final long uploadFinished;
+
+    private final HubServerInfo serverInfo;
+
+    private final long serverInfoVersion;
+
+    private final boolean scansFinished;
+
+    private final ScanDigestAction scanDigests;
+
+    public ScanHandle(final String versionJson, final List<String> codeLocationNames, final boolean dryRun, final boolean shouldGenerateHubReport, final boolean waitForBom, final long bomWait,
+            final long uploadFinished, final HubServerInfo serverInfo, final long serverInfoVersion, final boolean scansFinished, final ScanDigestAction scanDigests) {
+        this.versionJson = versionJson;
+        this.codeLocationNames = codeLocationNames == null ? new ArrayList<String>() : new ArrayList<>(codeLocationNames);
+        this.dryRun = dryRun;
+        this.shouldGenerateHubReport = shouldGenerateHubReport;
+        this.waitForBom = waitForBom;
+        this.bomWait = bomWait;
+        this.uploadFinished = uploadFinished;
+        this.serverInfo = serverInfo;
+        this.serverInfoVersion = serverInfoVersion;
+        this.scansFinished = scansFinished;
+        this.scanDigests = scanDigests;
+    }
+
+    /**
+     * @return the project version the scan was mapped to, as json, or null if the scan was not mapped to a project version
+     */
+    public String getVersionJson() {
+        return versionJson;
+    }
+
+    /**
+     * @return the code locations the scan uploaded, the only ones the BOM wait looks at, empty if nothing was uploaded
+     */
+    public List<String> getCodeLocationNames() {
+        return codeLocationNames;
+    }
+
+    public boolean isDryRun() {
+        return dryRun;
+    }
+
+    public boolean isShouldGenerateHubReport() {
+        return shouldGenerateHubReport;
+    }
+
+    /**
+     * @return true if the BOM of the project version has to be up to date before the scan is complete
+     */
+    public boolean isWaitForBom() {
+        return waitForBom;
+    }
+
+    /**
+     * @return the longest time to wait for the BOM in milliseconds
+     */
+    public long getBomWait() {
+        return bomWait;
+    }
+
+    /**
+     * @return the time the upload finished, or 0 if every scan target was unchanged and nothing was uploaded
+     */
+    public long getUploadFinished() {
+        return uploadFinished;
+    }
+
+    /**
+     * @return the Hub server the scan was uploaded to, with its configuration at the time, the rest of the scan uses the same server and configuration
+     */
+    public HubServerInfo getServerInfo() {
+        return serverInfo;
+    }
+
+    public long getServerInfoVersion() {
+        return serverInfoVersion;
+    }
+
+    /**
+     * @return true if the node already waited for the Hub to finish the scans, and they finished without errors
+     */
+    public boolean isScansFinished() {
+        return scansFinished;
+    }
+
+    /**
+     * @return the digests of the scan targets, recorded for the next incremental scan once the scan is known to have succeeded, or null
+     */
+    public ScanDigestAction getScanDigests() {
+        return scanDigests;
+    }
+
+}
@@ -0,0 +1,135 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Picks the scanner heap for the automatic scan memory mode. The scanner needs memory for every file it signs and for the amount of data it reads, so the
+ * heap grows with the file count and size of the scan targets. It is doubled after a scan that ran out of memory, never drops below the memory of the
+ * previous automatic scan that did not run out, so a raise is kept once it worked, and is kept within the memory the node has available.
+ */
+public class ScanMemoryCalculator {
+    public static final String AUTOMATIC = "auto";
+
+    public static final int MINIMUM_MEMORY = Integer.getInteger(ScanMemoryCalculator.class.getName() + ".minimumMemory", 1024);
+
+    public static final int MAXIMUM_MEMORY = Integer.getInteger(ScanMemoryCalculator.class.getName() + ".maximumMemory", 16384);
+
+    /**
+     * The number of files the scanner can handle per megabyte of heap.
+     */
+    public static final int FILES_PER_MEGABYTE = Integer.getInteger(ScanMemoryCalculator.class.getName() + ".filesPerMegabyte", 250);
+
+    /**
+     * The megabytes of heap added for every gigabyte of data scanned.
+     */
+    public static final int MEGABYTES_PER_GIGABYTE = Integer.getInteger(ScanMemoryCalculator.class.getName() + ".megabytesPerGigabyte", 64);
+
+    /**
+     * The percentage of the available memory of the node the scanner may use.
+     */
+    public static final int AVAILABLE_MEMORY_PERCENTAGE = Integer.getInteger(ScanMemoryCalculator.class.getName() + ".availableMemoryPercentage", 75);
+
+    private static final int MEMORY_INCREMENT = 256;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final long GIGABYTE = 1024L * MEGABYTE;
+
+    private final long fileCount;
+
+    private final long size;
+
+    private final long availableMemory;
+
+    private final int previousMemory;
+
+    private final boolean previousOutOfMemory;
+
+    private final boolean previousAutomatic;
+
+    private final StringBuilder reason = new StringBuilder();
+
+    /**
+     * @param availableMemory
+     *            the memory in bytes available on the node, or -1 if it is not known
+     * @param previousMemory
+     *            the memory in megabytes of the previous scan, or 0 if there was none
+     * @param previousAutomatic
+     *            true if the memory of the previous scan was picked automatically
+     */
+    public ScanMemoryCalculator(final long fileCount, final long size, final long availableMemory, final int previousMemory, final boolean previousOutOfMemory,
+            final boolean previousAutomatic) {
+        this.fileCount = fileCount;
+        this.size = size;
+        this.availableMemory = availableMemory;
+        this.previousMemory = previousMemory;
+        this.previousOutOfMemory = previousOutOfMemory;
+        this.previousAutomatic = previousAutomatic;
+    }
+
+    public static boolean isAutomatic(final String scanMemory) {
+        return AUTOMATIC.equalsIgnoreCase(StringUtils.trimToEmpty(scanMemory));
+    }
+
+    /**
+     * @return the scan memory in megabytes
+     */
+    public int calculate() {
+        reason.setLength(0);
+        long memory = MINIMUM_MEMORY + fileCount / FILES_PER_MEGABYTE + size / GIGABYTE * MEGABYTES_PER_GIGABYTE;
+        memory = (memory + MEMORY_INCREMENT - 1) / MEMORY_INCREMENT * MEMORY_INCREMENT;
+        reason.append(String.format("%d MB for %d files and %d MB of data", memory, fileCount, size / MEGABYTE));
+
+        if (previousOutOfMemory && previousMemory > 0 && memory < 2L * previousMemory) {
+            memory = 2L * previousMemory;
+            reason.append(String.format(", raised to %d MB because the previous scan ran out of memory with %d MB", memory, previousMemory));
+        } else if (!previousOutOfMemory && previousAutomatic && memory < previousMemory) {
+            memory = previousMemory;
+            reason.append(String.format(", kept at the %d MB of the previous scan", memory));
+        }
+        if (memory > MAXIMUM_MEMORY) {
+            memory = MAXIMUM_MEMORY;
+            reason.append(String.format(", limited to the maximum of %d MB", memory));
+        }
+        if (availableMemory > 0) {
+            final long availableMegabytes = availableMemory / MEGABYTE;
+            final long limit = Math.max(availableMegabytes * AVAILABLE_MEMORY_PERCENTAGE / 100 / MEMORY_INCREMENT * MEMORY_INCREMENT, MINIMUM_MEMORY);
+            if (memory > limit) {
+                memory = limit;
+                reason.append(String.format(", limited to %d MB by the %d MB available on the node", memory, availableMegabytes));
+            }
+        }
+        return (int) memory;
+    }
+
+    /**
+     * @return how the last calculation came to its result
+     */
+    public String getReason() {
+        return reason.toString();
+    }
+
+}
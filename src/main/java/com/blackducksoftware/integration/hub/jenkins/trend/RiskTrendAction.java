@@ -0,0 +1,249 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.trend;
+
+import java.awt.Color;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import org.jfree.chart.ChartFactory;
+import org.jfree.chart.JFreeChart;
+import org.jfree.chart.axis.CategoryAxis;
+import org.jfree.chart.axis.CategoryLabelPositions;
+import org.jfree.chart.axis.NumberAxis;
+import org.jfree.chart.plot.CategoryPlot;
+import org.jfree.chart.plot.PlotOrientation;
+import org.jfree.chart.renderer.category.LineAndShapeRenderer;
+import org.jfree.ui.RectangleInsets;
+
+import com.blackducksoftware.integration.hub.jenkins.Messages;
+
+import hudson.model.Action;
+import hudson.model.Job;
+import hudson.util.ChartUtil;
+import hudson.util.ColorPalette;
+import hudson.util.DataSetBuilder;
+import hudson.util.Graph;
+import hudson.util.ShiftedCategoryAxis;
+
+/**
+ * Shows the risk and policy trend of a job, drawn from the {@link RiskTrendIndex} of the job alone.
+ */
+public class RiskTrendAction implements Action {
+
+    public static final int MAXIMUM_BUILDS = Integer.getInteger(RiskTrendAction.class.getName() + ".maximumBuilds", 50);
+
+    private static final Logger LOGGER = Logger.getLogger(RiskTrendAction.class.getName());
+
+    private final Job<?, ?> job;
+
+    public RiskTrendAction(final Job<?, ?> job) {
+        this.job = job;
+    }
+
+    public Job<?, ?> getJob() {
+        return job;
+    }
+
+    /**
+     * @return the records of the most recent builds, ordered by build number
+     */
+    public List<RiskTrendRecord> getRecords() {
+        try {
+            return RiskTrendIndex.getLatest(RiskTrendIndex.getInstance().read(RiskTrendIndex.getIndexFile(job)), MAXIMUM_BUILDS);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not read the Black Duck Hub risk trend of " + job.getFullName(), e);
+            return Collections.emptyList();
+        }
+    }
+
+    public boolean hasRiskCounts() {
+        for (final RiskTrendRecord record : getRecords()) {
+            if (record.hasRiskCounts()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public boolean hasPolicyCounts() {
+        for (final RiskTrendRecord record : getRecords()) {
+            if (record.hasPolicyCounts()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public Graph getSecurityRiskGraph() {
+        return new TrendGraph(getRecords(), Messages.RiskTrend_SecurityRisk()) {
+            @Override
+            protected void addRecord(final DataSetBuilder<String, BuildLabel> dataSet, final RiskTrendRecord record, final BuildLabel label) {
+                if (record.hasRiskCounts()) {
+                    dataSet.add(record.getVulnerabilityRiskHighCount(), Messages.RiskTrend_High(), label);
+                    dataSet.add(record.getVulnerabilityRiskMediumCount(), Messages.RiskTrend_Medium(), label);
+                    dataSet.add(record.getVulnerabilityRiskLowCount(), Messages.RiskTrend_Low(), label);
+                }
+            }
+        };
+    }
+
+    public Graph getLicenseRiskGraph() {
+        return new TrendGraph(getRecords(), Messages.RiskTrend_LicenseRisk()) {
+            @Override
+            protected void addRecord(final DataSetBuilder<String, BuildLabel> dataSet, final RiskTrendRecord record, final BuildLabel label) {
+                if (record.hasRiskCounts()) {
+                    dataSet.add(record.getLicenseRiskHighCount(), Messages.RiskTrend_High(), label);
+                    dataSet.add(record.getLicenseRiskMediumCount(), Messages.RiskTrend_Medium(), label);
+                    dataSet.add(record.getLicenseRiskLowCount(), Messages.RiskTrend_Low(), label);
+                }
+            }
+        };
+    }
+
+    public Graph getOperationalRiskGraph() {
+        return new TrendGraph(getRecords(), Messages.RiskTrend_OperationalRisk()) {
+            @Override
+            protected void addRecord(final DataSetBuilder<String, BuildLabel> dataSet, final RiskTrendRecord record, final BuildLabel label) {
+                if (record.hasRiskCounts()) {
+                    dataSet.add(record.getOperationalRiskHighCount(), Messages.RiskTrend_High(), label);
+                    dataSet.add(record.getOperationalRiskMediumCount(), Messages.RiskTrend_Medium(), label);
+                    dataSet.add(record.getOperationalRiskLowCount(), Messages.RiskTrend_Low(), label);
+                }
+            }
+        };
+    }
+
+    public Graph getPolicyGraph() {
+        return new TrendGraph(getRecords(), Messages.RiskTrend_PolicyStatus()) {
+            @Override
+            protected void addRecord(final DataSetBuilder<String, BuildLabel> dataSet, final RiskTrendRecord record, final BuildLabel label) {
+                if (record.hasPolicyCounts()) {
+                    dataSet.add(Math.max(0, record.getBomEntriesInViolation()), Messages.RiskTrend_InViolation(), label);
+                    dataSet.add(Math.max(0, record.getViolationsOverridden()), Messages.RiskTrend_Overridden(), label);
+                    dataSet.add(Math.max(0, record.getBomEntriesNotInViolation()), Messages.RiskTrend_NotInViolation(), label);
+                }
+            }
+        };
+    }
+
+    @Override
+    public String getIconFileName() {
+        return "/plugin/blackduck-hub/images/Ducky-200.png";
+    }
+
+    @Override
+    public String getDisplayName() {
+        return Messages.RiskTrend_getDisplayName();
+    }
+
+    @Override
+    public String getUrlName() {
+        return "hub_risk_trend";
+    }
+
+    /**
+     * Labels the builds by number, without loading them.
+     */
+    static final class BuildLabel implements Comparable<BuildLabel> {
+        private final int buildNumber;
+
+        BuildLabel(final int buildNumber) {
+            this.buildNumber = buildNumber;
+        }
+
+        @Override
+        public int compareTo(final BuildLabel other) {
+            return Integer.compare(buildNumber, other.buildNumber);
+        }
+
+        @Override
+        public boolean equals(final Object other) {
+            return other instanceof BuildLabel && ((BuildLabel) other).buildNumber == buildNumber;
+        }
+
+        @Override
+        public int hashCode() {
+            return buildNumber;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + buildNumber;
+        }
+    }
+
+    private abstract static class TrendGraph extends Graph {
+        private final List<RiskTrendRecord> records;
+
+        private final String title;
+
+        protected TrendGraph(final List<RiskTrendRecord> records, final String title) {
+            super(records.isEmpty() ? 0L : records.get(records.size() - 1).getTimestamp(), 500, 200);
+            this.records = records;
+            this.title = title;
+        }
+
+        protected abstract void addRecord(DataSetBuilder<String, BuildLabel> dataSet, RiskTrendRecord record, BuildLabel label);
+
+        @Override
+        protected JFreeChart createGraph() {
+            final DataSetBuilder<String, BuildLabel> dataSet = new DataSetBuilder<>();
+            for (final RiskTrendRecord record : records) {
+                addRecord(dataSet, record, new BuildLabel(record.getBuildNumber()));
+            }
+            final JFreeChart chart = ChartFactory.createLineChart(title, null, Messages.RiskTrend_Components(), dataSet.build(), PlotOrientation.VERTICAL, true, true, false);
+            chart.setBackgroundPaint(Color.white);
+
+            final CategoryPlot plot = chart.getCategoryPlot();
+            plot.setBackgroundPaint(Color.WHITE);
+            plot.setOutlinePaint(null);
+            plot.setRangeGridlinesVisible(true);
+            plot.setRangeGridlinePaint(Color.black);
+
+            final CategoryAxis domainAxis = new ShiftedCategoryAxis(null);
+            plot.setDomainAxis(domainAxis);
+            domainAxis.setCategoryLabelPositions(CategoryLabelPositions.UP_90);
+            domainAxis.setLowerMargin(0.0);
+            domainAxis.setUpperMargin(0.0);
+            domainAxis.setCategoryMargin(0.0);
+
+            final NumberAxis rangeAxis = (NumberAxis) plot.getRangeAxis();
+            rangeAxis.setStandardTickUnits(NumberAxis.createIntegerTickUnits());
+
+            final LineAndShapeRenderer renderer = (LineAndShapeRenderer) plot.getRenderer();
+            renderer.setSeriesPaint(0, ColorPalette.RED);
+            renderer.setSeriesPaint(1, ColorPalette.YELLOW);
+            renderer.setSeriesPaint(2, ColorPalette.BLUE);
+
+            plot.setInsets(new RectangleInsets(0, 0, 0, 5.0));
+            ChartUtil.adjustRanges(plot);
+            return chart;
+        }
+    }
+
+}
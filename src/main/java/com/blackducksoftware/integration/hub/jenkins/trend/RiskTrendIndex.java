@@ -0,0 +1,239 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.trend;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.Job;
+import hudson.model.listeners.ItemListener;
+
+/**
+ * The risk and policy counts of the builds of a job, kept in one small file in the job directory so the trend of a job can be shown without loading its
+ * builds or their reports. Records are only ever appended, each record has the same size, and a build recorded again replaces its earlier record when the
+ * index is read. The records already read are kept in memory, reading the index again only reads the records appended since. The index is rewritten without
+ * the records of a build when the build is deleted.
+ */
+public class RiskTrendIndex {
+
+    public static final String INDEX_FILE_NAME = "blackduck-hub-risk-trend.idx";
+
+    private static final byte[] MAGIC = { 'B', 'D', 'R', 'T', 0, 0, 0, 1 };
+
+    private final static RiskTrendIndex _instance = new RiskTrendIndex();
+
+    private final ConcurrentMap<String, IndexContents> contents = new ConcurrentHashMap<>();
+
+    private RiskTrendIndex() {
+    }
+
+    public static RiskTrendIndex getInstance() {
+        return _instance;
+    }
+
+    public static File getIndexFile(final Job<?, ?> job) {
+        return new File(job.getRootDir(), INDEX_FILE_NAME);
+    }
+
+    public void append(final File indexFile, final RiskTrendRecord record) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAGIC.length + RiskTrendRecord.SIZE);
+        final DataOutputStream output = new DataOutputStream(bytes);
+        synchronized (this) {
+            if (indexFile.length() == 0L) {
+                output.write(MAGIC);
+            }
+            record.write(output);
+            // a single write, so a record is never interleaved with another
+            try (FileOutputStream fileOutput = new FileOutputStream(indexFile, true)) {
+                fileOutput.write(bytes.toByteArray());
+            }
+        }
+    }
+
+    /**
+     * @return the latest record of every build in the index, ordered by build number
+     */
+    public List<RiskTrendRecord> read(final File indexFile) throws IOException {
+        final IndexContents indexContents = getContents(indexFile);
+        synchronized (indexContents) {
+            final long length = indexFile.length();
+            if (length < indexContents.length) {
+                // the index was replaced
+                indexContents.records.clear();
+                indexContents.length = 0L;
+            }
+            if (length > indexContents.length) {
+                readRecords(indexFile, indexContents);
+            }
+            return new ArrayList<>(indexContents.records.values());
+        }
+    }
+
+    /**
+     * Rewrites the index without the records of the build, and without the records another record of the same build replaced. The index is deleted once no
+     * build is left in it.
+     */
+    public void remove(final File indexFile, final int buildNumber) throws IOException {
+        if (!indexFile.isFile()) {
+            return;
+        }
+        final IndexContents indexContents = getContents(indexFile);
+        synchronized (this) {
+            synchronized (indexContents) {
+                if (!indexFile.isFile()) {
+                    return;
+                }
+                final IndexContents current = new IndexContents();
+                readRecords(indexFile, current);
+                if (current.records.remove(buildNumber) == null) {
+                    return;
+                }
+                // the records are read again from the rewritten index, appending may change its length in any way
+                indexContents.records.clear();
+                indexContents.length = 0L;
+                if (current.records.isEmpty()) {
+                    Files.delete(indexFile.toPath());
+                    contents.remove(indexFile.getPath(), indexContents);
+                    return;
+                }
+                final ByteArrayOutputStream bytes = new ByteArrayOutputStream(MAGIC.length + current.records.size() * RiskTrendRecord.SIZE);
+                final DataOutputStream output = new DataOutputStream(bytes);
+                output.write(MAGIC);
+                for (final RiskTrendRecord record : current.records.values()) {
+                    record.write(output);
+                }
+                final File compactedFile = new File(indexFile.getPath() + ".tmp");
+                try (FileOutputStream fileOutput = new FileOutputStream(compactedFile)) {
+                    fileOutput.write(bytes.toByteArray());
+                }
+                Files.move(compactedFile.toPath(), indexFile.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            }
+        }
+    }
+
+    /**
+     * Forgets the records read from indexes that are gone, with the jobs they belonged to.
+     */
+    public void evictMissing() {
+        final Iterator<String> keys = contents.keySet().iterator();
+        while (keys.hasNext()) {
+            if (!new File(keys.next()).isFile()) {
+                keys.remove();
+            }
+        }
+    }
+
+    private IndexContents getContents(final File indexFile) {
+        final String key = indexFile.getPath();
+        IndexContents indexContents = contents.get(key);
+        if (indexContents == null) {
+            final IndexContents newContents = new IndexContents();
+            indexContents = contents.putIfAbsent(key, newContents);
+            if (indexContents == null) {
+                indexContents = newContents;
+            }
+        }
+        return indexContents;
+    }
+
+    boolean isCached(final File indexFile) {
+        return contents.containsKey(indexFile.getPath());
+    }
+
+    private void readRecords(final File indexFile, final IndexContents indexContents) throws IOException {
+        try (DataInputStream input = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            long position = indexContents.length;
+            if (position == 0L) {
+                final byte[] magic = new byte[MAGIC.length];
+                input.readFully(magic);
+                if (!Arrays.equals(magic, MAGIC)) {
+                    throw new IOException("Not a risk trend index : " + indexFile);
+                }
+                position = MAGIC.length;
+            } else {
+                input.skipBytes((int) position);
+            }
+            final long length = indexFile.length();
+            // a record still being appended is read the next time
+            while (position + RiskTrendRecord.SIZE <= length) {
+                final RiskTrendRecord record = RiskTrendRecord.read(input);
+                indexContents.records.put(record.getBuildNumber(), record);
+                position += RiskTrendRecord.SIZE;
+            }
+            indexContents.length = position;
+        }
+    }
+
+    /**
+     * @return the records of the most recent builds, at most maximumRecords of them
+     */
+    public static List<RiskTrendRecord> getLatest(final List<RiskTrendRecord> records, final int maximumRecords) {
+        if (records.size() <= maximumRecords) {
+            return records;
+        }
+        return Collections.unmodifiableList(records.subList(records.size() - maximumRecords, records.size()));
+    }
+
+    private static final class IndexContents {
+        private final Map<Integer, RiskTrendRecord> records = new TreeMap<>();
+
+        private long length;
+    }
+
+    /**
+     * Drops the records kept in memory for jobs that were deleted, or moved to another directory.
+     */
+    @Extension
+    public static class JobListener extends ItemListener {
+        @Override
+        public void onDeleted(final Item item) {
+            getInstance().evictMissing();
+        }
+
+        @Override
+        public void onLocationChanged(final Item item, final String oldFullName, final String newFullName) {
+            getInstance().evictMissing();
+        }
+    }
+
+}
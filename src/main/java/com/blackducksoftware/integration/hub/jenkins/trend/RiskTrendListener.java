@@ -0,0 +1,71 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.trend;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import com.blackducksoftware.integration.hub.jenkins.action.HubReportV2Action;
+import com.blackducksoftware.integration.hub.jenkins.action.HubVariableContributor;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+
+/**
+ * Appends the counts of every completed build with a risk report or a policy status to the risk trend index of its job, and removes them again when the build
+ * is deleted.
+ */
+@Extension
+public class RiskTrendListener extends RunListener<Run<?, ?>> {
+
+    private static final Logger LOGGER = Logger.getLogger(RiskTrendListener.class.getName());
+
+    @Override
+    public void onCompleted(final Run<?, ?> run, final TaskListener listener) {
+        final HubReportV2Action reportAction = run.getAction(HubReportV2Action.class);
+        final HubVariableContributor policyStatus = run.getAction(HubVariableContributor.class);
+        if (reportAction == null && policyStatus == null) {
+            return;
+        }
+        final RiskTrendRecord record = new RiskTrendRecord(run.getNumber(), run.getTimeInMillis(), reportAction == null ? null : reportAction.getSummary(), policyStatus);
+        try {
+            RiskTrendIndex.getInstance().append(RiskTrendIndex.getIndexFile(run.getParent()), record);
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not add " + run.getFullDisplayName() + " to the Black Duck Hub risk trend", e);
+        }
+    }
+
+    @Override
+    public void onDeleted(final Run<?, ?> run) {
+        try {
+            RiskTrendIndex.getInstance().remove(RiskTrendIndex.getIndexFile(run.getParent()), run.getNumber());
+        } catch (final IOException e) {
+            LOGGER.log(Level.WARNING, "Could not remove " + run.getFullDisplayName() + " from the Black Duck Hub risk trend", e);
+        }
+    }
+
+}
@@ -0,0 +1,207 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.trend;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import com.blackducksoftware.integration.hub.jenkins.action.HubReportV2Action;
+import com.blackducksoftware.integration.hub.jenkins.action.HubVariableContributor;
+
+/**
+ * The risk and policy counts of one build, as kept in the {@link RiskTrendIndex}. Counts that the build did not record are -1.
+ */
+public class RiskTrendRecord {
+
+    /**
+     * The size of a record in the index, every record takes the same space.
+     */
+    public static final int SIZE = 4 + 8 + 13 * 4;
+
+    public static final int UNKNOWN = -1;
+
+    private final int buildNumber;
+
+    private final long timestamp;
+
+    private final int totalComponents;
+
+    private final int vulnerabilityRiskHighCount;
+
+    private final int vulnerabilityRiskMediumCount;
+
+    private final int vulnerabilityRiskLowCount;
+
+    private final int licenseRiskHighCount;
+
+    private final int licenseRiskMediumCount;
+
+    private final int licenseRiskLowCount;
+
+    private final int operationalRiskHighCount;
+
+    private final int operationalRiskMediumCount;
+
+    private final int operationalRiskLowCount;
+
+    private final int bomEntriesInViolation;
+
+    private final int violationsOverridden;
+
+    private final int bomEntriesNotInViolation;
+
+    public RiskTrendRecord(final int buildNumber, final long timestamp, final HubReportV2Action.Summary summary, final HubVariableContributor policyStatus) {
+        this(buildNumber, timestamp,
+                summary == null ? UNKNOWN : summary.getTotalComponents(),
+                summary == null ? UNKNOWN : summary.getVulnerabilityRiskHighCount(),
+                summary == null ? UNKNOWN : summary.getVulnerabilityRiskMediumCount(),
+                summary == null ? UNKNOWN : summary.getVulnerabilityRiskLowCount(),
+                summary == null ? UNKNOWN : summary.getLicenseRiskHighCount(),
+                summary == null ? UNKNOWN : summary.getLicenseRiskMediumCount(),
+                summary == null ? UNKNOWN : summary.getLicenseRiskLowCount(),
+                summary == null ? UNKNOWN : summary.getOperationalRiskHighCount(),
+                summary == null ? UNKNOWN : summary.getOperationalRiskMediumCount(),
+                summary == null ? UNKNOWN : summary.getOperationalRiskLowCount(),
+                policyStatus == null ? UNKNOWN : valueOf(policyStatus.getBomEntriesInViolation()),
+                policyStatus == null ? UNKNOWN : valueOf(policyStatus.getViolationsOverriden()),
+                policyStatus == null ? UNKNOWN : valueOf(policyStatus.getBomEntriesNotInViolation()));
+    }
+
+    public RiskTrendRecord(final int buildNumber, final long timestamp, final int totalComponents, final int vulnerabilityRiskHighCount, final int vulnerabilityRiskMediumCount,
+            final int vulnerabilityRiskLowCount, final int licenseRiskHighCount, final int licenseRiskMediumCount, final int licenseRiskLowCount, final int operationalRiskHighCount,
+            final int operationalRiskMediumCount, final int operationalRiskLowCount, final int bomEntriesInViolation, final int violationsOverridden, final int bomEntriesNotInViolation) {
+        this.buildNumber = buildNumber;
+        this.timestamp = timestamp;
+        this.totalComponents = totalComponents;
+        this.vulnerabilityRiskHighCount = vulnerabilityRiskHighCount;
+        this.vulnerabilityRiskMediumCount = vulnerabilityRiskMediumCount;
+        this.vulnerabilityRiskLowCount = vulnerabilityRiskLowCount;
+        this.licenseRiskHighCount = licenseRiskHighCount;
+        this.licenseRiskMediumCount = licenseRiskMediumCount;
+        this.licenseRiskLowCount = licenseRiskLowCount;
+        this.operationalRiskHighCount = operationalRiskHighCount;
+        this.operationalRiskMediumCount = operationalRiskMediumCount;
+        this.operationalRiskLowCount = operationalRiskLowCount;
+        this.bomEntriesInViolation = bomEntriesInViolation;
+        this.violationsOverridden = violationsOverridden;
+        this.bomEntriesNotInViolation = bomEntriesNotInViolation;
+    }
+
+    private static int valueOf(final Integer value) {
+        return value == null ? UNKNOWN : value;
+    }
+
+    public void write(final DataOutputStream output) throws IOException {
+        output.writeInt(buildNumber);
+        output.writeLong(timestamp);
+        output.writeInt(totalComponents);
+        output.writeInt(vulnerabilityRiskHighCount);
+        output.writeInt(vulnerabilityRiskMediumCount);
+        output.writeInt(vulnerabilityRiskLowCount);
+        output.writeInt(licenseRiskHighCount);
+        output.writeInt(licenseRiskMediumCount);
+        output.writeInt(licenseRiskLowCount);
+        output.writeInt(operationalRiskHighCount);
+        output.writeInt(operationalRiskMediumCount);
+        output.writeInt(operationalRiskLowCount);
+        output.writeInt(bomEntriesInViolation);
+        output.writeInt(violationsOverridden);
+        output.writeInt(bomEntriesNotInViolation);
+    }
+
+    public static RiskTrendRecord read(final DataInputStream input) throws IOException {
+        return new RiskTrendRecord(input.readInt(), input.readLong(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(),
+                input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt(), input.readInt());
+    }
+
+    public boolean hasRiskCounts() {
+        return totalComponents != UNKNOWN;
+    }
+
+    public boolean hasPolicyCounts() {
+        return bomEntriesInViolation != UNKNOWN || violationsOverridden != UNKNOWN || bomEntriesNotInViolation != UNKNOWN;
+    }
+
+    public int getBuildNumber() {
+        return buildNumber;
+    }
+
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public int getTotalComponents() {
+        return totalComponents;
+    }
+
+    public int getVulnerabilityRiskHighCount() {
+        return vulnerabilityRiskHighCount;
+    }
+
+    public int getVulnerabilityRiskMediumCount() {
+        return vulnerabilityRiskMediumCount;
+    }
+
+    public int getVulnerabilityRiskLowCount() {
+        return vulnerabilityRiskLowCount;
+    }
+
+    public int getLicenseRiskHighCount() {
+        return licenseRiskHighCount;
+    }
+
+    public int getLicenseRiskMediumCount() {
+        return licenseRiskMediumCount;
+    }
+
+    public int getLicenseRiskLowCount() {
+        return licenseRiskLowCount;
+    }
+
+    public int getOperationalRiskHighCount() {
+        return operationalRiskHighCount;
+    }
+
+    public int getOperationalRiskMediumCount() {
+        return operationalRiskMediumCount;
+    }
+
+    public int getOperationalRiskLowCount() {
+        return operationalRiskLowCount;
+    }
+
+    public int getBomEntriesInViolation() {
+        return bomEntriesInViolation;
+    }
+
+    public int getViolationsOverridden() {
+        return violationsOverridden;
+    }
+
+    public int getBomEntriesNotInViolation() {
+        return bomEntriesNotInViolation;
+    }
+
+}
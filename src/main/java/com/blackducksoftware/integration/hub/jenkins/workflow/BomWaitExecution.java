@@ -0,0 +1,314 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.workflow;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractStepExecutionImpl;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.ProjectVersionView;
+import com.blackducksoftware.integration.hub.exception.HubTimeoutExceededException;
+import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
+import com.blackducksoftware.integration.hub.jenkins.helper.BuildHelper;
+import com.blackducksoftware.integration.hub.jenkins.scan.BDCommonScanStep;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomReadinessWaiter;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanHandle;
+
+import hudson.AbortException;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.util.Timer;
+
+/**
+ * Pipeline step execution that waits for the BOM of an uploaded scan without holding a thread. The Jenkins timer only schedules the BOM status polls, with the
+ * backoff of the {@link BomReadinessWaiter}, and the polls themselves run on a small pool of their own. The scan is completed on a thread of its own once the
+ * BOM is up to date. The scan handle is part of the execution, so the wait carries on after a restart of Jenkins.
+ */
+public abstract class BomWaitExecution extends AbstractStepExecutionImpl {
+    private static final long serialVersionUID = 2306372941757340147L;
+
+    /**
+     * Runs the uploads and completions, which talk to the node or the Hub for a long time and should not tie up the Jenkins timer.
+     */
+    protected static final ExecutorService EXECUTOR = Executors.newCachedThreadPool(new NamingThreadFactory(new DaemonThreadFactory(), "Black Duck Hub scan step"));
+
+    /**
+     * The number of BOM status polls of parked steps that may talk to the Hub at once, the other polls queue behind them.
+     */
+    public static final int POLL_THREADS = Integer.getInteger(BomWaitExecution.class.getName() + ".pollThreads", 4);
+
+    /**
+     * Runs the BOM status polls, which log in and read from the Hub and may wait on a poll shared with another build.
+     */
+    private static final ExecutorService POLL_EXECUTOR = createPollExecutor();
+
+    private ScanHandle scanHandle;
+
+    private boolean bomReady;
+
+    private boolean bomUpToDate;
+
+    private long pollDelay;
+
+    private long waitStarted;
+
+    private long lastPolled;
+
+    private int pendingScans = -1;
+
+    private transient volatile Future<?> task;
+
+    private transient volatile HubAdmissionController.Ticket bomWaitTicket;
+
+    private transient volatile boolean stopped;
+
+    /**
+     * Runs the task on the step executor, failing the step if it throws.
+     */
+    protected void submit(final StepTask stepTask) {
+        task = EXECUTOR.submit(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    stepTask.run();
+                } catch (final Exception e) {
+                    getContext().onFailure(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits for the BOM of the uploaded scan, if the scan needs it, and completes the scan. The step finishes once the scan is complete.
+     */
+    protected void awaitBom(final ScanHandle scanHandle, final HubJenkinsLogger logger) throws IOException, InterruptedException {
+        this.scanHandle = scanHandle;
+        this.pollDelay = BomReadinessWaiter.INITIAL_DELAY;
+        this.waitStarted = System.currentTimeMillis();
+        this.lastPolled = scanHandle.getUploadFinished();
+        if (scanHandle.isDryRun() || !scanHandle.isWaitForBom() || scanHandle.getVersionJson() == null) {
+            bomReady = true;
+            complete();
+        } else {
+            requestBomWaitSlot(logger);
+        }
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        resume();
+    }
+
+    /**
+     * Picks the wait up where it was when Jenkins stopped.
+     */
+    void resume() {
+        if (scanHandle == null) {
+            getContext().onFailure(new AbortException("Jenkins was restarted while the scan was running, the scan has to be run again."));
+        } else if (bomReady) {
+            complete();
+        } else {
+            try {
+                // the slot of the wait did not survive the restart
+                requestBomWaitSlot(new HubJenkinsLogger(getContext().get(TaskListener.class)));
+            } catch (final Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+    }
+
+    @Override
+    public void stop(final Throwable cause) throws Exception {
+        stopped = true;
+        releaseBomWaitSlot();
+        final Future<?> currentTask = task;
+        if (currentTask != null) {
+            currentTask.cancel(true);
+        }
+        getContext().onFailure(cause);
+    }
+
+    @Override
+    public String getStatus() {
+        if (scanHandle == null) {
+            return "scanning";
+        } else if (bomReady) {
+            return "completing the scan";
+        }
+        final HubAdmissionController.Ticket ticket = bomWaitTicket;
+        if (ticket != null && !ticket.isAdmitted()) {
+            return "waiting for the Hub to take another BOM wait";
+        }
+        return pendingScans < 0 ? "waiting for the BOM" : String.format("waiting for the BOM, %d scans pending", pendingScans);
+    }
+
+    /**
+     * Queues the wait for a slot on the Hub, the polls start once the wait is let through. Nothing waits on a thread while the wait is queued.
+     */
+    private void requestBomWaitSlot(final HubJenkinsLogger logger) throws IOException, InterruptedException {
+        final Run run = getContext().get(Run.class);
+        final HubAdmissionController.Ticket ticket = HubAdmissionController.getInstance().request(scanHandle.getServerInfo(), HubAdmissionController.Gate.BOM_WAIT, run.getParent().getFullName());
+        bomWaitTicket = ticket;
+        if (!ticket.isAdmitted()) {
+            logger.alwaysLog(String.format("--> The Hub is busy, waiting for a slot (%s, %d at once) with %d scans queued ahead", HubAdmissionController.Gate.BOM_WAIT.getDisplayName(), ticket.getMaximum(),
+                    ticket.getQueuedAhead()));
+        }
+        ticket.whenAdmitted(new Runnable() {
+            @Override
+            public void run() {
+                if (ticket.getWaitedMillis() > 0L) {
+                    logger.alwaysLog(String.format("--> Waited %d seconds for the Hub", ticket.getWaitedMillis() / 1000));
+                }
+                logger.alwaysLog("--> Waiting for the BOM to be updated, the step is parked until the Hub has finished the scans");
+                schedulePoll();
+            }
+        });
+    }
+
+    private void releaseBomWaitSlot() {
+        final HubAdmissionController.Ticket ticket = bomWaitTicket;
+        if (ticket != null) {
+            ticket.release();
+        }
+    }
+
+    private static ExecutorService createPollExecutor() {
+        final int threads = Math.max(POLL_THREADS, 1);
+        final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                new NamingThreadFactory(new DaemonThreadFactory(), "Black Duck Hub BOM poll"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private void schedulePoll() {
+        if (stopped) {
+            return;
+        }
+        schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (stopped) {
+                    return;
+                }
+                try {
+                    poll();
+                } catch (final Exception e) {
+                    // every way out of the wait gives back its slot
+                    releaseBomWaitSlot();
+                    getContext().onFailure(e);
+                }
+            }
+        }, BomReadinessWaiter.getJitteredDelay(pollDelay));
+    }
+
+    /**
+     * Runs the poll on the poll pool after the delay. The timer only hands the poll over, it never waits on the Hub.
+     */
+    void schedule(final Runnable poll, final long delay) {
+        task = Timer.get().schedule(new Runnable() {
+            @Override
+            public void run() {
+                task = POLL_EXECUTOR.submit(poll);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void poll() throws IOException, InterruptedException {
+        final Run run = getContext().get(Run.class);
+        final HubJenkinsLogger logger = new HubJenkinsLogger(getContext().get(TaskListener.class));
+        try {
+            // a poll made for another build since this step last looked is recent enough
+            final long polled = System.currentTimeMillis();
+            pendingScans = getPendingScans(logger, lastPolled);
+            lastPolled = polled;
+            final long waited = System.currentTimeMillis() - waitStarted;
+            if (pendingScans == 0) {
+                logger.info(String.format("The BOM is up to date after %d seconds", waited / 1000));
+                bomUpToDate = true;
+                bomReady = true;
+                complete();
+                return;
+            }
+            if (waited >= scanHandle.getBomWait()) {
+                throw new HubTimeoutExceededException(String.format("The BOM was not updated within the maximum wait time of %d minutes, %d scans are still pending", scanHandle.getBomWait() / 60 / 1000,
+                        pendingScans));
+            }
+            logger.debug(String.format("%d scans are pending", pendingScans));
+            pollDelay = BomReadinessWaiter.getNextDelay(pollDelay);
+            schedulePoll();
+        } catch (final Exception e) {
+            logger.error(e.getMessage(), e);
+            run.setResult(Result.UNSTABLE);
+            // the report needs an up to date BOM, completing an unstable build only records the state of the scan
+            bomReady = true;
+            complete();
+        }
+    }
+
+    private void complete() {
+        releaseBomWaitSlot();
+        if (stopped) {
+            return;
+        }
+        submit(new StepTask() {
+            @Override
+            public void run() throws Exception {
+                completeScan(getContext().get(Run.class), new HubJenkinsLogger(getContext().get(TaskListener.class)));
+                getContext().onSuccess(null);
+            }
+        });
+    }
+
+    /**
+     * Asks the Hub how many of the scans of the step are still pending, accepting a poll made since the given time.
+     */
+    int getPendingScans(final HubJenkinsLogger logger, final long notBefore) throws IntegrationException {
+        try (final PooledHubServicesFactory services = BuildHelper.getHubServicesFactory(logger, scanHandle.getServerInfo())) {
+            final ProjectVersionView version = services.createHubService().getGson().fromJson(scanHandle.getVersionJson(), ProjectVersionView.class);
+            return new BomReadinessWaiter(logger, scanHandle.getServerInfo(), services, scanHandle.getBomWait()).getPendingScans(version, scanHandle.getCodeLocationNames(), notBefore);
+        }
+    }
+
+    void completeScan(final Run run, final HubJenkinsLogger logger) {
+        BDCommonScanStep.completeScan(run, scanHandle, logger, false, bomUpToDate);
+    }
+
+    protected interface StepTask {
+        void run() throws Exception;
+    }
+
+}
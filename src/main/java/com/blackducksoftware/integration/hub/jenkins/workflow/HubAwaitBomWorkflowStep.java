@@ -0,0 +1,103 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.workflow;
+
+import javax.inject.Inject;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
+import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanHandle;
+
+import hudson.Extension;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * The second half of hub_scan. Waits for the BOM of a scan uploaded by hub_scan_upload and completes the scan. It does not need a node, and holds no thread
+ * while it waits, so it can be used outside of any node block.
+ */
+public class HubAwaitBomWorkflowStep extends AbstractStepImpl {
+
+    private final ScanHandle scanHandle;
+
+    @DataBoundConstructor
+    public HubAwaitBomWorkflowStep(final ScanHandle scanHandle) {
+        this.scanHandle = scanHandle;
+    }
+
+    public ScanHandle getScanHandle() {
+        return scanHandle;
+    }
+
+    @Extension(optional = true)
+    public static final class HubAwaitBomWorkflowStepDescriptor extends AbstractStepDescriptorImpl {
+
+        public HubAwaitBomWorkflowStepDescriptor() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "hub_await_bom";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Black Duck Hub Wait For BOM";
+        }
+
+    }
+
+    public static final class Execution extends BomWaitExecution {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient HubAwaitBomWorkflowStep awaitBomStep;
+
+        @StepContextParameter
+        transient TaskListener listener;
+
+        @StepContextParameter
+        private transient Run run;
+
+        @Override
+        public boolean start() throws Exception {
+            final ScanHandle scanHandle = awaitBomStep.getScanHandle();
+            if (scanHandle == null) {
+                // hub_scan_upload already finished the scan, there is no BOM to wait for
+                getContext().onSuccess(null);
+                return true;
+            }
+            awaitBom(scanHandle, new HubJenkinsLogger(listener));
+            return false;
+        }
+
+    }
+
+}
@@ -60,10 +60,13 @@ public class HubFailureConditionWorkflowStep extends AbstractStepImpl {
 
     private final String buildStateOnFailure;
 
+    private final Boolean detailedPolicyViolations;
+
     @DataBoundConstructor
-    public HubFailureConditionWorkflowStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure) {
+    public HubFailureConditionWorkflowStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure, final Boolean detailedPolicyViolations) {
         this.failBuildForPolicyViolations = failBuildForPolicyViolations;
         this.buildStateOnFailure = buildStateOnFailure;
+        this.detailedPolicyViolations = detailedPolicyViolations;
     }
 
     public Boolean getFailBuildForPolicyViolations() {
@@ -74,6 +77,10 @@ public class HubFailureConditionWorkflowStep extends AbstractStepImpl {
         return buildStateOnFailure;
     }
 
+    public Boolean getDetailedPolicyViolations() {
+        return detailedPolicyViolations;
+    }
+
     @Override
     public HubFailureConditionWorkflowStepDescriptor getDescriptor() {
         return (HubFailureConditionWorkflowStepDescriptor) super.getDescriptor();
@@ -133,7 +140,7 @@ public class HubFailureConditionWorkflowStep extends AbstractStepImpl {
                 final Node node = computer.getNode();
 
                 final HubCommonFailureStep commonFailureStep = createCommonFailureStep(
-                        failureConditionStep.getFailBuildForPolicyViolations(), failureConditionStep.getBuildStateOnFailure());
+                        failureConditionStep.getFailBuildForPolicyViolations(), failureConditionStep.getBuildStateOnFailure(), failureConditionStep.getDetailedPolicyViolations());
 
                 if (run.getResult() != Result.SUCCESS) {
                     logger.error("The Build did not run sucessfully, will not check the Hub Failure Conditions.");
@@ -164,14 +171,14 @@ public class HubFailureConditionWorkflowStep extends AbstractStepImpl {
             return null;
         }
 
-        public HubCommonFailureStep createCommonFailureStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure)
+        public HubCommonFailureStep createCommonFailureStep(final Boolean failBuildForPolicyViolations, final String buildStateOnFailure, final Boolean detailedPolicyViolations)
                 throws BDJenkinsHubPluginException {
             final FailureConditionBuildStateEnum buildStateOnFailureEnum = FailureConditionBuildStateEnum
                     .getFailureConditionBuildStateEnum(buildStateOnFailure);
             if (buildStateOnFailureEnum == null) {
                 throw new BDJenkinsHubPluginException("Invalid Build State on Failure Condition configured : " + buildStateOnFailure);
             }
-            return new HubCommonFailureStep(failBuildForPolicyViolations, buildStateOnFailureEnum);
+            return new HubCommonFailureStep(failBuildForPolicyViolations, buildStateOnFailureEnum, detailedPolicyViolations);
         }
 
     }
@@ -0,0 +1,125 @@
+/**
+ * blackduck-hub
+ *
+ * Copyright (C) 2018 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.blackducksoftware.integration.hub.jenkins.workflow;
+
+import javax.inject.Inject;
+
+import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
+import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
+import com.blackducksoftware.integration.hub.jenkins.ScanJobs;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanExclusion;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanHandle;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+/**
+ * The first half of hub_scan. Scans on the node and uploads the results, and returns a scan handle for hub_await_bom without waiting for the BOM, so the
+ * pipeline can carry on, and leave the node, while the Hub updates the BOM.
+ */
+public class HubScanUploadWorkflowStep extends HubScanWorkflowStep {
+
+    @DataBoundConstructor
+    public HubScanUploadWorkflowStep(final ScanJobs[] scans, final String hubProjectName, final String hubProjectVersion, final String hubVersionPhase, final String hubVersionDist, final String scanMemory,
+            final boolean shouldGenerateHubReport, final boolean projectLevelAdjustments, final String bomUpdateMaximumWaitTime, final boolean dryRun, final boolean cleanupOnSuccessfulScan,
+            final ScanExclusion[] excludePatterns, final String codeLocationName, final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final String scanConcurrency,
+            final boolean incrementalScan, final String hubServerName) {
+        super(scans, hubProjectName, hubProjectVersion, hubVersionPhase, hubVersionDist, scanMemory, shouldGenerateHubReport, projectLevelAdjustments, bomUpdateMaximumWaitTime, dryRun, cleanupOnSuccessfulScan,
+                excludePatterns, codeLocationName, unmapPreviousCodeLocations, deletePreviousCodeLocations, scanConcurrency, incrementalScan,
+                hubServerName);
+    }
+
+    @Extension(optional = true)
+    public static final class HubScanUploadWorkflowStepDescriptor extends HubScanWorkflowStepDescriptor {
+
+        public HubScanUploadWorkflowStepDescriptor() {
+            super(Execution.class);
+        }
+
+        @Override
+        public String getFunctionName() {
+            return "hub_scan_upload";
+        }
+
+        @Override
+        public String getDisplayName() {
+            return "Black Duck Hub Scan Upload";
+        }
+
+    }
+
+    public static final class Execution extends AbstractSynchronousNonBlockingStepExecution<ScanHandle> {
+
+        private static final long serialVersionUID = 1L;
+
+        @Inject
+        private transient HubScanUploadWorkflowStep hubScanStep;
+
+        @StepContextParameter
+        private transient Computer computer;
+
+        @StepContextParameter
+        transient TaskListener listener;
+
+        @StepContextParameter
+        transient EnvVars envVars;
+
+        @StepContextParameter
+        private transient FilePath workspace;
+
+        @StepContextParameter
+        private transient Run run;
+
+        @StepContextParameter
+        transient Launcher launcher;
+
+        /**
+         * @return the handle to give to hub_await_bom, or null if the scan did not upload anything to wait for
+         */
+        @Override
+        protected ScanHandle run() {
+            final HubJenkinsLogger logger = new HubJenkinsLogger(listener);
+            try {
+                final Node node = computer.getNode();
+                return hubScanStep.createScanStep(run).uploadScan(run, node, envVars, workspace, logger, listener);
+            } catch (final Exception e) {
+                logger.error(e);
+                run.setResult(Result.UNSTABLE);
+            }
+            return null;
+        }
+
+    }
+
+}
@@ -33,8 +33,8 @@ import org.jenkinsci.plugins.workflow.flow.FlowDefinition;
 import org.jenkinsci.plugins.workflow.job.WorkflowJob;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepDescriptorImpl;
 import org.jenkinsci.plugins.workflow.steps.AbstractStepImpl;
-import org.jenkinsci.plugins.workflow.steps.AbstractSynchronousNonBlockingStepExecution;
 import org.jenkinsci.plugins.workflow.steps.StepContextParameter;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 
@@ -45,6 +45,7 @@ import com.blackducksoftware.integration.hub.jenkins.Messages;
 import com.blackducksoftware.integration.hub.jenkins.ScanJobs;
 import com.blackducksoftware.integration.hub.jenkins.scan.BDCommonDescriptorUtil;
 import com.blackducksoftware.integration.hub.jenkins.scan.BDCommonScanStep;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanHandle;
 import com.blackducksoftware.integration.hub.jenkins.scan.ScanExclusion;
 
 import hudson.EnvVars;
@@ -94,10 +95,17 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
 
     private final boolean deletePreviousCodeLocations;
 
+    private final String scanConcurrency;
+
+    private final boolean incrementalScan;
+
+    private final String hubServerName;
+
     @DataBoundConstructor
     public HubScanWorkflowStep(final ScanJobs[] scans, final String hubProjectName, final String hubProjectVersion, final String hubVersionPhase, final String hubVersionDist, final String scanMemory, final boolean shouldGenerateHubReport,
             final boolean projectLevelAdjustments, final String bomUpdateMaximumWaitTime, final boolean dryRun, final boolean cleanupOnSuccessfulScan, final ScanExclusion[] excludePatterns, final String codeLocationName,
-            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations) {
+            final boolean unmapPreviousCodeLocations, final boolean deletePreviousCodeLocations, final String scanConcurrency,
+            final boolean incrementalScan, final String hubServerName) {
         this.scans = scans;
         this.hubProjectName = hubProjectName;
         this.hubProjectVersion = hubProjectVersion;
@@ -113,6 +121,9 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
         this.codeLocationName = codeLocationName;
         this.unmapPreviousCodeLocations = unmapPreviousCodeLocations;
         this.deletePreviousCodeLocations = deletePreviousCodeLocations;
+        this.scanConcurrency = scanConcurrency;
+        this.incrementalScan = incrementalScan;
+        this.hubServerName = hubServerName;
     }
 
     public void setVerbose(final boolean verbose) {
@@ -199,6 +210,27 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
         return deletePreviousCodeLocations;
     }
 
+    public String getScanConcurrency() {
+        return scanConcurrency;
+    }
+
+    public boolean isIncrementalScan() {
+        return incrementalScan;
+    }
+
+    /**
+     * @return the name of the Hub server to scan with, blank for the default server or {@link HubServerInfoSingleton#POOL} for the least loaded server
+     */
+    public String getHubServerName() {
+        return hubServerName;
+    }
+
+    BDCommonScanStep createScanStep(final Run run) {
+        return new BDCommonScanStep(getScans(), getHubProjectName(), getHubProjectVersion(), getHubVersionPhase(), getHubVersionDist(), getScanMemory(), isProjectLevelAdjustments(), getShouldGenerateHubReport(),
+                getBomUpdateMaximumWaitTime(), isDryRun(), isCleanupOnSuccessfulScan(), isVerbose(), getExclusionPatterns(), getCodeLocationName(), isUnmapPreviousCodeLocations(), isDeletePreviousCodeLocations(),
+                isFailureConditionsConfigured(run), getScanConcurrency(), isIncrementalScan(), getHubServerName());
+    }
+
     private boolean isFailureConditionsConfigured(final Run run) {
         final FlowDefinition definition = ((WorkflowJob) run.getParent()).getDefinition();
         if (definition instanceof CpsFlowDefinition) {
@@ -213,12 +245,16 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
     }
 
     @Extension(optional = true)
-    public static final class HubScanWorkflowStepDescriptor extends AbstractStepDescriptorImpl {
+    public static class HubScanWorkflowStepDescriptor extends AbstractStepDescriptorImpl {
 
         public HubScanWorkflowStepDescriptor() {
             super(Execution.class);
         }
 
+        protected HubScanWorkflowStepDescriptor(final Class<? extends StepExecution> executionType) {
+            super(executionType);
+        }
+
         @Override
         public String getFunctionName() {
             return "hub_scan";
@@ -240,6 +276,10 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
             return BDCommonDescriptorUtil.doCheckScanMemory(scanMemory);
         }
 
+        public FormValidation doCheckScanConcurrency(@QueryParameter("scanConcurrency") final String scanConcurrency) throws IOException, ServletException {
+            return BDCommonDescriptorUtil.doCheckScanConcurrency(scanConcurrency);
+        }
+
         public FormValidation doCheckBomUpdateMaximumWaitTime(@QueryParameter("bomUpdateMaximumWaitTime") final String bomUpdateMaximumWaitTime) throws IOException, ServletException {
             return BDCommonDescriptorUtil.doCheckBomUpdateMaximumWaitTime(bomUpdateMaximumWaitTime);
         }
@@ -251,17 +291,25 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
         /**
          * Performs on-the-fly validation of the form field 'hubProjectName'. Checks to see if there is already a project in the Hub with this name.
          */
-        public FormValidation doCheckHubProjectName(@QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("dryRun") final boolean dryRun)
-                throws IOException, ServletException {
-            return BDCommonDescriptorUtil.doCheckHubProjectName(getHubServerInfo(), hubProjectName, hubProjectVersion, dryRun);
+        public FormValidation doCheckHubProjectName(@QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("dryRun") final boolean dryRun,
+                @QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+            return BDCommonDescriptorUtil.doCheckHubProjectName(hubServerName, hubProjectName, hubProjectVersion, dryRun);
         }
 
         /**
          * Performs on-the-fly validation of the form field 'hubProjectVersion'. Checks to see if there is already a project in the Hub with this name.
          */
-        public FormValidation doCheckHubProjectVersion(@QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("dryRun") final boolean dryRun)
-                throws IOException, ServletException {
-            return BDCommonDescriptorUtil.doCheckHubProjectVersion(getHubServerInfo(), hubProjectVersion, hubProjectName, dryRun);
+        public FormValidation doCheckHubProjectVersion(@QueryParameter("hubProjectVersion") final String hubProjectVersion, @QueryParameter("hubProjectName") final String hubProjectName, @QueryParameter("dryRun") final boolean dryRun,
+                @QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+            return BDCommonDescriptorUtil.doCheckHubProjectVersion(hubServerName, hubProjectVersion, hubProjectName, dryRun);
+        }
+
+        public ListBoxModel doFillHubServerNameItems() {
+            return BDCommonDescriptorUtil.doFillHubServerNameItems();
+        }
+
+        public FormValidation doCheckHubServerName(@QueryParameter("hubServerName") final String hubServerName) throws IOException, ServletException {
+            return BDCommonDescriptorUtil.doCheckHubServerName(hubServerName);
         }
 
         public ListBoxModel doFillHubVersionPhaseItems() {
@@ -274,7 +322,10 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
 
     }
 
-    public static final class Execution extends AbstractSynchronousNonBlockingStepExecution<Void> {
+    /**
+     * Scans on the node, then lets go of its thread while the Hub updates the BOM. Inside a node block the executor of the node is still held by the block.
+     */
+    public static final class Execution extends BomWaitExecution {
 
         private static final long serialVersionUID = 1L;
 
@@ -300,22 +351,32 @@ public class HubScanWorkflowStep extends AbstractStepImpl {
         private transient Run run;
 
         @Override
-        protected Void run() {
+        public boolean start() throws Exception {
+            submit(new StepTask() {
+                @Override
+                public void run() {
+                    upload();
+                }
+            });
+            return false;
+        }
+
+        private void upload() {
             final HubJenkinsLogger logger = new HubJenkinsLogger(listener);
             try {
                 final Node node = computer.getNode();
-                final BDCommonScanStep scanStep = new BDCommonScanStep(hubScanStep.getScans(), hubScanStep.getHubProjectName(), hubScanStep.getHubProjectVersion(), hubScanStep.getHubVersionPhase(), hubScanStep.getHubVersionDist(),
-                        hubScanStep.getScanMemory(), hubScanStep.isProjectLevelAdjustments(), hubScanStep.getShouldGenerateHubReport(), hubScanStep.getBomUpdateMaximumWaitTime(), hubScanStep.isDryRun(),
-                        hubScanStep.isCleanupOnSuccessfulScan(), hubScanStep.isVerbose(), hubScanStep.getExclusionPatterns(), hubScanStep.getCodeLocationName(), hubScanStep.isUnmapPreviousCodeLocations(),
-                        hubScanStep.isDeletePreviousCodeLocations(), hubScanStep.isFailureConditionsConfigured(run));
-
-                scanStep.runScan(run, node, envVars, workspace, logger, launcher, listener, run.getFullDisplayName(), String.valueOf(run.getNumber()));
+                final BDCommonScanStep scanStep = hubScanStep.createScanStep(run);
 
+                final ScanHandle scanHandle = scanStep.uploadScan(run, node, envVars, workspace, logger, listener);
+                if (scanHandle != null) {
+                    awaitBom(scanHandle, logger);
+                    return;
+                }
             } catch (final Exception e) {
                 logger.error(e);
                 run.setResult(Result.UNSTABLE);
             }
-            return null;
+            getContext().onSuccess(null);
         }
 
     }
@@ -21,9 +21,23 @@
  * specific language governing permissions and limitations
  * under the License.
  */
-var RiskReport = function (myJQuery, jsonData) {
+var riskReport;
+
+var componentPageSize = 100;
+
+var RiskReport = function (myJQuery, jsonData, componentsUrl) {
 	this.myJQuery = myJQuery;
 	this.rawdata = jsonData;
+	// the components are not part of jsonData, they are loaded a page at a time from componentsUrl as the table is scrolled
+	this.componentsUrl = componentsUrl;
+	this.filters = {};
+	this.sort = null;
+	this.descending = false;
+	this.loadedComponents = 0;
+	this.matchingComponents = -1;
+	this.loading = false;
+	this.generation = 0;
+	this.odd = true;
 };
 	RiskReport.prototype.getPercentage = function (count) {
 		var totalCount = this.rawdata.totalComponents;
@@ -222,15 +236,6 @@ var RiskReport = function (myJQuery, jsonData) {
 		return table;
 	};
 	
-	RiskReport.prototype.columnClickEvent = function () {
-		if(this.initSortTable == false) {
-			console.log("init sorttable");
-			sorttable.makeSortable(document.getElementById('hubBomReport'));
-		} else {
-			console.log("sortable table inited");
-		}
-	};
-	
 	RiskReport.prototype.createComponentTableHead = function () {
 		var compStyleClass = "clickable componentColumn columnLabel evenPadding";
 		var licenseStyleClass = "clickable columnLabel evenPadding";
@@ -238,38 +243,49 @@ var RiskReport = function (myJQuery, jsonData) {
 		
 		var tableHead = document.createElement("thead");
 		var tableHeadRow = document.createElement("tr");
-		this.myJQuery(tableHeadRow).append(document.createElement("th"));
+		var columnHeadPolicy = document.createElement("th");
+		this.myJQuery(columnHeadPolicy).addClass("clickable");
+		this.myJQuery(columnHeadPolicy).attr("onclick", "riskReport.sortBy('policyStatus');");
+		this.myJQuery(tableHeadRow).append(columnHeadPolicy);
 		
 		var columnHeadComponent = document.createElement("th");
+		this.myJQuery(columnHeadComponent).attr("onclick", "riskReport.sortBy('component');");
 		this.myJQuery(columnHeadComponent).addClass(compStyleClass);
 		this.myJQuery(columnHeadComponent).text("Component");
 		
 		var columnHeadVersion = document.createElement("th");
+		this.myJQuery(columnHeadVersion).attr("onclick", "riskReport.sortBy('version');");
 		this.myJQuery(columnHeadVersion).addClass(compStyleClass);
 		this.myJQuery(columnHeadVersion).text("Version");
 		
 		var columnHeadLicense = document.createElement("th");
+		this.myJQuery(columnHeadLicense).attr("onclick", "riskReport.sortBy('license');");
 		this.myJQuery(columnHeadLicense).addClass(licenseStyleClass);
 		this.myJQuery(columnHeadLicense).text("License");
 		
 		var columnHeadEntryHigh = document.createElement("th");
+		this.myJQuery(columnHeadEntryHigh).attr("onclick", "riskReport.sortBy('securityRiskHigh');");
 		this.myJQuery(columnHeadEntryHigh).addClass(riskStyleClass);
 		this.myJQuery(columnHeadEntryHigh).text("H");
 		
 		var columnHeadEntryMedium = document.createElement("th");
+		this.myJQuery(columnHeadEntryMedium).attr("onclick", "riskReport.sortBy('securityRiskMedium');");
 		this.myJQuery(columnHeadEntryMedium).addClass(riskStyleClass);
 		this.myJQuery(columnHeadEntryMedium).text("M");
 		
 		var columnHeadEntryLow = document.createElement("th");
+		this.myJQuery(columnHeadEntryLow).attr("onclick", "riskReport.sortBy('securityRiskLow');");
 		this.myJQuery(columnHeadEntryLow).addClass(riskStyleClass);
 		this.myJQuery(columnHeadEntryLow).text("L");
 		
 		var columnHeadLicenseRisk = document.createElement("th");
+		this.myJQuery(columnHeadLicenseRisk).attr("onclick", "riskReport.sortBy('licenseRisk');");
 		this.myJQuery(columnHeadLicenseRisk).addClass(riskStyleClass);
 		this.myJQuery(columnHeadLicenseRisk).attr("title","License Risk");
 		this.myJQuery(columnHeadLicenseRisk).text("Lic R");
 		
 		var columnHeadOperationRisk = document.createElement("th");
+		this.myJQuery(columnHeadOperationRisk).attr("onclick", "riskReport.sortBy('operationalRisk');");
 		this.myJQuery(columnHeadOperationRisk).addClass(riskStyleClass);
 		this.myJQuery(columnHeadOperationRisk).attr("title","Operational Risk");
 		this.myJQuery(columnHeadOperationRisk).text("Opt R");
@@ -374,32 +390,132 @@ var RiskReport = function (myJQuery, jsonData) {
 		return tableRow;
 	};
 	
+	RiskReport.prototype.createFilterBar = function () {
+		var filterBar = document.createElement("div");
+		this.myJQuery(filterBar).addClass("componentFilterBar evenPadding");
+		this.myJQuery(filterBar).append(this.myJQuery('<span class="versionSummaryLabel">Policy Status:</span>'));
+		this.myJQuery(filterBar).append(this.myJQuery('<select id="policyStatusFilter" onchange="riskReport.setFilter(\'policyStatus\', this.value);">'
+				+'<option value="">All</option>'
+				+'<option value="IN_VIOLATION">In Violation</option>'
+				+'<option value="IN_VIOLATION_OVERRIDDEN">In Violation Overridden</option>'
+				+'<option value="NOT_IN_VIOLATION">Not In Violation</option>'
+				+'</select>'));
+		this.myJQuery(filterBar).append(this.myJQuery('<span class="versionSummaryLabel">License:</span>'));
+		this.myJQuery(filterBar).append(this.myJQuery('<input id="licenseFilter" type="text" onchange="riskReport.setFilter(\'license\', this.value);" />'));
+		this.myJQuery(filterBar).append(this.myJQuery('<span id="componentCount" class="versionSummaryLabel"></span>'));
+		return filterBar;
+	};
+	
 	RiskReport.prototype.createComponentTable = function () {
+		var scrollContainer = document.createElement("div");
+		this.myJQuery(scrollContainer).attr("id","hubBomReportScroll");
+		this.myJQuery(scrollContainer).css({"max-height": "70vh", "overflow-y": "auto"});
 		var table = document.createElement("table");
 		this.myJQuery(table).attr("id","hubBomReport");
-		this.myJQuery(table).addClass("table sortable");
-		this.myJQuery(table).attr("onmouseenter","initSortTable();");
+		this.myJQuery(table).addClass("table");
 		
 		this.myJQuery(table).append(this.createComponentTableHead());
 		var tableBody = document.createElement("tbody");
 		this.myJQuery(tableBody).attr("id","hubBomReportBody");
-		var entryArray = this.rawdata.components;
-		var odd = true;
+		this.myJQuery(table).append(tableBody);
+		this.myJQuery(scrollContainer).append(table);
+		return scrollContainer;
+	};
+	
+	RiskReport.prototype.appendComponents = function (entryArray) {
+		var tableBody = this.myJQuery("#hubBomReportBody");
 		for (var index = 0; index < entryArray.length; index++) { 
 			try {
 				var tableRow = this.createComponentTableRow(entryArray[index]);
-				adjustTableRow(tableRow, odd);
+				adjustTableRow(tableRow, this.odd);
 				adjustSecurityRisks(tableRow);
 				adjustOtherRisks(tableRow, licenseRiskColumnNum);
 				adjustOtherRisks(tableRow, operationRiskColumnNum);
-				odd = !odd;
-				this.myJQuery(tableBody).append(tableRow);
+				this.odd = !this.odd;
+				tableBody.append(tableRow);
 			} catch (ex) {
 				console.log("Exception creating table row in Component Table" + ex);
 			}
 		}
-		this.myJQuery(table).append(tableBody);
-		return table;
+	};
+	
+	RiskReport.prototype.hasMoreComponents = function () {
+		return this.matchingComponents < 0 || this.loadedComponents < this.matchingComponents;
+	};
+	
+	RiskReport.prototype.loadComponents = function () {
+		if (this.loading || !this.hasMoreComponents()) {
+			return;
+		}
+		this.loading = true;
+		var report = this;
+		var generation = this.generation;
+		var parameters = {
+			offset: this.loadedComponents,
+			limit: componentPageSize,
+			descending: this.descending
+		};
+		if (this.sort) {
+			parameters.sort = this.sort;
+		}
+		for (var filter in this.filters) {
+			if (this.filters[filter]) {
+				parameters[filter] = this.filters[filter];
+			}
+		}
+		this.myJQuery.getJSON(this.componentsUrl, parameters).done(function (page) {
+			if (generation != report.generation) {
+				// the filters or the sort changed while the page was loading
+				return;
+			}
+			report.matchingComponents = page.matchingComponents;
+			report.loadedComponents += page.components.length;
+			report.appendComponents(page.components);
+			report.myJQuery("#componentCount").text("Showing " + report.loadedComponents + " of " + page.matchingComponents + " matching components");
+		}).fail(function () {
+			console.log("Could not load the risk report components from " + report.componentsUrl);
+		}).always(function () {
+			if (generation != report.generation) {
+				return;
+			}
+			report.loading = false;
+			report.loadVisibleComponents();
+		});
+	};
+	
+	RiskReport.prototype.loadVisibleComponents = function () {
+		// keep loading pages until the table fills the visible part of the scroll container
+		var scrollContainer = this.myJQuery("#hubBomReportScroll")[0];
+		if (scrollContainer && scrollContainer.scrollTop + scrollContainer.clientHeight >= scrollContainer.scrollHeight - 200) {
+			this.loadComponents();
+		}
+	};
+	
+	RiskReport.prototype.reloadComponents = function () {
+		this.generation++;
+		this.loading = false;
+		this.loadedComponents = 0;
+		this.matchingComponents = -1;
+		this.odd = true;
+		this.myJQuery("#hubBomReportBody").empty();
+		this.myJQuery("#hubBomReportScroll").scrollTop(0);
+		this.loadComponents();
+	};
+	
+	RiskReport.prototype.setFilter = function (filter, value) {
+		this.filters[filter] = value;
+		this.reloadComponents();
+	};
+	
+	RiskReport.prototype.sortBy = function (column) {
+		if (this.sort == column) {
+			this.descending = !this.descending;
+		} else {
+			this.sort = column;
+			// risk columns are most useful with the riskiest components first
+			this.descending = column.indexOf("Risk") != -1;
+		}
+		this.reloadComponents();
 	};
 	
 	RiskReport.prototype.createReport = function () {
@@ -411,7 +527,13 @@ var RiskReport = function (myJQuery, jsonData) {
 		this.myJQuery(report).append(this.createLicenseRiskContainer());
 		this.myJQuery(report).append(this.createOperationalRiskContainer());
 		this.myJQuery(report).append(this.createSummaryTable());
+		this.myJQuery(report).append(this.createFilterBar());
 		var table = this.createComponentTable();
 		this.myJQuery(report).append(table);
 		this.myJQuery("#riskReportDiv").html(this.myJQuery(report).html());
+		var reportObject = this;
+		this.myJQuery("#hubBomReportScroll").on("scroll", function () {
+			reportObject.loadVisibleComponents();
+		});
+		this.loadComponents();
 	};
\ No newline at end of file
@@ -0,0 +1,136 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.report.api.ReportData;
+
+public class ReportDataCacheTest {
+
+    @Test
+    public void testEvictsLeastRecentlyUsedBySize() {
+        final ReportDataCache cache = new ReportDataCache(100);
+        cache.put("a", new ReportData(), 40);
+        cache.put("b", new ReportData(), 40);
+        assertNotNull(cache.get("a"));
+
+        cache.put("c", new ReportData(), 40);
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+        assertEquals(80, cache.getResidentSize());
+        assertEquals(1, cache.getEvictions());
+        assertEquals(3, cache.getHits());
+        assertEquals(1, cache.getMisses());
+        assertEquals(75, cache.getHitRate());
+    }
+
+    @Test
+    public void testReplacingAndOversizedReports() {
+        final ReportDataCache cache = new ReportDataCache(100);
+        cache.put("a", new ReportData(), 40);
+        cache.put("a", new ReportData(), 60);
+        assertEquals(60, cache.getResidentSize());
+        assertEquals(1, cache.getReportCount());
+
+        cache.put("b", new ReportData(), 101);
+        assertNull(cache.get("b"));
+        assertEquals(60, cache.getResidentSize());
+        assertEquals(0, cache.getEvictions());
+    }
+
+    @Test
+    public void testConcurrentRequestsLoadTheReportOnce() throws Exception {
+        final ReportDataCache cache = new ReportDataCache(1024L * 1024L);
+        final ReportData reportData = new ReportData();
+        final CountDownLatch loading = new CountDownLatch(1);
+        final CountDownLatch loaded = new CountDownLatch(1);
+        final AtomicInteger loads = new AtomicInteger();
+        final Callable<ReportData> loader = new Callable<ReportData>() {
+            @Override
+            public ReportData call() throws Exception {
+                loads.incrementAndGet();
+                loading.countDown();
+                loaded.await(10L, TimeUnit.SECONDS);
+                return reportData;
+            }
+        };
+        final Callable<ReportData> request = new Callable<ReportData>() {
+            @Override
+            public ReportData call() {
+                return cache.get("a", loader);
+            }
+        };
+
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final Future<ReportData> first = executor.submit(request);
+            loading.await(10L, TimeUnit.SECONDS);
+            final Future<ReportData> second = executor.submit(request);
+            Thread.sleep(50L);
+            loaded.countDown();
+            assertSame(reportData, first.get(10L, TimeUnit.SECONDS));
+            assertSame(reportData, second.get(10L, TimeUnit.SECONDS));
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(1, loads.get());
+        assertSame(reportData, cache.get("a"));
+    }
+
+    @Test
+    public void testMissingReportIsNotCached() {
+        final ReportDataCache cache = new ReportDataCache(100);
+        final Callable<ReportData> missing = new Callable<ReportData>() {
+            @Override
+            public ReportData call() {
+                return null;
+            }
+        };
+        assertNull(cache.get("a", missing));
+        assertEquals(0, cache.getReportCount());
+    }
+
+    @Test
+    public void testRemovedReportIsDropped() {
+        final ReportDataCache cache = new ReportDataCache(100);
+        cache.put("a", new ReportData(), 40);
+        cache.remove("a");
+        assertNull(cache.get("a"));
+        assertEquals(0, cache.getResidentSize());
+    }
+
+}
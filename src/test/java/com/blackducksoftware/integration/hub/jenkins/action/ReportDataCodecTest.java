@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.report.api.BomComponent;
+import com.blackducksoftware.integration.hub.report.api.PolicyRule;
+import com.blackducksoftware.integration.hub.report.api.ReportData;
+import com.google.gson.Gson;
+
+public class ReportDataCodecTest {
+
+    private ReportData createReport(final int componentCount) {
+        final ReportData reportData = new ReportData();
+        reportData.setProjectName("Project");
+        reportData.setProjectURL("https://hub.example.com/api/projects/1");
+        reportData.setProjectVersion("1.0 \u00fcn\u00efcode");
+        reportData.setPhase("DEVELOPMENT");
+        reportData.setDistribution("EXTERNAL");
+        final List<BomComponent> components = new ArrayList<>();
+        for (int i = 0; i < componentCount; i++) {
+            final BomComponent component = new BomComponent();
+            component.setComponentName("component-" + i % 50);
+            component.setComponentURL("https://hub.example.com/api/components/" + i);
+            component.setComponentVersion(i % 3 == 0 ? null : "1." + i);
+            component.setLicense(i % 2 == 0 ? "Apache License 2.0" : "MIT License");
+            component.setPolicyStatus(i % 7 == 0 ? "IN_VIOLATION" : "NOT_IN_VIOLATION");
+            component.setSecurityRiskHighCount(i % 4);
+            component.setSecurityRiskMediumCount(i % 300);
+            component.setLicenseRiskLowCount(i % 2);
+            component.setOperationalRiskMediumCount(i % 5 == 0 ? 1 : 0);
+            if (i % 7 == 0) {
+                final PolicyRule rule = new PolicyRule();
+                rule.setName("No GPL");
+                rule.setDescription("Components may not be GPL licensed");
+                component.setPolicyRulesViolated(Arrays.asList(rule));
+            } else if (i % 11 == 0) {
+                component.setPolicyRulesViolated(new ArrayList<PolicyRule>());
+            }
+            components.add(component);
+        }
+        reportData.setComponents(components);
+        return reportData;
+    }
+
+    private byte[] write(final ReportData reportData) throws IOException {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        ReportDataCodec.write(reportData, outputStream);
+        return outputStream.toByteArray();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final ReportData reportData = createReport(1000);
+        final ReportData readReport = ReportDataCodec.read(new ByteArrayInputStream(write(reportData)));
+
+        final Gson gson = new Gson();
+        assertEquals(gson.toJson(reportData), gson.toJson(readReport));
+        assertNull(readReport.getProjectVersionURL());
+        assertEquals(1000, readReport.getTotalComponents());
+        assertEquals(reportData.getVulnerabilityRiskHighCount(), readReport.getVulnerabilityRiskHighCount());
+    }
+
+    @Test
+    public void testEmptyReport() throws IOException {
+        final ReportData readReport = ReportDataCodec.read(new ByteArrayInputStream(write(new ReportData())));
+        assertEquals(0, readReport.getComponents().size());
+        assertNull(readReport.getProjectName());
+    }
+
+    @Test
+    public void testSmallerThanJson() throws IOException {
+        final ReportData reportData = createReport(1000);
+        final int jsonSize = new Gson().toJson(reportData).getBytes(StandardCharsets.UTF_8).length;
+        assertTrue(write(reportData).length * 3 < jsonSize);
+    }
+
+    @Test
+    public void testReadsJson() throws IOException {
+        final ReportData reportData = createReport(10);
+        final String json = new Gson().toJson(reportData);
+        final ReportData readReport = ReportDataCodec.read(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+        assertEquals(json, new Gson().toJson(readReport));
+    }
+
+}
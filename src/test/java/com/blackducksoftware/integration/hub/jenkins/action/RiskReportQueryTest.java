@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.action;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.report.api.BomComponent;
+
+public class RiskReportQueryTest {
+
+    private List<BomComponent> createComponents() {
+        final List<BomComponent> components = new ArrayList<>();
+        components.add(createComponent("zlib", "Zlib", "NOT_IN_VIOLATION", 0, 0, 1, 0));
+        components.add(createComponent("openssl", "Apache License 2.0", "IN_VIOLATION", 2, 1, 0, 1));
+        components.add(createComponent("commons-io", "Apache License 2.0", "NOT_IN_VIOLATION", 0, 0, 0, 0));
+        components.add(createComponent("log4j", "Apache License 2.0", "IN_VIOLATION", 0, 3, 0, 0));
+        components.add(createComponent("guava", "Apache License 2.0", "NOT_IN_VIOLATION", 1, 0, 0, 0));
+        return components;
+    }
+
+    private BomComponent createComponent(final String name, final String license, final String policyStatus, final int securityHigh, final int securityMedium, final int securityLow,
+            final int licenseHigh) {
+        final BomComponent component = new BomComponent();
+        component.setComponentName(name);
+        component.setLicense(license);
+        component.setPolicyStatus(policyStatus);
+        component.setSecurityRiskHighCount(securityHigh);
+        component.setSecurityRiskMediumCount(securityMedium);
+        component.setSecurityRiskLowCount(securityLow);
+        component.setLicenseRiskHighCount(licenseHigh);
+        return component;
+    }
+
+    private List<String> getNames(final RiskReportQuery.Page page) {
+        final List<String> names = new ArrayList<>();
+        for (final BomComponent component : page.getComponents()) {
+            names.add(component.getComponentName());
+        }
+        return names;
+    }
+
+    @Test
+    public void testPaging() {
+        final RiskReportQuery.Page page = new RiskReportQuery(null, null, null, null, null, null, false, 2, 2).apply(createComponents());
+        assertEquals(5, page.getTotalComponents());
+        assertEquals(5, page.getMatchingComponents());
+        assertEquals(2, page.getOffset());
+        assertEquals("[commons-io, log4j]", getNames(page).toString());
+
+        final RiskReportQuery.Page pastTheEnd = new RiskReportQuery(null, null, null, null, null, null, false, 10, 2).apply(createComponents());
+        assertEquals(5, pastTheEnd.getOffset());
+        assertEquals(0, pastTheEnd.getComponents().size());
+    }
+
+    @Test
+    public void testSecurityRiskCountsTheHighestRiskOnly() {
+        assertEquals("[openssl, guava]", getNames(new RiskReportQuery("high", null, null, null, null, null, false, 0, 0).apply(createComponents())).toString());
+        assertEquals("[log4j]", getNames(new RiskReportQuery("medium", null, null, null, null, null, false, 0, 0).apply(createComponents())).toString());
+        assertEquals("[zlib]", getNames(new RiskReportQuery("low", null, null, null, null, null, false, 0, 0).apply(createComponents())).toString());
+        assertEquals("[commons-io]", getNames(new RiskReportQuery("none", null, null, null, null, null, false, 0, 0).apply(createComponents())).toString());
+    }
+
+    @Test
+    public void testFilters() {
+        assertEquals("[openssl]", getNames(new RiskReportQuery(null, "high", null, null, null, null, false, 0, 0).apply(createComponents())).toString());
+        assertEquals("[zlib]", getNames(new RiskReportQuery(null, null, null, "zli", null, null, false, 0, 0).apply(createComponents())).toString());
+        final RiskReportQuery.Page violations = new RiskReportQuery(null, null, null, "apache", "IN_VIOLATION", null, false, 0, 0).apply(createComponents());
+        assertEquals(2, violations.getMatchingComponents());
+        assertEquals("[openssl, log4j]", getNames(violations).toString());
+    }
+
+    @Test
+    public void testSorting() {
+        assertEquals("[commons-io, guava, log4j, openssl, zlib]", getNames(new RiskReportQuery(null, null, null, null, null, "component", false, 0, 0).apply(createComponents())).toString());
+        // equal counts keep the report order
+        assertEquals("[log4j, openssl, zlib, commons-io, guava]",
+                getNames(new RiskReportQuery(null, null, null, null, null, "securityRiskMedium", true, 0, 0).apply(createComponents())).toString());
+        // an unknown column keeps the report order
+        assertEquals("[zlib, openssl, commons-io, log4j, guava]", getNames(new RiskReportQuery(null, null, null, null, null, "unknown", false, 0, 0).apply(createComponents())).toString());
+    }
+
+}
@@ -0,0 +1,177 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController.Gate;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController.Ticket;
+
+public class HubAdmissionControllerTest {
+
+    private final HubServerInfo server = new HubServerInfo("https://hub.example.com", "credentials", 120, false, true);
+
+    @Test
+    public void testQueuedJobsTakeTurns() {
+        final HubAdmissionController controller = new HubAdmissionController();
+        final Ticket running = controller.request(server, Gate.UPLOAD, "a", 1);
+        assertTrue(running.isAdmitted());
+
+        final List<String> admitted = new ArrayList<>();
+        final Ticket a1 = queue(controller, Gate.UPLOAD, "a", admitted);
+        final Ticket a2 = queue(controller, Gate.UPLOAD, "a", admitted);
+        final Ticket b1 = queue(controller, Gate.UPLOAD, "b", admitted);
+        assertFalse(a1.isAdmitted());
+        assertEquals(2, b1.getQueuedAhead());
+
+        running.release();
+        a1.release();
+        b1.release();
+        a2.release();
+        assertEquals("[a, b, a]", admitted.toString());
+
+        final HubAdmissionController.QueueStatus status = controller.getQueueStatuses().get(0);
+        assertEquals(0, status.getInFlight());
+        assertEquals(0, status.getQueued());
+        assertEquals(4, status.getAdmitted());
+    }
+
+    @Test
+    public void testReleasingQueuedTicketGivesUpItsPlace() {
+        final HubAdmissionController controller = new HubAdmissionController();
+        final Ticket running = controller.request(server, Gate.BOM_WAIT, "a", 1);
+        final List<String> admitted = new ArrayList<>();
+        final Ticket a1 = queue(controller, Gate.BOM_WAIT, "a", admitted);
+        final Ticket b1 = queue(controller, Gate.BOM_WAIT, "b", admitted);
+
+        a1.release();
+        running.release();
+        running.release();
+        assertEquals("[b]", admitted.toString());
+        assertTrue(b1.isAdmitted());
+        assertEquals(1, controller.getQueueStatuses().get(0).getInFlight());
+    }
+
+    @Test
+    public void testAwaitBlocksUntilAdmitted() throws Exception {
+        final HubAdmissionController controller = new HubAdmissionController();
+        final Ticket running = controller.request(server, Gate.UPLOAD, "a", 1);
+        final Ticket waiting = controller.request(server, Gate.UPLOAD, "b", 1);
+        final Thread releaser = new Thread() {
+            @Override
+            public void run() {
+                running.release();
+            }
+        };
+        releaser.start();
+        waiting.await();
+        assertTrue(waiting.isAdmitted());
+        releaser.join();
+    }
+
+    @Test
+    public void testInterruptedAwaitGivesUpItsPlace() throws Exception {
+        final HubAdmissionController controller = new HubAdmissionController();
+        final Ticket running = controller.request(server, Gate.UPLOAD, "a", 1);
+        final Ticket waiting = controller.request(server, Gate.UPLOAD, "b", 1);
+        final AwaitThread awaiting = startAwait(waiting);
+
+        awaiting.interrupt();
+        awaiting.join();
+
+        assertTrue(awaiting.interrupted);
+        assertEquals(0, controller.getQueueStatuses().get(0).getQueued());
+        running.release();
+        assertFalse(waiting.isAdmitted());
+        assertEquals(0, controller.getQueueStatuses().get(0).getInFlight());
+    }
+
+    @Test
+    public void testInterruptedAwaitFreesTheSlotItWasAdmittedTo() throws Exception {
+        final HubAdmissionController controller = new HubAdmissionController();
+        final Ticket running = controller.request(server, Gate.UPLOAD, "a", 1);
+        final Ticket waiting = controller.request(server, Gate.UPLOAD, "b", 1);
+        final AwaitThread awaiting = startAwait(waiting);
+
+        // holding the lock of the queue, the waiting thread is interrupted and its ticket then admitted before it wakes up
+        final Field gateQueue = Ticket.class.getDeclaredField("gateQueue");
+        gateQueue.setAccessible(true);
+        synchronized (gateQueue.get(waiting)) {
+            awaiting.interrupt();
+            running.release();
+        }
+        awaiting.join();
+
+        assertTrue(awaiting.interrupted);
+        assertEquals(0, controller.getQueueStatuses().get(0).getInFlight());
+        assertTrue(controller.request(server, Gate.UPLOAD, "c", 1).isAdmitted());
+    }
+
+    private AwaitThread startAwait(final Ticket ticket) throws InterruptedException {
+        final AwaitThread awaiting = new AwaitThread(ticket);
+        awaiting.start();
+        while (awaiting.getState() != Thread.State.WAITING) {
+            Thread.sleep(1L);
+        }
+        return awaiting;
+    }
+
+    private static class AwaitThread extends Thread {
+        private final Ticket ticket;
+
+        private volatile boolean interrupted;
+
+        private AwaitThread(final Ticket ticket) {
+            this.ticket = ticket;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ticket.await();
+            } catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+    }
+
+    private Ticket queue(final HubAdmissionController controller, final Gate gate, final String jobName, final List<String> admitted) {
+        final Ticket ticket = controller.request(server, gate, jobName, 1);
+        ticket.whenAdmitted(new Runnable() {
+            @Override
+            public void run() {
+                admitted.add(jobName);
+            }
+        });
+        return ticket;
+    }
+
+}
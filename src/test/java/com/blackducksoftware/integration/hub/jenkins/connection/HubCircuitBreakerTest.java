@@ -0,0 +1,156 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.exception.DoesNotExistException;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker.HubRequest;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubCircuitBreaker.State;
+import com.blackducksoftware.integration.hub.jenkins.exceptions.HubUnavailableException;
+import com.blackducksoftware.integration.hub.rest.exception.IntegrationRestException;
+
+public class HubCircuitBreakerTest {
+
+    private static final String SERVER_URL = "https://hub.example.com";
+
+    @Test
+    public void testRetriesUnavailableHub() throws Exception {
+        final HubCircuitBreaker breaker = new HubCircuitBreaker(5, 60000L, 3, 1L);
+        final AtomicInteger calls = new AtomicInteger();
+        final String response = breaker.execute(SERVER_URL, new HubRequest<String>() {
+            @Override
+            public String execute() throws IntegrationException {
+                if (calls.incrementAndGet() < 3) {
+                    throw new IntegrationRestException(503, "Service Unavailable", "down");
+                }
+                return "up";
+            }
+        });
+        assertEquals("up", response);
+        assertEquals(3, calls.get());
+        assertEquals(2L, breaker.getCircuitStatuses().get(0).getRetries());
+        assertEquals(State.CLOSED, breaker.getCircuitStatuses().get(0).getState());
+    }
+
+    @Test
+    public void testExecuteOnceIsNotRetried() throws Exception {
+        final HubCircuitBreaker breaker = new HubCircuitBreaker(5, 60000L, 3, 1L);
+        final AtomicInteger calls = new AtomicInteger();
+        final HubServerInfo serverInfo = mock(HubServerInfo.class);
+        when(serverInfo.getServerUrl()).thenReturn(SERVER_URL);
+        try {
+            breaker.executeOnce(serverInfo, new HubRequest<String>() {
+                @Override
+                public String execute() throws IntegrationException {
+                    calls.incrementAndGet();
+                    throw new IntegrationRestException(503, "Service Unavailable", "down");
+                }
+            });
+            fail();
+        } catch (final IntegrationRestException e) {
+            assertEquals(1, calls.get());
+        }
+        assertEquals(0L, breaker.getCircuitStatuses().get(0).getRetries());
+        assertEquals(1, breaker.getCircuitStatuses().get(0).getConsecutiveFailures());
+    }
+
+    @Test
+    public void testAnswerFromHubIsNotRetried() throws Exception {
+        final HubCircuitBreaker breaker = new HubCircuitBreaker(1, 60000L, 3, 1L);
+        final AtomicInteger calls = new AtomicInteger();
+        try {
+            breaker.execute(SERVER_URL, new HubRequest<String>() {
+                @Override
+                public String execute() throws IntegrationException {
+                    calls.incrementAndGet();
+                    throw new DoesNotExistException("no such project");
+                }
+            });
+            fail();
+        } catch (final DoesNotExistException e) {
+            assertEquals(1, calls.get());
+        }
+        assertEquals(State.CLOSED, breaker.getCircuitStatuses().get(0).getState());
+    }
+
+    @Test
+    public void testOpensAndProbesForRecovery() throws Exception {
+        final HubCircuitBreaker breaker = new HubCircuitBreaker(2, 50L, 1, 1L);
+        final HubRequest<String> down = new HubRequest<String>() {
+            @Override
+            public String execute() throws IntegrationException {
+                throw new IntegrationException("Connection refused", new IOException("Connection refused"));
+            }
+        };
+        final AtomicInteger calls = new AtomicInteger();
+        final HubRequest<String> up = new HubRequest<String>() {
+            @Override
+            public String execute() throws IntegrationException {
+                calls.incrementAndGet();
+                return "up";
+            }
+        };
+        for (int i = 0; i < 2; i++) {
+            try {
+                breaker.execute(SERVER_URL, down);
+                fail();
+            } catch (final IntegrationException e) {
+                assertFalse(e instanceof HubUnavailableException);
+            }
+        }
+        assertEquals(State.OPEN, breaker.getCircuitStatuses().get(0).getState());
+        try {
+            breaker.execute(SERVER_URL, up);
+            fail();
+        } catch (final HubUnavailableException e) {
+            assertEquals(0, calls.get());
+            assertEquals(1L, breaker.getCircuitStatuses().get(0).getRejected());
+        }
+
+        Thread.sleep(60L);
+        assertEquals("up", breaker.execute(SERVER_URL, up));
+        assertEquals(State.CLOSED, breaker.getCircuitStatuses().get(0).getState());
+    }
+
+    @Test
+    public void testClassifiesFailures() {
+        assertTrue(HubCircuitBreaker.isUnavailable(new IntegrationRestException(502, "Bad Gateway", "proxy")));
+        assertTrue(HubCircuitBreaker.isUnavailable(new IntegrationRestException(429, "Too Many Requests", "slow down")));
+        assertFalse(HubCircuitBreaker.isUnavailable(new IntegrationRestException(401, "Unauthorized", "login")));
+        assertTrue(HubCircuitBreaker.isUnavailable(new IntegrationException(new IOException("Read timed out"))));
+        assertFalse(HubCircuitBreaker.isUnavailable(new IntegrationException("Could not parse the response")));
+    }
+
+}
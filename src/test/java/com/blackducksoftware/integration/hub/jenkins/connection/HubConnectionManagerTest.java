@@ -0,0 +1,237 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubConnectionManager.PooledHubServicesFactory;
+import com.blackducksoftware.integration.hub.rest.RestConnection;
+import com.blackducksoftware.integration.log.IntLogger;
+
+public class HubConnectionManagerTest {
+
+    private static final long ONE_HOUR = 60L * 60L * 1000L;
+
+    @Test
+    public void testSharesConnectionOfTheSameKey() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, ONE_HOUR, connector);
+        try (PooledHubServicesFactory first = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+                PooledHubServicesFactory second = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com/"));
+                PooledHubServicesFactory otherUser = manager.getHubServicesFactory(null, "other", config("https://hub.example.com"));
+                PooledHubServicesFactory otherHub = manager.getHubServicesFactory(null, "credentials", config("https://other.example.com"))) {
+            assertSame(first.getRestConnection(), second.getRestConnection());
+            assertNotSame(first.getRestConnection(), otherUser.getRestConnection());
+            assertNotSame(first.getRestConnection(), otherHub.getRestConnection());
+        }
+        assertEquals(3, connector.connections.size());
+        assertEquals(3, manager.getConnectionCount());
+        verify(client(connector.connections.get(0)), never()).close();
+    }
+
+    @Test
+    public void testExpiredSessionIsReplacedAndClosedAfterItsLastLease() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, 1L, connector);
+        final PooledHubServicesFactory first = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+        Thread.sleep(10L);
+        final PooledHubServicesFactory second = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+        assertEquals(2, connector.connections.size());
+        assertNotSame(first.getRestConnection(), second.getRestConnection());
+
+        // the first build is still using the old connection
+        verify(client(first.getRestConnection()), never()).close();
+        first.close();
+        first.close();
+        verify(client(first.getRestConnection()), times(1)).close();
+        second.close();
+        verify(client(second.getRestConnection()), never()).close();
+        assertEquals(1, manager.getConnectionCount());
+    }
+
+    @Test
+    public void testInvalidatedConnectionIsClosedAfterItsLastLease() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, ONE_HOUR, connector);
+        final PooledHubServicesFactory inUse = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+        manager.getHubServicesFactory(null, "credentials", config("https://other.example.com")).close();
+
+        manager.invalidate("https://hub.example.com/");
+        assertEquals(1, manager.getConnectionCount());
+        verify(client(inUse.getRestConnection()), never()).close();
+        inUse.close();
+        verify(client(inUse.getRestConnection())).close();
+
+        manager.invalidateAll();
+        assertEquals(0, manager.getConnectionCount());
+        verify(client(connector.connections.get(1))).close();
+
+        try (PooledHubServicesFactory reconnected = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"))) {
+            assertEquals(3, connector.connections.size());
+        }
+    }
+
+    @Test
+    public void testEvictsIdleConnections() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(-1L, ONE_HOUR, connector);
+        manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com")).close();
+        manager.evictIdleConnections();
+        assertEquals(0, manager.getConnectionCount());
+        verify(client(connector.connections.get(0))).close();
+    }
+
+    @Test
+    public void testConnectionThatCanNotLogInIsNotKept() throws Exception {
+        final TestConnector connector = new TestConnector();
+        connector.failure = new IntegrationException("Unauthorized");
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, ONE_HOUR, connector);
+        try {
+            manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+            fail();
+        } catch (final IntegrationException e) {
+            assertEquals(0, manager.getConnectionCount());
+        }
+    }
+
+    @Test
+    public void testConnectionLogsToTheCallerHoldingALease() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, ONE_HOUR, connector);
+        final IntLogger buildLogger = mock(IntLogger.class);
+        try (PooledHubServicesFactory services = manager.getHubServicesFactory(buildLogger, "credentials", config("https://hub.example.com"))) {
+            connector.loggers.get(0).info("Successfully connected");
+        }
+        connector.loggers.get(0).info("After the build");
+        verify(buildLogger).info("Successfully connected");
+        verify(buildLogger, never()).info("After the build");
+    }
+
+    @Test
+    public void testSlowLoginDoesNotHoldUpCallersWithASession() throws Exception {
+        final TestConnector connector = new TestConnector();
+        final HubConnectionManager manager = new HubConnectionManager(ONE_HOUR, 1L, connector);
+        final PooledHubServicesFactory first = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+        first.close();
+        Thread.sleep(10L);
+
+        connector.login = new CountDownLatch(1);
+        final FutureTask<PooledHubServicesFactory> renewing = new FutureTask<>(new Callable<PooledHubServicesFactory>() {
+            @Override
+            public PooledHubServicesFactory call() throws Exception {
+                return manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"));
+            }
+        });
+        new Thread(renewing).start();
+        connector.loggingIn.await(10L, TimeUnit.SECONDS);
+
+        // the login of the other caller is still running
+        try (PooledHubServicesFactory duringLogin = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"))) {
+            assertSame(first.getRestConnection(), duringLogin.getRestConnection());
+            assertFalse(renewing.isDone());
+        }
+        connector.login.countDown();
+        try (PooledHubServicesFactory renewed = renewing.get(10L, TimeUnit.SECONDS);
+                PooledHubServicesFactory afterLogin = manager.getHubServicesFactory(null, "credentials", config("https://hub.example.com"))) {
+            assertNotSame(first.getRestConnection(), renewed.getRestConnection());
+            assertSame(renewed.getRestConnection(), afterLogin.getRestConnection());
+        }
+        assertEquals(2, connector.connections.size());
+        verify(client(first.getRestConnection())).close();
+    }
+
+    @Test
+    public void testConnectionThatWasNeverOpenedIsNotClosed() throws Exception {
+        final RestConnection restConnection = mock(RestConnection.class);
+        HubConnectionManager.close(restConnection);
+        verify(restConnection).getClient();
+    }
+
+    private CloseableHttpClient client(final RestConnection restConnection) {
+        return restConnection.getClient();
+    }
+
+    private HubServerConfig config(final String url) throws Exception {
+        final HubServerConfig hubServerConfig = mock(HubServerConfig.class);
+        when(hubServerConfig.getHubUrl()).thenReturn(new URL(url));
+        when(hubServerConfig.getTimeout()).thenReturn(120);
+        return hubServerConfig;
+    }
+
+    private static class TestConnector extends HubConnectionManager.Connector {
+        private final List<RestConnection> connections = new ArrayList<>();
+
+        private final List<IntLogger> loggers = new ArrayList<>();
+
+        private final CountDownLatch loggingIn = new CountDownLatch(1);
+
+        private IntegrationException failure;
+
+        private CountDownLatch login;
+
+        @Override
+        public RestConnection connect(final HubServerConfig hubServerConfig, final IntLogger logger) throws IntegrationException {
+            if (failure != null) {
+                throw failure;
+            }
+            if (login != null) {
+                loggingIn.countDown();
+                try {
+                    login.await();
+                } catch (final InterruptedException e) {
+                    throw new IntegrationException(e);
+                }
+            }
+            final RestConnection restConnection = mock(RestConnection.class);
+            final CloseableHttpClient client = mock(CloseableHttpClient.class);
+            when(restConnection.getClient()).thenReturn(client);
+            synchronized (this) {
+                connections.add(restConnection);
+                loggers.add(logger);
+            }
+            return restConnection;
+        }
+    }
+
+}
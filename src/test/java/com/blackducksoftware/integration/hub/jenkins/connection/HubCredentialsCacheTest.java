@@ -0,0 +1,147 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.cloudbees.plugins.credentials.SystemCredentialsProvider;
+import com.cloudbees.plugins.credentials.common.StandardUsernamePasswordCredentials;
+import com.cloudbees.plugins.credentials.impl.UsernamePasswordCredentialsImpl;
+
+import hudson.model.ItemGroup;
+import hudson.model.Saveable;
+
+public class HubCredentialsCacheTest {
+
+    @Test
+    public void testLastCredentialWithAnIdWins() {
+        final UsernamePasswordCredentialsImpl first = credential("hub");
+        final UsernamePasswordCredentialsImpl last = credential("hub");
+        final UsernamePasswordCredentialsImpl other = credential("other");
+        final StandardUsernamePasswordCredentials notSupported = mock(StandardUsernamePasswordCredentials.class);
+        when(notSupported.getId()).thenReturn("other");
+
+        final HubCredentialsCache cache = new HubCredentialsCache(60000L, new TestLookup(first, other, last, notSupported));
+
+        assertSame(last, cache.getCredential("hub"));
+        assertSame(other, cache.getCredential("other"));
+        assertNull(cache.getCredential("missing"));
+        assertNull(cache.getCredential(null));
+    }
+
+    @Test
+    public void testLookupIsSharedUntilInvalidated() {
+        final UsernamePasswordCredentialsImpl before = credential("hub");
+        final UsernamePasswordCredentialsImpl after = credential("hub");
+        final TestLookup lookup = new TestLookup(before);
+        final HubCredentialsCache cache = new HubCredentialsCache(60000L, lookup);
+
+        assertSame(before, cache.getCredential("hub"));
+        lookup.setCredentials(after);
+        assertSame(before, cache.getCredential("hub"));
+        assertEquals(1, lookup.lookups);
+
+        cache.invalidate();
+
+        assertSame(after, cache.getCredential("hub"));
+        assertEquals(2, lookup.lookups);
+    }
+
+    @Test
+    public void testLookupExpires() throws Exception {
+        final UsernamePasswordCredentialsImpl before = credential("hub");
+        final UsernamePasswordCredentialsImpl after = credential("hub");
+        final TestLookup lookup = new TestLookup(before);
+        final HubCredentialsCache cache = new HubCredentialsCache(1L, lookup);
+
+        assertSame(before, cache.getCredential("hub"));
+        lookup.setCredentials(after);
+        Thread.sleep(10L);
+
+        assertSame(after, cache.getCredential("hub"));
+        assertEquals(2, lookup.lookups);
+    }
+
+    @Test
+    public void testSavingACredentialsStoreInvalidates() {
+        final HubCredentialsCache.CredentialsChangeListener listener = new HubCredentialsCache.CredentialsChangeListener();
+
+        long generation = HubCredentialsCache.getInstance().getGeneration();
+        listener.onChange(mock(SystemCredentialsProvider.class), null);
+        assertEquals(generation + 1, HubCredentialsCache.getInstance().getGeneration());
+
+        generation = HubCredentialsCache.getInstance().getGeneration();
+        // saving a folder or a multibranch project
+        listener.onChange(mock(ItemGroup.class), null);
+        assertEquals(generation, HubCredentialsCache.getInstance().getGeneration());
+
+        generation = HubCredentialsCache.getInstance().getGeneration();
+        listener.onChange(mock(Saveable.class), null);
+        assertEquals(generation, HubCredentialsCache.getInstance().getGeneration());
+    }
+
+    @Test
+    public void testIsCredentialsStore() {
+        assertTrue(HubCredentialsCache.CredentialsChangeListener.isCredentialsStore(mock(SystemCredentialsProvider.class)));
+        assertFalse(HubCredentialsCache.CredentialsChangeListener.isCredentialsStore(mock(ItemGroup.class)));
+        assertFalse(HubCredentialsCache.CredentialsChangeListener.isCredentialsStore(mock(Saveable.class)));
+    }
+
+    private UsernamePasswordCredentialsImpl credential(final String id) {
+        final UsernamePasswordCredentialsImpl credential = mock(UsernamePasswordCredentialsImpl.class);
+        when(credential.getId()).thenReturn(id);
+        return credential;
+    }
+
+    private static class TestLookup extends HubCredentialsCache.CredentialsLookup {
+        private List<StandardUsernamePasswordCredentials> credentials;
+
+        private int lookups;
+
+        private TestLookup(final StandardUsernamePasswordCredentials... credentials) {
+            setCredentials(credentials);
+        }
+
+        private void setCredentials(final StandardUsernamePasswordCredentials... credentials) {
+            this.credentials = Arrays.asList(credentials);
+        }
+
+        @Override
+        public List<StandardUsernamePasswordCredentials> lookup() {
+            lookups++;
+            return new ArrayList<>(credentials);
+        }
+    }
+
+}
@@ -0,0 +1,85 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.connection;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+
+public class HubServerPoolTest {
+
+    private final HubServerInfo first = new HubServerInfo("first", "https://first.hub/", "credentials", 120, false, true);
+
+    private final HubServerInfo second = new HubServerInfo("second", "https://second.hub", "credentials", 120, false, true);
+
+    private final List<HubServerInfo> servers = Arrays.asList(first, second);
+
+    @Test
+    public void testChoosesServerWithFewestScansInFlight() {
+        final HubServerPool pool = new HubServerPool();
+        assertSame(first, pool.acquireLeastLoaded(servers));
+        assertSame(second, pool.acquireLeastLoaded(servers));
+        assertSame(first, pool.acquireLeastLoaded(servers));
+
+        pool.release(first);
+        pool.release(first);
+        assertSame(first, pool.acquireLeastLoaded(servers));
+        assertNull(pool.acquireLeastLoaded(Collections.<HubServerInfo> emptyList()));
+    }
+
+    @Test
+    public void testChoosesFastestServerWhenEquallyLoaded() {
+        final HubServerPool pool = new HubServerPool();
+        pool.recordLatency(first, 900L);
+        pool.recordLatency(second, 100L);
+        assertSame(second, pool.acquireLeastLoaded(servers));
+        pool.release(second);
+
+        pool.recordLatency(second, 3000L);
+        assertSame(first, pool.acquireLeastLoaded(servers));
+    }
+
+    @Test
+    public void testLeavesOutFailedServersUnlessAllFailed() {
+        final HubServerPool pool = new HubServerPool();
+        pool.acquire(second);
+        pool.acquire(second);
+        pool.recordFailure(first);
+        assertSame(second, pool.acquireLeastLoaded(servers));
+
+        pool.recordFailure(second);
+        assertSame(first, pool.acquireLeastLoaded(servers));
+
+        pool.recordLatency(second, 100L);
+        assertSame(second, pool.acquireLeastLoaded(servers));
+        assertEquals(2, pool.getServerStatuses().size());
+    }
+
+}
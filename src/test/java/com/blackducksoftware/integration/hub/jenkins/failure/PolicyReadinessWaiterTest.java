@@ -0,0 +1,121 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.VersionBomPolicyStatusView;
+import com.blackducksoftware.integration.hub.exception.HubTimeoutExceededException;
+import com.blackducksoftware.integration.log.IntLogger;
+
+public class PolicyReadinessWaiterTest {
+
+    private static final String POLICY_STATUS_URL = "https://hub.example.com/api/projects/1/versions/2/policy-status";
+
+    @Test
+    public void testWaitsUntilThePolicyStatusIsUpdatedAfterTheUpload() throws Exception {
+        final long uploadTime = System.currentTimeMillis();
+        final VersionBomPolicyStatusView updated = status(uploadTime + 1L);
+        final StatusSequence waiter = new StatusSequence(60000L, status(uploadTime - 1000L), status(uploadTime - 1000L), updated);
+
+        assertSame(updated, waiter.waitUntilEvaluated(POLICY_STATUS_URL, uploadTime, 0L, uploadTime));
+        assertEquals(3, waiter.notBefores.size());
+    }
+
+    @Test
+    public void testUnchangedPolicyStatusIsUsedOnceTheScansAreFinished() throws Exception {
+        final long uploadTime = System.currentTimeMillis() - 1000L;
+        final long bomCompleted = System.currentTimeMillis();
+        final VersionBomPolicyStatusView unchanged = status(uploadTime - 60000L);
+        final StatusSequence waiter = new StatusSequence(60000L, unchanged, status(uploadTime - 60000L), unchanged);
+
+        final VersionBomPolicyStatusView policyStatus = waiter.waitUntilEvaluated(POLICY_STATUS_URL, uploadTime, bomCompleted, bomCompleted);
+
+        assertEquals(unchanged.updatedAt, policyStatus.updatedAt);
+        assertEquals(2, waiter.notBefores.size());
+        assertEquals(Long.valueOf(bomCompleted), waiter.notBefores.get(0));
+    }
+
+    @Test
+    public void testPolicyStatusFetchedBeforeTheScansWereFinishedIsNotUsed() throws Exception {
+        final long uploadTime = System.currentTimeMillis() - 1000L;
+        final long bomCompleted = System.currentTimeMillis();
+        final VersionBomPolicyStatusView unchanged = status(uploadTime - 60000L);
+        // the first status may be from a fetch made for another build before the scans were finished
+        final StatusSequence waiter = new StatusSequence(60000L, unchanged, unchanged, unchanged);
+
+        waiter.waitUntilEvaluated(POLICY_STATUS_URL, uploadTime, bomCompleted, uploadTime);
+
+        assertEquals(3, waiter.notBefores.size());
+    }
+
+    @Test
+    public void testUnchangedPolicyStatusTimesOutWhenNobodyWaitedForTheScans() throws Exception {
+        final long uploadTime = System.currentTimeMillis();
+        final StatusSequence waiter = new StatusSequence(50L, status(uploadTime - 1000L));
+
+        try {
+            waiter.waitUntilEvaluated(POLICY_STATUS_URL, uploadTime, 0L, uploadTime);
+            fail("The wait should have timed out");
+        } catch (final HubTimeoutExceededException e) {
+            // the policy status was never updated after the upload
+        }
+    }
+
+    private VersionBomPolicyStatusView status(final long updatedAt) {
+        final VersionBomPolicyStatusView policyStatus = new VersionBomPolicyStatusView();
+        policyStatus.updatedAt = new Date(updatedAt);
+        return policyStatus;
+    }
+
+    /**
+     * Answers with the given statuses in turn, repeating the last one.
+     */
+    private static class StatusSequence extends PolicyReadinessWaiter {
+        private final List<VersionBomPolicyStatusView> statuses;
+
+        private final List<Long> notBefores = new ArrayList<>();
+
+        private StatusSequence(final long timeout, final VersionBomPolicyStatusView... statuses) {
+            super(mock(IntLogger.class), null, null, timeout, 10L);
+            this.statuses = Arrays.asList(statuses);
+        }
+
+        @Override
+        VersionBomPolicyStatusView getPolicyStatus(final String policyStatusUrl, final long notBefore) throws IntegrationException {
+            notBefores.add(notBefore);
+            return statuses.get(Math.min(notBefores.size(), statuses.size()) - 1);
+        }
+    }
+
+}
@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyStatusCache.FetchedStatus;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyStatusCache.Source;
+
+public class PolicyStatusCacheTest {
+
+    private static final String POLICY_STATUS_URL = "https://hub.example.com/api/projects/1/versions/2/policy-status";
+
+    @Test
+    public void testFreshStatusIsShared() throws Exception {
+        final PolicyStatusCache cache = new PolicyStatusCache(60000L);
+        final RecordingSource source = new RecordingSource("{\"overallStatus\":\"IN_VIOLATION\"}", "\"1\"");
+        assertEquals("{\"overallStatus\":\"IN_VIOLATION\"}", cache.getJson(POLICY_STATUS_URL, 0L, source));
+        assertEquals("{\"overallStatus\":\"IN_VIOLATION\"}", cache.getJson(POLICY_STATUS_URL, 0L, source));
+        assertEquals(1, source.etags.size());
+        assertNull(source.etags.get(0));
+        assertEquals(1L, cache.getHits());
+        assertEquals(1L, cache.getFetches());
+    }
+
+    @Test
+    public void testExpiredStatusIsRevalidated() throws Exception {
+        final PolicyStatusCache cache = new PolicyStatusCache(0L);
+        final RecordingSource source = new RecordingSource("{\"overallStatus\":\"NOT_IN_VIOLATION\"}", "\"1\"");
+        cache.getJson(POLICY_STATUS_URL, 0L, source);
+        Thread.sleep(5L);
+        source.notModified = true;
+        assertEquals("{\"overallStatus\":\"NOT_IN_VIOLATION\"}", cache.getJson(POLICY_STATUS_URL, 0L, source));
+        assertEquals("\"1\"", source.etags.get(1));
+        assertEquals(1L, cache.getRevalidations());
+
+        // a status fetched before the caller's BOM was up to date is checked again even while it is fresh
+        final PolicyStatusCache freshCache = new PolicyStatusCache(60000L);
+        final RecordingSource freshSource = new RecordingSource("{}", "\"2\"");
+        freshCache.getJson(POLICY_STATUS_URL, 0L, freshSource);
+        freshCache.getJson(POLICY_STATUS_URL, System.currentTimeMillis() + 1000L, freshSource);
+        assertEquals(2, freshSource.etags.size());
+        assertEquals("\"2\"", freshSource.etags.get(1));
+    }
+
+    @Test
+    public void testConcurrentRequestsShareOneFetch() throws Exception {
+        final PolicyStatusCache cache = new PolicyStatusCache(60000L);
+        final CountDownLatch fetchStarted = new CountDownLatch(1);
+        final CountDownLatch finishFetch = new CountDownLatch(1);
+        final AtomicInteger fetches = new AtomicInteger();
+        final Source slowSource = new Source() {
+            @Override
+            public FetchedStatus fetch(final String policyStatusUrl, final String etag) throws IntegrationException {
+                fetches.incrementAndGet();
+                fetchStarted.countDown();
+                try {
+                    finishFetch.await(10, TimeUnit.SECONDS);
+                } catch (final InterruptedException e) {
+                    throw new IntegrationException(e);
+                }
+                return new FetchedStatus("{}", null);
+            }
+        };
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            final Thread thread = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        cache.getJson(POLICY_STATUS_URL, 0L, slowSource);
+                    } catch (final IntegrationException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        fetchStarted.await(10, TimeUnit.SECONDS);
+        finishFetch.countDown();
+        for (final Thread thread : threads) {
+            thread.join(10000L);
+        }
+        assertEquals(1, fetches.get());
+        assertEquals(2L, cache.getHits());
+    }
+
+    private static class RecordingSource implements Source {
+        private final String json;
+
+        private final String etag;
+
+        private final List<String> etags = new ArrayList<>();
+
+        private boolean notModified;
+
+        private RecordingSource(final String json, final String etag) {
+            this.json = json;
+            this.etag = etag;
+        }
+
+        @Override
+        public FetchedStatus fetch(final String policyStatusUrl, final String ifNoneMatch) throws IntegrationException {
+            etags.add(ifNoneMatch);
+            return notModified ? null : new FetchedStatus(json, etag);
+        }
+    }
+
+}
@@ -0,0 +1,173 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.failure;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.inOrder;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+import org.junit.Test;
+import org.mockito.InOrder;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.api.generated.view.PolicyRuleViewV2;
+import com.blackducksoftware.integration.hub.api.generated.view.VersionBomComponentView;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.action.HubVariableContributor;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyViolationFetcher.Page;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyViolationFetcher.PageSource;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyViolationFetcher.Violation;
+import com.blackducksoftware.integration.hub.jenkins.failure.PolicyViolationFetcher.ViolationHandler;
+import com.blackducksoftware.integration.hub.request.Request;
+import com.blackducksoftware.integration.hub.request.Response;
+import com.blackducksoftware.integration.hub.service.HubService;
+import com.google.gson.Gson;
+
+public class PolicyViolationFetcherTest {
+
+    @Test
+    public void testPagesAreHandledInOrder() throws Exception {
+        final PolicyViolationFetcher fetcher = new PolicyViolationFetcher(new NumberedPageSource(23, -1), 5, 3);
+        final List<String> componentNames = new ArrayList<>();
+        final int count = fetcher.fetch(new ViolationHandler() {
+            @Override
+            public void handle(final Violation violation) throws IOException {
+                componentNames.add(violation.getComponentName());
+            }
+        });
+        assertEquals(23, count);
+        for (int i = 0; i < 23; i++) {
+            assertEquals("component-" + i, componentNames.get(i));
+        }
+    }
+
+    @Test
+    public void testFailedPageFailsTheFetch() throws Exception {
+        final PolicyViolationFetcher fetcher = new PolicyViolationFetcher(new NumberedPageSource(20, 10), 5, 2);
+        try {
+            fetcher.fetch(new ViolationHandler() {
+                @Override
+                public void handle(final Violation violation) throws IOException {
+                }
+            });
+            fail();
+        } catch (final IntegrationException e) {
+            assertEquals("page 10 failed", e.getMessage());
+        }
+    }
+
+    @Test
+    public void testRulesAreFetchedOnceForEachLinkAfterThePageIsClosed() throws Exception {
+        final String page = "{\"totalCount\":4,\"items\":["
+                + "{\"componentName\":\"a\",\"componentVersionName\":\"1.0\",\"policyStatus\":\"IN_VIOLATION\"},"
+                + "{\"componentName\":\"b\",\"componentVersionName\":\"1.0\",\"policyStatus\":\"NOT_IN_VIOLATION\"},"
+                + "{\"componentName\":\"a\",\"componentVersionName\":\"1.0\",\"policyStatus\":\"IN_VIOLATION\"},"
+                + "{\"componentName\":\"c\",\"componentVersionName\":\"2.0\",\"policyStatus\":\"IN_VIOLATION\"}]}";
+        final Response response = mock(Response.class);
+        when(response.getContent()).thenReturn(new ByteArrayInputStream(page.getBytes(StandardCharsets.UTF_8)));
+        final HubService hubService = mock(HubService.class);
+        when(hubService.getGson()).thenReturn(new Gson());
+        when(hubService.executeRequest(any(Request.class))).thenReturn(response);
+        when(hubService.getFirstLinkSafely(any(VersionBomComponentView.class), eq(VersionBomComponentView.POLICY_RULES_LINK))).thenAnswer(new Answer<String>() {
+            @Override
+            public String answer(final InvocationOnMock invocation) {
+                return "https://hub.example.com/components/" + ((VersionBomComponentView) invocation.getArguments()[0]).componentName + "/policy-rules";
+            }
+        });
+        when(hubService.getAllResponses(anyString(), eq(PolicyRuleViewV2.class))).thenAnswer(new Answer<List<PolicyRuleViewV2>>() {
+            @Override
+            public List<PolicyRuleViewV2> answer(final InvocationOnMock invocation) {
+                final PolicyRuleViewV2 rule = new PolicyRuleViewV2();
+                rule.name = "rule of " + invocation.getArguments()[0];
+                return Arrays.asList(rule);
+            }
+        });
+
+        final HubServerInfo serverInfo = new HubServerInfo("https://hub.example.com", "credentials", 120, false, true);
+        final Page fetched = new PolicyViolationFetcher.HubPageSource(serverInfo, hubService, "https://hub.example.com/components").fetch(0, 10);
+
+        assertEquals(4, fetched.getTotalCount());
+        assertEquals(3, fetched.getViolations().size());
+        assertEquals("c", fetched.getViolations().get(2).getComponentName());
+        assertEquals(Arrays.asList("rule of https://hub.example.com/components/c/policy-rules"), fetched.getViolations().get(2).getRuleNames());
+        verify(hubService, times(1)).getAllResponses("https://hub.example.com/components/a/policy-rules", PolicyRuleViewV2.class);
+        final InOrder order = inOrder(response, hubService);
+        order.verify(response).close();
+        order.verify(hubService, times(2)).getAllResponses(anyString(), eq(PolicyRuleViewV2.class));
+    }
+
+    @Test
+    public void testRuleVariableName() {
+        assertEquals("BOM_ENTRIES_IN_VIOLATION_NO_GPL", HubVariableContributor.getRuleVariableName("No GPL"));
+        assertEquals("BOM_ENTRIES_IN_VIOLATION_HIGH_SEVERITY_CVSS_7_0", HubVariableContributor.getRuleVariableName(" high-severity (CVSS > 7.0) "));
+    }
+
+    /**
+     * Answers the pages with a random delay, so they finish out of order.
+     */
+    private static class NumberedPageSource implements PageSource {
+        private final int totalCount;
+
+        private final int failingOffset;
+
+        private NumberedPageSource(final int totalCount, final int failingOffset) {
+            this.totalCount = totalCount;
+            this.failingOffset = failingOffset;
+        }
+
+        @Override
+        public Page fetch(final int offset, final int limit) throws IntegrationException {
+            try {
+                Thread.sleep(ThreadLocalRandom.current().nextLong(10L));
+            } catch (final InterruptedException e) {
+                throw new IntegrationException(e);
+            }
+            if (offset == failingOffset) {
+                throw new IntegrationException("page " + offset + " failed");
+            }
+            final List<Violation> violations = new ArrayList<>();
+            for (int i = offset; i < Math.min(offset + limit, totalCount); i++) {
+                violations.add(new Violation("component-" + i, "1.0", Arrays.asList("No GPL")));
+            }
+            return new Page(totalCount, Collections.unmodifiableList(violations));
+        }
+    }
+
+}
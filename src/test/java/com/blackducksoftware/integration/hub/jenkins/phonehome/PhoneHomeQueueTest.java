@@ -0,0 +1,146 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.phonehome;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.net.URL;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.configuration.HubServerConfig;
+
+public class PhoneHomeQueueTest {
+
+    private static final long INTERVAL = TimeUnit.HOURS.toMillis(24);
+
+    private HubServerConfig hubServerConfig;
+
+    private TestSender sender;
+
+    @Before
+    public void setUp() throws Exception {
+        hubServerConfig = mock(HubServerConfig.class);
+        when(hubServerConfig.getHubUrl()).thenReturn(new URL("https://hub.example.com"));
+        sender = new TestSender();
+    }
+
+    @Test
+    public void testPhoneHomeIsSentOncePerInterval() throws Exception {
+        final PhoneHomeQueue queue = new PhoneHomeQueue(5, INTERVAL, INTERVAL, sender);
+        assertTrue(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        assertFalse(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        assertTrue(queue.submit("credentials", hubServerConfig, "2.0", "2.60.1"));
+        assertEquals("1.0", sender.calls.poll(5, TimeUnit.SECONDS));
+        assertEquals("2.0", sender.calls.poll(5, TimeUnit.SECONDS));
+        awaitCount(queue, 2, false);
+
+        assertFalse(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        assertEquals(2, queue.getSubmittedCount());
+        assertEquals(2, queue.getSkippedCount());
+        assertEquals(2, queue.getSentCount());
+    }
+
+    @Test
+    public void testFailedPhoneHomeIsRetriedAfterTheRetryDelay() throws Exception {
+        sender.failures.set(1);
+        final PhoneHomeQueue queue = new PhoneHomeQueue(5, INTERVAL, 0L, sender);
+        assertTrue(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        awaitCount(queue, 1, true);
+
+        assertTrue(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        awaitCount(queue, 1, false);
+        assertEquals(2, sender.calls.size());
+        assertFalse(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+    }
+
+    @Test
+    public void testFailedPhoneHomeIsNotRetriedBeforeTheRetryDelay() throws Exception {
+        sender.failures.set(1);
+        final PhoneHomeQueue queue = new PhoneHomeQueue(5, INTERVAL, TimeUnit.HOURS.toMillis(1), sender);
+        assertTrue(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        awaitCount(queue, 1, true);
+
+        assertFalse(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        assertEquals(1, sender.calls.size());
+    }
+
+    @Test
+    public void testFullQueueDropsRequestsWithoutBlocking() throws Exception {
+        sender.blocked = new CountDownLatch(1);
+        final PhoneHomeQueue queue = new PhoneHomeQueue(1, INTERVAL, INTERVAL, sender);
+        assertTrue(queue.submit("credentials", hubServerConfig, "1.0", "2.60.1"));
+        assertEquals("1.0", sender.calls.poll(5, TimeUnit.SECONDS));
+        assertTrue(queue.submit("credentials", hubServerConfig, "2.0", "2.60.1"));
+        assertEquals(1, queue.getQueueDepth());
+
+        assertFalse(queue.submit("credentials", hubServerConfig, "3.0", "2.60.1"));
+        assertEquals(1, queue.getDroppedCount());
+        assertEquals(2, queue.getSubmittedCount());
+
+        sender.blocked.countDown();
+        awaitCount(queue, 2, false);
+        // the dropped request gave up its reservation, the queued one did not
+        assertTrue(queue.submit("credentials", hubServerConfig, "3.0", "2.60.1"));
+        assertFalse(queue.submit("credentials", hubServerConfig, "2.0", "2.60.1"));
+        awaitCount(queue, 3, false);
+    }
+
+    private void awaitCount(final PhoneHomeQueue queue, final long count, final boolean failed) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(5);
+        while ((failed ? queue.getFailedCount() : queue.getSentCount()) < count) {
+            assertTrue(queue.toString(), System.currentTimeMillis() < deadline);
+            Thread.sleep(10L);
+        }
+    }
+
+    /**
+     * Records the plugin version of every request, failing the first ones and holding all of them until it is let go.
+     */
+    private static class TestSender implements PhoneHomeQueue.Sender {
+        private final BlockingQueue<String> calls = new LinkedBlockingQueue<>();
+
+        private final AtomicInteger failures = new AtomicInteger();
+
+        private volatile CountDownLatch blocked = new CountDownLatch(0);
+
+        @Override
+        public void phoneHome(final String credentialsId, final HubServerConfig hubServerConfig, final String pluginVersion, final String jenkinsVersion) throws Exception {
+            calls.add(pluginVersion);
+            blocked.await();
+            if (failures.getAndDecrement() > 0) {
+                throw new Exception("The phone home endpoint could not be reached");
+            }
+        }
+    }
+
+}
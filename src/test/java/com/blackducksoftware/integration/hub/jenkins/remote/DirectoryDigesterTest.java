@@ -0,0 +1,187 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DirectoryDigesterTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File workspace;
+
+    @Before
+    public void init() throws IOException {
+        workspace = folder.newFolder("workspace");
+        write("module-a/src/Main.java", "class Main {}");
+        write("module-a/lib/util.jar", "jar contents");
+        write("module-b/pom.xml", "<project/>");
+        write("module-b/target/classes/App.class", "bytecode");
+    }
+
+    @Test
+    public void testSameContentSameDigest() throws IOException {
+        final DirectoryDigests first = digest(null);
+        final DirectoryDigests second = digest(null);
+
+        assertEquals(first.getRootDigest(), second.getRootDigest());
+        assertEquals(first.getDirectoryDigests(), second.getDirectoryDigests());
+        assertEquals(4, first.getFileCount());
+        assertEquals(64, first.getRootDigest().length());
+    }
+
+    @Test
+    public void testModifiedFileChangesOnlyItsDirectories() throws IOException {
+        final DirectoryDigests before = digest(null);
+        write("module-a/src/Main.java", "class Main { }");
+        final DirectoryDigests after = digest(null);
+
+        final Map<String, String> beforeDigests = before.getDirectoryDigests();
+        final Map<String, String> afterDigests = after.getDirectoryDigests();
+        assertNotEquals(beforeDigests.get("/"), afterDigests.get("/"));
+        assertNotEquals(beforeDigests.get("/module-a/"), afterDigests.get("/module-a/"));
+        assertNotEquals(beforeDigests.get("/module-a/src/"), afterDigests.get("/module-a/src/"));
+        assertEquals(beforeDigests.get("/module-a/lib/"), afterDigests.get("/module-a/lib/"));
+        assertEquals(beforeDigests.get("/module-b/"), afterDigests.get("/module-b/"));
+        assertEquals(Arrays.asList("/module-a/src/"), after.getChangedDirectories(beforeDigests));
+    }
+
+    @Test
+    public void testRenamedFileChangesDigest() throws IOException {
+        final DirectoryDigests before = digest(null);
+        new File(workspace, "module-b/pom.xml").renameTo(new File(workspace, "module-b/build.xml"));
+        final DirectoryDigests after = digest(null);
+
+        assertNotEquals(before.getRootDigest(), after.getRootDigest());
+    }
+
+    @Test
+    public void testExcludedDirectoriesAreIgnored() throws IOException {
+        final String[] excludePatterns = { "/module-*/target/" };
+        final DirectoryDigests before = digest(excludePatterns);
+        write("module-b/target/classes/App.class", "other bytecode");
+        write("module-b/target/new.txt", "new");
+        final DirectoryDigests after = digest(excludePatterns);
+
+        assertEquals(before.getRootDigest(), after.getRootDigest());
+        assertTrue(!after.getDirectoryDigests().containsKey("/module-b/target/"));
+    }
+
+    @Test
+    public void testScanLogsAreIgnored() throws IOException {
+        final DirectoryDigests before = digest(null);
+        write("HubScanLogs/2018-01-01/log.txt", "scan log");
+        final DirectoryDigests after = digest(null);
+
+        assertEquals(before.getRootDigest(), after.getRootDigest());
+    }
+
+    @Test
+    public void testLargeFileIsReadThroughTheChannel() throws IOException {
+        final byte[] contents = new byte[(int) DirectoryDigester.LARGE_FILE_THRESHOLD + 1024];
+        Arrays.fill(contents, (byte) 7);
+        FileUtils.writeByteArrayToFile(new File(workspace, "module-a/lib/large.bin"), contents);
+        final DirectoryDigests before = digest(null);
+
+        contents[contents.length - 1] = 8;
+        FileUtils.writeByteArrayToFile(new File(workspace, "module-a/lib/large.bin"), contents);
+        final DirectoryDigests after = digest(null);
+
+        assertNotEquals(before.getDirectoryDigests().get("/module-a/lib/"), after.getDirectoryDigests().get("/module-a/lib/"));
+    }
+
+    @Test
+    public void testEntryTypeChangesDigest() throws IOException {
+        final File entry = new File(workspace, "module-b/entry");
+        entry.createNewFile();
+        final DirectoryDigests emptyFile = digest(null);
+        entry.delete();
+        entry.mkdir();
+        final DirectoryDigests emptyDirectory = digest(null);
+
+        assertNotEquals(emptyFile.getDirectoryDigests().get("/module-b/"), emptyDirectory.getDirectoryDigests().get("/module-b/"));
+    }
+
+    @Test
+    public void testLinkDiffersFromFileWithItsTargetAsContent() throws IOException {
+        write("module-b/entry", "pom.xml");
+        final DirectoryDigests file = digest(null);
+        new File(workspace, "module-b/entry").delete();
+        try {
+            Files.createSymbolicLink(new File(workspace, "module-b/entry").toPath(), Paths.get("pom.xml"));
+        } catch (final IOException | UnsupportedOperationException e) {
+            Assume.assumeNoException(e);
+        }
+        final DirectoryDigests link = digest(null);
+
+        assertNotEquals(file.getDirectoryDigests().get("/module-b/"), link.getDirectoryDigests().get("/module-b/"));
+    }
+
+    @Test
+    public void testUnreadableFileDoesNotFailTheDigest() throws IOException {
+        final File unreadable = new File(workspace, "module-a/src/Secret.java");
+        write("module-a/src/Secret.java", "class Secret {}");
+        unreadable.setReadable(false);
+        Assume.assumeFalse("the file can still be read by this user", Files.isReadable(unreadable.toPath()));
+        try {
+            final DirectoryDigests digests = digest(null);
+
+            assertEquals(5, digests.getFileCount());
+            assertEquals(digests.getRootDigest(), digest(null).getRootDigest());
+        } finally {
+            unreadable.setReadable(true);
+        }
+    }
+
+    @Test
+    public void testMissingTarget() throws IOException {
+        final DirectoryDigests digests = new DirectoryDigester(workspace.getAbsolutePath(), null).digest(new File(workspace, "missing"));
+
+        assertEquals("", digests.getRootDigest());
+        assertEquals(0, digests.getFileCount());
+    }
+
+    private DirectoryDigests digest(final String[] excludePatterns) throws IOException {
+        return new DirectoryDigester(workspace.getAbsolutePath(), excludePatterns).digest(workspace);
+    }
+
+    private void write(final String path, final String contents) throws IOException {
+        FileUtils.writeStringToFile(new File(workspace, path), contents, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,106 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.remote;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.api.generated.view.CodeLocationView;
+
+public class ParallelSignatureScannerTest {
+
+    @Test
+    public void testTargetsKeepTheCodeLocationNameOfTheSerialScan() {
+        final Map<String, String> names = ParallelSignatureScanner.getCodeLocationNames("jenkins-my-job", Arrays.asList("/workspace/module-a", "/workspace/module-b"));
+        assertEquals("[/workspace/module-a, /workspace/module-b]", names.keySet().toString());
+        assertEquals("jenkins-my-job", names.get("/workspace/module-a"));
+        assertEquals("jenkins-my-job", names.get("/workspace/module-b"));
+    }
+
+    @Test
+    public void testTargetsAreNamedByTheCliWithoutACodeLocationName() {
+        final Map<String, String> names = ParallelSignatureScanner.getCodeLocationNames(" ", Arrays.asList("/workspace/module-a", "/workspace/module-b"));
+        assertEquals(2, names.size());
+        assertNull(names.get("/workspace/module-a"));
+        assertNull(names.get("/workspace/module-b"));
+    }
+
+    @Test
+    public void testOnlyCodeLocationsNotScannedAreUnmapped() {
+        final List<CodeLocationView> versionCodeLocations = Arrays.asList(codeLocation("jenkins-my-job"), codeLocation("host/workspace/module-a"), codeLocation("old-location"));
+        final List<CodeLocationView> scanned = Arrays.asList(codeLocation("jenkins-my-job"));
+
+        final List<String> previousNames = new ArrayList<>();
+        for (final CodeLocationView codeLocation : ParallelSignatureScanner.getCodeLocationsNotJustScanned(versionCodeLocations, scanned)) {
+            previousNames.add(codeLocation.name);
+        }
+        assertEquals("[host/workspace/module-a, old-location]", previousNames.toString());
+    }
+
+    @Test
+    public void testSerialScanWaitsForCodeLocationsThatGainedAScan() {
+        final Map<String, Set<String>> before = new LinkedHashMap<>();
+        before.put("unchanged", new HashSet<>(Arrays.asList("scan-1")));
+        before.put("rescanned", new HashSet<>(Arrays.asList("scan-2")));
+        final Map<String, Set<String>> after = new LinkedHashMap<>();
+        after.put("unchanged", new HashSet<>(Arrays.asList("scan-1")));
+        after.put("rescanned", new HashSet<>(Arrays.asList("scan-2", "scan-3")));
+        after.put("new", new HashSet<>(Arrays.asList("scan-4")));
+
+        assertEquals("[rescanned, new]", ParallelSignatureScanner.getCodeLocationsWithNewScans(before, after).toString());
+    }
+
+    @Test
+    public void testWorkerLogsAreKeptOutOfTheWorkspace() {
+        final File workspace = new File("/jenkins/workspace/my-job");
+        final File logDirectory = ParallelSignatureScanner.getParallelLogDirectory(workspace, new File("/jenkins/tools"));
+        assertEquals(new File("/jenkins/workspace/my-job@tmp", ParallelSignatureScanner.PARALLEL_LOG_DIRECTORY).getAbsolutePath(), logDirectory.getAbsolutePath());
+        assertFalse(logDirectory.getAbsolutePath().startsWith(workspace.getAbsolutePath() + File.separator));
+    }
+
+    @Test
+    public void testOnlyScannerProcessesOfTheWorkersAreStopped() {
+        final String logDirectory = "/jenkins/workspace/my-job@tmp/HubScanLogs/parallel";
+        assertTrue(ParallelSignatureScanner.isWorkerProcess(Arrays.asList("java", "-Xmx512m", "-jar", "scan.cli.jar", "--logDir", logDirectory + "/1/HubScanLogs"), logDirectory));
+        assertFalse(ParallelSignatureScanner.isWorkerProcess(Arrays.asList("java", "-jar", "scan.cli.jar", "--logDir", "/jenkins/workspace/other-job/HubScanLogs"), logDirectory));
+    }
+
+    private CodeLocationView codeLocation(final String name) {
+        final CodeLocationView codeLocation = new CodeLocationView();
+        codeLocation.name = name;
+        return codeLocation;
+    }
+
+}
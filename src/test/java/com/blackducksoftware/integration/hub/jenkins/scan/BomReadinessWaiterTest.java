@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.hub.exception.HubIntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomStatusPoller.CodeLocationStatus;
+
+public class BomReadinessWaiterTest {
+
+    private static final List<CodeLocationStatus> STATUS = Arrays.asList(new CodeLocationStatus("build scan", 2, null), new CodeLocationStatus("docker scan", 1, null),
+            new CodeLocationStatus("other build", 5, null));
+
+    @Test
+    public void testOnlyTheCodeLocationsOfTheBuildArePending() throws Exception {
+        assertEquals(3, BomReadinessWaiter.countPendingScans(STATUS, Arrays.asList("build scan", "docker scan")));
+        assertEquals(2, BomReadinessWaiter.countPendingScans(STATUS, Arrays.asList("build scan")));
+        assertEquals(0, BomReadinessWaiter.countPendingScans(Arrays.asList(new CodeLocationStatus("build scan", 0, null)), Arrays.asList("build scan")));
+    }
+
+    @Test
+    public void testMissingCodeLocationsArePending() throws Exception {
+        // the Hub has not mapped the new code locations to the project version yet
+        assertEquals(2, BomReadinessWaiter.countPendingScans(Collections.<CodeLocationStatus> emptyList(), Arrays.asList("build scan", "docker scan")));
+        assertEquals(3, BomReadinessWaiter.countPendingScans(STATUS, Arrays.asList("build scan", "new scan")));
+    }
+
+    @Test
+    public void testFailedScanOfTheBuildFails() throws Exception {
+        final List<CodeLocationStatus> status = Arrays.asList(new CodeLocationStatus("build scan", 0, "ERROR_BUILDING_BOM"), new CodeLocationStatus("other build", 0, "ERROR_MATCHING"));
+        try {
+            BomReadinessWaiter.countPendingScans(status, Arrays.asList("build scan"));
+            fail();
+        } catch (final HubIntegrationException e) {
+            assertTrue(e.getMessage().contains("build scan"));
+        }
+        // the failed scan of another build is not this build's concern
+        assertEquals(1, BomReadinessWaiter.countPendingScans(status, Arrays.asList("new scan")));
+    }
+
+    @Test
+    public void testDelayGrowsUpToTheMaximum() {
+        assertEquals(4000L, BomReadinessWaiter.getNextDelay(2000L));
+        assertEquals(BomReadinessWaiter.MAXIMUM_DELAY, BomReadinessWaiter.getNextDelay(BomReadinessWaiter.MAXIMUM_DELAY));
+        for (int i = 0; i < 100; i++) {
+            final long delay = BomReadinessWaiter.getJitteredDelay(2000L);
+            assertTrue(delay >= 1000L && delay <= 2000L);
+        }
+    }
+
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomStatusPoller.CodeLocationStatus;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomStatusPoller.ScanState;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomStatusPoller.Source;
+
+public class BomStatusPollerTest {
+
+    private static final String VERSION_URL = "https://hub.example.com/api/projects/1/versions/2";
+
+    @Test
+    public void testPollStartedAfterNotBeforeIsShared() throws Exception {
+        final BomStatusPoller poller = new BomStatusPoller();
+        final CountingSource source = new CountingSource();
+        final long uploaded = System.currentTimeMillis() - 1000L;
+
+        final List<CodeLocationStatus> first = poller.getStatus(VERSION_URL, uploaded, source);
+        assertSame(first, poller.getStatus(VERSION_URL, uploaded, source));
+        assertEquals(1, source.polls.get());
+        assertEquals(1L, poller.getHubPolls());
+        assertEquals(1L, poller.getSharedResults());
+
+        // a build that uploaded after the poll started can not have its scans in it
+        poller.getStatus(VERSION_URL, System.currentTimeMillis() + 1000L, source);
+        assertEquals(2, source.polls.get());
+
+        // other project versions are polled on their own
+        poller.getStatus(VERSION_URL + "0", uploaded, source);
+        assertEquals(3, source.polls.get());
+        assertEquals(2, poller.getProjectVersionCount());
+    }
+
+    @Test
+    public void testFailedPollIsNotShared() throws Exception {
+        final BomStatusPoller poller = new BomStatusPoller();
+        final Source failing = new Source() {
+            @Override
+            public List<CodeLocationStatus> poll() throws IntegrationException {
+                throw new IntegrationException("Service Unavailable");
+            }
+        };
+        try {
+            poller.getStatus(VERSION_URL, 0L, failing);
+            fail();
+        } catch (final IntegrationException e) {
+            // expected
+        }
+        final CountingSource source = new CountingSource();
+        poller.getStatus(VERSION_URL, 0L, source);
+        assertEquals(1, source.polls.get());
+        assertEquals(0L, poller.getSharedResults());
+    }
+
+    @Test
+    public void testPendingScansAreCountedPerCodeLocation() {
+        final CodeLocationStatus status = BomStatusPoller.getCodeLocationStatus("scan", Arrays.asList(new ScanState(1L, false, null), new ScanState(2L, true, null), new ScanState(3L, true, null)));
+        assertEquals("scan", status.getCodeLocationName());
+        assertEquals(2, status.getPendingScans());
+        assertNull(status.getError());
+
+        assertEquals(0, BomStatusPoller.getCodeLocationStatus("empty", Collections.<ScanState> emptyList()).getPendingScans());
+    }
+
+    @Test
+    public void testOnlyTheLatestScanCanFail() {
+        final CodeLocationStatus recovered = BomStatusPoller.getCodeLocationStatus("scan", Arrays.asList(new ScanState(1L, false, "ERROR_BUILDING_BOM"), new ScanState(2L, false, null)));
+        assertNull(recovered.getError());
+
+        final CodeLocationStatus failed = BomStatusPoller.getCodeLocationStatus("scan", Arrays.asList(new ScanState(2L, false, "ERROR_BUILDING_BOM"), new ScanState(1L, false, null)));
+        assertEquals("ERROR_BUILDING_BOM", failed.getError());
+    }
+
+    private static class CountingSource implements Source {
+        private final AtomicInteger polls = new AtomicInteger();
+
+        @Override
+        public List<CodeLocationStatus> poll() {
+            polls.incrementAndGet();
+            return new ArrayList<>(Arrays.asList(new CodeLocationStatus("scan", 0, null)));
+        }
+    }
+
+}
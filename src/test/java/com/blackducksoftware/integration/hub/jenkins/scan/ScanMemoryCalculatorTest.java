@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.scan;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class ScanMemoryCalculatorTest {
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private static final long GIGABYTE = 1024L * MEGABYTE;
+
+    @Test
+    public void testMemoryGrowsWithTheTargets() {
+        assertEquals(1024, calculate(0L, 0L, -1L, 0, false, false));
+        // 1000 MB for the files, rounded up to the next 256 MB
+        assertEquals(2048, calculate(250000L, 0L, -1L, 0, false, false));
+        // 64 MB for each of the 2 GB of data
+        assertEquals(1280, calculate(0L, 2L * GIGABYTE, -1L, 0, false, false));
+    }
+
+    @Test
+    public void testMemoryIsDoubledAfterRunningOutOfMemory() {
+        assertEquals(2048, calculate(0L, 0L, -1L, 1024, true, true));
+        // a manually set memory that ran out is doubled too
+        assertEquals(4096, calculate(0L, 0L, -1L, 2048, true, false));
+    }
+
+    @Test
+    public void testRaisedMemoryIsKeptAfterItWorked() {
+        // build N ran out with the base memory, build N+1 got twice as much and did not run out
+        final int raised = calculate(0L, 0L, -1L, 1024, true, true);
+        assertEquals(raised, calculate(0L, 0L, -1L, raised, false, true));
+        // the targets outgrew the memory of the previous scan
+        assertEquals(3072, calculate(500000L, 0L, -1L, raised, false, true));
+    }
+
+    @Test
+    public void testManuallySetMemoryIsNotKept() {
+        assertEquals(1024, calculate(0L, 0L, -1L, 4096, false, false));
+    }
+
+    @Test
+    public void testMemoryIsLimited() {
+        assertEquals(ScanMemoryCalculator.MAXIMUM_MEMORY, calculate(100000000L, 0L, -1L, 0, false, false));
+        // 75 percent of the 2 GB available on the node
+        assertEquals(1536, calculate(0L, 0L, 2L * GIGABYTE, 4096, true, true));
+        // never less than the minimum, however little the node has
+        assertEquals(ScanMemoryCalculator.MINIMUM_MEMORY, calculate(0L, 0L, 512L * MEGABYTE, 0, false, false));
+    }
+
+    @Test
+    public void testReasonExplainsTheResult() {
+        final ScanMemoryCalculator calculator = new ScanMemoryCalculator(0L, 0L, -1L, 2048, false, true);
+        calculator.calculate();
+        assertEquals("1024 MB for 0 files and 0 MB of data, kept at the 2048 MB of the previous scan", calculator.getReason());
+    }
+
+    @Test
+    public void testIsAutomatic() {
+        assertTrue(ScanMemoryCalculator.isAutomatic(" Auto "));
+        assertFalse(ScanMemoryCalculator.isAutomatic("4096"));
+        assertFalse(ScanMemoryCalculator.isAutomatic(null));
+    }
+
+    private int calculate(final long fileCount, final long size, final long availableMemory, final int previousMemory, final boolean previousOutOfMemory, final boolean previousAutomatic) {
+        return new ScanMemoryCalculator(fileCount, size, availableMemory, previousMemory, previousOutOfMemory, previousAutomatic).calculate();
+    }
+
+}
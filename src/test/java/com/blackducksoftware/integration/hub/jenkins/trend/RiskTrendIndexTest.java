@@ -0,0 +1,139 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.trend;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class RiskTrendIndexTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private RiskTrendRecord createRecord(final int buildNumber, final int high) {
+        return new RiskTrendRecord(buildNumber, 1000L * buildNumber, 10, high, 2, 3, 0, 1, 0, 0, 0, 4, RiskTrendRecord.UNKNOWN, RiskTrendRecord.UNKNOWN, RiskTrendRecord.UNKNOWN);
+    }
+
+    @Test
+    public void testAppendAndRead() throws IOException {
+        final File indexFile = new File(folder.getRoot(), RiskTrendIndex.INDEX_FILE_NAME);
+        final RiskTrendIndex index = RiskTrendIndex.getInstance();
+        index.append(indexFile, createRecord(2, 5));
+        index.append(indexFile, createRecord(1, 7));
+
+        List<RiskTrendRecord> records = index.read(indexFile);
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).getBuildNumber());
+        assertEquals(7, records.get(0).getVulnerabilityRiskHighCount());
+        assertTrue(records.get(0).hasRiskCounts());
+        assertFalse(records.get(0).hasPolicyCounts());
+
+        // only the appended records are read, and a build recorded again replaces its record
+        index.append(indexFile, createRecord(2, 9));
+        index.append(indexFile, createRecord(3, 1));
+        records = index.read(indexFile);
+        assertEquals(3, records.size());
+        assertEquals(9, records.get(1).getVulnerabilityRiskHighCount());
+        assertEquals(3, records.get(2).getBuildNumber());
+
+        assertEquals(2, RiskTrendIndex.getLatest(records, 2).size());
+        assertEquals(2, RiskTrendIndex.getLatest(records, 2).get(0).getBuildNumber());
+    }
+
+    @Test
+    public void testIgnoresPartialRecord() throws IOException {
+        final File indexFile = new File(folder.getRoot(), RiskTrendIndex.INDEX_FILE_NAME);
+        final RiskTrendIndex index = RiskTrendIndex.getInstance();
+        index.append(indexFile, createRecord(1, 5));
+        try (FileOutputStream output = new FileOutputStream(indexFile, true)) {
+            output.write(new byte[RiskTrendRecord.SIZE / 2]);
+        }
+        assertEquals(1, index.read(indexFile).size());
+    }
+
+    @Test
+    public void testRemoveCompactsTheIndex() throws IOException {
+        final File indexFile = new File(folder.getRoot(), RiskTrendIndex.INDEX_FILE_NAME);
+        final RiskTrendIndex index = RiskTrendIndex.getInstance();
+        index.append(indexFile, createRecord(1, 5));
+        index.append(indexFile, createRecord(2, 6));
+        index.append(indexFile, createRecord(2, 7));
+        index.append(indexFile, createRecord(3, 8));
+        assertEquals(3, index.read(indexFile).size());
+
+        index.remove(indexFile, 2);
+        final long compactedLength = indexFile.length();
+        List<RiskTrendRecord> records = index.read(indexFile);
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).getBuildNumber());
+        assertEquals(3, records.get(1).getBuildNumber());
+
+        // a build that is not in the index leaves it as it is
+        index.remove(indexFile, 9);
+        assertEquals(compactedLength, indexFile.length());
+
+        // the records kept in memory are read again from the rewritten index
+        index.append(indexFile, createRecord(4, 9));
+        records = index.read(indexFile);
+        assertEquals(3, records.size());
+        assertEquals(8, records.get(1).getVulnerabilityRiskHighCount());
+        assertEquals(4, records.get(2).getBuildNumber());
+    }
+
+    @Test
+    public void testRemovingTheLastBuildDeletesTheIndex() throws IOException {
+        final File indexFile = new File(folder.getRoot(), RiskTrendIndex.INDEX_FILE_NAME);
+        final RiskTrendIndex index = RiskTrendIndex.getInstance();
+        index.append(indexFile, createRecord(1, 5));
+        assertEquals(1, index.read(indexFile).size());
+
+        index.remove(indexFile, 1);
+        assertFalse(indexFile.exists());
+        assertFalse(index.isCached(indexFile));
+        assertTrue(index.read(indexFile).isEmpty());
+    }
+
+    @Test
+    public void testEvictsIndexesThatAreGone() throws IOException {
+        final File indexFile = new File(folder.newFolder("job"), RiskTrendIndex.INDEX_FILE_NAME);
+        final RiskTrendIndex index = RiskTrendIndex.getInstance();
+        index.append(indexFile, createRecord(1, 5));
+        index.read(indexFile);
+        index.evictMissing();
+        assertTrue(index.isCached(indexFile));
+
+        // the job was deleted
+        assertTrue(indexFile.delete());
+        index.evictMissing();
+        assertFalse(index.isCached(indexFile));
+    }
+
+}
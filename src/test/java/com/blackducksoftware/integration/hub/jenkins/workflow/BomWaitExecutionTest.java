@@ -0,0 +1,288 @@
+/*******************************************************************************
+ * Copyright (C) 2016 Black Duck Software, Inc.
+ * http://www.blackducksoftware.com/
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *******************************************************************************/
+package com.blackducksoftware.integration.hub.jenkins.workflow;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.blackducksoftware.integration.exception.IntegrationException;
+import com.blackducksoftware.integration.hub.jenkins.HubJenkinsLogger;
+import com.blackducksoftware.integration.hub.jenkins.HubServerInfo;
+import com.blackducksoftware.integration.hub.jenkins.connection.HubAdmissionController;
+import com.blackducksoftware.integration.hub.jenkins.scan.BomReadinessWaiter;
+import com.blackducksoftware.integration.hub.jenkins.scan.ScanHandle;
+
+import hudson.AbortException;
+import hudson.model.Job;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+
+public class BomWaitExecutionTest {
+
+    private HubServerInfo server;
+
+    private StepContext context;
+
+    private Run run;
+
+    private HubJenkinsLogger logger;
+
+    @Before
+    public void setUp() throws Exception {
+        // every test has a queue of its own in the shared admission controller
+        server = new HubServerInfo("https://" + UUID.randomUUID() + ".example.com", "credentials", 120, false, true);
+        final Job job = mock(Job.class);
+        when(job.getFullName()).thenReturn("job");
+        run = mock(Run.class);
+        when(run.getParent()).thenReturn(job);
+        final TaskListener listener = mock(TaskListener.class);
+        when(listener.getLogger()).thenReturn(new PrintStream(new ByteArrayOutputStream()));
+        context = mock(StepContext.class);
+        when(context.get(Run.class)).thenReturn(run);
+        when(context.get(TaskListener.class)).thenReturn(listener);
+        logger = new HubJenkinsLogger(listener);
+    }
+
+    @Test
+    public void testStepIsParkedUntilTheBomIsUpToDate() throws Exception {
+        final TestExecution execution = new TestExecution(context, 2, 0);
+        execution.awaitBom(getScanHandle(false, TimeUnit.MINUTES.toMillis(5)), logger);
+        assertEquals(1, execution.polls.size());
+        assertDelay(BomReadinessWaiter.INITIAL_DELAY, execution.delays.get(0));
+        assertEquals(1, getBomWaitsInFlight());
+        verify(context, never()).onSuccess(any());
+
+        execution.runLastPoll();
+        assertEquals(2, execution.polls.size());
+        assertDelay(BomReadinessWaiter.getNextDelay(BomReadinessWaiter.INITIAL_DELAY), execution.delays.get(1));
+        assertEquals("waiting for the BOM, 2 scans pending", execution.getStatus());
+        assertEquals(0, execution.completions);
+        verify(context, never()).onSuccess(any());
+
+        execution.runLastPoll();
+        assertEquals(2, execution.polls.size());
+        assertEquals(1, execution.completions);
+        assertEquals(0, getBomWaitsInFlight());
+        verify(context).onSuccess(null);
+        verify(run, never()).setResult(any(Result.class));
+    }
+
+    @Test
+    public void testDryRunIsCompletedWithoutWaiting() throws Exception {
+        final TestExecution execution = new TestExecution(context);
+        execution.awaitBom(getScanHandle(true, TimeUnit.MINUTES.toMillis(5)), logger);
+        assertTrue(execution.polls.isEmpty());
+        assertEquals(1, execution.completions);
+        assertEquals(0, getBomWaitsInFlight());
+        verify(context).onSuccess(null);
+    }
+
+    @Test
+    public void testResumeAsksForTheSlotAgain() throws Exception {
+        final TestExecution execution = new TestExecution(context, 1);
+        execution.awaitBom(getScanHandle(false, TimeUnit.MINUTES.toMillis(5)), logger);
+        execution.runLastPoll();
+        assertEquals(1, getBomWaitsInFlight());
+
+        // the slot of the saved execution is left behind, as it is when Jenkins stops
+        final TestExecution resumed = copy(execution);
+        resumed.attach(context, 0);
+        resumed.resume();
+        assertEquals(2, getBomWaitsInFlight());
+        assertEquals(1, resumed.polls.size());
+        assertDelay(BomReadinessWaiter.getNextDelay(BomReadinessWaiter.INITIAL_DELAY), resumed.delays.get(0));
+
+        resumed.runLastPoll();
+        assertEquals(1, resumed.completions);
+        assertEquals(1, getBomWaitsInFlight());
+        verify(context).onSuccess(null);
+    }
+
+    @Test
+    public void testResumeBeforeTheUploadFails() throws Exception {
+        final TestExecution execution = new TestExecution(context);
+        execution.resume();
+        verify(context).onFailure(any(AbortException.class));
+        assertTrue(execution.polls.isEmpty());
+        assertEquals(0, execution.completions);
+    }
+
+    @Test
+    public void testStopReleasesTheSlotWithoutCompleting() throws Exception {
+        final TestExecution execution = new TestExecution(context, 0);
+        execution.awaitBom(getScanHandle(false, TimeUnit.MINUTES.toMillis(5)), logger);
+        assertEquals(1, getBomWaitsInFlight());
+
+        final Exception cause = new Exception("aborted");
+        execution.stop(cause);
+        assertEquals(0, getBomWaitsInFlight());
+        verify(context).onFailure(cause);
+
+        // a poll that was already scheduled does not go to the Hub
+        execution.runLastPoll();
+        assertEquals(1, execution.pendingScans.size());
+        assertEquals(0, execution.completions);
+        verify(context, never()).onSuccess(any());
+    }
+
+    @Test
+    public void testFailedPollCompletesTheBuildAsUnstable() throws Exception {
+        final TestExecution execution = new TestExecution(context);
+        execution.awaitBom(getScanHandle(false, TimeUnit.MINUTES.toMillis(5)), logger);
+        execution.runLastPoll();
+        verify(run).setResult(Result.UNSTABLE);
+        assertEquals(1, execution.polls.size());
+        assertEquals(1, execution.completions);
+        assertEquals(0, getBomWaitsInFlight());
+        verify(context).onSuccess(null);
+    }
+
+    @Test
+    public void testWaitPastTheMaximumCompletesTheBuildAsUnstable() throws Exception {
+        final TestExecution execution = new TestExecution(context, 3);
+        execution.awaitBom(getScanHandle(false, 0L), logger);
+        execution.runLastPoll();
+        verify(run).setResult(Result.UNSTABLE);
+        assertEquals(1, execution.polls.size());
+        assertEquals(1, execution.completions);
+        assertEquals(0, getBomWaitsInFlight());
+    }
+
+    private ScanHandle getScanHandle(final boolean dryRun, final long bomWait) {
+        return new ScanHandle("{}", Arrays.asList("code location"), dryRun, true, true, bomWait, System.currentTimeMillis(), server, 1L, true, null);
+    }
+
+    private int getBomWaitsInFlight() {
+        for (final HubAdmissionController.QueueStatus status : HubAdmissionController.getInstance().getQueueStatuses()) {
+            if (status.getGate() == HubAdmissionController.Gate.BOM_WAIT && server.getServerUrl().equals(status.getServerUrl())) {
+                return status.getInFlight();
+            }
+        }
+        return 0;
+    }
+
+    private void assertDelay(final long delay, final long jitteredDelay) {
+        assertTrue(jitteredDelay >= delay / 2);
+        assertTrue(jitteredDelay <= delay);
+    }
+
+    private TestExecution copy(final TestExecution execution) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(execution);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (TestExecution) in.readObject();
+        }
+    }
+
+    /**
+     * Keeps the polls instead of scheduling them, answers them from a list of pending scan counts and completes the scan on the calling thread. A poll with
+     * no count left fails.
+     */
+    private static class TestExecution extends BomWaitExecution {
+        private static final long serialVersionUID = 1L;
+
+        private transient StepContext context;
+
+        private transient List<Runnable> polls;
+
+        private transient List<Long> delays;
+
+        private transient Deque<Integer> pendingScans;
+
+        private transient int completions;
+
+        private TestExecution(final StepContext context, final Integer... pendingScans) {
+            attach(context, pendingScans);
+        }
+
+        private void attach(final StepContext context, final Integer... pendingScans) {
+            this.context = context;
+            this.polls = new ArrayList<>();
+            this.delays = new ArrayList<>();
+            this.pendingScans = new ArrayDeque<>(Arrays.asList(pendingScans));
+        }
+
+        private void runLastPoll() {
+            polls.get(polls.size() - 1).run();
+        }
+
+        @Override
+        public StepContext getContext() {
+            return context;
+        }
+
+        @Override
+        protected void submit(final StepTask stepTask) {
+            try {
+                stepTask.run();
+            } catch (final Exception e) {
+                getContext().onFailure(e);
+            }
+        }
+
+        @Override
+        void schedule(final Runnable poll, final long delay) {
+            polls.add(poll);
+            delays.add(delay);
+        }
+
+        @Override
+        int getPendingScans(final HubJenkinsLogger logger, final long notBefore) throws IntegrationException {
+            final Integer pending = pendingScans.poll();
+            if (pending == null) {
+                throw new IntegrationException("The Hub could not be reached");
+            }
+            return pending;
+        }
+
+        @Override
+        void completeScan(final Run run, final HubJenkinsLogger logger) {
+            completions++;
+        }
+    }
+
+}